@@ -0,0 +1,378 @@
+package org.night.nighteconomy.loadtest;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.night.nighteconomy.command.LeaderboardRenderer;
+import org.night.nighteconomy.config.ConfigManager;
+import org.night.nighteconomy.database.LedgerStore;
+import org.night.nighteconomy.database.LedgerStores;
+import org.night.nighteconomy.metrics.EconomyMetrics;
+import org.night.nighteconomy.metrics.LatencyHistogram;
+import org.night.nighteconomy.placeholder.PlaceholderManager;
+import org.night.nighteconomy.ranking.RankingManager;
+import org.night.nighteconomy.service.EconomyNotifier;
+import org.night.nighteconomy.service.MultiCurrencyEconomyService;
+
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless soak test for the economy core. Simulates {@code players} virtual players doing
+ * payments, balance reads, placeholder renders and {@code /top} pages at fixed rates against a real
+ * store, without a Minecraft server. Placeholders and {@code /top} run on a single simulated server
+ * thread, like in game. The backend comes from {@code storage.backend} in
+ * {@code <dir>/config/Settings.toml} unless {@code --backend} is given.
+ * <p>
+ * Load is open-loop: each operation is timed from when it was scheduled to start, so a stalled
+ * database shows up as latency instead of silently lowering the request rate. Every report interval
+ * prints throughput, p50/p99/p999 per operation and the database queue depths.
+ * <p>
+ * Options are {@code --key=value} arguments; see {@link Options} for the keys and defaults.
+ */
+public final class EconomyLoadTest {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final Options options;
+    private final List<UUID> players = new ArrayList<>();
+    private final Map<String, Integer> maxQueueDepth = new ConcurrentHashMap<>();
+    private final LongAdder broadcasts = new LongAdder();
+    private final Semaphore inFlight;
+
+    private MultiCurrencyEconomyService economy;
+    private PlaceholderManager placeholders;
+    private LeaderboardRenderer leaderboards;
+    private ExecutorService serverThread;
+
+    private final Op pay = new Op("pay");
+    private final Op read = new Op("read");
+    private final Op placeholder = new Op("placeholder");
+    private final Op top = new Op("top");
+    private final Op[] ops = {pay, read, placeholder, top};
+
+    private volatile boolean running = true;
+
+    private EconomyLoadTest(Options options) {
+        this.options = options;
+        this.inFlight = new Semaphore(options.maxInFlight);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new EconomyLoadTest(Options.parse(args)).run();
+    }
+
+    private void run() throws Exception {
+        Path dir = Paths.get(options.dir).toAbsolutePath();
+        Files.createDirectories(dir);
+        Path db = dir.resolve("nighteconomy.db");
+        if (options.fresh) {
+            Files.deleteIfExists(db);
+            Files.deleteIfExists(dir.resolve("nighteconomy.db-wal"));
+            Files.deleteIfExists(dir.resolve("nighteconomy.db-shm"));
+            Files.deleteIfExists(dir.resolve("nighteconomy.mv.db"));
+        }
+
+        ConfigManager config = new ConfigManager(dir.resolve("config"));
+        if (config.getCurrency(options.currency) == null) {
+            throw new IllegalArgumentException("Unknown currency: " + options.currency);
+        }
+        LedgerStore databaseManager = options.backend != null
+                ? LedgerStores.open(options.backend, config.getSettings(), dir)
+                : LedgerStores.open(config.getSettings(), dir);
+        RankingManager rankingManager = new RankingManager(databaseManager, config);
+        economy = new MultiCurrencyEconomyService(databaseManager, config, rankingManager, new HeadlessNotifier());
+        placeholders = new PlaceholderManager(economy, config, rankingManager);
+        leaderboards = new LeaderboardRenderer(config, rankingManager);
+        serverThread = Executors.newSingleThreadExecutor(r -> new Thread(r, "LT-Server"));
+
+        seed();
+
+        System.out.printf(Locale.ROOT, "Load: players=%d pay=%.0f/s read=%.0f/s placeholder=%.0f/s top=%.0f/s for %d min%n",
+                options.players, options.payRate, options.readRate, options.placeholderRate, options.topRate,
+                options.durationMinutes);
+
+        List<Thread> drivers = new ArrayList<>();
+        drivers.add(driver(pay, options.payRate, this::issuePay));
+        drivers.add(driver(read, options.readRate, this::issueRead));
+        drivers.add(driver(placeholder, options.placeholderRate, this::issuePlaceholder));
+        drivers.add(driver(top, options.topRate, this::issueTop));
+        drivers.forEach(Thread::start);
+
+        report(dir);
+
+        running = false;
+        for (Thread t : drivers) t.join();
+        inFlight.tryAcquire(options.maxInFlight, 30, TimeUnit.SECONDS);
+        serverThread.shutdown();
+        serverThread.awaitTermination(10, TimeUnit.SECONDS);
+
+        summary(db);
+        economy.shutdown();
+        System.exit(0);
+    }
+
+    private void seed() {
+        long start = System.nanoTime();
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < options.players; i++) {
+            UUID uuid = UUID.nameUUIDFromBytes(("loadtest-" + i).getBytes());
+            players.add(uuid);
+            double balance = 1_000.0 + random.nextInt(100_000);
+            pending.add(economy.ensureAccountExistsAsync(uuid, options.currency, "lt" + i)
+                    .thenCompose(v -> economy.setBalanceAsync(uuid, options.currency, balance)));
+            if (pending.size() >= 1_000) {
+                CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).join();
+                pending.clear();
+            }
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).join();
+        economy.forceRankingUpdateAsync(options.currency).join();
+        System.out.printf(Locale.ROOT, "Seeded %d accounts in %d ms%n", options.players,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private UUID randomPlayer() {
+        return players.get(ThreadLocalRandom.current().nextInt(players.size()));
+    }
+
+    private Thread driver(Op op, double rate, Issuer issuer) {
+        Thread thread = new Thread(() -> {
+            if (rate <= 0) return;
+            long interval = (long) (1_000_000_000L / rate);
+            long next = System.nanoTime();
+            while (running) {
+                long now = System.nanoTime();
+                if (now < next) {
+                    LockSupport.parkNanos(next - now);
+                    continue;
+                }
+                long intended = next;
+                next += interval;
+                if (!inFlight.tryAcquire()) {
+                    op.dropped.increment();
+                    continue;
+                }
+                try {
+                    issuer.issue(intended);
+                } catch (Exception e) {
+                    op.done(intended, false);
+                }
+            }
+        }, "LT-" + op.name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void issuePay(long intended) {
+        UUID sender = randomPlayer();
+        UUID receiver = randomPlayer();
+        if (sender.equals(receiver)) {
+            inFlight.release();
+            return;
+        }
+        double amount = 1 + ThreadLocalRandom.current().nextInt(50);
+        economy.payPlayerAsync(sender, receiver, options.currency, amount).whenComplete((res, err) -> {
+            if (res != null && MultiCurrencyEconomyService.PaymentResult.BUSY.equals(res.getMessage())) {
+                pay.busy.increment();
+            }
+            pay.done(intended, err == null && res != null && res.isSuccess());
+        });
+    }
+
+    private void issueRead(long intended) {
+        economy.getBalanceAsync(randomPlayer(), options.currency)
+                .whenComplete((v, err) -> read.done(intended, err == null));
+    }
+
+    private void issuePlaceholder(long intended) {
+        UUID player = randomPlayer();
+        String text = "%nighteconomy_" + options.currency + "_balance% #%nighteconomy_" + options.currency
+                + "_position% top:%nighteconomy_" + options.currency + "_top1_name%";
+        serverThread.execute(() -> {
+            boolean ok = false;
+            try {
+                ok = placeholders.processPlaceholders(player, text) != null;
+            } finally {
+                placeholder.done(intended, ok);
+            }
+        });
+    }
+
+    private void issueTop(long intended) {
+        int page = 1 + ThreadLocalRandom.current().nextInt(5);
+        serverThread.execute(() -> {
+            boolean ok = false;
+            try {
+                ok = leaderboards.render(options.currency, page) != null;
+            } finally {
+                top.done(intended, ok);
+            }
+        });
+    }
+
+    private void report(Path dir) throws Exception {
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MINUTES.toNanos(options.durationMinutes);
+        long reportNanos = TimeUnit.SECONDS.toNanos(Math.max(1, options.reportSeconds));
+        long nextReport = start + reportNanos;
+
+        Map<String, LatencyHistogram.Snapshot> previous = new HashMap<>();
+        for (Op op : ops) previous.put(op.name, op.latency.snapshot());
+
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(dir.resolve("loadtest.csv")))) {
+            csv.println("elapsed_s,op,ops_per_s,p50_ms,p99_ms,p999_ms,errors,dropped,in_flight,queue_depths");
+            while (System.nanoTime() < end) {
+                Thread.sleep(250);
+                EconomyMetrics.queueDepths().forEach((k, d) -> maxQueueDepth.merge(k, d, Math::max));
+                if (System.nanoTime() < nextReport) continue;
+
+                long elapsed = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+                String queues = EconomyMetrics.queueDepths().toString();
+                StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "[%6ds]", elapsed));
+                for (Op op : ops) {
+                    LatencyHistogram.Snapshot now = op.latency.snapshot();
+                    LatencyHistogram.Snapshot delta = now.minus(previous.put(op.name, now));
+                    double rate = delta.getCount() * 1e9 / reportNanos;
+                    line.append(String.format(Locale.ROOT, " %s %.0f/s p50=%s p99=%s p999=%s |",
+                            op.name, rate, ms(delta.percentile(0.50)), ms(delta.percentile(0.99)),
+                            ms(delta.percentile(0.999))));
+                    csv.printf(Locale.ROOT, "%d,%s,%.1f,%s,%s,%s,%d,%d,%d,\"%s\"%n", elapsed, op.name, rate,
+                            ms(delta.percentile(0.50)), ms(delta.percentile(0.99)), ms(delta.percentile(0.999)),
+                            op.errors.sum(), op.dropped.sum(), options.maxInFlight - inFlight.availablePermits(),
+                            queues);
+                }
+                line.append(" queues ").append(queues);
+                System.out.println(line);
+                csv.flush();
+                nextReport += reportNanos;
+            }
+        }
+    }
+
+    private void summary(Path db) throws Exception {
+        System.out.println("=== NightEconomy load test summary ===");
+        for (Op op : ops) {
+            LatencyHistogram.Snapshot s = op.latency.snapshot();
+            System.out.printf(Locale.ROOT, "%-12s total=%d errors=%d dropped=%d p50=%sms p99=%sms p999=%sms max=%sms%n",
+                    op.name, s.getCount(), op.errors.sum(), op.dropped.sum(), ms(s.percentile(0.50)),
+                    ms(s.percentile(0.99)), ms(s.percentile(0.999)), ms(s.getMaxNanos()));
+        }
+        System.out.printf(Locale.ROOT, "payments rejected as busy: %d, tycoon broadcasts: %d%n",
+                pay.busy.sum(), broadcasts.sum());
+        for (LatencyHistogram.Snapshot s : EconomyMetrics.executorWaits()) {
+            System.out.printf(Locale.ROOT, "queue %-18s wait p99=%sms max depth=%d%n", s.getName(),
+                    ms(s.percentile(0.99)), maxQueueDepth.getOrDefault(s.getName(), 0));
+        }
+        for (String name : new String[]{"nighteconomy.db", "nighteconomy.mv.db"}) {
+            Path file = db.resolveSibling(name);
+            if (Files.exists(file)) System.out.printf(Locale.ROOT, "%s: %d KiB%n", name, Files.size(file) / 1024);
+        }
+    }
+
+    private static String ms(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / 1_000_000.0);
+    }
+
+    @FunctionalInterface
+    private interface Issuer {
+        void issue(long intendedNanos);
+    }
+
+    private final class Op {
+        final String name;
+        final LatencyHistogram latency;
+        final LongAdder errors = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+        final LongAdder busy = new LongAdder();
+
+        Op(String name) {
+            this.name = name;
+            this.latency = EconomyMetrics.operation("loadtest." + name);
+        }
+
+        void done(long intendedNanos, boolean ok) {
+            latency.recordSince(intendedNanos);
+            if (!ok) errors.increment();
+            inFlight.release();
+        }
+    }
+
+    private final class HeadlessNotifier implements EconomyNotifier {
+        @Override
+        public void broadcast(String coloredMessage) {
+            broadcasts.increment();
+            LOGGER.debug("Broadcast: {}", coloredMessage);
+        }
+
+        @Override
+        public double tickTimeMs() {
+            return 0.0;
+        }
+    }
+
+    /**
+     * {@code --players} (2000), {@code --currency} (money), {@code --duration-minutes} (10),
+     * {@code --pay-rate} (200/s), {@code --read-rate} (2000/s), {@code --placeholder-rate} (1000/s),
+     * {@code --top-rate} (20/s), {@code --report-seconds} (10), {@code --max-in-flight} (20000),
+     * {@code --dir} (build/loadtest), {@code --backend} (from Settings.toml) and {@code --fresh}
+     * (true, deletes the database first).
+     */
+    static final class Options {
+        int players = 2_000;
+        String currency = "money";
+        long durationMinutes = 10;
+        double payRate = 200;
+        double readRate = 2_000;
+        double placeholderRate = 1_000;
+        double topRate = 20;
+        int reportSeconds = 10;
+        int maxInFlight = 20_000;
+        String dir = "build/loadtest";
+        boolean fresh = true;
+        String backend;
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (String arg : args) {
+                if (!arg.startsWith("--")) throw new IllegalArgumentException("Expected --key=value: " + arg);
+                int eq = arg.indexOf('=');
+                String key = eq < 0 ? arg.substring(2) : arg.substring(2, eq);
+                String value = eq < 0 ? "true" : arg.substring(eq + 1);
+                switch (key) {
+                    case "players" -> o.players = Integer.parseInt(value);
+                    case "currency" -> o.currency = value;
+                    case "duration-minutes" -> o.durationMinutes = Long.parseLong(value);
+                    case "pay-rate" -> o.payRate = Double.parseDouble(value);
+                    case "read-rate" -> o.readRate = Double.parseDouble(value);
+                    case "placeholder-rate" -> o.placeholderRate = Double.parseDouble(value);
+                    case "top-rate" -> o.topRate = Double.parseDouble(value);
+                    case "report-seconds" -> o.reportSeconds = Integer.parseInt(value);
+                    case "max-in-flight" -> o.maxInFlight = Integer.parseInt(value);
+                    case "dir" -> o.dir = value;
+                    case "fresh" -> o.fresh = Boolean.parseBoolean(value);
+                    case "backend" -> o.backend = value;
+                    default -> throw new IllegalArgumentException("Unknown option: --" + key);
+                }
+            }
+            if (o.players < 2) throw new IllegalArgumentException("--players must be at least 2");
+            return o;
+        }
+    }
+}
@@ -2,15 +2,23 @@ package org.night.nighteconomy;
 
 import org.night.nighteconomy.api.NightEconomyAPI;
 import org.night.nighteconomy.api.NightEconomyAPIProvider;
+import org.night.nighteconomy.api.data.BalanceChange;
+import org.night.nighteconomy.api.data.CurrencyStatistics;
+import org.night.nighteconomy.api.data.OperationResult;
 import org.night.nighteconomy.api.data.RankEntry;
 import org.night.nighteconomy.api.data.TycoonInfo;
 import org.night.nighteconomy.api.event.NightEconomyReadyEvent;
 import org.night.nighteconomy.command.MultiCurrencyCommand;
 import org.night.nighteconomy.config.ConfigManager;
+import org.night.nighteconomy.database.LedgerStore;
+import org.night.nighteconomy.database.LedgerStores;
 import org.night.nighteconomy.database.MultiCurrencyDatabaseManager;
 import org.night.nighteconomy.placeholder.PlaceholderManager;
 import org.night.nighteconomy.ranking.RankingManager;
 import org.night.nighteconomy.service.MultiCurrencyEconomyService;
+import org.night.nighteconomy.service.ServerEconomyNotifier;
+import org.night.nighteconomy.stats.BalanceDistribution;
+import org.night.nighteconomy.util.PermissionUtil;
 
 import net.neoforged.bus.api.IEventBus;
 import net.neoforged.bus.api.SubscribeEvent;
@@ -19,6 +27,7 @@ import net.neoforged.fml.common.Mod;
 import net.neoforged.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.neoforged.neoforge.common.NeoForge;
 import net.neoforged.neoforge.event.RegisterCommandsEvent;
+import net.neoforged.neoforge.event.entity.player.PlayerEvent;
 import net.neoforged.neoforge.event.server.ServerStartingEvent;
 import net.neoforged.neoforge.event.server.ServerStoppingEvent;
 
@@ -31,6 +40,8 @@ import java.nio.file.Paths;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 @Mod(org.night.nighteconomy.Nighteconomy.MODID)
@@ -38,9 +49,10 @@ public class Nighteconomy {
     public static final String MODID = "nighteconomy";
     public static final String VERSION = "3.3.0";
     private static final Logger LOGGER = LogManager.getLogger();
+    private static final long RANKING_WARM_UP_TIMEOUT_SECONDS = 10;
 
     private ConfigManager configManager;
-    private MultiCurrencyDatabaseManager databaseManager;
+    private LedgerStore databaseManager;
     private MultiCurrencyEconomyService economyService;
     private RankingManager rankingManager;
     private PlaceholderManager placeholderManager;
@@ -64,17 +76,16 @@ public class Nighteconomy {
             java.nio.file.Files.createDirectories(configDir);
             configManager = new ConfigManager(configDir);
 
-            Path databasePath = configDir.resolve("nighteconomy.db");
-            java.sql.Connection conn = java.sql.DriverManager.getConnection("jdbc:sqlite:" + databasePath);
-            databaseManager = new MultiCurrencyDatabaseManager(conn);
+            databaseManager = LedgerStores.open(configManager.getSettings(), configDir);
 
             rankingManager = new RankingManager(databaseManager, configManager);
-            economyService = new MultiCurrencyEconomyService(databaseManager, configManager);
+            economyService = new MultiCurrencyEconomyService(databaseManager, configManager, rankingManager,
+                    new ServerEconomyNotifier());
 
-            placeholderManager = new PlaceholderManager(economyService, configManager);
+            placeholderManager = new PlaceholderManager(economyService, configManager, rankingManager);
             placeholderManager.registerPlaceholders();
 
-            commandManager = new MultiCurrencyCommand(economyService, configManager);
+            commandManager = new MultiCurrencyCommand(economyService, configManager, rankingManager);
 
             this.api = new DefaultNightEconomyAPI(economyService, rankingManager);
 
@@ -100,12 +111,12 @@ public class Nighteconomy {
 
             if (configManager != null) {
                 configManager.loadConfigurations();
+                configManager.startWatching();
                 LOGGER.info("Settings loaded successfully!");
             }
 
             if (rankingManager != null) {
-                rankingManager.forceUpdateAll();
-                LOGGER.info("Rankings successfully initialized!");
+                warmUpRankings();
             }
 
             if (!apiPublished && api != null) {
@@ -121,16 +132,36 @@ public class Nighteconomy {
         }
     }
 
+    /**
+     * Loads the last persisted rankings instead of rebuilding them on the server thread; the rebuild
+     * runs in the background. A slow database only delays the ranking, not the startup.
+     */
+    private void warmUpRankings() {
+        try {
+            rankingManager.warmUp().get(RANKING_WARM_UP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            LOGGER.info("Rankings successfully initialized!");
+        } catch (TimeoutException e) {
+            LOGGER.warn("Ranking warm-up still running after {}s; rankings will appear once it finishes.",
+                    RANKING_WARM_UP_TIMEOUT_SECONDS);
+        } catch (Exception e) {
+            LOGGER.error("Error warming up rankings: ", e);
+        }
+    }
+
     @SubscribeEvent
     public void onServerStopping(ServerStoppingEvent event) {
         LOGGER.info("Server Stopping - Saving NightEconomy Data...");
         try {
+            if (configManager != null) {
+                configManager.stopWatching();
+            }
             if (economyService != null) {
                 economyService.shutdown();
             }
             if (databaseManager != null) {
                 databaseManager.close();
             }
+            PermissionUtil.reset();
         } catch (Exception e) {
             LOGGER.error("Error terminating NightEconomy: ", e);
         }
@@ -151,6 +182,14 @@ public class Nighteconomy {
         }
     }
 
+    @SubscribeEvent
+    public void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        if (placeholderManager != null) {
+            placeholderManager.invalidatePlayer(event.getEntity().getUUID());
+        }
+        PermissionUtil.invalidate(event.getEntity().getUUID());
+    }
+
     public static Nighteconomy getInstance() {
         return instance;
     }
@@ -160,7 +199,7 @@ public class Nighteconomy {
     }
 
     public ConfigManager getConfigManager() { return configManager; }
-    public MultiCurrencyDatabaseManager getDatabaseManager() { return databaseManager; }
+    public LedgerStore getDatabaseManager() { return databaseManager; }
     public MultiCurrencyEconomyService getEconomyService() { return economyService; }
     public RankingManager getRankingManager() { return rankingManager; }
     public PlaceholderManager getPlaceholderManager() { return placeholderManager; }
@@ -253,6 +292,46 @@ public class Nighteconomy {
                     .collect(Collectors.toList());
         }
 
+        @Override
+        public CurrencyStatistics getStatistics(String currencyId) {
+            BalanceDistribution.Snapshot s = economyService.getStatistics(currencyId);
+            if (s == null) return null;
+            return new CurrencyStatistics(
+                    currencyId,
+                    s.getAccounts(),
+                    BigDecimal.valueOf(s.getSupply()),
+                    BigDecimal.valueOf(s.getMean()),
+                    BigDecimal.valueOf(s.percentile(0.50)),
+                    BigDecimal.valueOf(s.percentile(0.90)),
+                    BigDecimal.valueOf(s.percentile(0.99))
+            );
+        }
+
+        @Override
+        public List<BalanceChange> tail(long fromSeq, int limit) {
+            return economyService.tailChangesAsync(fromSeq, limit).join().stream()
+                    .map(c -> {
+                        UUID uuid = null;
+                        try {
+                            uuid = UUID.fromString(c.getUuid());
+                        } catch (Exception ignored) {}
+                        return new BalanceChange(
+                                c.getSeq(),
+                                uuid,
+                                c.getCurrencyId(),
+                                BigDecimal.valueOf(c.getBalance()),
+                                c.isPaymentEnabled(),
+                                c.getChangedAt()
+                        );
+                    })
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public long latestChangeSequence() {
+            return economyService.latestChangeSeqAsync().join();
+        }
+
         @Override
         public String formatAmount(String currencyId, BigDecimal amount) {
             if (amount == null) return "0";
@@ -273,5 +352,65 @@ public class Nighteconomy {
                 return false;
             }
         }
+
+        @Override
+        public OperationResult tryDebit(UUID playerId, String currencyId, BigDecimal amount, String reason,
+                                        String idempotencyKey) {
+            if (playerId == null || currencyId == null || amount == null) return OperationResult.DECLINED;
+            if (amount.signum() <= 0) return OperationResult.DECLINED;
+            try {
+                return economyService.subtractBalanceAsync(playerId, currencyId, amount.doubleValue(), idempotencyKey).join();
+            } catch (Throwable t) {
+                return OperationResult.UNKNOWN;
+            }
+        }
+
+        @Override
+        public boolean credit(UUID playerId, String currencyId, BigDecimal amount, String reason) {
+            if (playerId == null || currencyId == null || amount == null) return false;
+            if (amount.signum() <= 0) return false;
+            try {
+                return economyService.addBalance(playerId, currencyId, amount.doubleValue());
+            } catch (Throwable t) {
+                return false;
+            }
+        }
+
+        @Override
+        public OperationResult credit(UUID playerId, String currencyId, BigDecimal amount, String reason,
+                                      String idempotencyKey) {
+            if (playerId == null || currencyId == null || amount == null) return OperationResult.DECLINED;
+            if (amount.signum() <= 0) return OperationResult.DECLINED;
+            try {
+                return economyService.addBalanceAsync(playerId, currencyId, amount.doubleValue(), idempotencyKey).join();
+            } catch (Throwable t) {
+                return OperationResult.UNKNOWN;
+            }
+        }
+
+        @Override
+        public boolean transfer(UUID fromId, UUID toId, String currencyId, BigDecimal amount, String reason) {
+            if (fromId == null || toId == null || currencyId == null || amount == null) return false;
+            if (amount.signum() <= 0 || fromId.equals(toId)) return false;
+            if (!economyService.tryAcquire(fromId, currencyId, "api")) return false;
+            try {
+                return economyService.payPlayer(fromId, toId, currencyId, amount.doubleValue()).isSuccess();
+            } catch (Throwable t) {
+                return false;
+            }
+        }
+
+        @Override
+        public OperationResult transfer(UUID fromId, UUID toId, String currencyId, BigDecimal amount, String reason,
+                                        String idempotencyKey) {
+            if (fromId == null || toId == null || currencyId == null || amount == null) return OperationResult.DECLINED;
+            if (amount.signum() <= 0 || fromId.equals(toId)) return OperationResult.DECLINED;
+            if (!economyService.tryAcquire(fromId, currencyId, "api")) return OperationResult.RATE_LIMITED;
+            try {
+                return economyService.payPlayerAsync(fromId, toId, currencyId, amount.doubleValue(), idempotencyKey).join();
+            } catch (Throwable t) {
+                return OperationResult.UNKNOWN;
+            }
+        }
     }
 }
\ No newline at end of file
@@ -1,5 +1,8 @@
 package org.night.nighteconomy.api;
 
+import org.night.nighteconomy.api.data.BalanceChange;
+import org.night.nighteconomy.api.data.CurrencyStatistics;
+import org.night.nighteconomy.api.data.OperationResult;
 import org.night.nighteconomy.api.data.RankEntry;
 import org.night.nighteconomy.api.data.TycoonInfo;
 
@@ -59,7 +62,72 @@ public interface NightEconomyAPI {
      */
     List<RankEntry> getTopRanking(String currencyId, int limit);
 
+    /**
+     * Account count, total supply, mean and balance percentiles of a currency, over every account.
+     * Kept current by each write, so calling it costs no database query.
+     *
+     * @param currencyId Currency ID
+     * @return statistics, or null while they are still being computed after startup
+     */
+    CurrencyStatistics getStatistics(String currencyId);
+
+    /**
+     * Account changes recorded after {@code fromSeq}, oldest first, to stream balances without
+     * polling whole tables. Pass the sequence of the last change received to continue.
+     * Changes are kept for {@code changes.retention-hours} (Settings.toml).
+     *
+     * @param fromSeq Last sequence already seen (exclusive); 0 reads from the oldest retained change
+     * @param limit Maximum number of changes (capped at 1000)
+     * @return changes sorted by sequence, empty when there is nothing new
+     */
+    List<BalanceChange> tail(long fromSeq, int limit);
+
+    default List<BalanceChange> tail(long fromSeq) {
+        return tail(fromSeq, 500);
+    }
+
+    /**
+     * Sequence of the newest change, to start a {@link #tail(long)} from now.
+     */
+    long latestChangeSequence();
+
     boolean tryDebit(UUID playerId, String currencyId, java.math.BigDecimal amount, String reason);
 
+    /**
+     * Like {@link #tryDebit(UUID, String, BigDecimal, String)}, at most once per {@code idempotencyKey}.
+     * Retrying with the same key returns the outcome of the first call instead of debiting again, so a
+     * call that timed out or answered {@code BUSY} or {@code UNKNOWN} can be retried safely. Keys are
+     * remembered for {@code idempotency.retention-hours} (Settings.toml).
+     *
+     * @param idempotencyKey caller-chosen unique id of this debit, up to 128 characters
+     * @return outcome of the debit; {@code DECLINED} for invalid arguments or keys
+     */
+    OperationResult tryDebit(UUID playerId, String currencyId, BigDecimal amount, String reason, String idempotencyKey);
+
+    /**
+     * Adds {@code amount} to the player's balance.
+     *
+     * @return whether the credit was applied
+     */
+    boolean credit(UUID playerId, String currencyId, BigDecimal amount, String reason);
+
+    /** {@link #credit(UUID, String, BigDecimal, String)} at most once per {@code idempotencyKey}. */
+    OperationResult credit(UUID playerId, String currencyId, BigDecimal amount, String reason, String idempotencyKey);
+
+    /**
+     * Pays {@code amount} from one player to another with the currency's fee, as /pay does.
+     *
+     * @return whether the payment was made; false on insufficient funds, blocked payments, a busy economy
+     *         or the currency's {@code api} rate limit (rateLimits in the currency file, off by default)
+     */
+    boolean transfer(UUID fromId, UUID toId, String currencyId, BigDecimal amount, String reason);
+
+    /**
+     * {@link #transfer(UUID, UUID, String, BigDecimal, String)} at most once per {@code idempotencyKey}.
+     * A {@code BUSY}, {@code RATE_LIMITED} or {@code UNKNOWN} transfer may be retried with the same key;
+     * it is never paid twice.
+     */
+    OperationResult transfer(UUID fromId, UUID toId, String currencyId, BigDecimal amount, String reason, String idempotencyKey);
+
     String formatAmount(String currencyId, java.math.BigDecimal amount);
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package org.night.nighteconomy.api.data;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * State of an account right after a write, as recorded in the change log.
+ * {@code changedAt} is in epoch milliseconds.
+ */
+public record BalanceChange(
+        long sequence,
+        UUID playerId,
+        String currencyId,
+        BigDecimal balance,
+        boolean paymentEnabled,
+        long changedAt
+) { }
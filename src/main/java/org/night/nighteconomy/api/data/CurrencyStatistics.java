@@ -0,0 +1,17 @@
+package org.night.nighteconomy.api.data;
+
+import java.math.BigDecimal;
+
+/**
+ * Economy-wide figures of a currency over every account. Percentiles are estimates within about
+ * 2% of the true balance.
+ */
+public record CurrencyStatistics(
+        String currencyId,
+        long accounts,
+        BigDecimal totalSupply,
+        BigDecimal averageBalance,
+        BigDecimal medianBalance,
+        BigDecimal p90Balance,
+        BigDecimal p99Balance
+) { }
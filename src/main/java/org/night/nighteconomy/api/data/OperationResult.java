@@ -0,0 +1,21 @@
+package org.night.nighteconomy.api.data;
+
+/**
+ * Outcome of a write made with an idempotency key. Only {@link #BUSY}, {@link #RATE_LIMITED} and
+ * {@link #UNKNOWN} leave the key free, so retrying with the same key is always safe: it either runs
+ * the operation or returns the outcome it already had.
+ */
+public enum OperationResult {
+    /** The operation was applied. */
+    SUCCESS,
+    /** The operation was refused (insufficient funds, missing account, payments disabled...). Nothing changed. */
+    DECLINED,
+    /** The economy was too busy to run it. Nothing changed; retry later with the same key. */
+    BUSY,
+    /** Refused by the currency's {@code api} rate limit. Nothing changed; retry later with the same key. */
+    RATE_LIMITED,
+    /** The key was already used for a different operation. Nothing changed. */
+    KEY_CONFLICT,
+    /** The database failed and it is not known whether the operation was applied; retry with the same key. */
+    UNKNOWN
+}
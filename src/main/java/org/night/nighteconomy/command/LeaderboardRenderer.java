@@ -0,0 +1,92 @@
+package org.night.nighteconomy.command;
+
+import net.minecraft.network.chat.Component;
+import org.night.nighteconomy.config.ConfigManager;
+import org.night.nighteconomy.config.MessageManager;
+import org.night.nighteconomy.config.MessageTemplate;
+import org.night.nighteconomy.currency.CurrencyConfig;
+import org.night.nighteconomy.currency.CurrencyFormatter;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.RankingEntry;
+import org.night.nighteconomy.ranking.RankingManager;
+import org.night.nighteconomy.ranking.RankingSnapshot;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Renders {@code /top} pages. Each page is one multi-line Component, rendered once per ranking
+ * snapshot and reused until the ranking, the currency config or the messages change.
+ */
+public class LeaderboardRenderer {
+    private final ConfigManager configManager;
+    private final RankingManager rankingManager;
+    private final Map<String, Pages> pages = new ConcurrentHashMap<>();
+
+    public LeaderboardRenderer(ConfigManager configManager, RankingManager rankingManager) {
+        this.configManager = configManager;
+        this.rankingManager = rankingManager;
+    }
+
+    /** The leaderboard page (1-based); out-of-range pages are clamped. */
+    public Component render(String currencyId, int page) {
+        CurrencyConfig config = configManager.getCurrency(currencyId);
+        if (config == null || !config.isRanking()) {
+            return configManager.getPrefixedComponent("ranking.empty");
+        }
+
+        RankingSnapshot snapshot = rankingManager.getCurrentSnapshot(currencyId);
+        if (snapshot == null || snapshot.size() == 0) {
+            return configManager.getPrefixedComponent("ranking.empty");
+        }
+
+        Pages rendered = pages(currencyId, config, snapshot);
+        int index = Math.max(0, Math.min(page, rendered.components.length) - 1);
+        Component component = rendered.components[index];
+        if (component == null) {
+            component = renderPage(config, snapshot, index);
+            rendered.components[index] = component;
+        }
+        return component;
+    }
+
+    private Pages pages(String currencyId, CurrencyConfig config, RankingSnapshot snapshot) {
+        long generation = configManager.getMessageManager().getGeneration();
+        Pages current = pages.get(currencyId);
+        if (current != null && current.version == snapshot.getVersion() && current.generation == generation
+                && current.config == config) {
+            return current;
+        }
+        int count = Math.max(1, (snapshot.size() + RankingManager.LEADERBOARD_PAGE_SIZE - 1) / RankingManager.LEADERBOARD_PAGE_SIZE);
+        Pages fresh = new Pages(snapshot.getVersion(), generation, config, new Component[count]);
+        pages.put(currencyId, fresh);
+        return fresh;
+    }
+
+    private Component renderPage(CurrencyConfig config, RankingSnapshot snapshot, int index) {
+        MessageManager messages = configManager.getMessageManager();
+        MessageTemplate header = messages.getTemplate("ranking.header");
+        MessageTemplate entryTemplate = messages.getTemplate("ranking.entry");
+        String prefix = messages.getPrefix();
+        CurrencyFormatter formatter = config.getFormatter();
+
+        List<RankingEntry> entries = snapshot.getEntries();
+        int from = index * RankingManager.LEADERBOARD_PAGE_SIZE;
+        int to = Math.min(from + RankingManager.LEADERBOARD_PAGE_SIZE, entries.size());
+
+        StringBuilder sb = new StringBuilder(64 * (to - from + 1));
+        sb.append(prefix).append(' ');
+        header.renderTo(sb, true, "currency", config.getName());
+        for (int i = from; i < to; i++) {
+            RankingEntry entry = entries.get(i);
+            sb.append('\n').append(prefix).append(' ');
+            entryTemplate.renderTo(sb, true,
+                    "position", String.valueOf(entry.position),
+                    "player", entry.username,
+                    "amount", formatter.format(entry.balance));
+        }
+        return Component.literal(sb.toString());
+    }
+
+    private record Pages(long version, long generation, CurrencyConfig config, Component[] components) {}
+}
@@ -1,13 +1,22 @@
 package org.night.nighteconomy.command;
 
 import org.night.nighteconomy.config.ConfigManager;
+import org.night.nighteconomy.config.MessageTemplate;
 import org.night.nighteconomy.currency.CurrencyConfig;
+import org.night.nighteconomy.currency.CurrencyFormatter;
+import org.night.nighteconomy.maintenance.BackupManager;
+import org.night.nighteconomy.maintenance.MaintenanceStatus;
+import org.night.nighteconomy.maintenance.TransactionPruner;
+import org.night.nighteconomy.metrics.EconomyMetrics;
+import org.night.nighteconomy.metrics.LatencyHistogram;
+import org.night.nighteconomy.ranking.RankingManager;
 import org.night.nighteconomy.service.MultiCurrencyEconomyService;
-import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.RankingEntry;
+import org.night.nighteconomy.stats.BalanceDistribution;
 import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.Transaction;
 import org.night.nighteconomy.util.PermissionUtil;
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.DoubleArgumentType;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
@@ -22,16 +31,34 @@ import org.apache.logging.log4j.Logger;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MultiCurrencyCommand {
     private static final Logger LOGGER = LogManager.getLogger();
 
+    private static final Component CANNOT_PAY_SELF = colored("&cVocê não pode pagar para si mesmo!");
+    private static final Component ADD_FAILED = colored("&cErro ao adicionar dinheiro!");
+    private static final Component REMOVE_FAILED = colored("&cErro ao remover dinheiro ou saldo insuficiente!");
+    private static final Component SET_FAILED = colored("&cErro ao definir saldo!");
+    private static final Component RESET_FAILED = colored("&cErro ao resetar saldo!");
+    private static final Component TOGGLE_FAILED = colored("&cErro ao alterar configuração de pagamentos!");
+    private static final Component LOADING_OWN_TRANSACTIONS = colored("&eCarregando suas transações...");
+    private static final Component NO_TRANSACTIONS = colored("&cNenhuma transação encontrada!");
+    private static final Component OWN_TRANSACTIONS_HEADER = colored("&6=== Suas Transações ===");
+    private static final Component CURRENCIES_HEADER = colored("&6=== Moedas Disponíveis ===");
+    private static final Component CURRENCY_INFO_HEADER = colored("&6=== Informações da Moeda ===");
+
+    private static final Map<String, MessageTemplate> FALLBACKS = new ConcurrentHashMap<>();
+
     private final MultiCurrencyEconomyService economyService;
     private final ConfigManager configManager;
+    private final LeaderboardRenderer leaderboards;
 
-    public MultiCurrencyCommand(MultiCurrencyEconomyService economyService, ConfigManager configManager) {
+    public MultiCurrencyCommand(MultiCurrencyEconomyService economyService, ConfigManager configManager,
+                                RankingManager rankingManager) {
         this.economyService = economyService;
         this.configManager = configManager;
+        this.leaderboards = new LeaderboardRenderer(configManager, rankingManager);
     }
 
     public void register(CommandDispatcher<CommandSourceStack> dispatcher) {
@@ -105,7 +132,10 @@ public class MultiCurrencyCommand {
 
                     .then(Commands.literal("top")
                             .requires(source -> hasPermission(source, topSub))
-                            .executes(context -> showRanking(context, currencyId)))
+                            .executes(context -> showRanking(context, currencyId, 1))
+                            .then(Commands.argument("page", IntegerArgumentType.integer(1))
+                                    .executes(context -> showRanking(context, currencyId,
+                                            IntegerArgumentType.getInteger(context, "page")))))
 
                     .then(Commands.literal("reset")
                             .requires(source -> hasPermission(source, resetSub))
@@ -141,26 +171,40 @@ public class MultiCurrencyCommand {
                 .then(Commands.literal("info")
                         .then(Commands.argument("currency", StringArgumentType.string())
                                 .executes(this::showCurrencyInfo)))
+                .then(Commands.literal("stats")
+                        .executes(this::showStats))
+                .then(Commands.literal("backup")
+                        .executes(this::runBackup))
+                .then(Commands.literal("maintenance")
+                        .then(Commands.literal("status")
+                                .executes(this::showMaintenanceStatus))
+                        .then(Commands.literal("convert-vacuum")
+                                .executes(this::warnConvertVacuum)
+                                .then(Commands.literal("confirm")
+                                        .executes(this::runConvertVacuum))))
         );
     }
 
     private int showBalance(CommandContext<CommandSourceStack> context, String currencyId) throws CommandSyntaxException {
         ServerPlayer player = context.getSource().getPlayerOrException();
         UUID playerUuid = player.getUUID();
+        if (rateLimited(context, playerUuid, currencyId, "see")) return 0;
 
         economyService.ensureAccountExists(playerUuid, currencyId, player.getName().getString());
         double balance = economyService.getBalance(playerUuid, currencyId);
         String formattedBalance = economyService.formatAmount(currencyId, balance);
 
         CurrencyConfig config = configManager.getCurrency(currencyId);
-        String message = getMessageFromConfig(config, "balance", "&aSeu saldo atual: &f{amount}")
-                .replace("{amount}", formattedBalance);
+        Component message = currencyMessage(config, "balance", "&aSeu saldo atual: &f{amount}",
+                "amount", formattedBalance);
 
-        context.getSource().sendSuccess(() -> Component.literal(translateColors(message)), false);
+        context.getSource().sendSuccess(() -> message, false);
         return 1;
     }
 
     private int showOtherBalance(CommandContext<CommandSourceStack> context, String currencyId) throws CommandSyntaxException {
+        ServerPlayer source = context.getSource().getPlayer();
+        if (source != null && rateLimited(context, source.getUUID(), currencyId, "see")) return 0;
         ServerPlayer targetPlayer = EntityArgument.getPlayer(context, "player");
         UUID targetUuid = targetPlayer.getUUID();
 
@@ -169,21 +213,22 @@ public class MultiCurrencyCommand {
         String formattedBalance = economyService.formatAmount(currencyId, balance);
 
         CurrencyConfig config = configManager.getCurrency(currencyId);
-        String message = getMessageFromConfig(config, "balance-other", "&aSaldo de {player}: &f{amount}")
-                .replace("{player}", targetPlayer.getName().getString())
-                .replace("{amount}", formattedBalance);
+        Component message = currencyMessage(config, "balance-other", "&aSaldo de {player}: &f{amount}",
+                "player", targetPlayer.getName().getString(),
+                "amount", formattedBalance);
 
-        context.getSource().sendSuccess(() -> Component.literal(translateColors(message)), false);
+        context.getSource().sendSuccess(() -> message, false);
         return 1;
     }
 
     private int payPlayer(CommandContext<CommandSourceStack> context, String currencyId) throws CommandSyntaxException {
         ServerPlayer sender = context.getSource().getPlayerOrException();
+        if (rateLimited(context, sender.getUUID(), currencyId, "pay")) return 0;
         ServerPlayer receiver = EntityArgument.getPlayer(context, "player");
         double amount = DoubleArgumentType.getDouble(context, "amount");
 
         if (sender.getUUID().equals(receiver.getUUID())) {
-            context.getSource().sendFailure(Component.literal(translateColors("&cVocê não pode pagar para si mesmo!")));
+            context.getSource().sendFailure(CANNOT_PAY_SELF);
             return 0;
         }
 
@@ -197,25 +242,24 @@ public class MultiCurrencyCommand {
         String formattedAmount = economyService.formatAmount(currencyId, amount);
 
         if (result.isSuccess()) {
-            String senderMessage = getMessageFromConfig(config, "pay-sent", "&aVocê pagou &f{amount} &apara &f{player}!")
-                    .replace("{amount}", formattedAmount)
-                    .replace("{player}", receiver.getName().getString());
+            Component senderMessage = currencyMessage(config, "pay-sent", "&aVocê pagou &f{amount} &apara &f{player}!",
+                    "amount", formattedAmount,
+                    "player", receiver.getName().getString());
 
-            String receiverMessage = getMessageFromConfig(config, "pay-received", "&aVocê recebeu &f{amount} &ade &f{player}!")
-                    .replace("{amount}", formattedAmount)
-                    .replace("{player}", sender.getName().getString());
+            Component receiverMessage = currencyMessage(config, "pay-received", "&aVocê recebeu &f{amount} &ade &f{player}!",
+                    "amount", formattedAmount,
+                    "player", sender.getName().getString());
 
-            context.getSource().sendSuccess(() -> Component.literal(translateColors(senderMessage)), false);
-            receiver.sendSystemMessage(Component.literal(translateColors(receiverMessage)));
+            context.getSource().sendSuccess(() -> senderMessage, false);
+            receiver.sendSystemMessage(receiverMessage);
 
             if (result.getFee() > 0) {
-                String feeMessage = configManager.getGlobalMessage("transaction-fee")
-                        .replace("{fee}", economyService.formatAmount(currencyId, result.getFee()));
-                context.getSource().sendSuccess(() -> Component.literal(translateColors(feeMessage)), false);
+                Component feeMessage = configManager.getGlobalComponent("transaction-fee",
+                        "fee", economyService.formatAmount(currencyId, result.getFee()));
+                context.getSource().sendSuccess(() -> feeMessage, false);
             }
         } else {
-            String errorMessage = getErrorMessage(result.getMessage(), config);
-            context.getSource().sendFailure(Component.literal(translateColors(errorMessage)));
+            context.getSource().sendFailure(getErrorMessage(result.getMessage(), config));
         }
 
         return result.isSuccess() ? 1 : 0;
@@ -231,9 +275,9 @@ public class MultiCurrencyCommand {
         if (success) {
             String formattedAmount = economyService.formatAmount(currencyId, amount);
             String message = "&aAdicionado &f" + formattedAmount + " &apara &f" + targetPlayer.getName().getString() + "&a!";
-            context.getSource().sendSuccess(() -> Component.literal(translateColors(message)), false);
+            context.getSource().sendSuccess(() -> colored(message), false);
         } else {
-            context.getSource().sendFailure(Component.literal(translateColors("&cErro ao adicionar dinheiro!")));
+            context.getSource().sendFailure(ADD_FAILED);
         }
 
         return success ? 1 : 0;
@@ -249,9 +293,9 @@ public class MultiCurrencyCommand {
         if (success) {
             String formattedAmount = economyService.formatAmount(currencyId, amount);
             String message = "&cRemovido &f" + formattedAmount + " &cde &f" + targetPlayer.getName().getString() + "&c!";
-            context.getSource().sendSuccess(() -> Component.literal(translateColors(message)), false);
+            context.getSource().sendSuccess(() -> colored(message), false);
         } else {
-            context.getSource().sendFailure(Component.literal(translateColors("&cErro ao remover dinheiro ou saldo insuficiente!")));
+            context.getSource().sendFailure(REMOVE_FAILED);
         }
 
         return success ? 1 : 0;
@@ -267,67 +311,49 @@ public class MultiCurrencyCommand {
         if (success) {
             String formattedAmount = economyService.formatAmount(currencyId, amount);
             String message = "&aSaldo de &f" + targetPlayer.getName().getString() + " &adefinido para &f" + formattedAmount + "&a!";
-            context.getSource().sendSuccess(() -> Component.literal(translateColors(message)), false);
+            context.getSource().sendSuccess(() -> colored(message), false);
         } else {
-            context.getSource().sendFailure(Component.literal(translateColors("&cErro ao definir saldo!")));
+            context.getSource().sendFailure(SET_FAILED);
         }
 
         return success ? 1 : 0;
     }
 
-    private int showRanking(CommandContext<CommandSourceStack> context, String currencyId) {
-        List<RankingEntry> ranking = economyService.getTopPlayers(currencyId, 10);
-        CurrencyConfig config = configManager.getCurrency(currencyId);
-
-        if (ranking.isEmpty()) {
-            String message = configManager.getRankingMessage("empty");
-            context.getSource().sendSuccess(() -> Component.literal(translateColors(message)), false);
-            return 1;
-        }
-
-        String header = configManager.getRankingMessage("header", "currency", config != null ? config.getName() : currencyId);
-        context.getSource().sendSuccess(() -> Component.literal(translateColors(header)), false);
-
-        for (RankingEntry entry : ranking) {
-            String formattedAmount = economyService.formatAmount(currencyId, entry.getBalance());
-            String line = configManager.getRankingMessage(
-                    "entry",
-                    "position", String.valueOf(entry.getPosition()),
-                    "player", entry.getUsername(),
-                    "amount", formattedAmount
-            );
-            context.getSource().sendSuccess(() -> Component.literal(translateColors(line)), false);
-        }
-
+    private int showRanking(CommandContext<CommandSourceStack> context, String currencyId, int page) {
+        ServerPlayer player = context.getSource().getPlayer();
+        if (player != null && rateLimited(context, player.getUUID(), currencyId, "top")) return 0;
+        Component leaderboard = leaderboards.render(currencyId, page);
+        context.getSource().sendSuccess(() -> leaderboard, false);
         return 1;
     }
 
     private int showTransactions(CommandContext<CommandSourceStack> context, String currencyId) throws CommandSyntaxException {
         CommandSourceStack source = context.getSource();
         ServerPlayer player = source.getPlayerOrException();
+        if (rateLimited(context, player.getUUID(), currencyId, "transactions")) return 0;
 
-        source.sendSuccess(() -> Component.literal(translateColors("&eCarregando suas transações...")), false);
+        source.sendSuccess(() -> LOADING_OWN_TRANSACTIONS, false);
 
         economyService.getPlayerTransactionsAsync(player.getUUID(), currencyId, 10).thenAccept(transactions -> {
             source.getServer().execute(() -> {
                 if (transactions.isEmpty()) {
-                    source.sendSuccess(() -> Component.literal(translateColors("&cNenhuma transação encontrada!")), false);
+                    source.sendSuccess(() -> NO_TRANSACTIONS, false);
                     return;
                 }
 
-                source.sendSuccess(() -> Component.literal(translateColors("&6=== Suas Transações ===")), false);
+                source.sendSuccess(() -> OWN_TRANSACTIONS_HEADER, false);
                 for (Transaction transaction : transactions) {
                     String formattedAmount = economyService.formatAmount(currencyId, transaction.getAmount());
                     String line = String.format("&e%s &7- &f%s &7(%s)",
                             transaction.getType(),
                             formattedAmount,
                             String.valueOf(transaction.getCreatedAt()));
-                    source.sendSuccess(() -> Component.literal(translateColors(line)), false);
+                    source.sendSuccess(() -> colored(line), false);
                 }
             });
         }).exceptionally(ex -> {
             source.getServer().execute(() ->
-                    source.sendFailure(Component.literal(translateColors("&cErro ao carregar transações: " + ex.getMessage())))
+                    source.sendFailure(colored("&cErro ao carregar transações: " + ex.getMessage()))
             );
             return null;
         });
@@ -337,19 +363,21 @@ public class MultiCurrencyCommand {
 
     private int showOtherTransactions(CommandContext<CommandSourceStack> context, String currencyId) throws CommandSyntaxException {
         CommandSourceStack source = context.getSource();
+        ServerPlayer player = source.getPlayer();
+        if (player != null && rateLimited(context, player.getUUID(), currencyId, "transactions")) return 0;
         ServerPlayer targetPlayer = EntityArgument.getPlayer(context, "player");
 
-        source.sendSuccess(() -> Component.literal(translateColors("&eCarregando transações de " + targetPlayer.getName().getString() + "...")), false);
+        source.sendSuccess(() -> colored("&eCarregando transações de " + targetPlayer.getName().getString() + "..."), false);
 
         economyService.getPlayerTransactionsAsync(targetPlayer.getUUID(), currencyId, 10).thenAccept(transactions -> {
             source.getServer().execute(() -> {
                 if (transactions.isEmpty()) {
-                    source.sendSuccess(() -> Component.literal(translateColors("&cNenhuma transação encontrada!")), false);
+                    source.sendSuccess(() -> NO_TRANSACTIONS, false);
                     return;
                 }
 
                 String header = "&6=== Transações de " + targetPlayer.getName().getString() + " ===";
-                source.sendSuccess(() -> Component.literal(translateColors(header)), false);
+                source.sendSuccess(() -> colored(header), false);
 
                 for (Transaction transaction : transactions) {
                     String formattedAmount = economyService.formatAmount(currencyId, transaction.getAmount());
@@ -357,12 +385,12 @@ public class MultiCurrencyCommand {
                             transaction.getType(),
                             formattedAmount,
                             String.valueOf(transaction.getCreatedAt()));
-                    source.sendSuccess(() -> Component.literal(translateColors(line)), false);
+                    source.sendSuccess(() -> colored(line), false);
                 }
             });
         }).exceptionally(ex -> {
             source.getServer().execute(() ->
-                    source.sendFailure(Component.literal(translateColors("&cErro ao carregar transações: " + ex.getMessage())))
+                    source.sendFailure(colored("&cErro ao carregar transações: " + ex.getMessage()))
             );
             return null;
         });
@@ -378,9 +406,9 @@ public class MultiCurrencyCommand {
 
         if (success) {
             String message = "&aSaldo de &f" + targetPlayer.getName().getString() + " &aresetado!";
-            context.getSource().sendSuccess(() -> Component.literal(translateColors(message)), false);
+            context.getSource().sendSuccess(() -> colored(message), false);
         } else {
-            context.getSource().sendFailure(Component.literal(translateColors("&cErro ao resetar saldo!")));
+            context.getSource().sendFailure(RESET_FAILED);
         }
 
         return success ? 1 : 0;
@@ -391,12 +419,13 @@ public class MultiCurrencyCommand {
         economyService.forceRankingUpdate(currencyId);
 
         String message = "&aMoeda &f" + currencyId + " &arecarregada com sucesso!";
-        context.getSource().sendSuccess(() -> Component.literal(translateColors(message)), false);
+        context.getSource().sendSuccess(() -> colored(message), false);
         return 1;
     }
 
     private int togglePayments(CommandContext<CommandSourceStack> context, String currencyId) throws CommandSyntaxException {
         ServerPlayer player = context.getSource().getPlayerOrException();
+        if (rateLimited(context, player.getUUID(), currencyId, "toggle")) return 0;
 
         economyService.ensureAccountExists(player.getUUID(), currencyId, player.getName().getString());
         boolean currentSetting = economyService.isPaymentEnabled(player.getUUID(), currencyId);
@@ -409,20 +438,20 @@ public class MultiCurrencyCommand {
 
             CurrencyConfig cfg = configManager.getCurrency(currencyId);
 
-            String message = getMessageFromConfig(cfg, messageKey, null);
-            if (message == null || message.isBlank() || message.startsWith("Message not found")) {
-                message = configManager.getGlobalMessage(messageKey);
+            MessageTemplate template = cfg != null ? cfg.getMessageTemplate(messageKey) : null;
+            if (template == null || template.getRaw().isBlank() || template.getRaw().startsWith("Message not found")) {
+                template = configManager.getMessageManager().getTemplate(messageKey);
             }
-            if (message == null || message.isBlank() || message.startsWith("Message not found")) {
-                message = newSetting
+            if (template.getRaw().isBlank() || template.getRaw().startsWith("&cMessage not found")) {
+                template = fallback(newSetting
                         ? "&aYou enabled receiving payments."
-                        : "&cYou disabled receiving payments.";
+                        : "&cYou disabled receiving payments.");
             }
 
-            final String finalMessage = translateColors(message);
-            context.getSource().sendSuccess(() -> Component.literal(finalMessage), false);
+            final Component finalMessage = Component.literal(template.renderColored());
+            context.getSource().sendSuccess(() -> finalMessage, false);
         } else {
-            context.getSource().sendFailure(Component.literal(translateColors("&cErro ao alterar configuração de pagamentos!")));
+            context.getSource().sendFailure(TOGGLE_FAILED);
         }
 
         return success ? 1 : 0;
@@ -431,15 +460,15 @@ public class MultiCurrencyCommand {
     private int reloadAll(CommandContext<CommandSourceStack> context) {
         configManager.reloadConfigurations();
 
-        String message = configManager.getGlobalMessage("reload-success");
-        context.getSource().sendSuccess(() -> Component.literal(translateColors(message)), false);
+        Component message = configManager.getGlobalComponent("reload-success");
+        context.getSource().sendSuccess(() -> message, false);
         return 1;
     }
 
     private int listCurrencies(CommandContext<CommandSourceStack> context) {
         Map<String, CurrencyConfig> currencies = configManager.getCurrencies();
 
-        context.getSource().sendSuccess(() -> Component.literal(translateColors("&6=== Moedas Disponíveis ===")), false);
+        context.getSource().sendSuccess(() -> CURRENCIES_HEADER, false);
 
         for (Map.Entry<String, CurrencyConfig> entry : currencies.entrySet()) {
             String currencyId = entry.getKey();
@@ -449,7 +478,7 @@ public class MultiCurrencyCommand {
                     config.getName(),
                     config.isRanking() ? "&aAtivo" : "&cInativo");
 
-            context.getSource().sendSuccess(() -> Component.literal(translateColors(line)), false);
+            context.getSource().sendSuccess(() -> colored(line), false);
         }
 
         return 1;
@@ -460,25 +489,154 @@ public class MultiCurrencyCommand {
         CurrencyConfig config = configManager.getCurrency(currencyId);
 
         if (config == null) {
-            String message = configManager.getGlobalMessage("currency-not-found")
-                    .replace("{currency}", currencyId);
-            context.getSource().sendFailure(Component.literal(translateColors(message)));
+            context.getSource().sendFailure(configManager.getGlobalComponent("currency-not-found", "currency", currencyId));
             return 0;
         }
 
-        context.getSource().sendSuccess(() -> Component.literal(translateColors("&6=== Informações da Moeda ===")), false);
-        context.getSource().sendSuccess(() -> Component.literal(translateColors("&eID: &f" + config.getId())), false);
-        context.getSource().sendSuccess(() -> Component.literal(translateColors("&eNome: &f" + config.getName())), false);
-        context.getSource().sendSuccess(() -> Component.literal(translateColors("&eValor Padrão: &f" + config.getDefaultValue())), false);
-        context.getSource().sendSuccess(() -> Component.literal(translateColors("&eRanking: &f" + (config.isRanking() ? "Ativo" : "Inativo"))), false);
+        context.getSource().sendSuccess(() -> CURRENCY_INFO_HEADER, false);
+        context.getSource().sendSuccess(() -> colored("&eID: &f" + config.getId()), false);
+        context.getSource().sendSuccess(() -> colored("&eNome: &f" + config.getName()), false);
+        context.getSource().sendSuccess(() -> colored("&eValor Padrão: &f" + config.getDefaultValue()), false);
+        context.getSource().sendSuccess(() -> colored("&eRanking: &f" + (config.isRanking() ? "Ativo" : "Inativo")), false);
 
         if (config.isRanking()) {
-            context.getSource().sendSuccess(() -> Component.literal(translateColors("&eIntervalo de Atualização: &f" + config.getUpdate() + "s")), false);
+            context.getSource().sendSuccess(() -> colored("&eIntervalo de Atualização: &f" + config.getUpdate() + "s"), false);
+        }
+
+        BalanceDistribution.Snapshot stats = economyService.getStatistics(config.getId());
+        if (stats == null) {
+            context.getSource().sendSuccess(() -> colored("&eEstatísticas: &7calculando..."), false);
+        } else {
+            CurrencyFormatter formatter = config.getFormatter();
+            context.getSource().sendSuccess(() -> colored("&eContas: &f" + stats.getAccounts()
+                    + " &7| &eOferta total: &f" + formatter.format(stats.getSupply())
+                    + " &7| &eMédia: &f" + formatter.format(stats.getMean())), false);
+            context.getSource().sendSuccess(() -> colored("&ePercentis: &7p50=&f" + formatter.format(stats.percentile(0.50))
+                    + " &7p90=&f" + formatter.format(stats.percentile(0.90))
+                    + " &7p99=&f" + formatter.format(stats.percentile(0.99))), false);
+        }
+
+        return 1;
+    }
+
+    private int showMaintenanceStatus(CommandContext<CommandSourceStack> context) {
+        MaintenanceStatus st = economyService.getMaintenance().getStatus();
+        CommandSourceStack source = context.getSource();
+
+        source.sendSuccess(() -> colored("&6&l=== Manutenção do Banco ==="), false);
+        source.sendSuccess(() -> colored("&eCarga: " + (st.busy() ? "&cocupado" : "&aociosa")
+                + String.format(" &7(%.1f ops/s, tick %.1f ms, adiadas: %d)", st.opsPerSecond(), st.tickMs(), st.deferredCycles())), false);
+        source.sendSuccess(() -> colored("&eauto_vacuum: &f" + MaintenanceStatus.autoVacuumName(st.autoVacuumMode())
+                + " &7| &eFree pages: &f" + st.freelistPages() + "/" + st.pageCount()), false);
+        source.sendSuccess(() -> colored("&eWAL: &f" + (st.walBytes() / 1024) + " KiB &7| &eÚltimo checkpoint: &f"
+                + st.lastCheckpointMode() + " " + ago(st.lastCheckpointAt()) + " &7(" + st.lastCheckpointFrames() + " frames)"), false);
+        source.sendSuccess(() -> colored("&eIncremental vacuum: &f" + st.vacuumedPagesTotal() + " pages "
+                + ago(st.lastVacuumAt())), false);
+        source.sendSuccess(() -> colored("&eOptimize: &f" + ago(st.lastOptimizeAt())
+                + " &7| &eConversão: &f" + ago(st.lastConversionAt())), false);
+        TransactionPruner.PruneStatus pr = economyService.getMaintenance().getPruner().getStatus();
+        source.sendSuccess(() -> colored("&ePruning: &f" + (pr.running() ? "em andamento" : ago(pr.lastFinishAt()))
+                + String.format(" &7(%d linhas, %d lotes, %.0f linhas/s, total %d)",
+                pr.rows(), pr.batches(), pr.rowsPerSecond(), pr.totalRows())), false);
+        BackupManager.BackupResult bk = economyService.getBackups().getLastResult();
+        source.sendSuccess(() -> colored("&eBackup: &f" + (bk == null ? "nunca"
+                : bk.success() ? ago(bk.startedAt()) + String.format(" &7(%.1f KiB, %d ms)", bk.sizeBytes() / 1024.0, bk.durationMs())
+                : "&cfalhou " + ago(bk.startedAt()) + ": " + bk.error())), false);
+        source.sendSuccess(() -> colored("&eÚltimo ciclo: &f" + ago(st.lastCycleAt())), false);
+        return 1;
+    }
+
+    private int showStats(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        source.sendSuccess(() -> colored("&6&l=== Estatísticas da Economia ==="), false);
+
+        for (LatencyHistogram.Snapshot s : EconomyMetrics.operations()) {
+            if (s.getCount() == 0) continue;
+            source.sendSuccess(() -> colored("&e" + s.getName() + ": " + latency(s)), false);
+        }
+
+        Map<String, Integer> depths = EconomyMetrics.queueDepths();
+        for (LatencyHistogram.Snapshot s : EconomyMetrics.executorWaits()) {
+            Integer depth = depths.get(s.getName());
+            source.sendSuccess(() -> colored("&eFila " + s.getName() + ": &f" + (depth != null ? depth : 0)
+                    + " pendentes &7| espera " + latency(s)), false);
         }
 
+        EconomyMetrics.caches().forEach((name, c) -> source.sendSuccess(() -> colored(String.format(
+                "&eCache %s: &f%.1f%% hits &7(%d hits, %d misses, %d evictions)",
+                name, c.getHitRatio() * 100.0, c.getHits(), c.getMisses(), c.getEvictions())), false));
+
+        EconomyMetrics.counters().forEach((name, n) -> {
+            if (n > 0) source.sendSuccess(() -> colored("&e" + name + ": &f" + n), false);
+        });
         return 1;
     }
 
+    private static String latency(LatencyHistogram.Snapshot s) {
+        return String.format("&fn=%d &7p50=&f%s &7p95=&f%s &7p99=&f%s &7max=&f%s",
+                s.getCount(), micros(s.percentile(0.50)), micros(s.percentile(0.95)),
+                micros(s.percentile(0.99)), micros(s.getMaxNanos()));
+    }
+
+    private static String micros(long nanos) {
+        if (nanos >= 1_000_000L) return String.format("%.1fms", nanos / 1e6);
+        return (nanos / 1000L) + "µs";
+    }
+
+    private int runBackup(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        source.sendSuccess(() -> colored("&eIniciando backup do banco..."), false);
+
+        economyService.getBackups().backupNow().thenAccept(result -> {
+            Component message = result.success()
+                    ? colored(String.format("&aBackup concluído: &f%s &7(%.1f KiB em %d ms)",
+                        result.file().getFileName(), result.sizeBytes() / 1024.0, result.durationMs()))
+                    : colored("&cFalha no backup: " + result.error());
+            source.getServer().execute(() -> {
+                if (result.success()) source.sendSuccess(() -> message, true);
+                else source.sendFailure(message);
+            });
+        });
+        return 1;
+    }
+
+    private int warnConvertVacuum(CommandContext<CommandSourceStack> context) {
+        MaintenanceStatus st = economyService.getMaintenance().getStatus();
+        CommandSourceStack source = context.getSource();
+        source.sendSuccess(() -> colored("&eauto_vacuum atual: &f" + MaintenanceStatus.autoVacuumName(st.autoVacuumMode())
+                + " &7(" + st.pageCount() + " pages)"), false);
+        source.sendSuccess(() -> colored("&cA conversão executa um VACUUM completo: todos os pagamentos e saldos"
+                + " ficam parados até terminar (minutos em bancos grandes)."), false);
+        source.sendSuccess(() -> colored("&eUse &f/neconomy maintenance convert-vacuum confirm &eem um horário vazio."), false);
+        return 1;
+    }
+
+    private int runConvertVacuum(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        source.sendSuccess(() -> colored("&eConvertendo auto_vacuum para INCREMENTAL..."), true);
+        long start = System.currentTimeMillis();
+
+        economyService.getMaintenance().convertAutoVacuumNow().whenComplete((ok, t) -> {
+            boolean success = t == null && Boolean.TRUE.equals(ok);
+            Component message = success
+                    ? colored("&aConversão concluída em &f" + (System.currentTimeMillis() - start) + " ms")
+                    : colored("&cFalha na conversão do auto_vacuum (veja o log).");
+            source.getServer().execute(() -> {
+                if (success) source.sendSuccess(() -> message, true);
+                else source.sendFailure(message);
+            });
+        });
+        return 1;
+    }
+
+    private static String ago(long epochMillis) {
+        if (epochMillis <= 0L) return "nunca";
+        long sec = Math.max(0L, (System.currentTimeMillis() - epochMillis) / 1000L);
+        if (sec < 60) return sec + "s atrás";
+        if (sec < 3600) return (sec / 60) + "min atrás";
+        return (sec / 3600) + "h atrás";
+    }
+
     private boolean hasPermission(CommandSourceStack source, CurrencyConfig.SubcommandConfig subcommand) {
         if (subcommand == null) return true;
         return PermissionUtil.has(source, subcommand.getPermission());
@@ -488,35 +646,48 @@ public class MultiCurrencyCommand {
         return PermissionUtil.any(source, permissions);
     }
 
-    private String getMessageFromConfig(CurrencyConfig config, String key, String defaultMessage) {
-        if (config != null && config.getMessages() != null && config.getMessages().containsKey(key)) {
-            return config.getMessages().get(key);
-        }
-        return defaultMessage;
+    /** Refuses the command with the currency's rate-limited message when the player's bucket is empty. */
+    private boolean rateLimited(CommandContext<CommandSourceStack> context, UUID playerUuid, String currencyId, String command) {
+        if (economyService.tryAcquire(playerUuid, currencyId, command)) return false;
+        context.getSource().sendFailure(currencyMessage(configManager.getCurrency(currencyId), "rate-limited",
+                "&cVocê está usando este comando rápido demais. Aguarde um momento."));
+        return true;
+    }
+
+    private Component currencyMessage(CurrencyConfig config, String key, String defaultMessage, String... placeholderPairs) {
+        MessageTemplate template = config != null ? config.getMessageTemplate(key) : null;
+        if (template == null) template = fallback(defaultMessage);
+        return Component.literal(template.renderColored(placeholderPairs));
+    }
+
+    private static MessageTemplate fallback(String message) {
+        return FALLBACKS.computeIfAbsent(message, MessageTemplate::compile);
     }
 
-    private String getErrorMessage(String errorKey, CurrencyConfig config) {
+    private Component getErrorMessage(String errorKey, CurrencyConfig config) {
         switch (errorKey) {
             case "Saldo insuficiente":
-                return getMessageFromConfig(config, "insufficient-funds", "&cVocê não tem saldo suficiente!");
+                return currencyMessage(config, "insufficient-funds", "&cVocê não tem saldo suficiente!");
             case "Jogador não aceita pagamentos": {
-                String m = getMessageFromConfig(config, "payment-disabled", null);
-                if (m == null || m.isBlank() || m.startsWith("Message not found")) {
-                    m = configManager.getGlobalMessage("payment-disabled");
+                MessageTemplate m = config != null ? config.getMessageTemplate("payment-disabled") : null;
+                if (m == null || m.getRaw().isBlank() || m.getRaw().startsWith("Message not found")) {
+                    m = configManager.getMessageManager().getTemplate("payment-disabled");
                 }
-                if (m == null || m.isBlank() || m.startsWith("Message not found")) {
-                    m = "&cThis player is not accepting payments.";
+                if (m.getRaw().isBlank() || m.getRaw().startsWith("&cMessage not found")) {
+                    m = fallback("&cThis player is not accepting payments.");
                 }
-                return m.replace("{player}", "o jogador");
+                return Component.literal(m.renderColored("player", "o jogador"));
             }
+            case MultiCurrencyEconomyService.PaymentResult.BUSY:
+                return currencyMessage(config, "economy-busy", "&cA economia está ocupada, tente novamente em instantes.");
             case "Quantia inválida":
-                return getMessageFromConfig(config, "invalid-amount", "&cQuantia inválida!");
+                return currencyMessage(config, "invalid-amount", "&cQuantia inválida!");
             default:
-                return "&cErro: " + errorKey;
+                return colored("&cErro: " + errorKey);
         }
     }
 
-    private String translateColors(String message) {
-        return message.replace("&", "§");
+    private static Component colored(String message) {
+        return Component.literal(message.replace('&', '§'));
     }
 }
\ No newline at end of file
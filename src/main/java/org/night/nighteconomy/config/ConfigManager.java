@@ -2,7 +2,9 @@ package org.night.nighteconomy.config;
 
 import com.electronwill.nightconfig.core.file.CommentedFileConfig;
 import com.electronwill.nightconfig.toml.TomlFormat;
+import net.minecraft.network.chat.Component;
 import org.night.nighteconomy.currency.CurrencyConfig;
+import org.night.nighteconomy.currency.CurrencyRegistry;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -10,8 +12,11 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class ConfigManager {
     private static final Logger LOGGER = LogManager.getLogger();
@@ -19,12 +24,19 @@ public class ConfigManager {
     private final Path configDir;
     private final Path currenciesDir;
     private final MessageManager messageManager;
-    private final Map<String, CurrencyConfig> currencies = new ConcurrentHashMap<>();
+    private final SettingsManager settingsManager;
+    private volatile CurrencyRegistry registry = CurrencyRegistry.EMPTY;
+    private final AtomicLong registryVersion = new AtomicLong();
+    private final List<Consumer<CurrencyRegistry>> registryListeners = new CopyOnWriteArrayList<>();
+    /** Currency file name → id it loaded last, to fall back on when that file fails to parse. */
+    private Map<String, String> sourceFiles = new HashMap<>();
+    private CurrencyWatcher watcher;
 
     public ConfigManager(Path configDir) {
         this.configDir = configDir;
         this.currenciesDir = configDir.resolve("currencies");
         this.messageManager = new MessageManager(configDir);
+        this.settingsManager = new SettingsManager(configDir);
         loadConfigurations();
     }
 
@@ -43,34 +55,64 @@ public class ConfigManager {
         }
     }
 
-    private void loadCurrencies() {
-        currencies.clear();
+    /**
+     * Builds a new registry from the currency files. A file that fails to parse (e.g. caught
+     * mid-save) keeps the config it loaded last time, so its currency never disappears on reload.
+     * Defaults are written only on the first load of an empty directory.
+     */
+    private synchronized void loadCurrencies() {
+        boolean firstLoad = registryVersion.get() == 0L;
+        Map<String, CurrencyConfig> loaded = new HashMap<>();
+        Map<String, String> files = new HashMap<>();
+        int found = 0;
 
         try {
-            if (!Files.exists(currenciesDir)) {
-                Files.createDirectories(currenciesDir);
-                createDefaultCurrencies();
+            List<Path> paths;
+            try (var stream = Files.list(currenciesDir)) {
+                paths = stream.filter(path -> path.toString().endsWith(".toml")).toList();
             }
 
-            try (var paths = Files.list(currenciesDir)) {
-                paths.filter(path -> path.toString().endsWith(".toml"))
-                        .forEach(this::loadCurrency);
+            for (Path path : paths) {
+                found++;
+                String file = path.getFileName().toString();
+                CurrencyConfig config = loadCurrency(path, loaded);
+                if (config == null) {
+                    String previousId = sourceFiles.get(file);
+                    config = previousId != null ? registry.getConfig(previousId) : null;
+                    if (config == null) continue;
+                    loaded.putIfAbsent(config.getId(), config);
+                    LOGGER.warn("Keeping the previous configuration of {} until {} loads again", config.getId(), path);
+                }
+                files.put(file, config.getId());
             }
 
-            if (currencies.isEmpty()) {
-                LOGGER.warn("No coins found, creating default coins...");
-                createDefaultCurrencies();
+            if (loaded.isEmpty()) {
+                if (firstLoad && found == 0) {
+                    LOGGER.warn("No coins found, creating default coins...");
+                    createDefaultCurrencies(loaded);
+                    loaded.keySet().forEach(id -> files.put(id + ".toml", id));
+                } else if (!registry.isEmpty()) {
+                    LOGGER.warn("No currency could be loaded from {}; keeping the current {} currencies", currenciesDir, registry.size());
+                    return;
+                }
             }
 
-            LOGGER.info("Loaded " + currencies.size() + " currencies.");
+            sourceFiles = files;
+            publish(CurrencyRegistry.of(registryVersion.incrementAndGet(), loaded));
+            LOGGER.info("Loaded " + loaded.size() + " currencies.");
 
         } catch (IOException e) {
             LOGGER.error("Error! Not loaded Currencies: ", e);
         }
     }
 
+    /** Re-reads the currency files only, keeping the current registry if the directory cannot be read. */
+    public void reloadCurrencies() {
+        LOGGER.info("Reloading currencies...");
+        loadCurrencies();
+    }
 
-    private void loadCurrency(Path currencyFile) {
+    private CurrencyConfig loadCurrency(Path currencyFile, Map<String, CurrencyConfig> target) {
         try (CommentedFileConfig cfg = CommentedFileConfig.builder(currencyFile)
                 .preserveInsertionOrder()
                 .sync()
@@ -79,27 +121,29 @@ public class ConfigManager {
 
             CurrencyConfig config = CurrencyConfig.fromConfig(cfg);
             if (config != null) {
-                currencies.put(config.getId(), config);
+                target.put(config.getId(), config);
                 LOGGER.debug("Loaded currency: " + config.getId() + " (" + config.getName() + ")");
             } else {
                 LOGGER.warn("Failed to load currency from file: " + currencyFile);
             }
+            return config;
         } catch (Exception e) {
             LOGGER.error("Error loading currency file " + currencyFile + ": ", e);
+            return null;
         }
     }
 
 
-    private void createDefaultCurrencies() {
+    private void createDefaultCurrencies(Map<String, CurrencyConfig> target) {
         try {
             CurrencyConfig money = CurrencyConfig.createDefault("money", "Money");
             saveCurrency(money);
-            currencies.put(money.getId(), money);
+            target.put(money.getId(), money);
 
             CurrencyConfig coins = CurrencyConfig.createDefault("cash", "Cash");
             coins.setDefaultValue(100.0);
             saveCurrency(coins);
-            currencies.put(coins.getId(), coins);
+            target.put(coins.getId(), coins);
 
             LOGGER.info("Default currencies created: money, coins");
         } catch (Exception e) {
@@ -107,6 +151,17 @@ public class ConfigManager {
         }
     }
 
+    private synchronized void publish(CurrencyRegistry next) {
+        registry = next;
+        for (Consumer<CurrencyRegistry> listener : registryListeners) {
+            try {
+                listener.accept(next);
+            } catch (Exception e) {
+                LOGGER.error("Currency registry listener failed: ", e);
+            }
+        }
+    }
+
 
     private void saveCurrency(CurrencyConfig config) {
         try {
@@ -120,24 +175,64 @@ public class ConfigManager {
 
 
     public CurrencyConfig getCurrency(String currencyId) {
-        return currencies.get(currencyId);
+        return registry.getConfig(currencyId);
     }
 
+    /** Unmodifiable view of the current registry; callers must not expect it to follow later reloads. */
     public Map<String, CurrencyConfig> getCurrencies() {
-        return new HashMap<>(currencies);
+        return registry.asMap();
+    }
+
+    public CurrencyRegistry getRegistry() {
+        return registry;
+    }
+
+    public void addRegistryListener(Consumer<CurrencyRegistry> listener) {
+        registryListeners.add(listener);
+    }
+
+    public void removeRegistryListener(Consumer<CurrencyRegistry> listener) {
+        registryListeners.remove(listener);
+    }
+
+    /** Starts the debounced auto-reload of the currencies directory. */
+    public synchronized void startWatching() {
+        if (watcher != null) return;
+        try {
+            watcher = new CurrencyWatcher(currenciesDir, this::reloadCurrencies);
+            watcher.start();
+        } catch (IOException e) {
+            LOGGER.error("Could not watch currencies directory {}: ", currenciesDir, e);
+            watcher = null;
+        }
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
     }
 
     public void reloadConfigurations() {
         LOGGER.info("Reloading all settings...");
         loadConfigurations();
         messageManager.reloadMessages();
+        settingsManager.reloadSettings();
     }
 
     public void reloadCurrency(String currencyId) {
         LOGGER.info("Reloading currency: " + currencyId);
         Path currencyFile = currenciesDir.resolve(currencyId + ".toml");
         if (Files.exists(currencyFile)) {
-            loadCurrency(currencyFile);
+            Map<String, CurrencyConfig> loaded = new HashMap<>();
+            CurrencyConfig config = loadCurrency(currencyFile, loaded);
+            if (config != null) {
+                synchronized (this) {
+                    sourceFiles.put(currencyFile.getFileName().toString(), config.getId());
+                    publish(registry.with(registryVersion.incrementAndGet(), config));
+                }
+            }
         } else {
             LOGGER.warn("Currency file not found: " + currencyFile);
         }
@@ -159,10 +254,34 @@ public class ConfigManager {
         return messageManager.getFormattedMessage(key, placeholderPairs);
     }
 
+    public Component getGlobalComponent(String key) {
+        return messageManager.getComponent(key);
+    }
+
+    public Component getGlobalComponent(String key, String... placeholderPairs) {
+        return messageManager.getComponent(key, placeholderPairs);
+    }
+
+    public Component getPrefixedComponent(String key) {
+        return messageManager.getPrefixedComponent(key);
+    }
+
+    public Component getPrefixedComponent(String key, String... placeholderPairs) {
+        return messageManager.getPrefixedComponent(key, placeholderPairs);
+    }
+
     public MessageManager getMessageManager() {
         return messageManager;
     }
 
+    public Path getConfigDir() {
+        return configDir;
+    }
+
+    public SettingsManager getSettings() {
+        return settingsManager;
+    }
+
     public String translateColors(String message) {
         return messageManager.translateColors(message);
     }
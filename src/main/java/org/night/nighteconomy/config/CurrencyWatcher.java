@@ -0,0 +1,97 @@
+package org.night.nighteconomy.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the currencies directory and runs a reload once the .toml files have been quiet
+ * for {@link #DEBOUNCE_MS}, so an editor saving several times triggers a single reload.
+ */
+final class CurrencyWatcher implements AutoCloseable {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final long DEBOUNCE_MS = 750L;
+
+    private final Path directory;
+    private final Runnable reload;
+    private final WatchService watchService;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    CurrencyWatcher(Path directory, Runnable reload) throws IOException {
+        this.directory = directory;
+        this.reload = reload;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        this.thread = new Thread(this::run, "NE-ConfigWatch");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+        LOGGER.info("Watching {} for currency changes", directory);
+    }
+
+    private void run() {
+        long pendingSince = 0L;
+        while (running) {
+            try {
+                WatchKey key = pendingSince == 0L
+                        ? watchService.take()
+                        : watchService.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+
+                if (key != null) {
+                    if (hasTomlEvent(key)) pendingSince = System.currentTimeMillis();
+                    if (!key.reset()) {
+                        LOGGER.warn("Currencies directory is no longer watchable: {}", directory);
+                        return;
+                    }
+                }
+
+                if (pendingSince != 0L && System.currentTimeMillis() - pendingSince >= DEBOUNCE_MS) {
+                    pendingSince = 0L;
+                    try {
+                        reload.run();
+                    } catch (Exception e) {
+                        LOGGER.error("Error auto-reloading currencies: ", e);
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+        }
+    }
+
+    private static boolean hasTomlEvent(WatchKey key) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                relevant = true;
+            } else if (event.context() instanceof Path p && p.toString().endsWith(".toml")) {
+                relevant = true;
+            }
+        }
+        return relevant;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            watchService.close();
+        } catch (IOException ignored) {}
+        thread.interrupt();
+    }
+}
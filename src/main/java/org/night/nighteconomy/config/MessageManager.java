@@ -4,6 +4,7 @@ import com.electronwill.nightconfig.core.UnmodifiableConfig;
 import com.electronwill.nightconfig.core.file.CommentedFileConfig;
 import com.electronwill.nightconfig.core.io.WritingMode;
 import com.electronwill.nightconfig.core.CommentedConfig;
+import net.minecraft.network.chat.Component;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -11,13 +12,19 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MessageManager {
     private static final Logger LOGGER = LogManager.getLogger();
 
     private final Path configDir;
     private final Path messagesFile;
-    private Map<String, String> messages = new HashMap<>();
+    private volatile Map<String, String> messages = new HashMap<>();
+    private volatile Map<String, MessageTemplate> templates = new HashMap<>();
+    private volatile String coloredPrefix = "";
+    private volatile long generation;
+    private final Map<String, Component> staticComponents = new ConcurrentHashMap<>();
+    private final Map<String, Component> staticPrefixedComponents = new ConcurrentHashMap<>();
 
     public MessageManager(Path configDir) {
         this.configDir = configDir;
@@ -41,14 +48,14 @@ public class MessageManager {
                     .build()) {
                 cfg.load();
 
-                messages.clear();
-
-                loadMessagesFromSection(cfg, "global", "");
-                loadMessagesFromSection(cfg, "commands", "commands.");
-                loadMessagesFromSection(cfg, "errors", "errors.");
-                loadMessagesFromSection(cfg, "success", "success.");
-                loadMessagesFromSection(cfg, "ranking", "ranking.");
-                loadMessagesFromSection(cfg, "payment", "payment.");
+                Map<String, String> loaded = new HashMap<>();
+                loadMessagesFromSection(cfg, "global", "", loaded);
+                loadMessagesFromSection(cfg, "commands", "commands.", loaded);
+                loadMessagesFromSection(cfg, "errors", "errors.", loaded);
+                loadMessagesFromSection(cfg, "success", "success.", loaded);
+                loadMessagesFromSection(cfg, "ranking", "ranking.", loaded);
+                loadMessagesFromSection(cfg, "payment", "payment.", loaded);
+                install(loaded);
             }
 
         } catch (Exception e) {
@@ -57,7 +64,25 @@ public class MessageManager {
         }
     }
 
-    private void loadMessagesFromSection(UnmodifiableConfig cfg, String section, String prefix) {
+    private void install(Map<String, String> loaded) {
+        Map<String, MessageTemplate> compiled = new HashMap<>(loaded.size() * 2);
+        for (Map.Entry<String, String> e : loaded.entrySet()) {
+            compiled.put(e.getKey(), MessageTemplate.compile(e.getValue()));
+        }
+        messages = loaded;
+        templates = compiled;
+        coloredPrefix = MessageTemplate.translateColors(getMessage("prefix"));
+        staticComponents.clear();
+        staticPrefixedComponents.clear();
+        generation++;
+    }
+
+    /** Bumped whenever the message set changes, so rendered output cached elsewhere can be dropped. */
+    public long getGeneration() {
+        return generation;
+    }
+
+    private void loadMessagesFromSection(UnmodifiableConfig cfg, String section, String prefix, Map<String, String> messages) {
         if (!cfg.contains(section)) return;
         UnmodifiableConfig sec = cfg.get(section);
         if (sec == null) return;
@@ -145,7 +170,7 @@ public class MessageManager {
 
     private void loadDefaultMessages() {
         LOGGER.warn("Loading default messages due to configuration error");
-        messages.clear();
+        Map<String, String> messages = new HashMap<>();
 
         messages.put("prefix", "&6[NightEconomy]&r");
         messages.put("no-permission", "&cYou do not have permission to use this command!");
@@ -169,6 +194,7 @@ public class MessageManager {
 
         messages.put("payment.toggle-enabled", "&aPayments enabled!");
         messages.put("payment.toggle-disabled", "&cPayments disabled!");
+        install(messages);
     }
 
     public String getMessage(String key) {
@@ -179,20 +205,17 @@ public class MessageManager {
         return messages.getOrDefault(key, defaultMessage);
     }
 
+    public MessageTemplate getTemplate(String key) {
+        MessageTemplate t = templates.get(key);
+        return t != null ? t : MessageTemplate.compile("&cMessage not found: " + key);
+    }
+
     public String getFormattedMessage(String key, Map<String, String> placeholders) {
-        String message = getMessage(key);
-        if (placeholders != null) {
-            for (Map.Entry<String, String> entry : placeholders.entrySet()) {
-                message = message.replace("{" + entry.getKey() + "}", entry.getValue());
-            }
-        }
-        return message;
+        return getTemplate(key).render(placeholders);
     }
 
     public String getFormattedMessage(String key, String placeholder, String value) {
-        Map<String, String> placeholders = new HashMap<>();
-        placeholders.put(placeholder, value);
-        return getFormattedMessage(key, placeholders);
+        return getTemplate(key).render(placeholder, value);
     }
 
     public String getFormattedMessage(String key, String... placeholderPairs) {
@@ -200,11 +223,7 @@ public class MessageManager {
             LOGGER.warn("Odd number of arguments for placeholders in: {}", key);
             return getMessage(key);
         }
-        Map<String, String> placeholders = new HashMap<>();
-        for (int i = 0; i < placeholderPairs.length; i += 2) {
-            placeholders.put(placeholderPairs[i], placeholderPairs[i + 1]);
-        }
-        return getFormattedMessage(key, placeholders);
+        return getTemplate(key).render(placeholderPairs);
     }
 
     public void reloadMessages() {
@@ -221,7 +240,9 @@ public class MessageManager {
     }
 
     public void setMessage(String key, String value) {
-        messages.put(key, value);
+        Map<String, String> updated = new HashMap<>(messages);
+        updated.put(key, value);
+        install(updated);
     }
 
     public void saveMessages() {
@@ -278,19 +299,57 @@ public class MessageManager {
     }
 
     public String getPrefix() {
-        return translateColors(getMessage("prefix"));
+        return coloredPrefix;
     }
 
     public String getPrefixedMessage(String key) {
-        return getPrefix() + " " + translateColors(getMessage(key));
+        return prefixed(key).toString();
     }
 
     public String getPrefixedMessage(String key, Map<String, String> placeholders) {
-        return getPrefix() + " " + translateColors(getFormattedMessage(key, placeholders));
+        MessageTemplate t = getTemplate(key);
+        StringBuilder sb = new StringBuilder(coloredPrefix.length() + 64).append(coloredPrefix).append(' ');
+        return t.renderTo(sb, true, placeholders).toString();
     }
 
     public String getPrefixedMessage(String key, String... placeholderPairs) {
-        return getPrefix() + " " + translateColors(getFormattedMessage(key, placeholderPairs));
+        if (placeholderPairs.length % 2 != 0) {
+            LOGGER.warn("Odd number of arguments for placeholders in: {}", key);
+            placeholderPairs = new String[0];
+        }
+        MessageTemplate t = getTemplate(key);
+        StringBuilder sb = new StringBuilder(coloredPrefix.length() + 64).append(coloredPrefix).append(' ');
+        return t.renderTo(sb, true, placeholderPairs).toString();
+    }
+
+    private StringBuilder prefixed(String key) {
+        StringBuilder sb = new StringBuilder(coloredPrefix.length() + 64).append(coloredPrefix).append(' ');
+        return getTemplate(key).renderTo(sb, true);
+    }
+
+    /** Coloured message without prefix; messages without slots are built once per reload. */
+    public Component getComponent(String key) {
+        MessageTemplate t = templates.get(key);
+        if (t == null) return Component.literal(getTemplate(key).renderColored());
+        if (!t.isStatic()) return Component.literal(t.renderColored());
+        return staticComponents.computeIfAbsent(key, k -> Component.literal(t.renderColored()));
+    }
+
+    public Component getComponent(String key, String... placeholderPairs) {
+        if (placeholderPairs.length == 0) return getComponent(key);
+        return Component.literal(getTemplate(key).renderColored(placeholderPairs));
+    }
+
+    /** Prefixed, coloured message; messages without slots are built once per reload. */
+    public Component getPrefixedComponent(String key) {
+        MessageTemplate t = templates.get(key);
+        if (t == null || !t.isStatic()) return Component.literal(getPrefixedMessage(key));
+        return staticPrefixedComponents.computeIfAbsent(key, k -> Component.literal(getPrefixedMessage(k)));
+    }
+
+    public Component getPrefixedComponent(String key, String... placeholderPairs) {
+        if (placeholderPairs.length == 0) return getPrefixedComponent(key);
+        return Component.literal(getPrefixedMessage(key, placeholderPairs));
     }
 
     public String getErrorMessage(String key) { return getPrefixedMessage("errors." + key); }
@@ -0,0 +1,151 @@
+package org.night.nighteconomy.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A message parsed once into literal parts and named slots, e.g. {@code "&aPaid {amount} to {player}"}.
+ * Literals are kept both raw and with {@code &} colour codes already translated.
+ * Slots without a value are rendered back as written.
+ */
+public final class MessageTemplate {
+    private final String raw;
+    private final String[] literals;
+    private final String[] coloredLiterals;
+    private final String[] slots;
+    private final String[] slotTokens;
+    private final int literalLength;
+
+    private MessageTemplate(String raw, String[] literals, String[] slots, String[] slotTokens) {
+        this.raw = raw;
+        this.literals = literals;
+        this.slots = slots;
+        this.slotTokens = slotTokens;
+        this.coloredLiterals = new String[literals.length];
+        int len = 0;
+        for (int i = 0; i < literals.length; i++) {
+            coloredLiterals[i] = translateColors(literals[i]);
+            len += literals[i].length();
+        }
+        this.literalLength = len;
+    }
+
+    public static MessageTemplate compile(String raw) {
+        return compile(raw, '{', '}');
+    }
+
+    /**
+     * Compiles a template whose slots are delimited by {@code open} and {@code close}
+     * (the tycoon broadcast uses {@code %player%}).
+     */
+    public static MessageTemplate compile(String raw, char open, char close) {
+        if (raw == null) raw = "";
+
+        List<String> literals = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        List<String> tokens = new ArrayList<>();
+
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        int n = raw.length();
+        while (i < n) {
+            char c = raw.charAt(i);
+            if (c == open) {
+                int end = raw.indexOf(close, i + 1);
+                if (end > i + 1 && isSlotName(raw, i + 1, end)) {
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    slots.add(raw.substring(i + 1, end));
+                    tokens.add(raw.substring(i, end + 1));
+                    i = end + 1;
+                    continue;
+                }
+            }
+            literal.append(c);
+            i++;
+        }
+        literals.add(literal.toString());
+
+        return new MessageTemplate(raw,
+                literals.toArray(new String[0]),
+                slots.toArray(new String[0]),
+                tokens.toArray(new String[0]));
+    }
+
+    private static boolean isSlotName(String s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.')) return false;
+        }
+        return true;
+    }
+
+    public String getRaw() { return raw; }
+
+    public boolean isStatic() { return slots.length == 0; }
+
+    public String render(String... pairs) {
+        if (slots.length == 0) return literals[0];
+        return renderTo(new StringBuilder(literalLength + 16 * slots.length), false, pairs).toString();
+    }
+
+    public String renderColored(String... pairs) {
+        if (slots.length == 0) return coloredLiterals[0];
+        return renderTo(new StringBuilder(literalLength + 16 * slots.length), true, pairs).toString();
+    }
+
+    public String render(Map<String, String> values) {
+        return renderTo(new StringBuilder(literalLength + 16 * slots.length), false, values).toString();
+    }
+
+    public String renderColored(Map<String, String> values) {
+        return renderTo(new StringBuilder(literalLength + 16 * slots.length), true, values).toString();
+    }
+
+    /** Values are given as name/value pairs; an odd trailing name is ignored. */
+    public StringBuilder renderTo(StringBuilder out, boolean colored, String... pairs) {
+        String[] lits = colored ? coloredLiterals : literals;
+        out.append(lits[0]);
+        for (int s = 0; s < slots.length; s++) {
+            String value = null;
+            if (pairs != null) {
+                for (int p = 0; p + 1 < pairs.length; p += 2) {
+                    if (slots[s].equals(pairs[p])) {
+                        value = pairs[p + 1];
+                        break;
+                    }
+                }
+            }
+            appendValue(out, value != null ? value : slotTokens[s], colored);
+            out.append(lits[s + 1]);
+        }
+        return out;
+    }
+
+    public StringBuilder renderTo(StringBuilder out, boolean colored, Map<String, String> values) {
+        String[] lits = colored ? coloredLiterals : literals;
+        out.append(lits[0]);
+        for (int s = 0; s < slots.length; s++) {
+            String value = values != null ? values.get(slots[s]) : null;
+            appendValue(out, value != null ? value : slotTokens[s], colored);
+            out.append(lits[s + 1]);
+        }
+        return out;
+    }
+
+    private static void appendValue(StringBuilder out, String value, boolean colored) {
+        if (!colored || value.indexOf('&') < 0) {
+            out.append(value);
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            out.append(c == '&' ? '§' : c);
+        }
+    }
+
+    static String translateColors(String s) {
+        return s.indexOf('&') < 0 ? s : s.replace('&', '§');
+    }
+}
@@ -0,0 +1,164 @@
+package org.night.nighteconomy.config;
+
+import com.electronwill.nightconfig.core.file.CommentedFileConfig;
+import com.electronwill.nightconfig.core.io.WritingMode;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Server-wide tuning in {@code Settings.toml}. Every key has a default; keys missing from an
+ * existing file are appended with their comment on load, so upgrades never need a manual edit.
+ */
+public class SettingsManager {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final Map<String, Setting> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        define("storage.backend", "sqlite", "Ledger backend: sqlite, mvstore (embedded H2 MVStore), memory (not persisted, for tests), or mysql, mariadb, postgresql to share one economy between servers. Needs a restart.");
+        define("storage.mvstore-cache-mb", 16, "Page cache of the mvstore backend in MB.");
+        define("storage.jdbc-url", "jdbc:mysql://localhost:3306/nighteconomy", "JDBC URL of the mysql, mariadb or postgresql backend, e.g. jdbc:postgresql://localhost:5432/nighteconomy.");
+        define("storage.username", "nighteconomy", "Database user of the networked backends.");
+        define("storage.password", "", "Database password of the networked backends.");
+        define("storage.pool-size", 4, "Maximum pooled connections per server for the networked backends.");
+        define("accounts.cas-retries", 5, "Retries of a balance update that lost a version race against another writer.");
+        define("changes.poll-ms", 1000, "How often a server on a shared backend (mysql, mariadb, postgresql) reads account_changes to refresh its caches; 0 disables it.");
+        define("changes.gap-timeout-ms", 5000, "A missing change sequence is waited for this long, from when this server first sees it, as a transaction still committing.");
+        define("changes.batch-size", 500, "Changes read per query when tailing account_changes.");
+        define("changes.retention-hours", 24.0, "Hours account_changes rows are kept for tailing consumers; 0 keeps them forever.");
+        define("idempotency.cache-size", 10000, "Recent idempotency keys answered from memory before the idempotency_keys table.");
+        define("idempotency.retention-hours", 24.0, "Hours an idempotency key is remembered; a retry after that runs again. 0 keeps them forever.");
+        define("stats.resync-minutes", 60, "With a shared backend (mysql, mariadb, postgresql), how often the per-currency statistics (supply, mean, percentiles) are rescanned to pick up writes from other servers; local writes keep them current in between. Local backends scan once at startup. 0 scans only at startup.");
+        define("stats.scan-batch-size", 5000, "Accounts read per maintenance task while scanning the statistics of a currency.");
+        define("ratelimit.table-size", 16384, "Slots of the command rate limiter, one per player, currency and command in use; wiped when three-quarters full.");
+        define("maintenance.interval-seconds", 60, "How often the maintenance scheduler evaluates the database.");
+        define("maintenance.busy-ops-per-second", 20.0, "Above this account mutation rate heavy maintenance is deferred.");
+        define("maintenance.busy-tick-ms", 45.0, "Above this smoothed server tick time heavy maintenance is deferred.");
+        define("maintenance.wal-passive-bytes", 4L * 1024 * 1024, "WAL size from which a PASSIVE checkpoint is run.");
+        define("maintenance.wal-truncate-bytes", 64L * 1024 * 1024, "WAL size from which a TRUNCATE checkpoint is run (only when idle).");
+        define("maintenance.vacuum-min-free-pages", 1024, "Free pages needed before incremental vacuum starts.");
+        define("maintenance.vacuum-step-pages", 256, "Pages released per incremental_vacuum step.");
+        define("maintenance.vacuum-slice-ms", 50, "Time budget of one vacuum slice on the database thread.");
+        define("maintenance.analyze-interval-hours", 24, "Minimum hours between PRAGMA optimize runs.");
+        define("maintenance.convert-auto-vacuum", false, "Convert an existing database to auto_vacuum=INCREMENTAL on the first idle cycle. The full VACUUM stalls every payment until it ends; prefer /neconomy maintenance convert-vacuum at a quiet hour.");
+        define("pruning.batch-size", 2000, "Transactions deleted per batch; each batch is one short write transaction.");
+        define("pruning.busy-delay-ms", 250, "Pause between batches while the server is busy.");
+        define("backup.interval-hours", 24, "Hours between automatic backups; 0 disables them.");
+        define("backup.keep", 7, "Number of backups kept in config/nighteconomy/backups.");
+        define("backup.busy-retry-minutes", 5, "Delay before retrying a scheduled backup skipped because the server was busy.");
+        define("lanes.interactive-capacity", 10000, "Queued balance reads, mutations and payments before new ones are rejected.");
+        define("lanes.interactive-target-ms", 50, "Latency target of the interactive lane.");
+        define("lanes.interactive-shed-ms", 2000, "Payments fail fast with 'busy' once the oldest queued interactive task waited this long.");
+        define("lanes.ranking-capacity", 256, "Queued ranking rebuilds; extra ones are dropped and retried on the next tick.");
+        define("lanes.ranking-target-ms", 1000, "A ranking task waiting longer than this runs ahead of interactive work.");
+        define("lanes.maintenance-capacity", 256, "Queued maintenance steps; extra ones are dropped and retried on the next cycle.");
+        define("lanes.maintenance-target-ms", 5000, "A maintenance task waiting longer than this runs ahead of interactive work.");
+        define("metrics.jmx", true, "Expose economy metrics as the JMX bean org.night.nighteconomy:type=Metrics.");
+        define("metrics.prometheus-port", 0, "Port of the Prometheus /metrics endpoint; 0 disables it.");
+        define("metrics.prometheus-host", "127.0.0.1", "Address the Prometheus endpoint binds to.");
+    }
+
+    private final Path settingsFile;
+    private volatile Map<String, Object> values = new HashMap<>();
+
+    public SettingsManager(Path configDir) {
+        this.settingsFile = configDir.resolve("Settings.toml");
+        loadSettings();
+    }
+
+    private static void define(String key, Object value, String comment) {
+        DEFAULTS.put(key, new Setting(value, comment));
+    }
+
+    private void loadSettings() {
+        Map<String, Object> loaded = new HashMap<>();
+        try {
+            Files.createDirectories(settingsFile.getParent());
+            try (CommentedFileConfig cfg = CommentedFileConfig.builder(settingsFile)
+                    .preserveInsertionOrder()
+                    .sync()
+                    .writingMode(WritingMode.REPLACE)
+                    .build()) {
+                if (Files.exists(settingsFile)) {
+                    cfg.load();
+                }
+
+                boolean changed = false;
+                for (Map.Entry<String, Setting> e : DEFAULTS.entrySet()) {
+                    String key = e.getKey();
+                    Object value = cfg.get(key);
+                    if (value == null) {
+                        cfg.set(key, e.getValue().value);
+                        cfg.setComment(key, e.getValue().comment);
+                        value = e.getValue().value;
+                        changed = true;
+                    }
+                    loaded.put(key, value);
+                }
+                if (changed) {
+                    cfg.save();
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.error("Error loading settings, using defaults: ", e);
+            loaded.clear();
+            for (Map.Entry<String, Setting> e2 : DEFAULTS.entrySet()) {
+                loaded.put(e2.getKey(), e2.getValue().value);
+            }
+        }
+        values = loaded;
+    }
+
+    public void reloadSettings() {
+        LOGGER.info("Reloading settings...");
+        loadSettings();
+    }
+
+    public int getInt(String key) {
+        return number(key).intValue();
+    }
+
+    public long getLong(String key) {
+        return number(key).longValue();
+    }
+
+    public double getDouble(String key) {
+        return number(key).doubleValue();
+    }
+
+    public boolean getBoolean(String key) {
+        Object v = values.get(key);
+        if (v instanceof Boolean b) return b;
+        if (v instanceof String s) return Boolean.parseBoolean(s);
+        return (Boolean) DEFAULTS.get(key).value;
+    }
+
+    public String getString(String key) {
+        Object v = values.get(key);
+        if (v != null) return String.valueOf(v);
+        Setting d = DEFAULTS.get(key);
+        return d != null ? String.valueOf(d.value) : null;
+    }
+
+    private Number number(String key) {
+        Object v = values.get(key);
+        if (v instanceof Number n) return n;
+        if (v instanceof String s) {
+            try {
+                return Double.parseDouble(s.trim());
+            } catch (NumberFormatException ignored) {}
+        }
+        Setting d = DEFAULTS.get(key);
+        if (d == null) throw new IllegalArgumentException("Unknown setting: " + key);
+        LOGGER.warn("Setting '{}' is not a number, using default {}", key, d.value);
+        return (Number) d.value;
+    }
+
+    private record Setting(Object value, String comment) {}
+}
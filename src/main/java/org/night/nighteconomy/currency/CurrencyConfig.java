@@ -4,11 +4,13 @@ import com.electronwill.nightconfig.core.CommentedConfig;
 import com.electronwill.nightconfig.core.UnmodifiableConfig;
 import com.electronwill.nightconfig.core.file.CommentedFileConfig;
 import com.electronwill.nightconfig.core.io.WritingMode;
+import org.night.nighteconomy.config.MessageTemplate;
 
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class CurrencyConfig {
     private String id;
@@ -18,15 +20,20 @@ public class CurrencyConfig {
     private int update;
 
     private FormatConfig format;
+    private volatile CurrencyFormatter formatter;
 
     private PaymentConfig payment;
 
+    private Map<String, RateLimitConfig> rateLimits = defaultRateLimits();
+
     private CommandsConfig commands;
 
     private Map<String, String> messages;
+    private final Map<String, MessageTemplate> messageTemplates = new ConcurrentHashMap<>();
 
     private String tycoon;
     private String tycoonBroadcast;
+    private volatile MessageTemplate tycoonBroadcastTemplate;
 
     public CurrencyConfig() {}
 
@@ -59,19 +66,80 @@ public class CurrencyConfig {
     public void setTycoon(String tycoon) { this.tycoon = tycoon; }
 
     public String getTycoonBroadcast() { return tycoonBroadcast; }
-    public void setTycoonBroadcast(String tycoonBroadcast) { this.tycoonBroadcast = tycoonBroadcast; }
+    public void setTycoonBroadcast(String tycoonBroadcast) {
+        this.tycoonBroadcast = tycoonBroadcast;
+        this.tycoonBroadcastTemplate = null;
+    }
+
+    /** Broadcast template with a {@code %player%} slot, or null when none is configured. */
+    public MessageTemplate getTycoonBroadcastTemplate() {
+        MessageTemplate t = tycoonBroadcastTemplate;
+        if (t == null && tycoonBroadcast != null && !tycoonBroadcast.isEmpty()) {
+            t = MessageTemplate.compile(tycoonBroadcast, '%', '%');
+            tycoonBroadcastTemplate = t;
+        }
+        return t;
+    }
 
     public FormatConfig getFormat() { return format; }
-    public void setFormat(FormatConfig format) { this.format = format; }
+    public void setFormat(FormatConfig format) {
+        this.format = format;
+        this.formatter = null;
+    }
+
+    public CurrencyFormatter getFormatter() {
+        CurrencyFormatter f = formatter;
+        if (f == null) {
+            f = CurrencyFormatter.compile(format);
+            formatter = f;
+        }
+        return f;
+    }
+
+    private void precompile() {
+        getFormatter();
+        getTycoonBroadcastTemplate();
+        if (messages != null) {
+            for (String key : messages.keySet()) getMessageTemplate(key);
+        }
+    }
 
     public PaymentConfig getPayment() { return payment; }
     public void setPayment(PaymentConfig payment) { this.payment = payment; }
 
+    public Map<String, RateLimitConfig> getRateLimits() { return rateLimits; }
+    public void setRateLimits(Map<String, RateLimitConfig> rateLimits) { this.rateLimits = rateLimits; }
+
+    /**
+     * Limit of a player command ({@code pay}, {@code see}, {@code top}, {@code transactions}, {@code toggle})
+     * or of API transfers ({@code api}), or null.
+     */
+    public RateLimitConfig getRateLimit(String command) {
+        Map<String, RateLimitConfig> limits = rateLimits;
+        return limits != null ? limits.get(command) : null;
+    }
+
     public CommandsConfig getCommands() { return commands; }
     public void setCommands(CommandsConfig commands) { this.commands = commands; }
 
     public Map<String, String> getMessages() { return messages; }
-    public void setMessages(Map<String, String> messages) { this.messages = messages; }
+    public void setMessages(Map<String, String> messages) {
+        this.messages = messages;
+        this.messageTemplates.clear();
+    }
+
+    /** Compiled currency message, or null when the key is not configured. */
+    public MessageTemplate getMessageTemplate(String key) {
+        MessageTemplate t = messageTemplates.get(key);
+        if (t != null) return t;
+        Map<String, String> msgs = messages;
+        if (msgs == null) return null;
+        String raw = msgs.get(key);
+        if (raw == null) return null;
+        t = MessageTemplate.compile(raw);
+        messageTemplates.put(key, t);
+        return t;
+    }
 
     public static class FormatConfig {
         private String format;
@@ -138,6 +206,36 @@ public class CurrencyConfig {
         public void setFee(double fee) { this.fee = fee; }
     }
 
+    /** Token bucket of one command: {@code rate} uses per second, up to {@code burst} in a row. 0 disables it. */
+    public static class RateLimitConfig {
+        private double rate;
+        private int burst;
+
+        public RateLimitConfig() {}
+
+        public RateLimitConfig(double rate, int burst) {
+            this.rate = rate;
+            this.burst = burst;
+        }
+
+        public double getRate() { return rate; }
+        public void setRate(double rate) { this.rate = rate; }
+
+        public int getBurst() { return burst; }
+        public void setBurst(int burst) { this.burst = burst; }
+    }
+
+    public static Map<String, RateLimitConfig> defaultRateLimits() {
+        Map<String, RateLimitConfig> limits = new java.util.LinkedHashMap<>();
+        limits.put("pay", new RateLimitConfig(1.0, 5));
+        limits.put("see", new RateLimitConfig(4.0, 10));
+        limits.put("top", new RateLimitConfig(1.0, 5));
+        limits.put("transactions", new RateLimitConfig(0.5, 3));
+        limits.put("toggle", new RateLimitConfig(0.5, 3));
+        limits.put("api", new RateLimitConfig(0.0, 0));
+        return limits;
+    }
+
     public static class CommandsConfig {
         private List<String> main;
         private String permission;
@@ -336,6 +434,7 @@ public class CurrencyConfig {
         msgs.put("payment-toggle-enabled", "&aYou enabled receiving payments.");
         msgs.put("payment-toggle-disabled", "&cYou disabled receiving payments.");
         c.setMessages(msgs);
+        c.precompile();
 
         return c;
     }
@@ -428,6 +527,21 @@ public class CurrencyConfig {
             c.setPayment(pay);
         }
 
+        if (cfg.contains("rateLimits")) {
+            UnmodifiableConfig rl = cfg.get("rateLimits");
+            Map<String, RateLimitConfig> limits = defaultRateLimits();
+            for (UnmodifiableConfig.Entry e : rl.entrySet()) {
+                if (!(e.getValue() instanceof UnmodifiableConfig l)) continue;
+                RateLimitConfig base = limits.getOrDefault(e.getKey(), new RateLimitConfig());
+                Object rate = l.get("rate");
+                Object burst = l.get("burst");
+                limits.put(e.getKey(), new RateLimitConfig(
+                        rate instanceof Number n ? n.doubleValue() : base.getRate(),
+                        burst instanceof Number n ? n.intValue() : base.getBurst()));
+            }
+            c.setRateLimits(limits);
+        }
+
         if (cfg.contains("commands")) {
             UnmodifiableConfig cm = cfg.get("commands");
             CommandsConfig cmds = new CommandsConfig();
@@ -523,6 +637,7 @@ public class CurrencyConfig {
         msgs.putIfAbsent("payment-toggle-enabled", "&aYou enabled receiving payments.");
         msgs.putIfAbsent("payment-toggle-disabled", "&cYou disabled receiving payments.");
         c.setMessages(msgs);
+        c.precompile();
 
         return c;
     }
@@ -589,6 +704,20 @@ public class CurrencyConfig {
                 p.setComment("fee", "Fee charged on payments (absolute amount). Use 0.0 for no fee..");
             }
 
+            if (getRateLimits() != null) {
+                CommentedConfig rl = CommentedConfig.inMemory();
+                root.set("rateLimits", rl);
+                root.setComment("rateLimits", "Per-player limits of the player commands (pay, see, top, transactions, toggle)\n" +
+                        "and of transfers made by other mods through the API (api, per paying player; off by default).\n" +
+                        "rate: uses per second; burst: uses allowed in a row. 0 disables the limit.");
+                for (Map.Entry<String, RateLimitConfig> e : getRateLimits().entrySet()) {
+                    CommentedConfig l = CommentedConfig.inMemory();
+                    l.set("rate", e.getValue().getRate());
+                    l.set("burst", e.getValue().getBurst());
+                    rl.set(e.getKey(), l);
+                }
+            }
+
             if (getCommands() != null) {
                 CommentedConfig cm = CommentedConfig.inMemory();
                 root.set("commands", cm);
@@ -0,0 +1,183 @@
+package org.night.nighteconomy.currency;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+/**
+ * Immutable amount formatter compiled from a currency's {@link CurrencyConfig.FormatConfig}.
+ * Digits are written straight into the caller's buffer; rounding is half-even like DecimalFormat.
+ */
+public final class CurrencyFormatter {
+    private static final long[] POW10 = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+            1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L,
+            10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L,
+            10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+    /** Above this scaled magnitude a double no longer maps exactly onto a long. */
+    private static final double MAX_EXACT_SCALED = 9.0e15;
+
+    public static final CurrencyFormatter DEFAULT = new CurrencyFormatter(2, ',', "", false, 0, new String[0]);
+
+    private final int decimals;
+    private final long scale;
+    private final char decimalSeparator;
+    private final String groupSeparator;
+    private final boolean grouping;
+    private final boolean multiplesEnabled;
+    private final double multiplesThreshold;
+    private final String[] multiples;
+
+    private CurrencyFormatter(int decimals, char decimalSeparator, String groupSeparator,
+                              boolean multiplesEnabled, int multiplesStart, String[] multiples) {
+        this.decimals = decimals;
+        this.scale = POW10[decimals];
+        this.decimalSeparator = decimalSeparator;
+        this.groupSeparator = groupSeparator;
+        this.grouping = !groupSeparator.isEmpty();
+        this.multiplesEnabled = multiplesEnabled && multiples.length > 0;
+        this.multiplesThreshold = Math.pow(1000, Math.max(0, multiplesStart));
+        this.multiples = multiples;
+    }
+
+    public static CurrencyFormatter compile(CurrencyConfig.FormatConfig fmt) {
+        if (fmt == null) return DEFAULT;
+
+        boolean showCents = (fmt.getCentsEnabled() != null) ? fmt.getCentsEnabled() : true;
+
+        String sep = fmt.getDecimalSeparator();
+        String group = "";
+        if (fmt.getSeparator() != null) {
+            if ((sep == null || sep.isEmpty())
+                    && fmt.getSeparator().getDecimal() != null
+                    && !fmt.getSeparator().getDecimal().isEmpty()) {
+                sep = fmt.getSeparator().getDecimal();
+            }
+            if (fmt.getSeparator().getGroup() != null) {
+                group = fmt.getSeparator().getGroup();
+            }
+        }
+        if (sep == null || sep.isEmpty()) sep = ",";
+
+        boolean multiplesEnabled = false;
+        int start = 0;
+        String[] suffixes = new String[0];
+        CurrencyConfig.MultiplesConfig mul = fmt.getMultiples();
+        if (mul != null && mul.isEnabled()) {
+            List<String> list = mul.getMultiples();
+            if (list != null && !list.isEmpty()) {
+                multiplesEnabled = true;
+                start = mul.getStart();
+                suffixes = list.toArray(new String[0]);
+            }
+        }
+
+        return new CurrencyFormatter(showCents ? 2 : 0, sep.charAt(0), group, multiplesEnabled, start, suffixes);
+    }
+
+    public int getDecimals() { return decimals; }
+    public char getDecimalSeparator() { return decimalSeparator; }
+    public String getGroupSeparator() { return groupSeparator; }
+    public boolean isMultiplesEnabled() { return multiplesEnabled; }
+
+    public String format(double amount) {
+        StringBuilder sb = new StringBuilder(24);
+        formatTo(sb, amount);
+        return sb.toString();
+    }
+
+    public StringBuilder formatTo(StringBuilder out, double amount) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+            return out.append(amount);
+        }
+
+        if (multiplesEnabled && amount >= multiplesThreshold) {
+            int index = 0;
+            double value = amount;
+            while (value >= 1000 && index < multiples.length) {
+                value /= 1000;
+                index++;
+            }
+            if (index > 0) {
+                appendNumber(out, value);
+                return out.append(multiples[index - 1]);
+            }
+        }
+
+        appendNumber(out, amount);
+        return out;
+    }
+
+    private void appendNumber(StringBuilder out, double amount) {
+        double abs = Math.abs(amount);
+        double scaled = abs * scale;
+        if (scaled >= MAX_EXACT_SCALED) {
+            appendBig(out, amount);
+            return;
+        }
+
+        long units;
+        double diff = scaled - Math.floor(scaled);
+        if (Math.abs(diff - 0.5) < 1e-6) {
+            // Near a tie the binary value decides the direction, exactly as DecimalFormat does.
+            units = new BigDecimal(abs).setScale(decimals, RoundingMode.HALF_EVEN).unscaledValue().longValue();
+        } else {
+            units = (long) Math.rint(scaled);
+        }
+        if (units == 0) {
+            amount = 0.0;
+        }
+        if (amount < 0) {
+            out.append('-');
+        }
+
+        appendInteger(out, units / scale);
+        if (decimals > 0) {
+            out.append(decimalSeparator);
+            long fraction = units % scale;
+            for (int i = decimals - 1; i >= 0; i--) {
+                long p = POW10[i];
+                int d = (int) (fraction / p);
+                fraction -= d * p;
+                out.append((char) ('0' + d));
+            }
+        }
+    }
+
+    private void appendInteger(StringBuilder out, long value) {
+        int digits = 1;
+        while (digits < POW10.length && value >= POW10[digits]) digits++;
+
+        for (int i = digits - 1; i >= 0; i--) {
+            long p = POW10[i];
+            int d = (int) (value / p);
+            value -= d * p;
+            out.append((char) ('0' + d));
+            if (grouping && i > 0 && i % 3 == 0) {
+                out.append(groupSeparator);
+            }
+        }
+    }
+
+    private void appendBig(StringBuilder out, double amount) {
+        String plain = new BigDecimal(amount).setScale(decimals, RoundingMode.HALF_EVEN).toPlainString();
+        int start = 0;
+        if (plain.charAt(0) == '-') {
+            out.append('-');
+            start = 1;
+        }
+        int dot = plain.indexOf('.');
+        int intEnd = dot >= 0 ? dot : plain.length();
+        for (int i = start; i < intEnd; i++) {
+            out.append(plain.charAt(i));
+            int remaining = intEnd - i - 1;
+            if (grouping && remaining > 0 && remaining % 3 == 0) {
+                out.append(groupSeparator);
+            }
+        }
+        if (dot >= 0) {
+            out.append(decimalSeparator).append(plain, dot + 1, plain.length());
+        }
+    }
+}
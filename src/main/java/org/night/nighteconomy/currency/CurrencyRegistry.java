@@ -0,0 +1,110 @@
+package org.night.nighteconomy.currency;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the loaded currencies. A reload builds a new registry and swaps it in,
+ * so readers never observe a half-loaded set. Currencies get dense ordinals (sorted by id)
+ * and carry the values derived from their config.
+ */
+public final class CurrencyRegistry {
+    public static final CurrencyRegistry EMPTY = new CurrencyRegistry(0L, Map.of());
+
+    private final long version;
+    private final Currency[] byOrdinal;
+    private final Map<String, Currency> byId;
+    private final Map<String, CurrencyConfig> configs;
+
+    private CurrencyRegistry(long version, Map<String, CurrencyConfig> source) {
+        this.version = version;
+
+        List<String> ids = new ArrayList<>(source.keySet());
+        Collections.sort(ids);
+
+        this.byOrdinal = new Currency[ids.size()];
+        Map<String, Currency> index = new HashMap<>(ids.size() * 2);
+        Map<String, CurrencyConfig> view = new LinkedHashMap<>(ids.size() * 2);
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            CurrencyConfig config = source.get(id);
+            Currency c = new Currency(i, id, config);
+            byOrdinal[i] = c;
+            index.put(id, c);
+            view.put(id, config);
+        }
+        this.byId = index;
+        this.configs = Collections.unmodifiableMap(view);
+    }
+
+    public static CurrencyRegistry of(long version, Map<String, CurrencyConfig> currencies) {
+        return new CurrencyRegistry(version, currencies);
+    }
+
+    /** Copy of this registry with one currency added or replaced. */
+    public CurrencyRegistry with(long version, CurrencyConfig config) {
+        Map<String, CurrencyConfig> next = new HashMap<>(configs);
+        next.put(config.getId(), config);
+        return new CurrencyRegistry(version, next);
+    }
+
+    public long getVersion() { return version; }
+    public int size() { return byOrdinal.length; }
+    public boolean isEmpty() { return byOrdinal.length == 0; }
+
+    public Currency get(String currencyId) {
+        return currencyId != null ? byId.get(currencyId) : null;
+    }
+
+    public Currency get(int ordinal) {
+        return byOrdinal[ordinal];
+    }
+
+    public CurrencyConfig getConfig(String currencyId) {
+        Currency c = get(currencyId);
+        return c != null ? c.config : null;
+    }
+
+    /** Returns -1 for unknown currencies. */
+    public int ordinal(String currencyId) {
+        Currency c = get(currencyId);
+        return c != null ? c.ordinal : -1;
+    }
+
+    /** Unmodifiable id → config view in ordinal order; shared, not copied. */
+    public Map<String, CurrencyConfig> asMap() {
+        return configs;
+    }
+
+    public static final class Currency {
+        private final int ordinal;
+        private final String id;
+        private final CurrencyConfig config;
+        private final double fee;
+        private final double defaultValue;
+        private final boolean ranking;
+        private final CurrencyFormatter formatter;
+
+        private Currency(int ordinal, String id, CurrencyConfig config) {
+            this.ordinal = ordinal;
+            this.id = id;
+            this.config = config;
+            this.fee = config.getPayment() != null ? Math.max(0.0, config.getPayment().getFee()) : 0.0;
+            this.defaultValue = config.getDefaultValue();
+            this.ranking = config.isRanking();
+            this.formatter = config.getFormatter();
+        }
+
+        public int getOrdinal() { return ordinal; }
+        public String getId() { return id; }
+        public CurrencyConfig getConfig() { return config; }
+        public double getFee() { return fee; }
+        public double getDefaultValue() { return defaultValue; }
+        public boolean isRanking() { return ranking; }
+        public CurrencyFormatter getFormatter() { return formatter; }
+    }
+}
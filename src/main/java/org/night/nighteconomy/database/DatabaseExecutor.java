@@ -0,0 +1,267 @@
+package org.night.nighteconomy.database;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.night.nighteconomy.config.SettingsManager;
+import org.night.nighteconomy.jfr.ExecutorWaitEvent;
+import org.night.nighteconomy.metrics.EconomyMetrics;
+import org.night.nighteconomy.metrics.LatencyHistogram;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import jdk.jfr.EventType;
+
+/**
+ * The single thread that owns the SQLite connection, fed by three bounded lanes. Interactive work
+ * (reads, mutations, payments) runs first, then ranking rebuilds, then maintenance. A lower lane
+ * whose oldest task has waited past the lane's latency target is served next, so background work
+ * cannot starve. {@link #execute(Runnable)} uses the interactive lane; {@link #lane(Lane)} gives
+ * an {@link Executor} for the others. A full lane rejects with {@link RejectedExecutionException}.
+ */
+public final class DatabaseExecutor extends AbstractExecutorService {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final EventType WAIT_EVENT = EventType.getEventType(ExecutorWaitEvent.class);
+
+    public enum Lane {
+        INTERACTIVE, RANKING, MAINTENANCE;
+
+        final String key = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final SettingsManager settings;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition terminated = lock.newCondition();
+    private final LaneQueue[] lanes;
+    private final Executor[] views;
+    private final Thread worker;
+
+    private volatile boolean shutdown;
+    private volatile boolean done;
+
+    public DatabaseExecutor(String threadName, SettingsManager settings) {
+        this.settings = settings;
+        Lane[] values = Lane.values();
+        this.lanes = new LaneQueue[values.length];
+        this.views = new Executor[values.length];
+        for (Lane lane : values) {
+            LaneQueue q = new LaneQueue(lane, EconomyMetrics.executorWait(threadName + "/" + lane.key),
+                    EconomyMetrics.counter("rejected." + lane.key));
+            lanes[lane.ordinal()] = q;
+            views[lane.ordinal()] = task -> submitTo(lane, task);
+            EconomyMetrics.registerQueue(threadName + "/" + lane.key, q::size);
+        }
+
+        this.worker = new Thread(this::runWorker, threadName);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public Executor lane(Lane lane) {
+        return views[lane.ordinal()];
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        submitTo(Lane.INTERACTIVE, command);
+    }
+
+    /**
+     * True when new payments should fail fast: the interactive lane is full, or its oldest task
+     * has already waited longer than {@code lanes.interactive-shed-ms}.
+     */
+    public boolean isSaturated() {
+        LaneQueue q = lanes[Lane.INTERACTIVE.ordinal()];
+        long shedNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, settings.getLong("lanes.interactive-shed-ms")));
+        lock.lock();
+        try {
+            if (q.tasks.size() >= capacity(Lane.INTERACTIVE)) return true;
+            Task head = q.tasks.peekFirst();
+            return head != null && System.nanoTime() - head.enqueuedAt > shedNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int capacity(Lane lane) {
+        return Math.max(1, settings.getInt("lanes." + lane.key + "-capacity"));
+    }
+
+    private long targetNanos(Lane lane) {
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0L, settings.getLong("lanes." + lane.key + "-target-ms")));
+    }
+
+    private void submitTo(Lane lane, Runnable command) {
+        if (command == null) throw new NullPointerException();
+        LaneQueue q = lanes[lane.ordinal()];
+        lock.lock();
+        try {
+            if (shutdown) {
+                q.rejected.increment();
+                throw new RejectedExecutionException("Database executor is shut down");
+            }
+            if (q.tasks.size() >= capacity(lane)) {
+                q.rejected.increment();
+                throw new RejectedExecutionException("Database " + lane.key + " lane is full");
+            }
+            ExecutorWaitEvent wait = null;
+            if (WAIT_EVENT.isEnabled()) {
+                wait = new ExecutorWaitEvent();
+                wait.begin();
+            }
+            q.tasks.addLast(new Task(command, System.nanoTime(), wait));
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Highest lane first, except that an overdue lower lane gets one turn. Caller holds the lock. */
+    private Task next() {
+        long now = System.nanoTime();
+        for (int i = lanes.length - 1; i > 0; i--) {
+            Task head = lanes[i].tasks.peekFirst();
+            if (head != null && now - head.enqueuedAt >= targetNanos(lanes[i].lane)) {
+                return take(lanes[i], now);
+            }
+        }
+        for (LaneQueue q : lanes) {
+            if (!q.tasks.isEmpty()) return take(q, now);
+        }
+        return null;
+    }
+
+    private static Task take(LaneQueue q, long now) {
+        Task t = q.tasks.pollFirst();
+        q.wait.record(now - t.enqueuedAt);
+        if (t.event != null) {
+            t.event.end();
+            if (t.event.shouldCommit()) {
+                t.event.lane = q.lane.key;
+                t.event.queueDepth = q.tasks.size();
+                t.event.commit();
+            }
+        }
+        return t;
+    }
+
+    private void runWorker() {
+        try {
+            while (true) {
+                Task task;
+                lock.lock();
+                try {
+                    while ((task = next()) == null) {
+                        if (shutdown) return;
+                        notEmpty.await();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+
+                try {
+                    task.command.run();
+                } catch (Throwable t) {
+                    LOGGER.error("Unhandled error in database task: ", t);
+                }
+            }
+        } catch (InterruptedException ignored) {
+        } finally {
+            lock.lock();
+            try {
+                done = true;
+                terminated.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = new ArrayList<>();
+        lock.lock();
+        try {
+            shutdown = true;
+            for (LaneQueue q : lanes) {
+                for (Task t : q.tasks) pending.add(t.command);
+                q.tasks.clear();
+            }
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        worker.interrupt();
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return done;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!done) {
+                if (nanos <= 0L) return false;
+                nanos = terminated.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record Task(Runnable command, long enqueuedAt, ExecutorWaitEvent event) {}
+
+    private final class LaneQueue {
+        final Lane lane;
+        final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        final LatencyHistogram wait;
+        final LongAdder rejected;
+
+        LaneQueue(Lane lane, LatencyHistogram wait, LongAdder rejected) {
+            this.lane = lane;
+            this.wait = wait;
+            this.rejected = rejected;
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return tasks.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
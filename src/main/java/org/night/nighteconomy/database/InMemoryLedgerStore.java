@@ -0,0 +1,28 @@
+package org.night.nighteconomy.database;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/** Volatile {@link LedgerStore} on skip-list maps, for tests and benchmarks. Nothing survives a restart. */
+public class InMemoryLedgerStore extends MapLedgerStore {
+
+    public InMemoryLedgerStore() {
+        super(new SkipListTable<>(), new SkipListTable<>(), new SkipListTable<>(), new SkipListTable<>(),
+                new SkipListTable<>(), new SkipListTable<>());
+    }
+
+    @Override
+    public void close() {}
+
+    private static final class SkipListTable<K, V> implements Table<K, V> {
+        private final ConcurrentSkipListMap<K, V> map = new ConcurrentSkipListMap<>();
+
+        @Override public V get(K key) { return map.get(key); }
+        @Override public void put(K key, V value) { map.put(key, value); }
+        @Override public void remove(K key) { map.remove(key); }
+        @Override public K ceilingKey(K key) { return map.ceilingKey(key); }
+        @Override public K higherKey(K key) { return map.higherKey(key); }
+        @Override public K lowerKey(K key) { return map.lowerKey(key); }
+        @Override public Iterable<Map.Entry<K, V>> entries() { return map.entrySet(); }
+    }
+}
@@ -0,0 +1,731 @@
+package org.night.nighteconomy.database;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.AccountChange;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.AccountState;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.IdempotencyRecord;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.PayTxResult;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.RankingEntry;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.Transaction;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.TycoonStateRecord;
+import org.night.nighteconomy.jfr.PruneEvent;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjDoubleConsumer;
+
+/**
+ * {@link LedgerStore} on a MySQL, MariaDB or PostgreSQL server shared by several game servers.
+ * Connections come from a HikariCP pool. Every write is a relative UPDATE or a row-locked
+ * transaction, so nodes can write concurrently. The ranking is read straight from the accounts
+ * index, there is no shared ranking_cache table for nodes to fight over. Account writes append
+ * to account_changes in the same transaction, which the other nodes tail to refresh their caches.
+ * A failed query throws {@link LedgerException} rather than answering a default.
+ */
+public class JdbcLedgerStore implements LedgerStore {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final SqlDialect dialect;
+    private final DataSource dataSource;
+
+    private final String sqlCreateAccount;
+    private final String sqlUpsertLastTycoon;
+    private final String sqlDeleteTransactionsBatch;
+    private final String sqlDeleteChangesBatch;
+    private final String sqlInsertIdemKey;
+    private final String sqlDeleteIdemKeysBatch;
+
+    public JdbcLedgerStore(SqlDialect dialect, DataSource dataSource) throws SQLException {
+        this.dialect = dialect;
+        this.dataSource = dataSource;
+        this.sqlCreateAccount = dialect.insertIgnore("accounts",
+                "uuid, currency_id, username, balance, payment_enabled", "?,?,?,?,1");
+        this.sqlUpsertLastTycoon = dialect.upsert("currency_state",
+                "currency_id, tycoon_uuid, tycoon_username, updated_at", "?,?,?,?", "currency_id",
+                "tycoon_uuid", "tycoon_username", "updated_at");
+        this.sqlDeleteTransactionsBatch = dialect.deleteOldest("transactions");
+        this.sqlDeleteChangesBatch = dialect.deleteOldest("account_changes", "seq", "changed_at");
+        this.sqlInsertIdemKey = dialect.insertIgnore("idempotency_keys",
+                "idem_key, fingerprint, result, created_at", "?,?,?,?");
+        this.sqlDeleteIdemKeysBatch = dialect.deleteOldest("idempotency_keys", "idem_key", "created_at");
+        ensureSchema();
+    }
+
+    /** Opens a pooled store; {@code poolSize} is the maximum number of connections of this node. */
+    public static JdbcLedgerStore open(SqlDialect dialect, String jdbcUrl, String username, String password,
+                                       int poolSize) throws SQLException {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("NightEconomy-" + dialect.name().toLowerCase(Locale.ROOT));
+        config.setDriverClassName(dialect.getDriverClass());
+        config.setJdbcUrl(jdbcUrl);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(Math.max(1, poolSize));
+        config.setMinimumIdle(1);
+        config.setConnectionTimeout(10_000L);
+        if (dialect == SqlDialect.MYSQL) {
+            config.addDataSourceProperty("cachePrepStmts", "true");
+            config.addDataSourceProperty("prepStmtCacheSize", "250");
+            config.addDataSourceProperty("useServerPrepStmts", "true");
+        }
+
+        HikariDataSource pool;
+        try {
+            pool = new HikariDataSource(config);
+        } catch (RuntimeException e) {
+            throw new SQLException("Could not connect to " + jdbcUrl + ": " + e.getMessage(), e);
+        }
+        try {
+            return new JdbcLedgerStore(dialect, pool);
+        } catch (SQLException e) {
+            pool.close();
+            throw e;
+        }
+    }
+
+    public SqlDialect getDialect() {
+        return dialect;
+    }
+
+    private void ensureSchema() throws SQLException {
+        List<String> ddl = new ArrayList<>();
+        ddl.addAll(dialect.createTable("accounts", """
+                uuid VARCHAR(36) NOT NULL,
+                currency_id VARCHAR(64) NOT NULL,
+                username VARCHAR(64) NOT NULL,
+                balance DOUBLE PRECISION NOT NULL DEFAULT 0,
+                payment_enabled INT NOT NULL DEFAULT 1,
+                version BIGINT NOT NULL DEFAULT 0,
+                PRIMARY KEY (uuid, currency_id)
+                """, "idx_accounts_currency_balance(currency_id, balance DESC, uuid)",
+                "idx_accounts_currency_uuid(currency_id, uuid)"));
+        ddl.addAll(dialect.createTable("transactions", """
+                id %s,
+                currency_id VARCHAR(64) NOT NULL,
+                sender_uuid VARCHAR(36),
+                receiver_uuid VARCHAR(36),
+                amount DOUBLE PRECISION NOT NULL,
+                fee DOUBLE PRECISION NOT NULL DEFAULT 0,
+                type VARCHAR(32) NOT NULL,
+                description VARCHAR(255),
+                created_at %s NOT NULL
+                """.formatted(dialect.identityColumn(), dialect.timestampType()),
+                "idx_tx_sender_currency(sender_uuid, currency_id, id)",
+                "idx_tx_receiver_currency(receiver_uuid, currency_id, id)",
+                "idx_tx_created_at(created_at)"));
+        ddl.addAll(dialect.createTable("currency_state", """
+                currency_id VARCHAR(64) PRIMARY KEY,
+                tycoon_uuid VARCHAR(36),
+                tycoon_username VARCHAR(64),
+                updated_at %s NOT NULL
+                """.formatted(dialect.timestampType())));
+        ddl.addAll(dialect.createTable("account_changes", """
+                seq %s,
+                uuid VARCHAR(36) NOT NULL,
+                currency_id VARCHAR(64) NOT NULL,
+                balance DOUBLE PRECISION NOT NULL,
+                payment_enabled INT NOT NULL,
+                version BIGINT NOT NULL DEFAULT 0,
+                changed_at BIGINT NOT NULL
+                """.formatted(dialect.identityColumn()), "idx_changes_changed_at(changed_at)"));
+        ddl.addAll(dialect.createTable("idempotency_keys", """
+                idem_key VARCHAR(128) PRIMARY KEY,
+                fingerprint VARCHAR(255) NOT NULL,
+                result INT,
+                created_at BIGINT NOT NULL
+                """, "idx_idem_created_at(created_at)"));
+
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement()) {
+            for (String sql : ddl) st.execute(sql);
+            // Tables created before accounts were versioned.
+            addColumnIfMissing(c, st, "accounts", "version", "BIGINT NOT NULL DEFAULT 0");
+            addColumnIfMissing(c, st, "account_changes", "version", "BIGINT NOT NULL DEFAULT 0");
+            LOGGER.info("NightEconomy schema ready on {} ({})", c.getMetaData().getDatabaseProductName(),
+                    c.getMetaData().getDatabaseProductVersion());
+        } catch (SQLException e) {
+            LOGGER.error("Failed to initialize schema: ", e);
+            throw e;
+        }
+    }
+
+    private static void addColumnIfMissing(Connection c, Statement st, String table, String column, String type)
+            throws SQLException {
+        DatabaseMetaData meta = c.getMetaData();
+        String t = meta.storesUpperCaseIdentifiers() ? table.toUpperCase(Locale.ROOT) : table;
+        String col = meta.storesUpperCaseIdentifiers() ? column.toUpperCase(Locale.ROOT) : column;
+        try (ResultSet rs = meta.getColumns(c.getCatalog(), null, t, col)) {
+            if (rs.next()) return;
+        }
+        LOGGER.info("Adding column {}.{}", table, column);
+        st.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
+    }
+
+    @FunctionalInterface
+    private interface SqlWork<T> {
+        T run(Connection c) throws SQLException;
+    }
+
+    /**
+     * Runs {@code work} on a pooled connection in auto-commit mode. Errors are rethrown as
+     * {@link LedgerException}: a dropped connection must not read as an empty or zero answer.
+     */
+    private <T> T withConnection(String op, SqlWork<T> work) {
+        try (Connection c = dataSource.getConnection()) {
+            return work.run(c);
+        } catch (SQLException e) {
+            throw new LedgerException(op + " failed", e);
+        }
+    }
+
+    private int update(String op, String sql, Object... params) {
+        return withConnection(op, c -> {
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                bind(ps, params);
+                return ps.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Runs an UPDATE or INSERT of one account and, when it changed a row, appends the new state of
+     * the account to account_changes in the same transaction.
+     */
+    private AccountState mutate(String op, UUID playerUuid, String currencyId, String sql, Object... params) {
+        return mutate(op, null, null, playerUuid, currencyId, sql, params);
+    }
+
+    /** Also records {@code idempotencyKey} as succeeded in the transaction; null if the key exists. */
+    private AccountState mutate(String op, String idempotencyKey, String fingerprint, UUID playerUuid,
+                                String currencyId, String sql, Object... params) {
+        return withConnection(op, c -> {
+            c.setAutoCommit(false);
+            try {
+                if (idempotencyKey != null && !insertIdempotencyKey(c, idempotencyKey, fingerprint, true)) {
+                    c.rollback();
+                    return null;
+                }
+                int rows;
+                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                    bind(ps, params);
+                    rows = ps.executeUpdate();
+                }
+                AccountState state = rows > 0 ? appendChange(c, playerUuid.toString(), currencyId) : null;
+                if (state != null) {
+                    c.commit();
+                } else {
+                    c.rollback();
+                }
+                return state;
+            } catch (SQLException e) {
+                try { c.rollback(); } catch (SQLException ignore) {}
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        });
+    }
+
+    /**
+     * Reads the row just written (still locked by this transaction) and logs it. A plain INSERT ...
+     * VALUES, because InnoDB may reserve extra auto-increment values for INSERT ... SELECT and the
+     * resulting gaps would stall the tailing nodes.
+     */
+    private static AccountState appendChange(Connection c, String uuid, String currencyId) throws SQLException {
+        AccountState state = readState(c, uuid, currencyId);
+        if (state == null) return null;
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO account_changes (uuid, currency_id, balance, payment_enabled, version, changed_at) " +
+                        "VALUES (?,?,?,?,?,?)")) {
+            bind(ps, uuid, currencyId, state.balance, state.paymentEnabled ? 1 : 0, state.version,
+                    System.currentTimeMillis());
+            ps.executeUpdate();
+        }
+        return state;
+    }
+
+    private static AccountState readState(Connection c, String uuid, String currencyId) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT balance, payment_enabled, version FROM accounts WHERE uuid=? AND currency_id=?")) {
+            bind(ps, uuid, currencyId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new AccountState(rs.getDouble(1), rs.getInt(2) != 0, rs.getLong(3)) : null;
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement ps, Object... params) throws SQLException {
+        for (int i = 0; i < params.length; i++) ps.setObject(i + 1, params[i]);
+    }
+
+    private static Timestamp now() {
+        return new Timestamp(System.currentTimeMillis());
+    }
+
+    @Override
+    public boolean hasAccount(UUID playerUuid, String currencyId) {
+        return withConnection("hasAccount", c -> {
+            try (PreparedStatement ps = c.prepareStatement("SELECT 1 FROM accounts WHERE uuid=? AND currency_id=?")) {
+                bind(ps, playerUuid.toString(), currencyId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next();
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean createAccount(UUID playerUuid, String currencyId, String username, double defaultValue) {
+        return mutate("createAccount", playerUuid, currencyId, sqlCreateAccount,
+                playerUuid.toString(), currencyId, username, defaultValue) != null;
+    }
+
+    @Override
+    public double getBalance(UUID playerUuid, String currencyId) {
+        return withConnection("getBalance", c -> {
+            try (PreparedStatement ps = c.prepareStatement("SELECT balance FROM accounts WHERE uuid=? AND currency_id=?")) {
+                bind(ps, playerUuid.toString(), currencyId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getDouble(1) : 0.0;
+                }
+            }
+        });
+    }
+
+    @Override
+    public AccountState getAccountState(UUID playerUuid, String currencyId) {
+        return withConnection("getAccountState", c -> readState(c, playerUuid.toString(), currencyId));
+    }
+
+    @Override
+    public AccountState compareAndSetBalance(UUID playerUuid, String currencyId, long expectedVersion, double amount,
+                                             String idempotencyKey, String fingerprint) {
+        return mutate("compareAndSetBalance", idempotencyKey, fingerprint, playerUuid, currencyId,
+                "UPDATE accounts SET balance=?, version=version+1 WHERE uuid=? AND currency_id=? AND version=?",
+                amount, playerUuid.toString(), currencyId, expectedVersion);
+    }
+
+    @Override
+    public boolean setBalance(UUID playerUuid, String currencyId, double amount) {
+        return mutate("setBalance", playerUuid, currencyId, "UPDATE accounts SET balance=?, version=version+1 WHERE uuid=? AND currency_id=?",
+                amount, playerUuid.toString(), currencyId) != null;
+    }
+
+    @Override
+    public boolean addBalance(UUID playerUuid, String currencyId, double amount) {
+        return mutate("addBalance", playerUuid, currencyId, "UPDATE accounts SET balance = balance + ?, version=version+1 WHERE uuid=? AND currency_id=?",
+                amount, playerUuid.toString(), currencyId) != null;
+    }
+
+    @Override
+    public boolean subtractBalance(UUID playerUuid, String currencyId, double amount) {
+        return mutate("subtractBalance", playerUuid, currencyId, "UPDATE accounts SET balance = balance - ?, version=version+1 WHERE uuid=? AND currency_id=?",
+                amount, playerUuid.toString(), currencyId) != null;
+    }
+
+    @Override
+    public boolean resetPlayerBalance(UUID playerUuid, String currencyId, double defaultValue) {
+        return mutate("resetPlayerBalance", playerUuid, currencyId, "UPDATE accounts SET balance=?, version=version+1 WHERE uuid=? AND currency_id=?",
+                defaultValue, playerUuid.toString(), currencyId) != null;
+    }
+
+    @Override
+    public boolean isPaymentEnabled(UUID playerUuid, String currencyId) {
+        return withConnection("isPaymentEnabled", c -> {
+            try (PreparedStatement ps = c.prepareStatement("SELECT payment_enabled FROM accounts WHERE uuid=? AND currency_id=?")) {
+                bind(ps, playerUuid.toString(), currencyId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return !rs.next() || rs.getInt(1) != 0;
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean setPaymentEnabled(UUID playerUuid, String currencyId, boolean enabled) {
+        return mutate("setPaymentEnabled", playerUuid, currencyId, "UPDATE accounts SET payment_enabled=?, version=version+1 WHERE uuid=? AND currency_id=?",
+                enabled ? 1 : 0, playerUuid.toString(), currencyId) != null;
+    }
+
+    @Override
+    public void recordTransaction(String currencyId, UUID sender, UUID receiver, double amount, double fee,
+                                  String type, String description) {
+        withConnection("recordTransaction", c -> {
+            insertTransaction(c, currencyId, sender, receiver, amount, fee, type, description);
+            return null;
+        });
+    }
+
+    private static void insertTransaction(Connection c, String currencyId, UUID sender, UUID receiver, double amount,
+                                          double fee, String type, String description) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO transactions (currency_id, sender_uuid, receiver_uuid, amount, fee, type, description, created_at) " +
+                        "VALUES (?,?,?,?,?,?,?,?)")) {
+            ps.setString(1, currencyId);
+            ps.setString(2, sender != null ? sender.toString() : null);
+            ps.setString(3, receiver != null ? receiver.toString() : null);
+            ps.setDouble(4, amount);
+            ps.setDouble(5, fee);
+            ps.setString(6, type);
+            ps.setString(7, description);
+            ps.setTimestamp(8, now());
+            ps.executeUpdate();
+        }
+    }
+
+    @Override
+    public List<Transaction> getPlayerTransactions(UUID playerUuid, String currencyId, int limit) {
+        // Ids are assigned by the server, so they order rows written by different nodes even when clocks drift.
+        return withConnection("getPlayerTransactions", c -> {
+            List<Transaction> list = new ArrayList<>();
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT currency_id, sender_uuid, receiver_uuid, amount, fee, type, description, created_at " +
+                            "FROM transactions WHERE (sender_uuid=? OR receiver_uuid=?) AND currency_id=? " +
+                            "ORDER BY id DESC LIMIT ?")) {
+                String uid = playerUuid.toString();
+                bind(ps, uid, uid, currencyId, Math.max(1, limit));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        list.add(new Transaction(rs.getString(1), rs.getString(2), rs.getString(3), rs.getDouble(4),
+                                rs.getDouble(5), rs.getString(6), rs.getString(7), rs.getTimestamp(8)));
+                    }
+                }
+            }
+            return list;
+        });
+    }
+
+    @Override
+    public Map<String, Double> getAllPlayerBalances(UUID playerUuid) {
+        return withConnection("getAllPlayerBalances", c -> {
+            Map<String, Double> out = new HashMap<>();
+            try (PreparedStatement ps = c.prepareStatement("SELECT currency_id, balance FROM accounts WHERE uuid=?")) {
+                bind(ps, playerUuid.toString());
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) out.put(rs.getString(1), rs.getDouble(2));
+                }
+            }
+            return out;
+        });
+    }
+
+    @Override
+    public Map<String, Boolean> getAllPaymentEnabled(UUID playerUuid) {
+        return withConnection("getAllPaymentEnabled", c -> {
+            Map<String, Boolean> out = new HashMap<>();
+            try (PreparedStatement ps = c.prepareStatement("SELECT currency_id, payment_enabled FROM accounts WHERE uuid=?")) {
+                bind(ps, playerUuid.toString());
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) out.put(rs.getString(1), rs.getInt(2) != 0);
+                }
+            }
+            return out;
+        });
+    }
+
+    /**
+     * Locks both account rows in uuid order before touching them, so two nodes paying each other
+     * at the same time queue on the lock instead of deadlocking.
+     */
+    @Override
+    public PayTxResult payAtomic(UUID senderUuid, UUID receiverUuid, String currencyId, double amount, double fee,
+                                 String idempotencyKey, String fingerprint) {
+        try (Connection c = dataSource.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                PayTxResult result = idempotencyKey != null && !insertIdempotencyKey(c, idempotencyKey, fingerprint, true)
+                        ? new PayTxResult(PayTxResult.Status.DUPLICATE_KEY)
+                        : pay(c, senderUuid, receiverUuid, currencyId, amount, fee);
+                if (result.status == PayTxResult.Status.OK) {
+                    c.commit();
+                } else {
+                    c.rollback();
+                }
+                return result;
+            } catch (SQLException e) {
+                try { c.rollback(); } catch (SQLException ignore) {}
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            LOGGER.error("payAtomic SQL error", e);
+            return new PayTxResult(PayTxResult.Status.ERROR);
+        }
+    }
+
+    private PayTxResult pay(Connection c, UUID senderUuid, UUID receiverUuid, String currencyId,
+                                   double amount, double fee) throws SQLException {
+        String sender = senderUuid.toString();
+        String receiver = receiverUuid.toString();
+        Map<String, double[]> rows = new HashMap<>();
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT uuid, balance, payment_enabled FROM accounts WHERE currency_id=? AND uuid IN (?,?) " +
+                        "ORDER BY uuid FOR UPDATE")) {
+            bind(ps, currencyId, sender, receiver);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) rows.put(rs.getString(1), new double[]{rs.getDouble(2), rs.getInt(3)});
+            }
+        }
+
+        double[] to = rows.get(receiver);
+        double[] from = rows.get(sender);
+        if (to != null && to[1] == 0) return new PayTxResult(PayTxResult.Status.RECEIVER_BLOCKED);
+        if (from == null) return new PayTxResult(PayTxResult.Status.SENDER_NOT_FOUND);
+        if (to == null) return new PayTxResult(PayTxResult.Status.RECEIVER_NOT_FOUND);
+
+        double totalDebit = amount + Math.max(0.0, fee);
+        if (from[0] < totalDebit) return new PayTxResult(PayTxResult.Status.INSUFFICIENT_FUNDS);
+
+        try (PreparedStatement ps = c.prepareStatement(
+                "UPDATE accounts SET balance = balance + ?, version=version+1 WHERE uuid=? AND currency_id=?")) {
+            bind(ps, -totalDebit, sender, currencyId);
+            ps.addBatch();
+            bind(ps, amount, receiver, currencyId);
+            ps.addBatch();
+            ps.executeBatch();
+        }
+        AccountState senderState = appendChange(c, sender, currencyId);
+        AccountState receiverState = receiver.equals(sender) ? senderState : appendChange(c, receiver, currencyId);
+        insertTransaction(c, currencyId, senderUuid, receiverUuid, amount, fee, "PAY", "Player payment");
+        return new PayTxResult(PayTxResult.Status.OK, senderState, receiverState);
+    }
+
+    /** Server-side ranking straight from the accounts index; positions follow the ORDER BY. */
+    @Override
+    public List<RankingEntry> getTopPlayers(String currencyId, int limit) {
+        return withConnection("getTopPlayers", c -> {
+            List<RankingEntry> list = new ArrayList<>();
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT uuid, username, balance FROM accounts WHERE currency_id=? " +
+                            "ORDER BY balance DESC, uuid ASC LIMIT ?")) {
+                bind(ps, currencyId, Math.max(1, limit));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        list.add(new RankingEntry(rs.getString(1), rs.getString(2), rs.getDouble(3), list.size() + 1));
+                    }
+                }
+            }
+            return list;
+        });
+    }
+
+    /** Counts the accounts ranked above the player, with the same tie-break as {@link #getTopPlayers}. */
+    @Override
+    public int getPlayerPosition(UUID playerUuid, String currencyId) {
+        return withConnection("getPlayerPosition", c -> {
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT COUNT(a.uuid) + 1 FROM accounts me LEFT JOIN accounts a ON a.currency_id = me.currency_id " +
+                            "AND (a.balance > me.balance OR (a.balance = me.balance AND a.uuid < me.uuid)) " +
+                            "WHERE me.uuid=? AND me.currency_id=? GROUP BY me.uuid")) {
+                bind(ps, playerUuid.toString(), currencyId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getInt(1) : -1;
+                }
+            }
+        });
+    }
+
+    @Override
+    public String getTopPlayerUuid(String currencyId) {
+        RankingEntry top = getTopAccount(currencyId);
+        return top != null ? top.uuid : null;
+    }
+
+    @Override
+    public RankingEntry getTopPlayerInfo(String currencyId) {
+        RankingEntry top = getTopAccount(currencyId);
+        return top != null ? new RankingEntry(top.uuid, top.username, 0.0, 1) : null;
+    }
+
+    @Override
+    public RankingEntry getTopAccount(String currencyId) {
+        List<RankingEntry> top = getTopPlayers(currencyId, 1);
+        return top.isEmpty() ? null : top.get(0);
+    }
+
+    @Override
+    public String scanBalances(String currencyId, String afterUuid, int limit, ObjDoubleConsumer<String> sink) {
+        return withConnection("scanBalances", c -> {
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT uuid, balance FROM accounts WHERE currency_id=? AND uuid > ? ORDER BY uuid ASC LIMIT ?")) {
+                bind(ps, currencyId, afterUuid != null ? afterUuid : "", Math.max(1, limit));
+                String last = null;
+                int rows = 0;
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        last = rs.getString(1);
+                        sink.accept(last, rs.getDouble(2));
+                        rows++;
+                    }
+                }
+                return rows >= Math.max(1, limit) ? last : null;
+            }
+        });
+    }
+
+    /** Nothing to rebuild: rankings are queried live from the accounts. */
+    @Override
+    public void updateRankingCache(String currencyId) {
+    }
+
+    @Override
+    public String getLastTycoonUuid(String currencyId) {
+        TycoonStateRecord info = getLastTycoonInfo(currencyId);
+        return info != null ? info.uuid : null;
+    }
+
+    @Override
+    public TycoonStateRecord getLastTycoonInfo(String currencyId) {
+        return withConnection("getLastTycoonInfo", c -> {
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT tycoon_uuid, tycoon_username FROM currency_state WHERE currency_id=?")) {
+                bind(ps, currencyId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? new TycoonStateRecord(rs.getString(1), rs.getString(2)) : null;
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean upsertLastTycoon(String currencyId, String tycoonUuid, String tycoonUsername) {
+        return update("upsertLastTycoon", sqlUpsertLastTycoon, currencyId, tycoonUuid, tycoonUsername, now()) > 0;
+    }
+
+    @Override
+    public long findPruneCutoff(double retentionDays) {
+        long cutoffMillis = System.currentTimeMillis()
+                - (long) Math.ceil(Math.max(0.0, retentionDays) * TimeUnit.DAYS.toMillis(1));
+        return withConnection("findPruneCutoff", c -> {
+            try (PreparedStatement ps = c.prepareStatement("SELECT MIN(id) FROM transactions WHERE created_at >= ?")) {
+                ps.setTimestamp(1, new Timestamp(cutoffMillis));
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        long id = rs.getLong(1);
+                        if (!rs.wasNull()) return id;
+                    }
+                }
+            }
+            try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("SELECT MAX(id) FROM transactions")) {
+                if (rs.next()) {
+                    long max = rs.getLong(1);
+                    return rs.wasNull() ? 0L : max + 1;
+                }
+            }
+            return 0L;
+        });
+    }
+
+    @Override
+    public int deleteTransactionsBefore(long cutoffId, int limit) {
+        PruneEvent event = new PruneEvent();
+        event.begin();
+        int rows = update("deleteTransactionsBefore", sqlDeleteTransactionsBatch, cutoffId, Math.max(1, limit));
+        event.end();
+        if (rows >= 0 && event.shouldCommit()) {
+            event.cutoffId = cutoffId;
+            event.limit = limit;
+            event.rows = rows;
+            event.commit();
+        }
+        return rows;
+    }
+
+    @Override
+    public long latestChangeSeq() {
+        return withConnection("latestChangeSeq", c -> {
+            try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("SELECT MAX(seq) FROM account_changes")) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            }
+        });
+    }
+
+    @Override
+    public List<AccountChange> tailChanges(long afterSeq, int limit) {
+        return withConnection("tailChanges", c -> {
+            List<AccountChange> list = new ArrayList<>();
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT seq, uuid, currency_id, balance, payment_enabled, version, changed_at FROM account_changes " +
+                            "WHERE seq > ? ORDER BY seq ASC LIMIT ?")) {
+                bind(ps, afterSeq, Math.max(1, limit));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        list.add(new AccountChange(rs.getLong(1), rs.getString(2), rs.getString(3),
+                                rs.getDouble(4), rs.getInt(5) != 0, rs.getLong(6), rs.getLong(7)));
+                    }
+                }
+            }
+            return list;
+        });
+    }
+
+    @Override
+    public int deleteChangesBefore(long olderThanMillis, int limit) {
+        return update("deleteChangesBefore", sqlDeleteChangesBatch, olderThanMillis, Math.max(1, limit));
+    }
+
+    @Override
+    public boolean recordIdempotencyKey(String key, String fingerprint, boolean result) {
+        return withConnection("recordIdempotencyKey", c -> insertIdempotencyKey(c, key, fingerprint, result));
+    }
+
+    private boolean insertIdempotencyKey(Connection c, String key, String fingerprint, boolean result) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(sqlInsertIdemKey)) {
+            bind(ps, key, fingerprint, result ? 1 : 0, System.currentTimeMillis());
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public IdempotencyRecord getIdempotencyKey(String key) {
+        return withConnection("getIdempotencyKey", c -> {
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT fingerprint, result, created_at FROM idempotency_keys WHERE idem_key=?")) {
+                bind(ps, key);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) return null;
+                    int result = rs.getInt(2);
+                    Boolean done = rs.wasNull() ? null : result != 0;
+                    return new IdempotencyRecord(rs.getString(1), done, rs.getLong(3));
+                }
+            }
+        });
+    }
+
+    @Override
+    public int deleteIdempotencyKeysBefore(long olderThanMillis, int limit) {
+        return update("deleteIdempotencyKeysBefore", sqlDeleteIdemKeysBatch, olderThanMillis, Math.max(1, limit));
+    }
+
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (dataSource instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                LOGGER.warn("Error closing connection pool", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package org.night.nighteconomy.database;
+
+/**
+ * The store could not answer because the database failed, as opposed to an answer such as "no
+ * such account" or "version moved on". Callers must not treat it as either.
+ */
+public class LedgerException extends RuntimeException {
+    public LedgerException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,175 @@
+package org.night.nighteconomy.database;
+
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.AccountChange;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.AccountState;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.IdempotencyRecord;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.PayTxResult;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.RankingEntry;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.Transaction;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.TycoonStateRecord;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.ObjDoubleConsumer;
+
+/**
+ * Storage backend of the economy: accounts, balances, atomic payments, the transaction log,
+ * the ranking cache and tycoon state. Implementations are not thread-safe; every call is made
+ * from the database executor. Selected with {@code storage.backend} in Settings.toml, see
+ * {@link LedgerStores#open}. A store whose database fails throws {@link LedgerException} rather
+ * than answering a default; only the batch deletes report an error as -1.
+ */
+public interface LedgerStore extends AutoCloseable {
+
+    boolean hasAccount(UUID playerUuid, String currencyId);
+
+    /** Creates the account if it does not exist; true only when a new row was written. */
+    boolean createAccount(UUID playerUuid, String currencyId, String username, double defaultValue);
+
+    /** Balance of the account, or 0 when it does not exist. */
+    double getBalance(UUID playerUuid, String currencyId);
+
+    /**
+     * Balance, payment flag and version of the account, or null when it does not exist.
+     * Throws {@link LedgerException} when the database fails.
+     */
+    AccountState getAccountState(UUID playerUuid, String currencyId);
+
+    /**
+     * Sets the balance only if the account is still at {@code expectedVersion}. Returns the new
+     * state, or null when the version moved on (or the account does not exist); throws
+     * {@link LedgerException} when the database fails.
+     */
+    default AccountState compareAndSetBalance(UUID playerUuid, String currencyId, long expectedVersion, double amount) {
+        return compareAndSetBalance(playerUuid, currencyId, expectedVersion, amount, null, null);
+    }
+
+    /**
+     * Compare-and-set that also records {@code idempotencyKey} as succeeded, in the same transaction
+     * as the balance. Returns null as well when the key already exists; nothing is written then.
+     */
+    AccountState compareAndSetBalance(UUID playerUuid, String currencyId, long expectedVersion, double amount,
+                                      String idempotencyKey, String fingerprint);
+
+    /** Every write below bumps the account version. */
+    boolean setBalance(UUID playerUuid, String currencyId, double amount);
+
+    boolean addBalance(UUID playerUuid, String currencyId, double amount);
+
+    /** Subtracts without a funds check; callers validate the balance first. */
+    boolean subtractBalance(UUID playerUuid, String currencyId, double amount);
+
+    boolean resetPlayerBalance(UUID playerUuid, String currencyId, double defaultValue);
+
+    /** True for unknown accounts, like a freshly created one. */
+    boolean isPaymentEnabled(UUID playerUuid, String currencyId);
+
+    boolean setPaymentEnabled(UUID playerUuid, String currencyId, boolean enabled);
+
+    void recordTransaction(String currencyId, UUID sender, UUID receiver, double amount, double fee,
+                           String type, String description);
+
+    /** Newest first. */
+    List<Transaction> getPlayerTransactions(UUID playerUuid, String currencyId, int limit);
+
+    Map<String, Double> getAllPlayerBalances(UUID playerUuid);
+
+    Map<String, Boolean> getAllPaymentEnabled(UUID playerUuid);
+
+    /** Debits {@code amount + fee} from the sender and credits {@code amount} to the receiver, all or nothing. */
+    default PayTxResult payAtomic(UUID senderUuid, UUID receiverUuid, String currencyId, double amount, double fee) {
+        return payAtomic(senderUuid, receiverUuid, currencyId, amount, fee, null, null);
+    }
+
+    /**
+     * {@link #payAtomic(UUID, UUID, String, double, double)} that also records {@code idempotencyKey}
+     * as succeeded in the same transaction; {@code DUPLICATE_KEY} when the key already exists.
+     */
+    PayTxResult payAtomic(UUID senderUuid, UUID receiverUuid, String currencyId, double amount, double fee,
+                          String idempotencyKey, String fingerprint);
+
+    /** Reads from the ranking cache built by {@link #updateRankingCache(String)}. */
+    List<RankingEntry> getTopPlayers(String currencyId, int limit);
+
+    /** 1-based position in the ranking cache, or -1. */
+    int getPlayerPosition(UUID playerUuid, String currencyId);
+
+    String getTopPlayerUuid(String currencyId);
+
+    RankingEntry getTopPlayerInfo(String currencyId);
+
+    /** Richest account straight from the accounts, ordered like the ranking rebuild. */
+    RankingEntry getTopAccount(String currencyId);
+
+    /**
+     * Feeds at most {@code limit} accounts of the currency with a uuid above {@code afterUuid} (null
+     * to start) to {@code sink}, in uuid order. Returns the last uuid fed when the chunk was full, or
+     * null once the end was reached.
+     */
+    String scanBalances(String currencyId, String afterUuid, int limit, ObjDoubleConsumer<String> sink);
+
+    /** Rebuilds the ranking cache of one currency: balance descending, uuid ascending. */
+    void updateRankingCache(String currencyId);
+
+    String getLastTycoonUuid(String currencyId);
+
+    TycoonStateRecord getLastTycoonInfo(String currencyId);
+
+    boolean upsertLastTycoon(String currencyId, String tycoonUuid, String tycoonUsername);
+
+    /**
+     * First transaction id to keep for the given retention: every lower id is older.
+     * Returns 0 when there is nothing to prune.
+     */
+    long findPruneCutoff(double retentionDays);
+
+    /** Deletes at most {@code limit} transactions with id below {@code cutoffId}; -1 on error. */
+    int deleteTransactionsBefore(long cutoffId, int limit);
+
+    /** Highest sequence number in the account_changes log, 0 when it is empty. */
+    long latestChangeSeq();
+
+    /**
+     * Changes with a sequence number above {@code afterSeq}, ascending, at most {@code limit}.
+     * Every account insert or balance / payment flag update appends one, in the same transaction.
+     */
+    List<AccountChange> tailChanges(long afterSeq, int limit);
+
+    /** Deletes at most {@code limit} changes written before {@code olderThanMillis}; -1 on error. */
+    int deleteChangesBefore(long olderThanMillis, int limit);
+
+    /**
+     * Records the outcome of an operation that changed nothing (e.g. it was declined). False when the
+     * key already exists. Throws {@link LedgerException} when the database fails.
+     */
+    boolean recordIdempotencyKey(String key, String fingerprint, boolean result);
+
+    /** Record of a used key, or null if it was never used (or already pruned). */
+    IdempotencyRecord getIdempotencyKey(String key);
+
+    /** Deletes at most {@code limit} keys recorded before {@code olderThanMillis}; -1 on error. */
+    int deleteIdempotencyKeysBefore(long olderThanMillis, int limit);
+
+    /** Whether other server processes may write to the same store, so local caches can go stale. */
+    default boolean isShared() {
+        return false;
+    }
+
+    /** Whether {@link #backupTo(Path)} is implemented. */
+    default boolean supportsBackups() {
+        return false;
+    }
+
+    /**
+     * Writes a consistent copy of the store to {@code target}. May be called off the database
+     * executor. Backends without backup support throw {@link UnsupportedOperationException}.
+     */
+    default void backupTo(Path target) throws Exception {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support backups");
+    }
+
+    @Override
+    void close();
+}
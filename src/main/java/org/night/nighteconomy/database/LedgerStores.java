@@ -0,0 +1,50 @@
+package org.night.nighteconomy.database;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.night.nighteconomy.config.SettingsManager;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Locale;
+
+/** Opens the {@link LedgerStore} selected by {@code storage.backend}. */
+public final class LedgerStores {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private LedgerStores() {}
+
+    public static LedgerStore open(SettingsManager settings, Path dataDir) throws SQLException {
+        return open(settings.getString("storage.backend"), settings, dataDir);
+    }
+
+    public static LedgerStore open(String name, SettingsManager settings, Path dataDir) throws SQLException {
+        String backend = name.trim().toLowerCase(Locale.ROOT);
+        LOGGER.info("Storage backend: {}", backend);
+        switch (backend) {
+            case "memory":
+                LOGGER.warn("Storage backend 'memory' keeps balances only until the server stops!");
+                return new InMemoryLedgerStore();
+            case "mvstore":
+                return MvStoreLedgerStore.open(dataDir.resolve("nighteconomy.mv.db"), settings.getInt("storage.mvstore-cache-mb"));
+            case "sqlite":
+                return openSqlite(dataDir.resolve("nighteconomy.db"));
+            case "mysql", "mariadb", "postgresql", "postgres":
+                return JdbcLedgerStore.open(SqlDialect.fromBackend(backend),
+                        settings.getString("storage.jdbc-url"),
+                        settings.getString("storage.username"),
+                        settings.getString("storage.password"),
+                        settings.getInt("storage.pool-size"));
+            default:
+                LOGGER.error("Unknown storage.backend '{}', falling back to sqlite", backend);
+                return openSqlite(dataDir.resolve("nighteconomy.db"));
+        }
+    }
+
+    private static LedgerStore openSqlite(Path file) throws SQLException {
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file);
+        return new MultiCurrencyDatabaseManager(conn);
+    }
+}
@@ -0,0 +1,507 @@
+package org.night.nighteconomy.database;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.AccountChange;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.AccountState;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.IdempotencyRecord;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.PayTxResult;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.RankingEntry;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.Transaction;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.TycoonStateRecord;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjDoubleConsumer;
+
+/**
+ * {@link LedgerStore} over ordered key-value tables, shared by the in-memory and MVStore backends.
+ * Values are {@code Object[]} of strings, numbers and booleans so any map engine can persist them.
+ * <ul>
+ *   <li>accounts: {@code uuid|currency} to {@code [username, balance, paymentEnabled, version]}</li>
+ *   <li>transactions: id to {@code [currency, sender, receiver, amount, fee, type, description, createdAtMillis]}</li>
+ *   <li>tx_by_player: {@code uuid|currency|id} to id, for the per-player history</li>
+ *   <li>currency_state: currency to {@code [tycoonUuid, tycoonUsername]}</li>
+ *   <li>account_changes: seq to {@code [uuid, currency, balance, paymentEnabled, changedAtMillis, version]}</li>
+ *   <li>idempotency_keys: key to {@code [fingerprint, result, createdAtMillis]}, result 0 or 1 (-1 from older versions)</li>
+ * </ul>
+ * Rows written before accounts were versioned have no version element and read as version 0.
+ * The ranking cache is kept in memory and rebuilt from the accounts. There is no balance index:
+ * a ranking rebuild and {@link #getTopAccount} read every account row of every currency, so their
+ * cost grows with the whole table. Large economies belong on {@code sqlite} or a JDBC backend.
+ */
+abstract class MapLedgerStore implements LedgerStore {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final char SEP = '|';
+
+    /** The few ordered-map operations the store needs. Missing keys give null. */
+    interface Table<K, V> {
+        V get(K key);
+        void put(K key, V value);
+        void remove(K key);
+        K ceilingKey(K key);
+        K higherKey(K key);
+        K lowerKey(K key);
+        Iterable<Map.Entry<K, V>> entries();
+    }
+
+    private final Table<String, Object[]> accounts;
+    private final Table<Long, Object[]> transactions;
+    private final Table<String, Long> txByPlayer;
+    private final Table<String, Object[]> currencyState;
+    private final Table<Long, Object[]> changes;
+    private final Table<String, Object[]> idempotencyKeys;
+    private final Map<String, Ranking> rankings = new ConcurrentHashMap<>();
+    private long nextTransactionId;
+    private long nextChangeSeq;
+
+    protected MapLedgerStore(Table<String, Object[]> accounts,
+                             Table<Long, Object[]> transactions,
+                             Table<String, Long> txByPlayer,
+                             Table<String, Object[]> currencyState,
+                             Table<Long, Object[]> changes,
+                             Table<String, Object[]> idempotencyKeys) {
+        this.accounts = accounts;
+        this.transactions = transactions;
+        this.txByPlayer = txByPlayer;
+        this.currencyState = currencyState;
+        this.changes = changes;
+        this.idempotencyKeys = idempotencyKeys;
+        Long last = transactions.lowerKey(Long.MAX_VALUE);
+        this.nextTransactionId = last != null ? last + 1 : 1L;
+        Long lastChange = changes.lowerKey(Long.MAX_VALUE);
+        this.nextChangeSeq = lastChange != null ? lastChange + 1 : 1L;
+    }
+
+    /** Makes the writes of the current operation durable. */
+    protected void commit() {}
+
+    /** Discards the writes of the current operation. */
+    protected void rollback() {}
+
+    private static String accountKey(UUID playerUuid, String currencyId) {
+        return playerUuid.toString() + SEP + currencyId;
+    }
+
+    private Object[] account(UUID playerUuid, String currencyId) {
+        return accounts.get(accountKey(playerUuid, currencyId));
+    }
+
+    private boolean update(UUID playerUuid, String currencyId, int field, Object value) {
+        String key = accountKey(playerUuid, currencyId);
+        Object[] a = accounts.get(key);
+        if (a == null) return false;
+        Object[] next = {a[0], a[1], a[2], version(a) + 1};
+        next[field] = value;
+        accounts.put(key, next);
+        appendChange(key, next);
+        return true;
+    }
+
+    private static long version(Object[] row) {
+        return row.length > 3 ? ((Number) row[3]).longValue() : 0L;
+    }
+
+    private static AccountState state(Object[] account) {
+        return new AccountState(((Number) account[1]).doubleValue(), Boolean.TRUE.equals(account[2]), version(account));
+    }
+
+    private void appendChange(String accountKey, Object[] account) {
+        int sep = accountKey.indexOf(SEP);
+        changes.put(nextChangeSeq++, new Object[]{accountKey.substring(0, sep), accountKey.substring(sep + 1),
+                account[1], account[2], System.currentTimeMillis(), version(account)});
+    }
+
+    private boolean write(Runnable body) {
+        try {
+            body.run();
+            commit();
+            return true;
+        } catch (RuntimeException e) {
+            rollback();
+            LOGGER.error("{} write error", getClass().getSimpleName(), e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean hasAccount(UUID playerUuid, String currencyId) {
+        return account(playerUuid, currencyId) != null;
+    }
+
+    @Override
+    public boolean createAccount(UUID playerUuid, String currencyId, String username, double defaultValue) {
+        if (hasAccount(playerUuid, currencyId)) return false;
+        return write(() -> {
+            String key = accountKey(playerUuid, currencyId);
+            Object[] a = {username, defaultValue, Boolean.TRUE, 0L};
+            accounts.put(key, a);
+            appendChange(key, a);
+        });
+    }
+
+    @Override
+    public double getBalance(UUID playerUuid, String currencyId) {
+        Object[] a = account(playerUuid, currencyId);
+        return a != null ? ((Number) a[1]).doubleValue() : 0.0;
+    }
+
+    @Override
+    public AccountState getAccountState(UUID playerUuid, String currencyId) {
+        Object[] a = account(playerUuid, currencyId);
+        return a != null ? state(a) : null;
+    }
+
+    @Override
+    public AccountState compareAndSetBalance(UUID playerUuid, String currencyId, long expectedVersion, double amount,
+                                             String idempotencyKey, String fingerprint) {
+        Object[] a = account(playerUuid, currencyId);
+        if (a == null || version(a) != expectedVersion) return null;
+        if (idempotencyKey != null && idempotencyKeys.get(idempotencyKey) != null) return null;
+        boolean ok = write(() -> {
+            if (idempotencyKey != null) putIdempotencyKey(idempotencyKey, fingerprint, true);
+            update(playerUuid, currencyId, 1, amount);
+        });
+        if (!ok) throw new LedgerException("compareAndSetBalance failed", null);
+        return getAccountState(playerUuid, currencyId);
+    }
+
+    @Override
+    public boolean setBalance(UUID playerUuid, String currencyId, double amount) {
+        if (!hasAccount(playerUuid, currencyId)) return false;
+        return write(() -> update(playerUuid, currencyId, 1, amount));
+    }
+
+    @Override
+    public boolean addBalance(UUID playerUuid, String currencyId, double amount) {
+        if (!hasAccount(playerUuid, currencyId)) return false;
+        return write(() -> update(playerUuid, currencyId, 1, getBalance(playerUuid, currencyId) + amount));
+    }
+
+    @Override
+    public boolean subtractBalance(UUID playerUuid, String currencyId, double amount) {
+        return addBalance(playerUuid, currencyId, -amount);
+    }
+
+    @Override
+    public boolean resetPlayerBalance(UUID playerUuid, String currencyId, double defaultValue) {
+        return setBalance(playerUuid, currencyId, defaultValue);
+    }
+
+    @Override
+    public boolean isPaymentEnabled(UUID playerUuid, String currencyId) {
+        Object[] a = account(playerUuid, currencyId);
+        return a == null || Boolean.TRUE.equals(a[2]);
+    }
+
+    @Override
+    public boolean setPaymentEnabled(UUID playerUuid, String currencyId, boolean enabled) {
+        if (!hasAccount(playerUuid, currencyId)) return false;
+        return write(() -> update(playerUuid, currencyId, 2, enabled));
+    }
+
+    @Override
+    public void recordTransaction(String currencyId, UUID sender, UUID receiver, double amount, double fee,
+                                  String type, String description) {
+        write(() -> insertTransaction(currencyId, sender, receiver, amount, fee, type, description));
+    }
+
+    private void insertTransaction(String currencyId, UUID sender, UUID receiver, double amount, double fee,
+                                   String type, String description) {
+        long id = nextTransactionId++;
+        String s = sender != null ? sender.toString() : null;
+        String r = receiver != null ? receiver.toString() : null;
+        transactions.put(id, new Object[]{currencyId, s, r, amount, fee, type, description, System.currentTimeMillis()});
+        if (s != null) txByPlayer.put(txKey(s, currencyId, id), id);
+        if (r != null && !r.equals(s)) txByPlayer.put(txKey(r, currencyId, id), id);
+    }
+
+    private static String txKey(String uuid, String currencyId, long id) {
+        return uuid + SEP + currencyId + SEP + String.format("%019d", id);
+    }
+
+    @Override
+    public List<Transaction> getPlayerTransactions(UUID playerUuid, String currencyId, int limit) {
+        List<Transaction> list = new ArrayList<>();
+        String prefix = playerUuid.toString() + SEP + currencyId + SEP;
+        String key = txByPlayer.lowerKey(prefix + '\uffff');
+        while (key != null && key.startsWith(prefix) && list.size() < Math.max(1, limit)) {
+            Object[] t = transactions.get(txByPlayer.get(key));
+            if (t != null) {
+                list.add(new Transaction((String) t[0], (String) t[1], (String) t[2],
+                        ((Number) t[3]).doubleValue(), ((Number) t[4]).doubleValue(), (String) t[5], (String) t[6],
+                        new Timestamp(((Number) t[7]).longValue())));
+            }
+            key = txByPlayer.lowerKey(key);
+        }
+        return list;
+    }
+
+    private Map<String, Object[]> accountsOf(UUID playerUuid) {
+        Map<String, Object[]> out = new HashMap<>();
+        String prefix = playerUuid.toString() + SEP;
+        String key = accounts.ceilingKey(prefix);
+        while (key != null && key.startsWith(prefix)) {
+            out.put(key.substring(prefix.length()), accounts.get(key));
+            key = accounts.higherKey(key);
+        }
+        return out;
+    }
+
+    @Override
+    public Map<String, Double> getAllPlayerBalances(UUID playerUuid) {
+        Map<String, Double> out = new HashMap<>();
+        accountsOf(playerUuid).forEach((currency, a) -> out.put(currency, ((Number) a[1]).doubleValue()));
+        return out;
+    }
+
+    @Override
+    public Map<String, Boolean> getAllPaymentEnabled(UUID playerUuid) {
+        Map<String, Boolean> out = new HashMap<>();
+        accountsOf(playerUuid).forEach((currency, a) -> out.put(currency, Boolean.TRUE.equals(a[2])));
+        return out;
+    }
+
+    @Override
+    public PayTxResult payAtomic(UUID senderUuid, UUID receiverUuid, String currencyId, double amount, double fee,
+                                 String idempotencyKey, String fingerprint) {
+        if (idempotencyKey != null && idempotencyKeys.get(idempotencyKey) != null) {
+            return new PayTxResult(PayTxResult.Status.DUPLICATE_KEY);
+        }
+        if (!isPaymentEnabled(receiverUuid, currencyId)) return new PayTxResult(PayTxResult.Status.RECEIVER_BLOCKED);
+        if (!hasAccount(senderUuid, currencyId)) return new PayTxResult(PayTxResult.Status.SENDER_NOT_FOUND);
+        if (!hasAccount(receiverUuid, currencyId)) return new PayTxResult(PayTxResult.Status.RECEIVER_NOT_FOUND);
+
+        double totalDebit = amount + Math.max(0.0, fee);
+        double senderBal = getBalance(senderUuid, currencyId);
+        if (senderBal < totalDebit) return new PayTxResult(PayTxResult.Status.INSUFFICIENT_FUNDS);
+
+        boolean ok = write(() -> {
+            if (idempotencyKey != null) putIdempotencyKey(idempotencyKey, fingerprint, true);
+            update(senderUuid, currencyId, 1, senderBal - totalDebit);
+            update(receiverUuid, currencyId, 1, getBalance(receiverUuid, currencyId) + amount);
+            insertTransaction(currencyId, senderUuid, receiverUuid, amount, fee, "PAY", "Player payment");
+        });
+        if (!ok) return new PayTxResult(PayTxResult.Status.ERROR);
+        return new PayTxResult(PayTxResult.Status.OK, getAccountState(senderUuid, currencyId),
+                getAccountState(receiverUuid, currencyId));
+    }
+
+    private List<RankingEntry> sortedAccounts(String currencyId) {
+        List<RankingEntry> entries = new ArrayList<>();
+        String suffix = SEP + currencyId;
+        for (Map.Entry<String, Object[]> e : accounts.entries()) {
+            String key = e.getKey();
+            if (!key.endsWith(suffix) || key.length() - suffix.length() != 36) continue;
+            Object[] a = e.getValue();
+            entries.add(new RankingEntry(key.substring(0, 36), (String) a[0], ((Number) a[1]).doubleValue(), 0));
+        }
+        entries.sort(Comparator.comparingDouble((RankingEntry r) -> r.balance).reversed()
+                .thenComparing(r -> r.uuid));
+        return entries;
+    }
+
+    @Override
+    public void updateRankingCache(String currencyId) {
+        List<RankingEntry> sorted = sortedAccounts(currencyId);
+        List<RankingEntry> ranked = new ArrayList<>(sorted.size());
+        Map<String, Integer> positions = new HashMap<>(sorted.size() * 2);
+        for (int i = 0; i < sorted.size(); i++) {
+            RankingEntry e = sorted.get(i);
+            ranked.add(new RankingEntry(e.uuid, e.username, e.balance, i + 1));
+            positions.put(e.uuid, i + 1);
+        }
+        rankings.put(currencyId, new Ranking(Collections.unmodifiableList(ranked), positions));
+    }
+
+    @Override
+    public List<RankingEntry> getTopPlayers(String currencyId, int limit) {
+        Ranking r = rankings.get(currencyId);
+        if (r == null) return new ArrayList<>();
+        return new ArrayList<>(r.entries.subList(0, Math.min(Math.max(1, limit), r.entries.size())));
+    }
+
+    @Override
+    public int getPlayerPosition(UUID playerUuid, String currencyId) {
+        Ranking r = rankings.get(currencyId);
+        Integer pos = r != null ? r.positions.get(playerUuid.toString()) : null;
+        return pos != null ? pos : -1;
+    }
+
+    @Override
+    public String getTopPlayerUuid(String currencyId) {
+        RankingEntry top = getTopPlayerInfo(currencyId);
+        return top != null ? top.uuid : null;
+    }
+
+    @Override
+    public RankingEntry getTopPlayerInfo(String currencyId) {
+        Ranking r = rankings.get(currencyId);
+        if (r == null || r.entries.isEmpty()) return null;
+        RankingEntry top = r.entries.get(0);
+        return new RankingEntry(top.uuid, top.username, 0.0, 1);
+    }
+
+    @Override
+    public String scanBalances(String currencyId, String afterUuid, int limit, ObjDoubleConsumer<String> sink) {
+        String suffix = SEP + currencyId;
+        int rows = 0;
+        String last = null;
+        String key = afterUuid != null ? accounts.higherKey(afterUuid + suffix) : accounts.ceilingKey("");
+        for (; key != null && rows < Math.max(1, limit); key = accounts.higherKey(key)) {
+            if (!key.endsWith(suffix) || key.length() - suffix.length() != 36) continue;
+            last = key.substring(0, 36);
+            sink.accept(last, ((Number) accounts.get(key)[1]).doubleValue());
+            rows++;
+        }
+        return rows >= Math.max(1, limit) ? last : null;
+    }
+
+    @Override
+    public RankingEntry getTopAccount(String currencyId) {
+        RankingEntry best = null;
+        String suffix = SEP + currencyId;
+        for (Map.Entry<String, Object[]> e : accounts.entries()) {
+            String key = e.getKey();
+            if (!key.endsWith(suffix) || key.length() - suffix.length() != 36) continue;
+            double balance = ((Number) e.getValue()[1]).doubleValue();
+            String uuid = key.substring(0, 36);
+            if (best == null || balance > best.balance || (balance == best.balance && uuid.compareTo(best.uuid) < 0)) {
+                best = new RankingEntry(uuid, (String) e.getValue()[0], balance, 1);
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public String getLastTycoonUuid(String currencyId) {
+        TycoonStateRecord r = getLastTycoonInfo(currencyId);
+        return r != null ? r.uuid : null;
+    }
+
+    @Override
+    public TycoonStateRecord getLastTycoonInfo(String currencyId) {
+        Object[] s = currencyState.get(currencyId);
+        return s != null ? new TycoonStateRecord((String) s[0], (String) s[1]) : null;
+    }
+
+    @Override
+    public boolean upsertLastTycoon(String currencyId, String tycoonUuid, String tycoonUsername) {
+        return write(() -> currencyState.put(currencyId, new Object[]{tycoonUuid, tycoonUsername}));
+    }
+
+    @Override
+    public long findPruneCutoff(double retentionDays) {
+        long cutoffMillis = System.currentTimeMillis()
+                - (long) Math.ceil(Math.max(0.0, retentionDays) * TimeUnit.DAYS.toMillis(1));
+        Long id = transactions.ceilingKey(Long.MIN_VALUE);
+        Long last = null;
+        while (id != null) {
+            Object[] t = transactions.get(id);
+            if (t != null && ((Number) t[7]).longValue() >= cutoffMillis) {
+                return last == null ? 0L : id;
+            }
+            last = id;
+            id = transactions.higherKey(id);
+        }
+        return last == null ? 0L : last + 1;
+    }
+
+    @Override
+    public int deleteTransactionsBefore(long cutoffId, int limit) {
+        int[] rows = {0};
+        boolean ok = write(() -> {
+            Long id = transactions.ceilingKey(Long.MIN_VALUE);
+            while (id != null && id < cutoffId && rows[0] < Math.max(1, limit)) {
+                Object[] t = transactions.get(id);
+                if (t != null) {
+                    if (t[1] != null) txByPlayer.remove(txKey((String) t[1], (String) t[0], id));
+                    if (t[2] != null) txByPlayer.remove(txKey((String) t[2], (String) t[0], id));
+                }
+                transactions.remove(id);
+                rows[0]++;
+                id = transactions.higherKey(id);
+            }
+        });
+        return ok ? rows[0] : -1;
+    }
+
+    private record Ranking(List<RankingEntry> entries, Map<String, Integer> positions) {}
+
+    @Override
+    public long latestChangeSeq() {
+        return nextChangeSeq - 1;
+    }
+
+    @Override
+    public List<AccountChange> tailChanges(long afterSeq, int limit) {
+        List<AccountChange> list = new ArrayList<>();
+        Long seq = changes.higherKey(afterSeq);
+        while (seq != null && list.size() < Math.max(1, limit)) {
+            Object[] c = changes.get(seq);
+            if (c != null) {
+                list.add(new AccountChange(seq, (String) c[0], (String) c[1], ((Number) c[2]).doubleValue(),
+                        Boolean.TRUE.equals(c[3]), c.length > 5 ? ((Number) c[5]).longValue() : 0L,
+                        ((Number) c[4]).longValue()));
+            }
+            seq = changes.higherKey(seq);
+        }
+        return list;
+    }
+
+    @Override
+    public int deleteChangesBefore(long olderThanMillis, int limit) {
+        int[] rows = {0};
+        boolean ok = write(() -> {
+            Long seq = changes.ceilingKey(Long.MIN_VALUE);
+            while (seq != null && rows[0] < Math.max(1, limit)) {
+                Object[] c = changes.get(seq);
+                if (c != null && ((Number) c[4]).longValue() >= olderThanMillis) break;
+                changes.remove(seq);
+                rows[0]++;
+                seq = changes.higherKey(seq);
+            }
+        });
+        return ok ? rows[0] : -1;
+    }
+
+    @Override
+    public boolean recordIdempotencyKey(String key, String fingerprint, boolean result) {
+        if (idempotencyKeys.get(key) != null) return false;
+        if (!write(() -> putIdempotencyKey(key, fingerprint, result))) {
+            throw new LedgerException("recordIdempotencyKey failed", null);
+        }
+        return true;
+    }
+
+    private void putIdempotencyKey(String key, String fingerprint, boolean result) {
+        idempotencyKeys.put(key, new Object[]{fingerprint, result ? 1 : 0, System.currentTimeMillis()});
+    }
+
+    @Override
+    public IdempotencyRecord getIdempotencyKey(String key) {
+        Object[] r = idempotencyKeys.get(key);
+        if (r == null) return null;
+        int result = ((Number) r[1]).intValue();
+        return new IdempotencyRecord((String) r[0], result < 0 ? null : result != 0, ((Number) r[2]).longValue());
+    }
+
+    @Override
+    public int deleteIdempotencyKeysBefore(long olderThanMillis, int limit) {
+        List<String> expired = new ArrayList<>();
+        for (Map.Entry<String, Object[]> e : idempotencyKeys.entries()) {
+            if (((Number) e.getValue()[2]).longValue() < olderThanMillis) expired.add(e.getKey());
+            if (expired.size() >= Math.max(1, limit)) break;
+        }
+        if (expired.isEmpty()) return 0;
+        return write(() -> expired.forEach(idempotencyKeys::remove)) ? expired.size() : -1;
+    }
+}
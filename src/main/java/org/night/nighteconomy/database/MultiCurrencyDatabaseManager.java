@@ -2,11 +2,19 @@ package org.night.nighteconomy.database;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.night.nighteconomy.jfr.CheckpointEvent;
+import org.night.nighteconomy.jfr.PruneEvent;
 
+import java.nio.file.Path;
 import java.sql.*;
 import java.util.*;
+import java.util.function.ObjDoubleConsumer;
 
-public class MultiCurrencyDatabaseManager {
+/**
+ * SQLite {@link LedgerStore}, the default backend. Also exposes the file maintenance used by the
+ * maintenance scheduler (checkpoints, incremental vacuum, backups).
+ */
+public class MultiCurrencyDatabaseManager implements LedgerStore {
     private static final Logger LOGGER = LogManager.getLogger();
 
     private final Connection conn;
@@ -19,6 +27,8 @@ public class MultiCurrencyDatabaseManager {
     private PreparedStatement psCreateAccount;
     private PreparedStatement psGetBalance;
     private PreparedStatement psSetBalance;
+    private PreparedStatement psGetAccountState;
+    private PreparedStatement psCasBalance;
     private PreparedStatement psAddBalance;
     private PreparedStatement psSubBalanceNoCheck;
     private PreparedStatement psResetBalance;
@@ -27,17 +37,28 @@ public class MultiCurrencyDatabaseManager {
     private PreparedStatement psRecordTransaction;
     private PreparedStatement psGetPlayerTransactions;
     private PreparedStatement psGetAllPlayerBalances;
+    private PreparedStatement psGetAllPaymentEnabled;
     private PreparedStatement psGetTopPlayers;
     private PreparedStatement psGetPlayerPosition;
     private PreparedStatement psGetTopPlayerUuid;
     private PreparedStatement psGetTopPlayerInfo;
     private PreparedStatement psDeleteRankingCache;
     private PreparedStatement psInsertRankingCache;
-    private PreparedStatement psDeleteOldTransactionsDays;
+    private PreparedStatement psFindPruneCutoff;
+    private PreparedStatement psMaxTransactionId;
+    private PreparedStatement psDeleteTransactionsBatch;
 
     private PreparedStatement psGetLastTycoon;
     private PreparedStatement psGetLastTycoonInfo;
+    private PreparedStatement psGetTopAccount;
     private PreparedStatement psUpsertLastTycoon;
+    private PreparedStatement psTailChanges;
+    private PreparedStatement psInsertIdemKey;
+    private PreparedStatement psScanBalances;
+    private PreparedStatement psGetIdemKey;
+    private PreparedStatement psDeleteIdemKeysBatch;
+    private PreparedStatement psLatestChangeSeq;
+    private PreparedStatement psDeleteChangesBatch;
 
     public MultiCurrencyDatabaseManager(Connection conn) throws SQLException {
         this.conn = conn;
@@ -54,6 +75,10 @@ public class MultiCurrencyDatabaseManager {
     private void applyPragmas() throws SQLException {
         try (Statement st = conn.createStatement()) {
             st.execute("PRAGMA foreign_keys = ON");
+            // Only honoured on an empty file (before WAL writes the header); existing files are converted by maintenance.
+            if (getPragmaLong("page_count", 0L) == 0L) {
+                st.execute("PRAGMA auto_vacuum = INCREMENTAL");
+            }
             try (ResultSet rs = st.executeQuery("PRAGMA journal_mode = WAL")) {
                 if (rs.next()) {
                     String mode = rs.getString(1);
@@ -166,9 +191,8 @@ public class MultiCurrencyDatabaseManager {
             LOGGER.warn("Could not read PRAGMA user_version: {}", e.getMessage());
         }
 
-        try (Statement st = conn.createStatement()) {
-            if (userVersion < 1) {
-                LOGGER.info("Initializing NightEconomy schema (v1)...");
+        try {
+            userVersion = migrate(userVersion, 1, "initial schema", st -> {
                 st.execute("""
                         CREATE TABLE IF NOT EXISTS accounts (
                           uuid TEXT NOT NULL,
@@ -211,14 +235,8 @@ public class MultiCurrencyDatabaseManager {
                 st.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_rank_currency_uuid ON ranking_cache(currency_id, uuid)");
 
                 st.execute("CREATE INDEX IF NOT EXISTS idx_accounts_currency_uuid ON accounts(currency_id, uuid)");
-
-                st.execute("PRAGMA user_version = 1");
-                LOGGER.info("NightEconomy schema initialized (v1).");
-                userVersion = 1;
-            }
-
-            if (userVersion < 2) {
-                LOGGER.info("Applying schema migration to v2 (currency_state)...");
+            });
+            userVersion = migrate(userVersion, 2, "currency_state", st -> {
                 st.execute("""
                         CREATE TABLE IF NOT EXISTS currency_state (
                           currency_id TEXT PRIMARY KEY,
@@ -227,15 +245,94 @@ public class MultiCurrencyDatabaseManager {
                           updated_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP
                         )
                         """);
-                st.execute("PRAGMA user_version = 2");
-                LOGGER.info("Schema migration to v2 completed.");
-            }
+            });
+            userVersion = migrate(userVersion, 3, "accounts balance index", st -> {
+                st.execute("CREATE INDEX IF NOT EXISTS idx_accounts_currency_balance ON accounts(currency_id, balance DESC, uuid)");
+            });
+            userVersion = migrate(userVersion, 4, "transactions created_at index", st -> {
+                st.execute("CREATE INDEX IF NOT EXISTS idx_tx_created_at ON transactions(created_at)");
+            });
+            userVersion = migrate(userVersion, 5, "account_changes log", st -> {
+                st.execute("""
+                        CREATE TABLE IF NOT EXISTS account_changes (
+                          seq INTEGER PRIMARY KEY AUTOINCREMENT,
+                          uuid TEXT NOT NULL,
+                          currency_id TEXT NOT NULL,
+                          balance REAL NOT NULL,
+                          payment_enabled INTEGER NOT NULL,
+                          changed_at INTEGER NOT NULL
+                        )
+                        """);
+                st.execute("CREATE INDEX IF NOT EXISTS idx_changes_changed_at ON account_changes(changed_at)");
+                // Triggers keep the log in the same transaction as the write, whatever statement made it.
+                String append = "INSERT INTO account_changes (uuid, currency_id, balance, payment_enabled, changed_at) " +
+                        "VALUES (NEW.uuid, NEW.currency_id, NEW.balance, NEW.payment_enabled, " +
+                        "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)); ";
+                st.execute("CREATE TRIGGER IF NOT EXISTS trg_accounts_insert_change AFTER INSERT ON accounts " +
+                        "BEGIN " + append + "END");
+                st.execute("CREATE TRIGGER IF NOT EXISTS trg_accounts_update_change AFTER UPDATE OF balance, payment_enabled ON accounts " +
+                        "WHEN OLD.balance IS NOT NEW.balance OR OLD.payment_enabled IS NOT NEW.payment_enabled " +
+                        "BEGIN " + append + "END");
+            });
+            userVersion = migrate(userVersion, 6, "account versions", st -> {
+                st.execute("ALTER TABLE accounts ADD COLUMN version INTEGER NOT NULL DEFAULT 0");
+                st.execute("ALTER TABLE account_changes ADD COLUMN version INTEGER NOT NULL DEFAULT 0");
+                String append = "INSERT INTO account_changes (uuid, currency_id, balance, payment_enabled, version, changed_at) " +
+                        "VALUES (NEW.uuid, NEW.currency_id, NEW.balance, NEW.payment_enabled, NEW.version, " +
+                        "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)); ";
+                st.execute("DROP TRIGGER IF EXISTS trg_accounts_insert_change");
+                st.execute("DROP TRIGGER IF EXISTS trg_accounts_update_change");
+                st.execute("CREATE TRIGGER trg_accounts_insert_change AFTER INSERT ON accounts " +
+                        "BEGIN " + append + "END");
+                st.execute("CREATE TRIGGER trg_accounts_update_change AFTER UPDATE ON accounts " +
+                        "WHEN OLD.version IS NOT NEW.version " +
+                        "BEGIN " + append + "END");
+            });
+            userVersion = migrate(userVersion, 7, "idempotency keys", st -> {
+                st.execute("""
+                        CREATE TABLE IF NOT EXISTS idempotency_keys (
+                          idem_key TEXT PRIMARY KEY,
+                          fingerprint TEXT NOT NULL,
+                          result INTEGER,
+                          created_at INTEGER NOT NULL
+                        )
+                        """);
+                st.execute("CREATE INDEX IF NOT EXISTS idx_idem_created_at ON idempotency_keys(created_at)");
+            });
         } catch (SQLException e) {
             LOGGER.error("Failed to initialize/migrate schema: ", e);
             throw e;
         }
     }
 
+    @FunctionalInterface
+    private interface Migration {
+        void apply(Statement st) throws SQLException;
+    }
+
+    /**
+     * Applies one schema step and its user_version bump in a single transaction, so a crash
+     * mid-step leaves the previous version intact and the step is simply run again.
+     */
+    private int migrate(int userVersion, int target, String description, Migration migration) throws SQLException {
+        if (userVersion >= target) return userVersion;
+        LOGGER.info("Applying schema migration to v{} ({})...", target, description);
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement st = conn.createStatement()) {
+            migration.apply(st);
+            st.execute("PRAGMA user_version = " + target);
+            conn.commit();
+        } catch (SQLException e) {
+            try { conn.rollback(); } catch (SQLException ignore) {}
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        LOGGER.info("Schema migration to v{} completed.", target);
+        return target;
+    }
+
     private void prepareStatements() throws SQLException {
         psHasAccount = conn.prepareStatement(
                 "SELECT 1 FROM accounts WHERE uuid=? AND currency_id=?"
@@ -246,23 +343,29 @@ public class MultiCurrencyDatabaseManager {
         psGetBalance = conn.prepareStatement(
                 "SELECT balance FROM accounts WHERE uuid=? AND currency_id=?"
         );
+        psGetAccountState = conn.prepareStatement(
+                "SELECT balance, payment_enabled, version FROM accounts WHERE uuid=? AND currency_id=?"
+        );
+        psCasBalance = conn.prepareStatement(
+                "UPDATE accounts SET balance=?, version=version+1 WHERE uuid=? AND currency_id=? AND version=?"
+        );
         psSetBalance = conn.prepareStatement(
-                "UPDATE accounts SET balance=? WHERE uuid=? AND currency_id=?"
+                "UPDATE accounts SET balance=?, version=version+1 WHERE uuid=? AND currency_id=?"
         );
         psAddBalance = conn.prepareStatement(
-                "UPDATE accounts SET balance = balance + ? WHERE uuid=? AND currency_id=?"
+                "UPDATE accounts SET balance = balance + ?, version=version+1 WHERE uuid=? AND currency_id=?"
         );
         psSubBalanceNoCheck = conn.prepareStatement(
-                "UPDATE accounts SET balance = balance - ? WHERE uuid=? AND currency_id=?"
+                "UPDATE accounts SET balance = balance - ?, version=version+1 WHERE uuid=? AND currency_id=?"
         );
         psResetBalance = conn.prepareStatement(
-                "UPDATE accounts SET balance=? WHERE uuid=? AND currency_id=?"
+                "UPDATE accounts SET balance=?, version=version+1 WHERE uuid=? AND currency_id=?"
         );
         psIsPaymentEnabled = conn.prepareStatement(
                 "SELECT payment_enabled FROM accounts WHERE uuid=? AND currency_id=?"
         );
         psSetPaymentEnabled = conn.prepareStatement(
-                "UPDATE accounts SET payment_enabled=? WHERE uuid=? AND currency_id=?"
+                "UPDATE accounts SET payment_enabled=?, version=version+1 WHERE uuid=? AND currency_id=?"
         );
         psRecordTransaction = conn.prepareStatement(
                 "INSERT INTO transactions (currency_id, sender_uuid, receiver_uuid, amount, fee, type, description, created_at) " +
@@ -276,6 +379,9 @@ public class MultiCurrencyDatabaseManager {
         psGetAllPlayerBalances = conn.prepareStatement(
                 "SELECT currency_id, balance FROM accounts WHERE uuid=?"
         );
+        psGetAllPaymentEnabled = conn.prepareStatement(
+                "SELECT currency_id, payment_enabled FROM accounts WHERE uuid=?"
+        );
         psGetTopPlayers = conn.prepareStatement(
                 "SELECT uuid, username, balance, position FROM ranking_cache " +
                         "WHERE currency_id=? ORDER BY position ASC LIMIT ?"
@@ -299,8 +405,14 @@ public class MultiCurrencyDatabaseManager {
                         "FROM accounts a WHERE a.currency_id=?"
         );
 
-        psDeleteOldTransactionsDays = conn.prepareStatement(
-                "DELETE FROM transactions WHERE julianday(created_at) < julianday('now') - ?"
+        psFindPruneCutoff = conn.prepareStatement(
+                "SELECT id FROM transactions WHERE created_at >= datetime('now', ?) ORDER BY created_at ASC LIMIT 1"
+        );
+        psMaxTransactionId = conn.prepareStatement(
+                "SELECT MAX(id) FROM transactions"
+        );
+        psDeleteTransactionsBatch = conn.prepareStatement(
+                "DELETE FROM transactions WHERE id IN (SELECT id FROM transactions WHERE id < ? ORDER BY id ASC LIMIT ?)"
         );
 
         psGetLastTycoon = conn.prepareStatement(
@@ -309,6 +421,10 @@ public class MultiCurrencyDatabaseManager {
         psGetLastTycoonInfo = conn.prepareStatement(
                 "SELECT tycoon_uuid, tycoon_username FROM currency_state WHERE currency_id=?"
         );
+        psGetTopAccount = conn.prepareStatement(
+                "SELECT uuid, username, balance FROM accounts WHERE currency_id=? " +
+                        "ORDER BY balance DESC, uuid ASC LIMIT 1"
+        );
         psUpsertLastTycoon = conn.prepareStatement(
                 "INSERT INTO currency_state (currency_id, tycoon_uuid, tycoon_username, updated_at) " +
                         "VALUES (?,?,?,CURRENT_TIMESTAMP) " +
@@ -317,6 +433,31 @@ public class MultiCurrencyDatabaseManager {
                         "tycoon_username=excluded.tycoon_username, " +
                         "updated_at=CURRENT_TIMESTAMP"
         );
+
+        psTailChanges = conn.prepareStatement(
+                "SELECT seq, uuid, currency_id, balance, payment_enabled, version, changed_at FROM account_changes " +
+                        "WHERE seq > ? ORDER BY seq ASC LIMIT ?"
+        );
+        psScanBalances = conn.prepareStatement(
+                "SELECT uuid, balance FROM accounts WHERE currency_id=? AND uuid > ? ORDER BY uuid ASC LIMIT ?"
+        );
+        psInsertIdemKey = conn.prepareStatement(
+                "INSERT OR IGNORE INTO idempotency_keys (idem_key, fingerprint, result, created_at) VALUES (?,?,?,?)"
+        );
+        psGetIdemKey = conn.prepareStatement(
+                "SELECT fingerprint, result, created_at FROM idempotency_keys WHERE idem_key=?"
+        );
+        psDeleteIdemKeysBatch = conn.prepareStatement(
+                "DELETE FROM idempotency_keys WHERE idem_key IN " +
+                        "(SELECT idem_key FROM idempotency_keys WHERE created_at < ? LIMIT ?)"
+        );
+        psLatestChangeSeq = conn.prepareStatement(
+                "SELECT MAX(seq) FROM account_changes"
+        );
+        psDeleteChangesBatch = conn.prepareStatement(
+                "DELETE FROM account_changes WHERE seq IN " +
+                        "(SELECT seq FROM account_changes WHERE changed_at < ? ORDER BY seq ASC LIMIT ?)"
+        );
     }
 
     public static class Transaction {
@@ -380,12 +521,85 @@ public class MultiCurrencyDatabaseManager {
         }
     }
 
+    /**
+     * Balance, payment flag and version of one account. The version grows by one on every write,
+     * so of two states of the same account the higher version is the newer one.
+     */
+    public static class AccountState {
+        public final double balance;
+        public final boolean paymentEnabled;
+        public final long version;
+
+        public AccountState(double balance, boolean paymentEnabled, long version) {
+            this.balance = balance;
+            this.paymentEnabled = paymentEnabled;
+            this.version = version;
+        }
+
+        public double getBalance() { return balance; }
+        public boolean isPaymentEnabled() { return paymentEnabled; }
+        public long getVersion() { return version; }
+    }
+
+    /** One row of the account_changes log: the state of an account right after a write. */
+    public static class AccountChange {
+        public final long seq;
+        public final String uuid;
+        public final String currencyId;
+        public final double balance;
+        public final boolean paymentEnabled;
+        public final long version;
+        public final long changedAt;
+
+        public AccountChange(long seq, String uuid, String currencyId, double balance, boolean paymentEnabled,
+                             long version, long changedAt) {
+            this.seq = seq;
+            this.uuid = uuid;
+            this.currencyId = currencyId;
+            this.balance = balance;
+            this.paymentEnabled = paymentEnabled;
+            this.version = version;
+            this.changedAt = changedAt;
+        }
+
+        public long getSeq() { return seq; }
+        public String getUuid() { return uuid; }
+        public String getCurrencyId() { return currencyId; }
+        public double getBalance() { return balance; }
+        public boolean isPaymentEnabled() { return paymentEnabled; }
+        public long getVersion() { return version; }
+        /** Epoch milliseconds. */
+        public long getChangedAt() { return changedAt; }
+    }
+
+    /** Stored outcome of an idempotent operation; {@code result} is null only for keys claimed by older versions. */
+    public static class IdempotencyRecord {
+        public final String fingerprint;
+        public final Boolean result;
+        public final long createdAt;
+
+        public IdempotencyRecord(String fingerprint, Boolean result, long createdAt) {
+            this.fingerprint = fingerprint;
+            this.result = result;
+            this.createdAt = createdAt;
+        }
+    }
+
     public static class PayTxResult {
-        public enum Status { OK, RECEIVER_BLOCKED, INSUFFICIENT_FUNDS, SENDER_NOT_FOUND, RECEIVER_NOT_FOUND, ERROR }
+        public enum Status { OK, RECEIVER_BLOCKED, INSUFFICIENT_FUNDS, SENDER_NOT_FOUND, RECEIVER_NOT_FOUND, DUPLICATE_KEY, ERROR }
         public final Status status;
+        /** New state of the sender and receiver; set only when the status is OK. */
+        public final AccountState sender;
+        public final AccountState receiver;
 
         public PayTxResult(Status status) {
+            this(status, null, null);
+        }
+
+        public PayTxResult(Status status, AccountState sender, AccountState receiver) {
             this.status = status;
+            this.sender = sender;
+            this.receiver = receiver;
         }
     }
 
@@ -398,8 +612,7 @@ public class MultiCurrencyDatabaseManager {
                 return rs.next();
             }
         } catch (SQLException e) {
-            LOGGER.error("hasAccount error", e);
-            return false;
+            throw new LedgerException("hasAccount failed", e);
         }
     }
 
@@ -413,8 +626,7 @@ public class MultiCurrencyDatabaseManager {
             int rows = psCreateAccount.executeUpdate();
             return rows > 0;
         } catch (SQLException e) {
-            LOGGER.error("createAccount error", e);
-            return false;
+            throw new LedgerException("createAccount failed", e);
         }
     }
 
@@ -427,11 +639,58 @@ public class MultiCurrencyDatabaseManager {
                 if (rs.next()) return rs.getDouble(1);
             }
         } catch (SQLException e) {
-            LOGGER.error("getBalance error", e);
+            throw new LedgerException("getBalance failed", e);
         }
         return 0.0;
     }
 
+    public AccountState getAccountState(UUID playerUuid, String currencyId) {
+        try {
+            psGetAccountState.clearParameters();
+            psGetAccountState.setString(1, playerUuid.toString());
+            psGetAccountState.setString(2, currencyId);
+            try (ResultSet rs = psGetAccountState.executeQuery()) {
+                if (rs.next()) return new AccountState(rs.getDouble(1), rs.getInt(2) != 0, rs.getLong(3));
+            }
+        } catch (SQLException e) {
+            throw new LedgerException("getAccountState failed", e);
+        }
+        return null;
+    }
+
+    public AccountState compareAndSetBalance(UUID playerUuid, String currencyId, long expectedVersion, double amount,
+                                             String idempotencyKey, String fingerprint) {
+        try {
+            conn.setAutoCommit(false);
+            try {
+                if (idempotencyKey != null && !insertIdempotencyKey(idempotencyKey, fingerprint, true)) {
+                    conn.rollback();
+                    return null;
+                }
+                psCasBalance.clearParameters();
+                psCasBalance.setDouble(1, amount);
+                psCasBalance.setString(2, playerUuid.toString());
+                psCasBalance.setString(3, currencyId);
+                psCasBalance.setLong(4, expectedVersion);
+                if (psCasBalance.executeUpdate() == 0) {
+                    conn.rollback();
+                    return null;
+                }
+                // Single connection: nothing can write between the update and this read.
+                AccountState written = getAccountState(playerUuid, currencyId);
+                conn.commit();
+                return written;
+            } catch (SQLException | LedgerException e) {
+                try { conn.rollback(); } catch (SQLException ignore) {}
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new LedgerException("compareAndSetBalance failed", e);
+        }
+    }
+
     public boolean setBalance(UUID playerUuid, String currencyId, double amount) {
         try {
             psSetBalance.clearParameters();
@@ -440,8 +699,7 @@ public class MultiCurrencyDatabaseManager {
             psSetBalance.setString(3, currencyId);
             return psSetBalance.executeUpdate() > 0;
         } catch (SQLException e) {
-            LOGGER.error("setBalance error", e);
-            return false;
+            throw new LedgerException("setBalance failed", e);
         }
     }
 
@@ -453,8 +711,7 @@ public class MultiCurrencyDatabaseManager {
             psAddBalance.setString(3, currencyId);
             return psAddBalance.executeUpdate() > 0;
         } catch (SQLException e) {
-            LOGGER.error("addBalance error", e);
-            return false;
+            throw new LedgerException("addBalance failed", e);
         }
     }
 
@@ -466,8 +723,7 @@ public class MultiCurrencyDatabaseManager {
             psSubBalanceNoCheck.setString(3, currencyId);
             return psSubBalanceNoCheck.executeUpdate() > 0;
         } catch (SQLException e) {
-            LOGGER.error("subtractBalance error", e);
-            return false;
+            throw new LedgerException("subtractBalance failed", e);
         }
     }
 
@@ -479,8 +735,7 @@ public class MultiCurrencyDatabaseManager {
             psResetBalance.setString(3, currencyId);
             return psResetBalance.executeUpdate() > 0;
         } catch (SQLException e) {
-            LOGGER.error("resetPlayerBalance error", e);
-            return false;
+            throw new LedgerException("resetPlayerBalance failed", e);
         }
     }
 
@@ -493,7 +748,7 @@ public class MultiCurrencyDatabaseManager {
                 if (rs.next()) return rs.getInt(1) != 0;
             }
         } catch (SQLException e) {
-            LOGGER.error("isPaymentEnabled error", e);
+            throw new LedgerException("isPaymentEnabled failed", e);
         }
         return true;
     }
@@ -506,8 +761,7 @@ public class MultiCurrencyDatabaseManager {
             psSetPaymentEnabled.setString(3, currencyId);
             return psSetPaymentEnabled.executeUpdate() > 0;
         } catch (SQLException e) {
-            LOGGER.error("setPaymentEnabled error", e);
-            return false;
+            throw new LedgerException("setPaymentEnabled failed", e);
         }
     }
 
@@ -523,7 +777,7 @@ public class MultiCurrencyDatabaseManager {
             psRecordTransaction.setString(7, description);
             psRecordTransaction.executeUpdate();
         } catch (SQLException e) {
-            LOGGER.error("recordTransaction error", e);
+            throw new LedgerException("recordTransaction failed", e);
         }
     }
 
@@ -551,7 +805,7 @@ public class MultiCurrencyDatabaseManager {
                 }
             }
         } catch (SQLException e) {
-            LOGGER.error("getPlayerTransactions error", e);
+            throw new LedgerException("getPlayerTransactions failed", e);
         }
         return list;
     }
@@ -567,7 +821,23 @@ public class MultiCurrencyDatabaseManager {
                 }
             }
         } catch (SQLException e) {
-            LOGGER.error("getAllPlayerBalances error", e);
+            throw new LedgerException("getAllPlayerBalances failed", e);
+        }
+        return out;
+    }
+
+    public Map<String, Boolean> getAllPaymentEnabled(UUID playerUuid) {
+        Map<String, Boolean> out = new HashMap<>();
+        try {
+            psGetAllPaymentEnabled.clearParameters();
+            psGetAllPaymentEnabled.setString(1, playerUuid.toString());
+            try (ResultSet rs = psGetAllPaymentEnabled.executeQuery()) {
+                while (rs.next()) {
+                    out.put(rs.getString(1), rs.getInt(2) != 0);
+                }
+            }
+        } catch (SQLException e) {
+            throw new LedgerException("getAllPaymentEnabled failed", e);
         }
         return out;
     }
@@ -589,7 +859,7 @@ public class MultiCurrencyDatabaseManager {
                 }
             }
         } catch (SQLException e) {
-            LOGGER.error("getTopPlayers error", e);
+            throw new LedgerException("getTopPlayers failed", e);
         }
         return list;
     }
@@ -603,7 +873,7 @@ public class MultiCurrencyDatabaseManager {
                 if (rs.next()) return rs.getInt(1);
             }
         } catch (SQLException e) {
-            LOGGER.error("getPlayerPosition error", e);
+            throw new LedgerException("getPlayerPosition failed", e);
         }
         return -1;
     }
@@ -616,7 +886,7 @@ public class MultiCurrencyDatabaseManager {
                 if (rs.next()) return rs.getString(1);
             }
         } catch (SQLException e) {
-            LOGGER.error("getTopPlayerUuid error", e);
+            throw new LedgerException("getTopPlayerUuid failed", e);
         }
         return null;
     }
@@ -633,11 +903,48 @@ public class MultiCurrencyDatabaseManager {
                 }
             }
         } catch (SQLException e) {
-            LOGGER.error("getTopPlayerInfo error", e);
+            throw new LedgerException("getTopPlayerInfo failed", e);
         }
         return null;
     }
 
+    /** Richest account straight from accounts, ordered like the ranking rebuild. */
+    public RankingEntry getTopAccount(String currencyId) {
+        try {
+            psGetTopAccount.clearParameters();
+            psGetTopAccount.setString(1, currencyId);
+            try (ResultSet rs = psGetTopAccount.executeQuery()) {
+                if (rs.next()) {
+                    return new RankingEntry(rs.getString(1), rs.getString(2), rs.getDouble(3), 1);
+                }
+            }
+        } catch (SQLException e) {
+            throw new LedgerException("getTopAccount failed", e);
+        }
+        return null;
+    }
+
+    public String scanBalances(String currencyId, String afterUuid, int limit, ObjDoubleConsumer<String> sink) {
+        try {
+            psScanBalances.clearParameters();
+            psScanBalances.setString(1, currencyId);
+            psScanBalances.setString(2, afterUuid != null ? afterUuid : "");
+            psScanBalances.setInt(3, Math.max(1, limit));
+            String last = null;
+            int rows = 0;
+            try (ResultSet rs = psScanBalances.executeQuery()) {
+                while (rs.next()) {
+                    last = rs.getString(1);
+                    sink.accept(last, rs.getDouble(2));
+                    rows++;
+                }
+            }
+            return rows >= Math.max(1, limit) ? last : null;
+        } catch (SQLException e) {
+            throw new LedgerException("scanBalances failed", e);
+        }
+    }
+
     public void updateRankingCache(String currencyId) {
         try {
             conn.setAutoCommit(false);
@@ -659,7 +966,7 @@ public class MultiCurrencyDatabaseManager {
                 conn.setAutoCommit(true);
             }
         } catch (SQLException e) {
-            LOGGER.error("updateRankingCache error", e);
+            throw new LedgerException("updateRankingCache failed", e);
         }
     }
 
@@ -671,7 +978,7 @@ public class MultiCurrencyDatabaseManager {
                 if (rs.next()) return rs.getString(1);
             }
         } catch (SQLException e) {
-            LOGGER.error("getLastTycoonUuid error", e);
+            throw new LedgerException("getLastTycoonUuid failed", e);
         }
         return null;
     }
@@ -686,7 +993,7 @@ public class MultiCurrencyDatabaseManager {
                 }
             }
         } catch (SQLException e) {
-            LOGGER.error("getLastTycoonInfo error", e);
+            throw new LedgerException("getLastTycoonInfo failed", e);
         }
         return null;
     }
@@ -699,33 +1006,160 @@ public class MultiCurrencyDatabaseManager {
             psUpsertLastTycoon.setString(3, tycoonUsername);
             return psUpsertLastTycoon.executeUpdate() > 0;
         } catch (SQLException e) {
-            LOGGER.error("upsertLastTycoon error", e);
-            return false;
+            throw new LedgerException("upsertLastTycoon failed", e);
+        }
+    }
+
+    /**
+     * Deletes every transaction older than {@code retentionDays}, {@code batchSize} rows at a time,
+     * without yielding. The scheduled pruning goes through the TransactionPruner instead.
+     */
+    public int pruneOldTransactions(double retentionDays, int batchSize) {
+        long cutoff = findPruneCutoff(retentionDays);
+        int total = 0;
+        int rows;
+        while (cutoff > 0 && (rows = deleteTransactionsBefore(cutoff, Math.max(1, batchSize))) > 0) {
+            total += rows;
+        }
+        LOGGER.debug("Transactions pruning: {} rows older than {} days removed", total, retentionDays);
+        return total;
+    }
+
+    /**
+     * First transaction id to keep for the given retention: everything with a lower id is older.
+     * Ids grow with created_at, so the index on created_at gives the boundary without a scan.
+     * Returns 0 when there is nothing to prune (or on error).
+     */
+    public long findPruneCutoff(double retentionDays) {
+        long seconds = (long) Math.ceil(Math.max(0.0, retentionDays) * 86_400.0);
+        try {
+            psFindPruneCutoff.clearParameters();
+            psFindPruneCutoff.setString(1, "-" + seconds + " seconds");
+            try (ResultSet rs = psFindPruneCutoff.executeQuery()) {
+                if (rs.next()) return rs.getLong(1);
+            }
+            try (ResultSet rs = psMaxTransactionId.executeQuery()) {
+                if (rs.next()) {
+                    long max = rs.getLong(1);
+                    return rs.wasNull() ? 0L : max + 1;
+                }
+            }
+        } catch (SQLException e) {
+            throw new LedgerException("findPruneCutoff failed", e);
         }
+        return 0L;
     }
 
-    public int pruneOldTransactions(double retentionDays) {
+    /** Deletes at most {@code limit} transactions with id below {@code cutoffId}, in one short write transaction. */
+    public int deleteTransactionsBefore(long cutoffId, int limit) {
+        PruneEvent event = new PruneEvent();
+        event.begin();
         try {
-            psDeleteOldTransactionsDays.clearParameters();
-            psDeleteOldTransactionsDays.setDouble(1, Math.max(0.0, retentionDays));
-            int rows = psDeleteOldTransactionsDays.executeUpdate();
-            LOGGER.debug("Transactions pruning: {} rows older than {} days removed", rows, retentionDays);
+            psDeleteTransactionsBatch.clearParameters();
+            psDeleteTransactionsBatch.setLong(1, cutoffId);
+            psDeleteTransactionsBatch.setInt(2, Math.max(1, limit));
+            int rows = psDeleteTransactionsBatch.executeUpdate();
+            event.end();
+            if (event.shouldCommit()) {
+                event.cutoffId = cutoffId;
+                event.limit = limit;
+                event.rows = rows;
+                event.commit();
+            }
             return rows;
         } catch (SQLException e) {
-            LOGGER.error("pruneOldTransactions error", e);
-            return 0;
+            LOGGER.error("deleteTransactionsBefore error", e);
+            return -1;
         }
     }
 
-    public boolean walCheckpointTruncate() {
-        try (Statement st = conn.createStatement();
-             ResultSet rs = st.executeQuery("PRAGMA wal_checkpoint(TRUNCATE)")) {
-            LOGGER.debug("WAL checkpoint (TRUNCATE) executed");
-            return true;
+    public long latestChangeSeq() {
+        try (ResultSet rs = psLatestChangeSeq.executeQuery()) {
+            if (rs.next()) return rs.getLong(1);
         } catch (SQLException e) {
-            LOGGER.error("walCheckpointTruncate error", e);
-            return false;
+            throw new LedgerException("latestChangeSeq failed", e);
+        }
+        return 0L;
+    }
+
+    public List<AccountChange> tailChanges(long afterSeq, int limit) {
+        List<AccountChange> list = new ArrayList<>();
+        try {
+            psTailChanges.clearParameters();
+            psTailChanges.setLong(1, afterSeq);
+            psTailChanges.setInt(2, Math.max(1, limit));
+            try (ResultSet rs = psTailChanges.executeQuery()) {
+                while (rs.next()) {
+                    list.add(new AccountChange(rs.getLong(1), rs.getString(2), rs.getString(3),
+                            rs.getDouble(4), rs.getInt(5) != 0, rs.getLong(6), rs.getLong(7)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new LedgerException("tailChanges failed", e);
         }
+        return list;
+    }
+
+    public int deleteChangesBefore(long olderThanMillis, int limit) {
+        try {
+            psDeleteChangesBatch.clearParameters();
+            psDeleteChangesBatch.setLong(1, olderThanMillis);
+            psDeleteChangesBatch.setInt(2, Math.max(1, limit));
+            return psDeleteChangesBatch.executeUpdate();
+        } catch (SQLException e) {
+            LOGGER.error("deleteChangesBefore error", e);
+            return -1;
+        }
+    }
+
+    private boolean insertIdempotencyKey(String key, String fingerprint, boolean result) throws SQLException {
+        psInsertIdemKey.clearParameters();
+        psInsertIdemKey.setString(1, key);
+        psInsertIdemKey.setString(2, fingerprint);
+        psInsertIdemKey.setInt(3, result ? 1 : 0);
+        psInsertIdemKey.setLong(4, System.currentTimeMillis());
+        return psInsertIdemKey.executeUpdate() > 0;
+    }
+
+    public boolean recordIdempotencyKey(String key, String fingerprint, boolean result) {
+        try {
+            return insertIdempotencyKey(key, fingerprint, result);
+        } catch (SQLException e) {
+            throw new LedgerException("recordIdempotencyKey failed", e);
+        }
+    }
+
+    public IdempotencyRecord getIdempotencyKey(String key) {
+        try {
+            psGetIdemKey.clearParameters();
+            psGetIdemKey.setString(1, key);
+            try (ResultSet rs = psGetIdemKey.executeQuery()) {
+                if (rs.next()) {
+                    int result = rs.getInt(2);
+                    Boolean done = rs.wasNull() ? null : result != 0;
+                    return new IdempotencyRecord(rs.getString(1), done, rs.getLong(3));
+                }
+            }
+        } catch (SQLException e) {
+            throw new LedgerException("getIdempotencyKey failed", e);
+        }
+        return null;
+    }
+
+    public int deleteIdempotencyKeysBefore(long olderThanMillis, int limit) {
+        try {
+            psDeleteIdemKeysBatch.clearParameters();
+            psDeleteIdemKeysBatch.setLong(1, olderThanMillis);
+            psDeleteIdemKeysBatch.setInt(2, Math.max(1, limit));
+            return psDeleteIdemKeysBatch.executeUpdate();
+        } catch (SQLException e) {
+            LOGGER.error("deleteIdempotencyKeysBefore error", e);
+            return -1;
+        }
+    }
+
+    public boolean walCheckpointTruncate() {
+        return walCheckpoint("TRUNCATE") != null;
     }
 
     public boolean analyze() {
@@ -753,10 +1187,153 @@ public class MultiCurrencyDatabaseManager {
         }
     }
 
-    public PayTxResult payAtomic(UUID senderUuid, UUID receiverUuid, String currencyId, double amount, double fee) {
+    /** 0 = NONE, 1 = FULL, 2 = INCREMENTAL; -1 if it could not be read. */
+    public int getAutoVacuumMode() {
+        return (int) getPragmaLong("auto_vacuum", -1L);
+    }
+
+    /** Switches an existing file to INCREMENTAL; needs a full VACUUM to take effect. */
+    public boolean convertToIncrementalAutoVacuum() {
+        try (Statement st = conn.createStatement()) {
+            conn.setAutoCommit(true);
+            st.execute("PRAGMA auto_vacuum = INCREMENTAL");
+            st.execute("VACUUM");
+            int mode = getAutoVacuumMode();
+            LOGGER.info("auto_vacuum converted, mode now {}", mode);
+            return mode == 2;
+        } catch (SQLException e) {
+            LOGGER.error("auto_vacuum conversion error", e);
+            return false;
+        }
+    }
+
+    /** Releases up to {@code pages} free pages; returns false on error. */
+    public boolean incrementalVacuum(int pages) {
+        try (Statement st = conn.createStatement()) {
+            // SQLite frees one page per step; execute() would stop after the first, executeUpdate() runs to completion.
+            st.executeUpdate("PRAGMA incremental_vacuum(" + Math.max(1, pages) + ")");
+            return true;
+        } catch (SQLException e) {
+            throw new LedgerException("incremental_vacuum failed", e);
+        }
+    }
+
+    public long getFreelistCount() {
+        return getPragmaLong("freelist_count", 0L);
+    }
+
+    public long getPageCount() {
+        return getPragmaLong("page_count", 0L);
+    }
+
+    public long getPageSize() {
+        return getPragmaLong("page_size", 0L);
+    }
+
+    /**
+     * Runs {@code PRAGMA wal_checkpoint(mode)} with mode PASSIVE, FULL, RESTART or TRUNCATE.
+     * Returns {busy, wal frames, checkpointed frames}, or null on error.
+     */
+    public int[] walCheckpoint(String mode) {
+        CheckpointEvent event = new CheckpointEvent();
+        event.begin();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA wal_checkpoint(" + mode + ")")) {
+            if (rs.next()) {
+                int[] result = {rs.getInt(1), rs.getInt(2), rs.getInt(3)};
+                event.end();
+                if (event.shouldCommit()) {
+                    event.mode = mode;
+                    event.busy = result[0] != 0;
+                    event.walFrames = result[1];
+                    event.checkpointedFrames = result[2];
+                    event.commit();
+                }
+                LOGGER.debug("WAL checkpoint ({}) executed: busy={}, log={}, checkpointed={}",
+                        mode, result[0], result[1], result[2]);
+                return result;
+            }
+            return new int[]{0, 0, 0};
+        } catch (SQLException e) {
+            LOGGER.error("walCheckpoint({}) error", mode, e);
+            return null;
+        }
+    }
+
+    /** Lets SQLite re-analyze only the tables whose statistics went stale. */
+    public boolean optimize() {
+        try (Statement st = conn.createStatement()) {
+            st.execute("PRAGMA optimize");
+            LOGGER.debug("PRAGMA optimize executed");
+            return true;
+        } catch (SQLException e) {
+            LOGGER.error("PRAGMA optimize error", e);
+            return false;
+        }
+    }
+
+    /** Path of the main database file, or null for in-memory databases. */
+    public Path getDatabaseFile() {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA database_list")) {
+            while (rs.next()) {
+                if ("main".equals(rs.getString(2))) {
+                    String file = rs.getString(3);
+                    return file == null || file.isEmpty() ? null : Path.of(file);
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.debug("Unable to read database_list: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    public boolean supportsBackups() {
+        return true;
+    }
+
+    /**
+     * Writes a consistent, compacted copy of the database to {@code target} using VACUUM INTO on a
+     * separate read-only connection. Under WAL the economy connection keeps writing meanwhile.
+     */
+    public void backupTo(Path target) throws SQLException {
+        Path source = getDatabaseFile();
+        if (source == null) throw new SQLException("Database has no file to back up");
+
+        Properties props = new Properties();
+        props.setProperty("open_mode", "1"); // SQLITE_OPEN_READONLY
+        try (Connection reader = DriverManager.getConnection("jdbc:sqlite:" + source, props)) {
+            try (Statement st = reader.createStatement()) {
+                st.execute("PRAGMA busy_timeout = " + busyTimeoutMs);
+            }
+            try (PreparedStatement ps = reader.prepareStatement("VACUUM INTO ?")) {
+                ps.setString(1, target.toAbsolutePath().toString());
+                ps.execute();
+            }
+        }
+    }
+
+    private long getPragmaLong(String pragma, long fallback) {
+        String v = getSinglePragma(pragma);
+        if (v == null) return fallback;
+        try {
+            return Long.parseLong(v.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    public PayTxResult payAtomic(UUID senderUuid, UUID receiverUuid, String currencyId, double amount, double fee,
+                                 String idempotencyKey, String fingerprint) {
         try {
             conn.setAutoCommit(false);
             try {
+                if (idempotencyKey != null && !insertIdempotencyKey(idempotencyKey, fingerprint, true)) {
+                    conn.rollback();
+                    conn.setAutoCommit(true);
+                    return new PayTxResult(PayTxResult.Status.DUPLICATE_KEY);
+                }
+
                 if (!isPaymentEnabled(receiverUuid, currencyId)) {
                     conn.rollback();
                     conn.setAutoCommit(true);
@@ -795,11 +1372,13 @@ public class MultiCurrencyDatabaseManager {
                 }
 
                 recordTransaction(currencyId, senderUuid, receiverUuid, amount, fee, "PAY", "Player payment");
+                AccountState sender = getAccountState(senderUuid, currencyId);
+                AccountState receiver = getAccountState(receiverUuid, currencyId);
 
                 conn.commit();
                 conn.setAutoCommit(true);
-                return new PayTxResult(PayTxResult.Status.OK);
-            } catch (SQLException ex) {
+                return new PayTxResult(PayTxResult.Status.OK, sender, receiver);
+            } catch (SQLException | LedgerException ex) {
                 try { conn.rollback(); } catch (SQLException ignore) {}
                 LOGGER.error("payAtomic SQL error", ex);
                 return new PayTxResult(PayTxResult.Status.ERROR);
@@ -817,10 +1396,12 @@ public class MultiCurrencyDatabaseManager {
         List<AutoCloseable> closables = Arrays.asList(
                 psHasAccount, psCreateAccount, psGetBalance, psSetBalance, psAddBalance,
                 psSubBalanceNoCheck, psResetBalance, psIsPaymentEnabled, psSetPaymentEnabled,
-                psRecordTransaction, psGetPlayerTransactions, psGetAllPlayerBalances,
+                psRecordTransaction, psGetPlayerTransactions, psGetAllPlayerBalances, psGetAllPaymentEnabled,
                 psGetTopPlayers, psGetPlayerPosition, psGetTopPlayerUuid, psGetTopPlayerInfo,
-                psDeleteRankingCache, psInsertRankingCache, psDeleteOldTransactionsDays,
-                psGetLastTycoon, psGetLastTycoonInfo, psUpsertLastTycoon
+                psDeleteRankingCache, psInsertRankingCache, psFindPruneCutoff, psMaxTransactionId, psDeleteTransactionsBatch,
+                psGetLastTycoon, psGetLastTycoonInfo, psUpsertLastTycoon, psGetTopAccount,
+                psTailChanges, psLatestChangeSeq, psDeleteChangesBatch, psGetAccountState, psCasBalance,
+                psScanBalances, psInsertIdemKey, psGetIdemKey, psDeleteIdemKeysBatch
         );
         for (AutoCloseable c : closables) {
             if (c != null) {
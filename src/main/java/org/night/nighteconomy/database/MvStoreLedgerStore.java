@@ -0,0 +1,81 @@
+package org.night.nighteconomy.database;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * {@link LedgerStore} on an embedded H2 MVStore file. Auto-commit is off: each store operation is
+ * committed as one version when it completes, so a payment is never persisted half-applied, and a
+ * failed operation is rolled back to the last committed version.
+ */
+public class MvStoreLedgerStore extends MapLedgerStore {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final MVStore store;
+    private final Path file;
+
+    private MvStoreLedgerStore(MVStore store, Path file) {
+        super(new MvTable<>(store.openMap("accounts")),
+                new MvTable<>(store.openMap("transactions")),
+                new MvTable<>(store.openMap("tx_by_player")),
+                new MvTable<>(store.openMap("currency_state")),
+                new MvTable<>(store.openMap("account_changes")),
+                new MvTable<>(store.openMap("idempotency_keys")));
+        this.store = store;
+        this.file = file;
+    }
+
+    public static MvStoreLedgerStore open(Path file, int cacheSizeMb) {
+        MVStore store = new MVStore.Builder()
+                .fileName(file.toAbsolutePath().toString())
+                .autoCommitDisabled()
+                .cacheSize(Math.max(1, cacheSizeMb))
+                .open();
+        LOGGER.info("MVStore opened: {} (cache {} MB)", file, cacheSizeMb);
+        return new MvStoreLedgerStore(store, file);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    protected void commit() {
+        store.commit();
+    }
+
+    @Override
+    protected void rollback() {
+        store.rollback();
+    }
+
+    @Override
+    public void close() {
+        try {
+            store.close();
+        } catch (Exception e) {
+            LOGGER.warn("Error closing MVStore", e);
+        }
+    }
+
+    private static final class MvTable<K, V> implements Table<K, V> {
+        private final MVMap<K, V> map;
+
+        MvTable(MVMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override public V get(K key) { return map.get(key); }
+        @Override public void put(K key, V value) { map.put(key, value); }
+        @Override public void remove(K key) { map.remove(key); }
+        @Override public K ceilingKey(K key) { return map.ceilingKey(key); }
+        @Override public K higherKey(K key) { return map.higherKey(key); }
+        @Override public K lowerKey(K key) { return map.lowerKey(key); }
+        @Override public Iterable<Map.Entry<K, V>> entries() { return map.entrySet(); }
+    }
+}
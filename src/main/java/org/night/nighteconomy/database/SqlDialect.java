@@ -0,0 +1,105 @@
+package org.night.nighteconomy.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * SQL differences between the networked servers supported by {@link JdbcLedgerStore}. MySQL and
+ * MariaDB share the same syntax and only differ by driver.
+ */
+public enum SqlDialect {
+    MYSQL("com.mysql.cj.jdbc.Driver"),
+    MARIADB("org.mariadb.jdbc.Driver"),
+    POSTGRESQL("org.postgresql.Driver");
+
+    private final String driverClass;
+
+    SqlDialect(String driverClass) {
+        this.driverClass = driverClass;
+    }
+
+    public String getDriverClass() {
+        return driverClass;
+    }
+
+    /** Dialect of a {@code storage.backend} name, or null if it is not a networked backend. */
+    public static SqlDialect fromBackend(String backend) {
+        return switch (backend.toLowerCase(Locale.ROOT)) {
+            case "mysql" -> MYSQL;
+            case "mariadb" -> MARIADB;
+            case "postgresql", "postgres" -> POSTGRESQL;
+            default -> null;
+        };
+    }
+
+    private boolean isMysqlFamily() {
+        return this != POSTGRESQL;
+    }
+
+    String identityColumn() {
+        return isMysqlFamily() ? "BIGINT AUTO_INCREMENT PRIMARY KEY" : "BIGSERIAL PRIMARY KEY";
+    }
+
+    String timestampType() {
+        return isMysqlFamily() ? "DATETIME(3)" : "TIMESTAMP(3)";
+    }
+
+    /**
+     * CREATE TABLE plus its secondary indexes, each given as {@code "name(col, col)"}. MySQL has no
+     * CREATE INDEX IF NOT EXISTS, so there the indexes go inside the table definition.
+     */
+    List<String> createTable(String table, String columns, String... indexes) {
+        List<String> out = new ArrayList<>();
+        if (isMysqlFamily()) {
+            StringBuilder sb = new StringBuilder("CREATE TABLE IF NOT EXISTS ").append(table).append(" (").append(columns);
+            for (String index : indexes) sb.append(", INDEX ").append(index);
+            out.add(sb.append(')').toString());
+        } else {
+            out.add("CREATE TABLE IF NOT EXISTS " + table + " (" + columns + ")");
+            for (String index : indexes) {
+                int open = index.indexOf('(');
+                out.add("CREATE INDEX IF NOT EXISTS " + index.substring(0, open) + " ON " + table + " " + index.substring(open));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * INSERT that silently does nothing when the primary key already exists. PostgreSQL gets no
+     * conflict target: the tables written this way have no other unique constraint.
+     */
+    String insertIgnore(String table, String columns, String values) {
+        return isMysqlFamily()
+                ? "INSERT IGNORE INTO " + table + " (" + columns + ") VALUES (" + values + ")"
+                : "INSERT INTO " + table + " (" + columns + ") VALUES (" + values + ") ON CONFLICT DO NOTHING";
+    }
+
+    /** INSERT that overwrites {@code updated} columns with the new values when {@code key} already exists. */
+    String upsert(String table, String columns, String values, String key, String... updated) {
+        StringBuilder sb = new StringBuilder("INSERT INTO ").append(table)
+                .append(" (").append(columns).append(") VALUES (").append(values).append(") ");
+        sb.append(isMysqlFamily() ? "ON DUPLICATE KEY UPDATE " : "ON CONFLICT (" + key + ") DO UPDATE SET ");
+        for (int i = 0; i < updated.length; i++) {
+            if (i > 0) sb.append(", ");
+            String c = updated[i];
+            sb.append(c).append('=').append(isMysqlFamily() ? "VALUES(" + c + ")" : "EXCLUDED." + c);
+        }
+        return sb.toString();
+    }
+
+    /** Deletes the {@code ?} oldest rows with id below {@code ?}; parameters are (cutoffId, limit). */
+    String deleteOldest(String table) {
+        return deleteOldest(table, "id", "id");
+    }
+
+    /**
+     * Deletes up to {@code ?} rows whose {@code column} is below {@code ?}, lowest first; parameters
+     * are (bound, limit). MySQL rejects LIMIT in an IN subquery, so the batch goes through a derived
+     * table, which every dialect accepts.
+     */
+    String deleteOldest(String table, String key, String column) {
+        return "DELETE FROM " + table + " WHERE " + key + " IN (SELECT " + key + " FROM (SELECT " + key
+                + " FROM " + table + " WHERE " + column + " < ? ORDER BY " + column + " ASC LIMIT ?) batch)";
+    }
+}
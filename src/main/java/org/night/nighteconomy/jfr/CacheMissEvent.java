@@ -0,0 +1,21 @@
+package org.night.nighteconomy.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.night.nighteconomy.CacheMiss")
+@Label("Balance Cache Miss")
+@Description("A balance lookup that had to go to the database.")
+@Category({"NightEconomy", "Economy"})
+@StackTrace(false)
+public final class CacheMissEvent extends Event {
+    @Label("Currency")
+    public String currency;
+
+    @Label("Player")
+    public String player;
+}
@@ -0,0 +1,27 @@
+package org.night.nighteconomy.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.night.nighteconomy.Checkpoint")
+@Label("WAL Checkpoint")
+@Description("A SQLite WAL checkpoint.")
+@Category({"NightEconomy", "Database"})
+@StackTrace(false)
+public final class CheckpointEvent extends Event {
+    @Label("Mode")
+    public String mode;
+
+    @Label("Busy")
+    public boolean busy;
+
+    @Label("WAL Frames")
+    public int walFrames;
+
+    @Label("Checkpointed Frames")
+    public int checkpointedFrames;
+}
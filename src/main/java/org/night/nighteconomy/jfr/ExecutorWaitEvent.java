@@ -0,0 +1,21 @@
+package org.night.nighteconomy.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.night.nighteconomy.ExecutorWait")
+@Label("Database Queue Wait")
+@Description("Time a task spent queued before the database thread ran it.")
+@Category({"NightEconomy", "Database"})
+@StackTrace(false)
+public final class ExecutorWaitEvent extends Event {
+    @Label("Lane")
+    public String lane;
+
+    @Label("Queue Depth")
+    public int queueDepth;
+}
@@ -0,0 +1,30 @@
+package org.night.nighteconomy.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.night.nighteconomy.Mutation")
+@Label("Balance Mutation")
+@Description("A balance set, add, subtract or reset attempt, whether or not it was applied.")
+@Category({"NightEconomy", "Economy"})
+@StackTrace(false)
+public final class MutationEvent extends Event {
+    @Label("Currency")
+    public String currency;
+
+    @Label("Player")
+    public String player;
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Amount")
+    public double amount;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,33 @@
+package org.night.nighteconomy.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.night.nighteconomy.Payment")
+@Label("Payment")
+@Description("A player-to-player payment executed on the database thread.")
+@Category({"NightEconomy", "Economy"})
+@StackTrace(false)
+public final class PaymentEvent extends Event {
+    @Label("Currency")
+    public String currency;
+
+    @Label("Sender")
+    public String sender;
+
+    @Label("Receiver")
+    public String receiver;
+
+    @Label("Amount")
+    public double amount;
+
+    @Label("Fee")
+    public double fee;
+
+    @Label("Status")
+    public String status;
+}
@@ -0,0 +1,24 @@
+package org.night.nighteconomy.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.night.nighteconomy.Prune")
+@Label("Transaction Prune Batch")
+@Description("One bounded batch of expired transaction deletes.")
+@Category({"NightEconomy", "Database"})
+@StackTrace(false)
+public final class PruneEvent extends Event {
+    @Label("Cutoff Id")
+    public long cutoffId;
+
+    @Label("Batch Limit")
+    public int limit;
+
+    @Label("Rows Deleted")
+    public int rows;
+}
@@ -0,0 +1,21 @@
+package org.night.nighteconomy.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.night.nighteconomy.RankingRebuild")
+@Label("Ranking Rebuild")
+@Description("Rebuild of one currency ranking from the accounts table.")
+@Category({"NightEconomy", "Economy"})
+@StackTrace(false)
+public final class RankingRebuildEvent extends Event {
+    @Label("Currency")
+    public String currency;
+
+    @Label("Rows")
+    public int rows;
+}
@@ -0,0 +1,21 @@
+package org.night.nighteconomy.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.night.nighteconomy.Vacuum")
+@Label("Incremental Vacuum Slice")
+@Description("One time-bounded slice of incremental_vacuum steps.")
+@Category({"NightEconomy", "Database"})
+@StackTrace(false)
+public final class VacuumEvent extends Event {
+    @Label("Pages Released")
+    public long pagesReleased;
+
+    @Label("Pages Remaining")
+    public long pagesRemaining;
+}
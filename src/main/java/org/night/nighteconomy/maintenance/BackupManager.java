@@ -0,0 +1,225 @@
+package org.night.nighteconomy.maintenance;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.night.nighteconomy.config.SettingsManager;
+import org.night.nighteconomy.database.LedgerStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Scheduled and on-demand snapshots of the economy database. Each snapshot is written by
+ * {@link LedgerStore#backupTo(Path)} on its own thread, so the database executor is never held.
+ * Backends without backup support (see {@link LedgerStore#supportsBackups()}) are never scheduled. Old snapshots beyond {@code backup.keep} are removed.
+ */
+public class BackupManager {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final String PREFIX = "nighteconomy-";
+    private static final String SUFFIX = ".db";
+    private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final long DISABLED_RECHECK_MIN = 60;
+
+    private final LedgerStore databaseManager;
+    private final SettingsManager settings;
+    private final Path directory;
+    private final ScheduledExecutorService scheduler;
+    private final BooleanSupplier busy;
+    private final ExecutorService worker;
+
+    private CompletableFuture<BackupResult> inFlight;
+    private volatile BackupResult lastResult;
+    private volatile boolean running;
+
+    public BackupManager(LedgerStore databaseManager,
+                         SettingsManager settings,
+                         Path directory,
+                         ScheduledExecutorService scheduler,
+                         BooleanSupplier busy) {
+        this.databaseManager = databaseManager;
+        this.settings = settings;
+        this.directory = directory;
+        this.scheduler = scheduler;
+        this.busy = busy;
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "NE-Backup");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    public void start() {
+        if (running) return;
+        if (!databaseManager.supportsBackups()) {
+            LOGGER.info("Backups disabled: the storage backend does not support them");
+            return;
+        }
+        running = true;
+
+        long intervalMs = intervalMs();
+        if (intervalMs <= 0) {
+            schedule(TimeUnit.MINUTES.toMillis(DISABLED_RECHECK_MIN));
+            return;
+        }
+        long newest = newestBackupTime();
+        long delay = newest > 0 ? newest + intervalMs - System.currentTimeMillis() : intervalMs;
+        schedule(Math.max(TimeUnit.MINUTES.toMillis(1), delay));
+        LOGGER.debug("Backup scheduler started: interval={}h, keep={}", settings.getLong("backup.interval-hours"), keep());
+    }
+
+    public void stop() {
+        running = false;
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(30, TimeUnit.SECONDS)) {
+                worker.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            worker.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public BackupResult getLastResult() {
+        return lastResult;
+    }
+
+    /** Starts a backup now, or returns the one already running. */
+    public synchronized CompletableFuture<BackupResult> backupNow() {
+        if (inFlight != null && !inFlight.isDone()) return inFlight;
+        if (!databaseManager.supportsBackups()) {
+            return CompletableFuture.completedFuture(BackupResult.failed("storage backend does not support backups", 0L));
+        }
+        try {
+            inFlight = CompletableFuture.supplyAsync(this::runBackup, worker);
+        } catch (RejectedExecutionException e) {
+            inFlight = CompletableFuture.completedFuture(BackupResult.failed("backup executor stopped", 0L));
+        }
+        return inFlight;
+    }
+
+    private long intervalMs() {
+        return TimeUnit.HOURS.toMillis(Math.max(0L, settings.getLong("backup.interval-hours")));
+    }
+
+    private int keep() {
+        return Math.max(1, settings.getInt("backup.keep"));
+    }
+
+    private void schedule(long delayMs) {
+        if (!running) return;
+        try {
+            scheduler.schedule(this::scheduledRun, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            running = false;
+        }
+    }
+
+    private void scheduledRun() {
+        long intervalMs = intervalMs();
+        if (intervalMs <= 0) {
+            schedule(TimeUnit.MINUTES.toMillis(DISABLED_RECHECK_MIN));
+            return;
+        }
+        if (busy.getAsBoolean()) {
+            long retry = TimeUnit.MINUTES.toMillis(Math.max(1L, settings.getLong("backup.busy-retry-minutes")));
+            LOGGER.debug("Scheduled backup postponed, server busy");
+            schedule(retry);
+            return;
+        }
+        backupNow().whenComplete((r, e) -> schedule(intervalMs));
+    }
+
+    private BackupResult runBackup() {
+        long start = System.currentTimeMillis();
+        Path target = directory.resolve(PREFIX + LocalDateTime.now().format(STAMP) + SUFFIX);
+        Path tmp = directory.resolve(target.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            Files.deleteIfExists(tmp);
+
+            databaseManager.backupTo(tmp);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            long size = Files.size(target);
+            long duration = System.currentTimeMillis() - start;
+            int removed = rotate();
+            BackupResult result = new BackupResult(true, target, size, duration, start, null);
+            lastResult = result;
+            LOGGER.info("Backup written to {} ({} bytes, {} ms, {} old removed)", target, size, duration, removed);
+            return result;
+        } catch (Exception e) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {}
+            LOGGER.error("Erro ao criar backup do banco: ", e);
+            BackupResult result = BackupResult.failed(e.getMessage(), start);
+            lastResult = result;
+            return result;
+        }
+    }
+
+    private List<Path> listBackups() throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return files;
+        try (var stream = Files.list(directory)) {
+            stream.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).forEach(files::add);
+        }
+        // The timestamp in the name sorts chronologically.
+        files.sort(null);
+        return files;
+    }
+
+    private int rotate() {
+        try {
+            List<Path> files = listBackups();
+            int excess = files.size() - keep();
+            int removed = 0;
+            for (int i = 0; i < excess; i++) {
+                if (Files.deleteIfExists(files.get(i))) removed++;
+            }
+            return removed;
+        } catch (IOException e) {
+            LOGGER.warn("Could not rotate backups in {}: {}", directory, e.getMessage());
+            return 0;
+        }
+    }
+
+    private long newestBackupTime() {
+        try {
+            List<Path> files = listBackups();
+            if (files.isEmpty()) return 0L;
+            return Files.getLastModifiedTime(files.get(files.size() - 1)).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    public record BackupResult(boolean success, Path file, long sizeBytes, long durationMs, long startedAt, String error) {
+        static BackupResult failed(String error, long startedAt) {
+            return new BackupResult(false, null, 0L,
+                    startedAt > 0 ? System.currentTimeMillis() - startedAt : 0L, startedAt, error);
+        }
+    }
+}
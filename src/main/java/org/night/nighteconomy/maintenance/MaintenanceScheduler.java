@@ -0,0 +1,318 @@
+package org.night.nighteconomy.maintenance;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.night.nighteconomy.config.SettingsManager;
+import org.night.nighteconomy.database.LedgerStore;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager;
+import org.night.nighteconomy.jfr.VacuumEvent;
+import org.night.nighteconomy.metrics.EconomyMetrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Load-aware SQLite housekeeping. Every cycle measures the account mutation rate and the server
+ * tick time; while either is above its threshold only PASSIVE checkpoints run. When idle, the WAL is
+ * truncated once it grows past its limit, free pages are released with time-sliced
+ * {@code incremental_vacuum} steps and {@code PRAGMA optimize} refreshes statistics. Converting an
+ * existing file to incremental auto_vacuum takes a full VACUUM and is left to an admin command.
+ * All database work is queued on the economy's database executor, one short task at a time.
+ */
+public class MaintenanceScheduler {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    /** Null for backends other than SQLite: then only load sampling and pruning run. */
+    private final MultiCurrencyDatabaseManager databaseManager;
+    private final SettingsManager settings;
+    private final Executor dbExecutor;
+    private final ScheduledExecutorService scheduler;
+    private final DoubleSupplier tickTimeMs;
+    private final TransactionPruner pruner;
+
+    private final AtomicLong operations = new AtomicLong();
+    private final AtomicBoolean cycleQueued = new AtomicBoolean();
+    private final AtomicBoolean vacuumRunning = new AtomicBoolean();
+    private volatile boolean running;
+
+    private long lastOps;
+    private long lastSampleAt;
+    private boolean conversionAttempted;
+    private Path walFile;
+    private boolean walResolved;
+
+    private volatile boolean busy;
+    private volatile double opsPerSecond;
+    private volatile double tickMs;
+    private volatile long lastCycleAt;
+    private volatile long deferredCycles;
+    private volatile int autoVacuumMode = -1;
+    private volatile long freelistPages;
+    private volatile long pageCount;
+    private volatile long walBytes;
+    private volatile String lastCheckpointMode = "-";
+    private volatile long lastCheckpointAt;
+    private volatile long lastCheckpointFrames;
+    private volatile long vacuumedPagesTotal;
+    private volatile long lastVacuumAt;
+    private volatile long lastOptimizeAt;
+    private volatile long lastConversionAt;
+
+    public MaintenanceScheduler(LedgerStore store,
+                                SettingsManager settings,
+                                Executor dbExecutor,
+                                ScheduledExecutorService scheduler,
+                                DoubleSupplier tickTimeMs) {
+        this.databaseManager = store instanceof MultiCurrencyDatabaseManager sqlite ? sqlite : null;
+        this.settings = settings;
+        this.dbExecutor = dbExecutor;
+        this.scheduler = scheduler;
+        this.tickTimeMs = tickTimeMs;
+        this.pruner = new TransactionPruner(store, settings, dbExecutor, scheduler, () -> busy);
+    }
+
+    public void start() {
+        if (running) return;
+        running = true;
+        long now = System.currentTimeMillis();
+        lastSampleAt = now;
+        lastOptimizeAt = now;
+        scheduleNext();
+        LOGGER.debug("Maintenance scheduler started: interval={}s", interval());
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    /** Counts one account mutation towards the load estimate. */
+    public void recordOperation() {
+        operations.incrementAndGet();
+    }
+
+    public TransactionPruner getPruner() {
+        return pruner;
+    }
+
+    public boolean isBusy() {
+        return busy;
+    }
+
+    public MaintenanceStatus getStatus() {
+        return new MaintenanceStatus(lastCycleAt, busy, opsPerSecond, tickMs, deferredCycles,
+                autoVacuumMode, freelistPages, pageCount, walBytes,
+                lastCheckpointMode, lastCheckpointAt, lastCheckpointFrames,
+                vacuumedPagesTotal, lastVacuumAt, lastOptimizeAt, lastConversionAt);
+    }
+
+    private long interval() {
+        return Math.max(5L, settings.getLong("maintenance.interval-seconds"));
+    }
+
+    private void scheduleNext() {
+        if (!running) return;
+        try {
+            scheduler.schedule(this::tick, interval(), TimeUnit.SECONDS);
+        } catch (RejectedExecutionException ignored) {
+            running = false;
+        }
+    }
+
+    private void tick() {
+        try {
+            sampleLoad();
+            if (cycleQueued.compareAndSet(false, true)) {
+                final boolean heavyAllowed = !busy;
+                dbExecutor.execute(() -> {
+                    try {
+                        runCycle(heavyAllowed);
+                    } catch (Exception e) {
+                        LOGGER.error("Erro na manutenção do banco: ", e);
+                    } finally {
+                        cycleQueued.set(false);
+                    }
+                });
+            }
+        } catch (RejectedExecutionException e) {
+            cycleQueued.set(false);
+        } catch (Exception e) {
+            LOGGER.error("Erro ao agendar manutenção do banco: ", e);
+        } finally {
+            scheduleNext();
+        }
+    }
+
+    private void sampleLoad() {
+        long now = System.currentTimeMillis();
+        long ops = operations.get();
+        double elapsedSec = Math.max(1L, now - lastSampleAt) / 1000.0;
+        opsPerSecond = (ops - lastOps) / elapsedSec;
+        lastOps = ops;
+        lastSampleAt = now;
+
+        double tick;
+        try {
+            tick = tickTimeMs.getAsDouble();
+        } catch (Exception e) {
+            tick = 0.0;
+        }
+        tickMs = tick;
+
+        busy = opsPerSecond > settings.getDouble("maintenance.busy-ops-per-second")
+                || tick > settings.getDouble("maintenance.busy-tick-ms");
+    }
+
+    private void runCycle(boolean heavyAllowed) {
+        long now = System.currentTimeMillis();
+        lastCycleAt = now;
+        if (databaseManager == null) return;
+
+        checkpoint(heavyAllowed, now);
+
+        autoVacuumMode = databaseManager.getAutoVacuumMode();
+        freelistPages = databaseManager.getFreelistCount();
+        pageCount = databaseManager.getPageCount();
+
+        if (!heavyAllowed) {
+            deferredCycles++;
+            LOGGER.debug("Maintenance deferred: ops/s={}, tick={}ms", opsPerSecond, tickMs);
+            return;
+        }
+
+        if (autoVacuumMode != AUTO_VACUUM_INCREMENTAL) {
+            if (!conversionAttempted && settings.getBoolean("maintenance.convert-auto-vacuum")) {
+                conversionAttempted = true;
+                convertAutoVacuum();
+                return;
+            }
+        } else if (freelistPages >= settings.getLong("maintenance.vacuum-min-free-pages")
+                && vacuumRunning.compareAndSet(false, true)) {
+            submitVacuumSlice();
+        }
+
+        long optimizeEvery = TimeUnit.HOURS.toMillis(Math.max(1L, settings.getLong("maintenance.analyze-interval-hours")));
+        if (now - lastOptimizeAt >= optimizeEvery && databaseManager.optimize()) {
+            lastOptimizeAt = now;
+        }
+    }
+
+    /**
+     * Converts the database to auto_vacuum=INCREMENTAL now. The full VACUUM holds the database
+     * thread until it ends, so every payment waits behind it; completes false on other backends.
+     */
+    public CompletableFuture<Boolean> convertAutoVacuumNow() {
+        if (databaseManager == null) return CompletableFuture.completedFuture(false);
+        try {
+            return CompletableFuture.supplyAsync(this::convertAutoVacuum, dbExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    private boolean convertAutoVacuum() {
+        if (databaseManager.getAutoVacuumMode() == AUTO_VACUUM_INCREMENTAL) return true;
+        conversionAttempted = true;
+        LOGGER.info("Converting database to auto_vacuum=INCREMENTAL ({} pages)...", databaseManager.getPageCount());
+        if (!databaseManager.convertToIncrementalAutoVacuum()) return false;
+        lastConversionAt = System.currentTimeMillis();
+        autoVacuumMode = AUTO_VACUUM_INCREMENTAL;
+        freelistPages = databaseManager.getFreelistCount();
+        pageCount = databaseManager.getPageCount();
+        return true;
+    }
+
+    private void checkpoint(boolean heavyAllowed, long now) {
+        long size = walSize();
+        String mode = null;
+        if (heavyAllowed && size >= settings.getLong("maintenance.wal-truncate-bytes")) {
+            mode = "TRUNCATE";
+        } else if (size >= settings.getLong("maintenance.wal-passive-bytes")) {
+            mode = "PASSIVE";
+        }
+
+        if (mode != null) {
+            long start = System.nanoTime();
+            int[] result = databaseManager.walCheckpoint(mode);
+            EconomyMetrics.CHECKPOINT.recordSince(start);
+            if (result != null) {
+                lastCheckpointMode = mode;
+                lastCheckpointAt = now;
+                lastCheckpointFrames = result[2];
+            }
+            size = walSize();
+        }
+        walBytes = size;
+    }
+
+    private long walSize() {
+        if (!walResolved) {
+            Path db = databaseManager.getDatabaseFile();
+            walFile = db != null ? db.resolveSibling(db.getFileName() + "-wal") : null;
+            walResolved = true;
+        }
+        if (walFile == null) return 0L;
+        try {
+            return Files.exists(walFile) ? Files.size(walFile) : 0L;
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private void submitVacuumSlice() {
+        try {
+            dbExecutor.execute(this::vacuumSlice);
+        } catch (RejectedExecutionException e) {
+            vacuumRunning.set(false);
+        }
+    }
+
+    /** One bounded burst of incremental_vacuum; re-queues itself behind pending work while pages remain. */
+    private void vacuumSlice() {
+        boolean again = false;
+        try {
+            int step = Math.max(1, settings.getInt("maintenance.vacuum-step-pages"));
+            long budgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, settings.getLong("maintenance.vacuum-slice-ms")));
+            long start = System.nanoTime();
+
+            VacuumEvent event = new VacuumEvent();
+            event.begin();
+            long before = databaseManager.getFreelistCount();
+            long free = before;
+            while (free > 0 && System.nanoTime() - start < budgetNanos) {
+                if (!databaseManager.incrementalVacuum(step)) break;
+                long next = databaseManager.getFreelistCount();
+                if (next >= free) break;
+                free = next;
+            }
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.pagesReleased = before - free;
+                event.pagesRemaining = free;
+                event.commit();
+            }
+
+            if (free < before) {
+                vacuumedPagesTotal += before - free;
+                lastVacuumAt = System.currentTimeMillis();
+            }
+            freelistPages = free;
+            again = running && free > 0 && free < before && !busy;
+        } catch (Exception e) {
+            LOGGER.error("Erro no incremental vacuum: ", e);
+        } finally {
+            if (again) submitVacuumSlice();
+            else vacuumRunning.set(false);
+        }
+    }
+}
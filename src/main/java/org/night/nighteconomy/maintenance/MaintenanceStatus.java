@@ -0,0 +1,33 @@
+package org.night.nighteconomy.maintenance;
+
+/**
+ * Snapshot of what the maintenance scheduler last saw and did. Timestamps are epoch millis,
+ * 0 meaning "never".
+ */
+public record MaintenanceStatus(
+        long lastCycleAt,
+        boolean busy,
+        double opsPerSecond,
+        double tickMs,
+        long deferredCycles,
+        int autoVacuumMode,
+        long freelistPages,
+        long pageCount,
+        long walBytes,
+        String lastCheckpointMode,
+        long lastCheckpointAt,
+        long lastCheckpointFrames,
+        long vacuumedPagesTotal,
+        long lastVacuumAt,
+        long lastOptimizeAt,
+        long lastConversionAt
+) {
+    public static String autoVacuumName(int mode) {
+        return switch (mode) {
+            case 0 -> "NONE";
+            case 1 -> "FULL";
+            case 2 -> "INCREMENTAL";
+            default -> "?";
+        };
+    }
+}
@@ -0,0 +1,182 @@
+package org.night.nighteconomy.maintenance;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.night.nighteconomy.config.SettingsManager;
+import org.night.nighteconomy.database.LedgerStore;
+import org.night.nighteconomy.metrics.EconomyMetrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Removes expired transactions in bounded batches. The cutoff id is resolved once per run; each
+ * batch is a separate task on the database executor, so queued payments run between batches.
+ * While the server is busy the next batch is delayed instead of queued right away.
+ */
+public class TransactionPruner {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final LedgerStore databaseManager;
+    private final SettingsManager settings;
+    private final Executor dbExecutor;
+    private final ScheduledExecutorService scheduler;
+    private final BooleanSupplier busy;
+
+    private volatile Run current;
+
+    private volatile long lastStartAt;
+    private volatile long lastFinishAt;
+    private volatile long lastRows;
+    private volatile long lastBatches;
+    private volatile long lastDurationMs;
+    private volatile long totalRows;
+
+    TransactionPruner(LedgerStore databaseManager,
+                      SettingsManager settings,
+                      Executor dbExecutor,
+                      ScheduledExecutorService scheduler,
+                      BooleanSupplier busy) {
+        this.databaseManager = databaseManager;
+        this.settings = settings;
+        this.dbExecutor = dbExecutor;
+        this.scheduler = scheduler;
+        this.busy = busy;
+    }
+
+    /**
+     * Starts a pruning run, or joins the one already in progress. Completes with the number of
+     * rows removed by that run.
+     */
+    public synchronized CompletableFuture<Integer> prune(double retentionDays) {
+        Run run = current;
+        if (run != null) return run.result;
+
+        run = new Run(retentionDays);
+        current = run;
+        lastStartAt = System.currentTimeMillis();
+        final Run r = run;
+        try {
+            dbExecutor.execute(() -> begin(r));
+        } catch (RejectedExecutionException e) {
+            finish(r);
+        }
+        return run.result;
+    }
+
+    public boolean isRunning() {
+        return current != null;
+    }
+
+    public PruneStatus getStatus() {
+        Run run = current;
+        if (run != null) {
+            long elapsed = System.currentTimeMillis() - run.startedAt;
+            return new PruneStatus(true, run.startedAt, 0L, run.rows, run.batches, elapsed,
+                    rate(run.rows, elapsed), totalRows + run.rows);
+        }
+        return new PruneStatus(false, lastStartAt, lastFinishAt, lastRows, lastBatches, lastDurationMs,
+                rate(lastRows, lastDurationMs), totalRows);
+    }
+
+    private static double rate(long rows, long ms) {
+        return ms > 0 ? rows * 1000.0 / ms : 0.0;
+    }
+
+    private void begin(Run run) {
+        try {
+            run.cutoffId = databaseManager.findPruneCutoff(run.retentionDays);
+            if (run.cutoffId <= 0) {
+                finish(run);
+                return;
+            }
+            batch(run);
+        } catch (Exception e) {
+            LOGGER.error("Erro no pruning de transactions: ", e);
+            finish(run);
+        }
+    }
+
+    private void batch(Run run) {
+        try {
+            int size = Math.max(1, settings.getInt("pruning.batch-size"));
+            long start = System.nanoTime();
+            int rows = databaseManager.deleteTransactionsBefore(run.cutoffId, size);
+            EconomyMetrics.PRUNE.recordSince(start);
+            if (rows > 0) {
+                run.rows += rows;
+                run.batches++;
+            }
+            if (rows < size) {
+                finish(run);
+                return;
+            }
+            next(run);
+        } catch (Exception e) {
+            LOGGER.error("Erro no pruning de transactions: ", e);
+            finish(run);
+        }
+    }
+
+    private void next(Run run) {
+        try {
+            if (busy.getAsBoolean()) {
+                long delay = Math.max(0L, settings.getLong("pruning.busy-delay-ms"));
+                scheduler.schedule(() -> submitBatch(run), delay, TimeUnit.MILLISECONDS);
+            } else {
+                submitBatch(run);
+            }
+        } catch (RejectedExecutionException e) {
+            finish(run);
+        }
+    }
+
+    private void submitBatch(Run run) {
+        try {
+            dbExecutor.execute(() -> batch(run));
+        } catch (RejectedExecutionException e) {
+            finish(run);
+        }
+    }
+
+    private void finish(Run run) {
+        long now = System.currentTimeMillis();
+        lastFinishAt = now;
+        lastRows = run.rows;
+        lastBatches = run.batches;
+        lastDurationMs = now - run.startedAt;
+        totalRows += run.rows;
+
+        synchronized (this) {
+            if (current == run) current = null;
+        }
+
+        if (run.rows > 0) {
+            LOGGER.info("Pruned {} transactions older than {} days in {} batches ({} ms)",
+                    run.rows, run.retentionDays, run.batches, lastDurationMs);
+        } else {
+            LOGGER.debug("Pruning executed. No old transactions to remove (retention={} days)", run.retentionDays);
+        }
+        run.result.complete((int) Math.min(Integer.MAX_VALUE, run.rows));
+    }
+
+    public record PruneStatus(boolean running, long lastStartAt, long lastFinishAt, long rows, long batches,
+                              long durationMs, double rowsPerSecond, long totalRows) {}
+
+    private static final class Run {
+        final double retentionDays;
+        final long startedAt = System.currentTimeMillis();
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+        volatile long cutoffId;
+        volatile long rows;
+        volatile long batches;
+
+        Run(double retentionDays) {
+            this.retentionDays = retentionDays;
+        }
+    }
+}
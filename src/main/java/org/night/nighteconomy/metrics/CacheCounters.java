@@ -0,0 +1,31 @@
+package org.night.nighteconomy.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Hit, miss and eviction counts of one cache. */
+public final class CacheCounters {
+    private final String name;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    CacheCounters(String name) {
+        this.name = name;
+    }
+
+    public String getName() { return name; }
+
+    public void hit() { hits.increment(); }
+    public void miss() { misses.increment(); }
+    public void evicted(long n) { if (n > 0) evictions.add(n); }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total > 0 ? (double) h / total : 0.0;
+    }
+}
@@ -0,0 +1,140 @@
+package org.night.nighteconomy.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.night.nighteconomy.config.SettingsManager;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Process-wide economy instrumentation: per-operation latency histograms, executor queue depth and
+ * wait time, cache counters and named event counters. The hot-path handles are static finals so
+ * recording never does a lookup. Exposed through {@code /neconomy stats}, JMX and an optional
+ * Prometheus endpoint.
+ */
+public final class EconomyMetrics {
+    private static final Logger LOGGER = LogManager.getLogger();
+    static final String JMX_NAME = "org.night.nighteconomy:type=Metrics";
+
+    private static final Map<String, LatencyHistogram> OPERATIONS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LatencyHistogram> EXECUTOR_WAITS = new ConcurrentSkipListMap<>();
+    private static final Map<String, IntSupplier> QUEUES = new ConcurrentSkipListMap<>();
+    private static final Map<String, CacheCounters> CACHES = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentSkipListMap<>();
+
+    public static final LatencyHistogram GET = operation("get");
+    public static final LatencyHistogram ADD = operation("add");
+    public static final LatencyHistogram SUB = operation("sub");
+    public static final LatencyHistogram PAY = operation("pay");
+    public static final LatencyHistogram RANKING_REBUILD = operation("ranking_rebuild");
+    public static final LatencyHistogram PRUNE = operation("prune");
+    public static final LatencyHistogram CHECKPOINT = operation("checkpoint");
+
+    public static final CacheCounters BALANCE_CACHE = cache("balance");
+
+    private static PrometheusExporter exporter;
+    private static boolean jmxRegistered;
+
+    private EconomyMetrics() {}
+
+    public static LatencyHistogram operation(String name) {
+        return OPERATIONS.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    public static LatencyHistogram executorWait(String executor) {
+        return EXECUTOR_WAITS.computeIfAbsent(executor, LatencyHistogram::new);
+    }
+
+    public static void registerQueue(String executor, IntSupplier depth) {
+        QUEUES.put(executor, depth);
+    }
+
+    public static CacheCounters cache(String name) {
+        return CACHES.computeIfAbsent(name, CacheCounters::new);
+    }
+
+    public static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    public static Map<String, Long> counters() {
+        Map<String, Long> out = new ConcurrentSkipListMap<>();
+        COUNTERS.forEach((k, v) -> out.put(k, v.sum()));
+        return out;
+    }
+
+    public static List<LatencyHistogram.Snapshot> operations() {
+        return snapshots(OPERATIONS);
+    }
+
+    public static List<LatencyHistogram.Snapshot> executorWaits() {
+        return snapshots(EXECUTOR_WAITS);
+    }
+
+    public static Map<String, Integer> queueDepths() {
+        Map<String, Integer> out = new ConcurrentSkipListMap<>();
+        QUEUES.forEach((k, v) -> {
+            try {
+                out.put(k, v.getAsInt());
+            } catch (Exception ignored) {}
+        });
+        return out;
+    }
+
+    public static Map<String, CacheCounters> caches() {
+        return Collections.unmodifiableMap(CACHES);
+    }
+
+    private static List<LatencyHistogram.Snapshot> snapshots(Map<String, LatencyHistogram> source) {
+        List<LatencyHistogram.Snapshot> out = new ArrayList<>(source.size());
+        for (LatencyHistogram h : source.values()) out.add(h.snapshot());
+        return out;
+    }
+
+    /** Registers the JMX bean and, when {@code metrics.prometheus-port} is set, starts the HTTP endpoint. */
+    public static synchronized void startExporters(SettingsManager settings) {
+        if (!jmxRegistered && settings.getBoolean("metrics.jmx")) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(JMX_NAME);
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(new MetricsMBean(), name);
+                }
+                jmxRegistered = true;
+            } catch (Exception e) {
+                LOGGER.warn("Could not register metrics MBean: {}", e.getMessage());
+            }
+        }
+
+        int port = settings.getInt("metrics.prometheus-port");
+        if (exporter == null && port > 0) {
+            try {
+                exporter = PrometheusExporter.start(settings.getString("metrics.prometheus-host"), port);
+            } catch (Exception e) {
+                LOGGER.error("Could not start Prometheus endpoint on port {}: ", port, e);
+            }
+        }
+    }
+
+    public static synchronized void stopExporters() {
+        if (exporter != null) {
+            exporter.stop();
+            exporter = null;
+        }
+        if (jmxRegistered) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(JMX_NAME));
+            } catch (Exception ignored) {}
+            jmxRegistered = false;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.night.nighteconomy.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two nanosecond buckets: bucket {@code i} holds
+ * values in {@code [2^(i-1), 2^i)} ns. Recording is a handful of atomic increments, so it is safe on
+ * the database thread; percentiles are interpolated inside a bucket and are estimates.
+ */
+public final class LatencyHistogram {
+    static final int BUCKETS = 64;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder sumNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets.incrementAndGet(bucketOf(nanos));
+        sumNanos.add(nanos);
+
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /** Records the time elapsed since {@code startNanos} (a {@link System#nanoTime()} value). */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    static int bucketOf(long nanos) {
+        return nanos == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    /** Exclusive upper bound of bucket {@code i} in nanoseconds. */
+    static long upperBound(int i) {
+        return i >= 63 ? Long.MAX_VALUE : 1L << i;
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = buckets.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(name, copy, total, sumNanos.sum(), maxNanos.get());
+    }
+
+    public static final class Snapshot {
+        private final String name;
+        private final long[] buckets;
+        private final long count;
+        private final long sumNanos;
+        private final long maxNanos;
+
+        Snapshot(String name, long[] buckets, long count, long sumNanos, long maxNanos) {
+            this.name = name;
+            this.buckets = buckets;
+            this.count = count;
+            this.sumNanos = sumNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public String getName() { return name; }
+        public long getCount() { return count; }
+        public long getSumNanos() { return sumNanos; }
+        public long getMaxNanos() { return maxNanos; }
+
+        public double getMeanNanos() {
+            return count > 0 ? (double) sumNanos / count : 0.0;
+        }
+
+        /** Estimated value at quantile {@code q} (0..1), in nanoseconds. */
+        public long percentile(double q) {
+            if (count == 0) return 0L;
+            double rank = Math.max(1.0, Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                long n = buckets[i];
+                if (n == 0) continue;
+                if (seen + n >= rank) {
+                    long lo = i == 0 ? 0L : 1L << (i - 1);
+                    long hi = Math.min(upperBound(i), maxNanos + 1);
+                    double frac = (rank - seen) / n;
+                    return Math.min(maxNanos, lo + (long) ((hi - lo) * frac));
+                }
+                seen += n;
+            }
+            return maxNanos;
+        }
+
+        /** Samples recorded after {@code earlier} was taken. The max stays the all-time max. */
+        public Snapshot minus(Snapshot earlier) {
+            long[] diff = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                diff[i] = Math.max(0L, buckets[i] - earlier.buckets[i]);
+                total += diff[i];
+            }
+            return new Snapshot(name, diff, total, Math.max(0L, sumNanos - earlier.sumNanos), maxNanos);
+        }
+
+        /** Number of samples below {@code upperBound(i)}. */
+        long cumulative(int i) {
+            long c = 0;
+            for (int b = 0; b <= i && b < BUCKETS; b++) c += buckets[b];
+            return c;
+        }
+    }
+}
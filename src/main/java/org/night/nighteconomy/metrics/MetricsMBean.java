@@ -0,0 +1,92 @@
+package org.night.nighteconomy.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only JMX view of {@link EconomyMetrics}. Attributes are flattened names such as
+ * {@code op.pay.p99Micros}, {@code queue.NE-DB.depth} or {@code cache.balance.hitRatio}.
+ */
+final class MetricsMBean implements DynamicMBean {
+
+    private static Map<String, Object> values() {
+        Map<String, Object> v = new LinkedHashMap<>();
+        for (LatencyHistogram.Snapshot s : EconomyMetrics.operations()) {
+            put(v, "op." + s.getName(), s);
+        }
+        for (LatencyHistogram.Snapshot s : EconomyMetrics.executorWaits()) {
+            put(v, "queue." + s.getName() + ".wait", s);
+        }
+        EconomyMetrics.queueDepths().forEach((k, d) -> v.put("queue." + k + ".depth", d.longValue()));
+        EconomyMetrics.counters().forEach((k, n) -> v.put("counter." + k, n));
+        EconomyMetrics.caches().forEach((k, c) -> {
+            v.put("cache." + k + ".hits", c.getHits());
+            v.put("cache." + k + ".misses", c.getMisses());
+            v.put("cache." + k + ".evictions", c.getEvictions());
+            v.put("cache." + k + ".hitRatio", c.getHitRatio());
+        });
+        return v;
+    }
+
+    private static void put(Map<String, Object> v, String prefix, LatencyHistogram.Snapshot s) {
+        v.put(prefix + ".count", s.getCount());
+        v.put(prefix + ".meanMicros", s.getMeanNanos() / 1000.0);
+        v.put(prefix + ".p50Micros", s.percentile(0.50) / 1000L);
+        v.put(prefix + ".p95Micros", s.percentile(0.95) / 1000L);
+        v.put(prefix + ".p99Micros", s.percentile(0.99) / 1000L);
+        v.put(prefix + ".maxMicros", s.getMaxNanos() / 1000L);
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Object value = values().get(attribute);
+        if (value == null) throw new AttributeNotFoundException(attribute);
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Object> v = values();
+        AttributeList list = new AttributeList();
+        for (String a : attributes) {
+            Object value = v.get(a);
+            if (value != null) list.add(new Attribute(a, value));
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+        throw new UnsupportedOperationException("NightEconomy metrics are read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Object> v = values();
+        MBeanAttributeInfo[] attrs = new MBeanAttributeInfo[v.size()];
+        int i = 0;
+        for (Map.Entry<String, Object> e : v.entrySet()) {
+            attrs[i++] = new MBeanAttributeInfo(e.getKey(), e.getValue().getClass().getName(),
+                    e.getKey(), true, false, false);
+        }
+        return new MBeanInfo(getClass().getName(), "NightEconomy metrics", attrs,
+                null, new MBeanOperationInfo[0], null);
+    }
+}
@@ -0,0 +1,118 @@
+package org.night.nighteconomy.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** Serves {@link EconomyMetrics} in the Prometheus text format on {@code /metrics}. */
+final class PrometheusExporter {
+    private static final Logger LOGGER = LogManager.getLogger();
+    /** Exported bucket range: 2^10 ns (~1 µs) up to 2^36 ns (~69 s). */
+    private static final int FIRST_BUCKET = 10;
+    private static final int LAST_BUCKET = 36;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private PrometheusExporter(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    static PrometheusExporter start(String host, int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "NE-Metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/metrics", PrometheusExporter::handle);
+        server.start();
+        LOGGER.info("Prometheus metrics available at http://{}:{}/metrics", host, port);
+        return new PrometheusExporter(server, executor);
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    static String render() {
+        StringBuilder sb = new StringBuilder(8192);
+
+        histograms(sb, "nighteconomy_operation_seconds", "op",
+                "Latency of economy database operations.", EconomyMetrics.operations());
+        histograms(sb, "nighteconomy_executor_wait_seconds", "executor",
+                "Time tasks spent queued before running.", EconomyMetrics.executorWaits());
+
+        sb.append("# HELP nighteconomy_executor_queue_depth Tasks waiting in the executor queue.\n");
+        sb.append("# TYPE nighteconomy_executor_queue_depth gauge\n");
+        EconomyMetrics.queueDepths().forEach((k, d) ->
+                sb.append("nighteconomy_executor_queue_depth{executor=\"").append(k).append("\"} ").append(d).append('\n'));
+
+        sb.append("# HELP nighteconomy_cache_requests_total Cache lookups by result.\n");
+        sb.append("# TYPE nighteconomy_cache_requests_total counter\n");
+        EconomyMetrics.caches().forEach((k, c) -> {
+            sb.append("nighteconomy_cache_requests_total{cache=\"").append(k).append("\",result=\"hit\"} ").append(c.getHits()).append('\n');
+            sb.append("nighteconomy_cache_requests_total{cache=\"").append(k).append("\",result=\"miss\"} ").append(c.getMisses()).append('\n');
+        });
+        sb.append("# HELP nighteconomy_cache_evictions_total Entries removed from the cache.\n");
+        sb.append("# TYPE nighteconomy_cache_evictions_total counter\n");
+        EconomyMetrics.caches().forEach((k, c) ->
+                sb.append("nighteconomy_cache_evictions_total{cache=\"").append(k).append("\"} ").append(c.getEvictions()).append('\n'));
+
+        sb.append("# HELP nighteconomy_events_total Named economy event counters.\n");
+        sb.append("# TYPE nighteconomy_events_total counter\n");
+        EconomyMetrics.counters().forEach((k, n) ->
+                sb.append("nighteconomy_events_total{event=\"").append(k).append("\"} ").append(n).append('\n'));
+
+        return sb.toString();
+    }
+
+    private static void histograms(StringBuilder sb, String metric, String label, String help,
+                                   List<LatencyHistogram.Snapshot> snapshots) {
+        sb.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(metric).append(" histogram\n");
+        for (LatencyHistogram.Snapshot s : snapshots) {
+            String tag = label + "=\"" + s.getName() + "\"";
+            for (int i = FIRST_BUCKET; i <= LAST_BUCKET; i++) {
+                sb.append(metric).append("_bucket{").append(tag).append(",le=\"")
+                        .append(seconds(LatencyHistogram.upperBound(i))).append("\"} ")
+                        .append(s.cumulative(i)).append('\n');
+            }
+            sb.append(metric).append("_bucket{").append(tag).append(",le=\"+Inf\"} ").append(s.getCount()).append('\n');
+            sb.append(metric).append("_sum{").append(tag).append("} ").append(seconds(s.getSumNanos())).append('\n');
+            sb.append(metric).append("_count{").append(tag).append("} ").append(s.getCount()).append('\n');
+        }
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9g", nanos / 1e9);
+    }
+}
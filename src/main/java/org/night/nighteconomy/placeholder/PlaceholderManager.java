@@ -2,28 +2,39 @@ package org.night.nighteconomy.placeholder;
 
 import org.night.nighteconomy.config.ConfigManager;
 import org.night.nighteconomy.currency.CurrencyConfig;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.RankingEntry;
+import org.night.nighteconomy.ranking.RankingManager;
+import org.night.nighteconomy.ranking.RankingSnapshot;
 import org.night.nighteconomy.service.MultiCurrencyEconomyService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PlaceholderManager {
     private static final Logger LOGGER = LogManager.getLogger();
 
     private final MultiCurrencyEconomyService economyService;
     private final ConfigManager configManager;
+    private final RankingManager rankingManager;
+    private final PlaceholderValueCache valueCache = new PlaceholderValueCache();
 
-    private static final Pattern CURRENCY_PLACEHOLDER_PATTERN =
-            Pattern.compile("nighteconomy_([a-zA-Z0-9_]+)_([a-zA-Z0-9_]+)");
+    private static final int TEMPLATE_CACHE_MAX = 512;
+    private final ConcurrentHashMap<String, PlaceholderTemplate> templateCache = new ConcurrentHashMap<>();
 
-    public PlaceholderManager(MultiCurrencyEconomyService economyService, ConfigManager configManager) {
+    private static final PlaceholderType[] PLACEHOLDER_TYPES = PlaceholderType.values();
+    private final ConcurrentHashMap<String, String[]> placeholderKeys = new ConcurrentHashMap<>();
+
+    public PlaceholderManager(MultiCurrencyEconomyService economyService, ConfigManager configManager,
+                              RankingManager rankingManager) {
         this.economyService = economyService;
         this.configManager = configManager;
+        this.rankingManager = rankingManager;
+        economyService.addMutationListener(valueCache::invalidate);
     }
 
     public void registerPlaceholders() {
@@ -33,76 +44,110 @@ public class PlaceholderManager {
         if (placeholder == null || placeholder.isEmpty()) {
             return placeholder;
         }
-        if (!placeholder.startsWith("nighteconomy_")) {
+        if (!placeholder.startsWith(PlaceholderTemplate.PREFIX)) {
             return placeholder;
         }
 
-        Matcher matcher = CURRENCY_PLACEHOLDER_PATTERN.matcher(placeholder);
-        if (!matcher.matches()) {
+        PlaceholderTemplate.Segment ref = PlaceholderTemplate.parseReference(placeholder);
+        if (ref == null) {
             return placeholder;
         }
 
-        String currencyId = matcher.group(1);
-        String placeholderType = matcher.group(2);
-
-        return processCurrencyPlaceholder(playerUuid, currencyId, placeholderType);
+        return resolve(playerUuid, ref.currencyId, ref.type);
     }
 
-    private String processCurrencyPlaceholder(UUID playerUuid, String currencyId, String placeholderType) {
+    private String resolve(UUID playerUuid, String currencyId, PlaceholderType type) {
         CurrencyConfig config = configManager.getCurrency(currencyId);
         if (config == null) {
             return "Money not found";
         }
+        if (type == null) {
+            return "Placeholder unknown";
+        }
 
-        switch (placeholderType.toLowerCase()) {
-            case "prefix":
+        switch (type) {
+            case PREFIX:
                 return config.getName();
 
-            case "id":
+            case ID:
                 return config.getId();
 
-            case "balance":
-                return getFormattedBalance(playerUuid, currencyId);
+            case BALANCE:
+                return getFormattedBalance(playerUuid, currencyId, valueCache.get(playerUuid, currencyId));
 
-            case "balance_raw":
-                return String.valueOf(economyService.getBalance(playerUuid, currencyId));
+            case BALANCE_RAW:
+                return getRawBalance(playerUuid, currencyId, valueCache.get(playerUuid, currencyId));
 
-            case "position":
-                return getPlayerPosition(playerUuid, currencyId);
+            case POSITION:
+                return getPlayerPosition(playerUuid, currencyId, valueCache.get(playerUuid, currencyId),
+                        rankingManager.getSnapshot(currencyId));
 
-            case "magnata":
-                return getMagnataTag(playerUuid, currencyId);
+            case MAGNATA:
+                return getMagnataTag(playerUuid, currencyId, valueCache.get(playerUuid, currencyId),
+                        rankingManager.getSnapshot(currencyId));
 
-            case "top1_name":
-                return getTopPlayerName(currencyId);
+            case TOP1_NAME:
+                return getTopPlayerName(currencyId, rankingManager.getSnapshot(currencyId));
 
-            case "top1_balance":
-                return getTopPlayerBalance(currencyId);
+            case TOP1_BALANCE:
+                return getTopPlayerBalance(currencyId, rankingManager.getSnapshot(currencyId));
 
-            case "ranking_enabled":
+            case RANKING_ENABLED:
                 return String.valueOf(config.isRanking());
 
-            case "payment_enabled":
-                return String.valueOf(economyService.isPaymentEnabled(playerUuid, currencyId));
+            case PAYMENT_ENABLED:
+                return getPaymentEnabled(playerUuid, currencyId, valueCache.get(playerUuid, currencyId));
 
             default:
                 return "Placeholder unknown";
         }
     }
 
-    private String getFormattedBalance(UUID playerUuid, String currencyId) {
+    private String getFormattedBalance(UUID playerUuid, String currencyId, PlaceholderValueCache.Entry entry) {
+        String cached = entry.formattedBalance;
+        if (cached != null) return cached;
         try {
             double balance = economyService.getBalance(playerUuid, currencyId);
-            return economyService.formatAmount(currencyId, balance);
+            String formatted = economyService.formatAmount(currencyId, balance);
+            entry.formattedBalance = formatted;
+            return formatted;
         } catch (Exception e) {
             LOGGER.error("Error getting formatted balance: ", e);
             return "0";
         }
     }
 
-    private String getPlayerPosition(UUID playerUuid, String currencyId) {
+    private String getRawBalance(UUID playerUuid, String currencyId, PlaceholderValueCache.Entry entry) {
+        String cached = entry.rawBalance;
+        if (cached != null) return cached;
+        String raw = String.valueOf(economyService.getBalance(playerUuid, currencyId));
+        entry.rawBalance = raw;
+        return raw;
+    }
+
+    private String getPaymentEnabled(UUID playerUuid, String currencyId, PlaceholderValueCache.Entry entry) {
+        Boolean cached = entry.paymentEnabled;
+        if (cached == null) {
+            cached = economyService.isPaymentEnabled(playerUuid, currencyId);
+            entry.paymentEnabled = cached;
+        }
+        return String.valueOf(cached);
+    }
+
+    private String getPlayerPosition(UUID playerUuid, String currencyId, PlaceholderValueCache.Entry entry,
+                                     RankingSnapshot snapshot) {
         try {
-            int position = economyService.getPlayerPosition(playerUuid, currencyId);
+            int position = snapshot != null ? snapshot.getPosition(playerUuid) : -1;
+            if (position <= 0) {
+                long version = snapshot != null ? snapshot.getVersion() : 0L;
+                PlaceholderValueCache.Ranked cached = entry.position;
+                if (cached != null && cached.version == version) {
+                    position = cached.value;
+                } else {
+                    position = economyService.getPlayerPosition(playerUuid, currencyId);
+                    entry.position = new PlaceholderValueCache.Ranked(version, position);
+                }
+            }
             return position > 0 ? String.valueOf(position) : "N/A";
         } catch (Exception e) {
             LOGGER.error("Error getting player position: ", e);
@@ -110,9 +155,22 @@ public class PlaceholderManager {
         }
     }
 
-    private String getMagnataTag(UUID playerUuid, String currencyId) {
+    private String getMagnataTag(UUID playerUuid, String currencyId, PlaceholderValueCache.Entry entry,
+                                 RankingSnapshot snapshot) {
         try {
-            if (economyService.isPlayerMagnata(playerUuid, currencyId)) {
+            boolean tycoon;
+            if (snapshot != null) {
+                tycoon = snapshot.isTop(playerUuid);
+            } else {
+                PlaceholderValueCache.Ranked cached = entry.tycoon;
+                if (cached != null) {
+                    tycoon = cached.value != 0;
+                } else {
+                    tycoon = economyService.isPlayerMagnata(playerUuid, currencyId);
+                    entry.tycoon = new PlaceholderValueCache.Ranked(0L, tycoon ? 1 : 0);
+                }
+            }
+            if (tycoon) {
                 return economyService.getMagnataTag(currencyId);
             }
             return "";
@@ -122,7 +180,19 @@ public class PlaceholderManager {
         }
     }
 
-    private String getTopPlayerName(String currencyId) {
+    public void invalidatePlayer(UUID playerUuid) {
+        valueCache.invalidatePlayer(playerUuid);
+    }
+
+    public void clearValueCache() {
+        valueCache.clear();
+    }
+
+    private String getTopPlayerName(String currencyId, RankingSnapshot snapshot) {
+        if (snapshot != null) {
+            RankingEntry top = snapshot.getTop();
+            return top != null ? top.getUsername() : "N/A";
+        }
         try {
             var topPlayers = economyService.getTopPlayers(currencyId, 1);
             if (!topPlayers.isEmpty()) {
@@ -135,7 +205,11 @@ public class PlaceholderManager {
         }
     }
 
-    private String getTopPlayerBalance(String currencyId) {
+    private String getTopPlayerBalance(String currencyId, RankingSnapshot snapshot) {
+        if (snapshot != null) {
+            RankingEntry top = snapshot.getTop();
+            return top != null ? economyService.formatAmount(currencyId, top.getBalance()) : "0";
+        }
         try {
             var topPlayers = economyService.getTopPlayers(currencyId, 1);
             if (!topPlayers.isEmpty()) {
@@ -154,39 +228,96 @@ public class PlaceholderManager {
             return text;
         }
 
-        String result = text;
-        Matcher matcher = CURRENCY_PLACEHOLDER_PATTERN.matcher(text);
+        PlaceholderTemplate template = getTemplate(text);
+        if (template.isStatic()) {
+            return text;
+        }
 
-        while (matcher.find()) {
-            String fullPlaceholder = matcher.group(0);
-            String replacement = processPlaceholder(playerUuid, fullPlaceholder);
-            result = result.replace("%" + fullPlaceholder + "%", replacement);
+        PlaceholderTemplate.Segment[] segments = template.getSegments();
+        StringBuilder sb = new StringBuilder(template.getLiteralLength() + segments.length * 16);
+        for (PlaceholderTemplate.Segment segment : segments) {
+            if (segment.isLiteral()) {
+                sb.append(segment.literal);
+            } else {
+                sb.append(resolve(playerUuid, segment.currencyId, segment.type));
+            }
         }
+        return sb.toString();
+    }
 
-        return result;
+    public PlaceholderTemplate getTemplate(String text) {
+        PlaceholderTemplate template = templateCache.get(text);
+        if (template != null) {
+            return template;
+        }
+        template = PlaceholderTemplate.compile(text);
+        if (templateCache.size() >= TEMPLATE_CACHE_MAX) {
+            templateCache.clear();
+        }
+        templateCache.put(text, template);
+        return template;
     }
 
-    public Map<String, String> getAllPlaceholders(UUID playerUuid) {
-        Map<String, String> placeholders = new HashMap<>();
+    public void clearTemplateCache() {
+        templateCache.clear();
+    }
 
-        for (String currencyId : economyService.getAvailableCurrencies()) {
-            String prefix = "nighteconomy_" + currencyId + "_";
+    public Map<String, String> getAllPlaceholders(UUID playerUuid) {
+        Set<String> currencyIds = economyService.getAvailableCurrencies();
+        Map<String, String> placeholders = new HashMap<>(currencyIds.size() * PLACEHOLDER_TYPES.length * 2);
+
+        Map<String, Double> balances = null;
+        Map<String, Boolean> paymentFlags = null;
+
+        for (String currencyId : currencyIds) {
+            CurrencyConfig config = configManager.getCurrency(currencyId);
+            if (config == null) continue;
+
+            String[] keys = placeholderKeys(currencyId);
+            PlaceholderValueCache.Entry entry = valueCache.get(playerUuid, currencyId);
+            RankingSnapshot snapshot = rankingManager.getSnapshot(currencyId);
+
+            if (entry.formattedBalance == null || entry.rawBalance == null) {
+                if (balances == null) {
+                    balances = economyService.getAllPlayerBalances(playerUuid);
+                    if (balances == null) balances = Map.of();
+                }
+                double balance = balances.getOrDefault(currencyId, 0.0);
+                entry.formattedBalance = economyService.formatAmount(currencyId, balance);
+                entry.rawBalance = String.valueOf(balance);
+            }
+            if (entry.paymentEnabled == null) {
+                if (paymentFlags == null) {
+                    paymentFlags = economyService.getAllPaymentEnabled(playerUuid);
+                }
+                entry.paymentEnabled = paymentFlags.getOrDefault(currencyId, Boolean.TRUE);
+            }
 
-            placeholders.put(prefix + "prefix", processPlaceholder(playerUuid, prefix + "prefix"));
-            placeholders.put(prefix + "id", processPlaceholder(playerUuid, prefix + "id"));
-            placeholders.put(prefix + "balance", processPlaceholder(playerUuid, prefix + "balance"));
-            placeholders.put(prefix + "balance_raw", processPlaceholder(playerUuid, prefix + "balance_raw"));
-            placeholders.put(prefix + "position", processPlaceholder(playerUuid, prefix + "position"));
-            placeholders.put(prefix + "magnata", processPlaceholder(playerUuid, prefix + "magnata"));
-            placeholders.put(prefix + "top1_name", processPlaceholder(playerUuid, prefix + "top1_name"));
-            placeholders.put(prefix + "top1_balance", processPlaceholder(playerUuid, prefix + "top1_balance"));
-            placeholders.put(prefix + "ranking_enabled", processPlaceholder(playerUuid, prefix + "ranking_enabled"));
-            placeholders.put(prefix + "payment_enabled", processPlaceholder(playerUuid, prefix + "payment_enabled"));
+            placeholders.put(keys[PlaceholderType.PREFIX.ordinal()], config.getName());
+            placeholders.put(keys[PlaceholderType.ID.ordinal()], config.getId());
+            placeholders.put(keys[PlaceholderType.BALANCE.ordinal()], entry.formattedBalance);
+            placeholders.put(keys[PlaceholderType.BALANCE_RAW.ordinal()], entry.rawBalance);
+            placeholders.put(keys[PlaceholderType.POSITION.ordinal()], getPlayerPosition(playerUuid, currencyId, entry, snapshot));
+            placeholders.put(keys[PlaceholderType.MAGNATA.ordinal()], getMagnataTag(playerUuid, currencyId, entry, snapshot));
+            placeholders.put(keys[PlaceholderType.TOP1_NAME.ordinal()], getTopPlayerName(currencyId, snapshot));
+            placeholders.put(keys[PlaceholderType.TOP1_BALANCE.ordinal()], getTopPlayerBalance(currencyId, snapshot));
+            placeholders.put(keys[PlaceholderType.RANKING_ENABLED.ordinal()], String.valueOf(config.isRanking()));
+            placeholders.put(keys[PlaceholderType.PAYMENT_ENABLED.ordinal()], String.valueOf(entry.paymentEnabled));
         }
 
         return placeholders;
     }
 
+    private String[] placeholderKeys(String currencyId) {
+        return placeholderKeys.computeIfAbsent(currencyId, id -> {
+            String[] keys = new String[PLACEHOLDER_TYPES.length];
+            for (PlaceholderType type : PLACEHOLDER_TYPES) {
+                keys[type.ordinal()] = PlaceholderTemplate.PREFIX + id + "_" + type.getKey();
+            }
+            return keys;
+        });
+    }
+
     public String[] getAvailablePlaceholders() {
         return new String[]{
                 "nighteconomy_<currency>_prefix",
@@ -0,0 +1,117 @@
+package org.night.nighteconomy.placeholder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A text compiled once into literal and placeholder segments, so it can be rendered
+ * in a single pass without re-running the placeholder regex.
+ */
+public final class PlaceholderTemplate {
+    static final String PREFIX = "nighteconomy_";
+
+    private final String source;
+    private final Segment[] segments;
+    private final int literalLength;
+
+    private PlaceholderTemplate(String source, Segment[] segments, int literalLength) {
+        this.source = source;
+        this.segments = segments;
+        this.literalLength = literalLength;
+    }
+
+    public String getSource() { return source; }
+    public boolean isStatic() { return segments.length == 0 || (segments.length == 1 && segments[0].isLiteral()); }
+    int getLiteralLength() { return literalLength; }
+    Segment[] getSegments() { return segments; }
+
+    public static PlaceholderTemplate compile(String text) {
+        List<Segment> out = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int literalLength = 0;
+        int len = text.length();
+        int i = 0;
+
+        while (i < len) {
+            char c = text.charAt(i);
+            if (c == '%') {
+                int end = i + 1;
+                while (end < len && isNameChar(text.charAt(end))) end++;
+
+                if (end < len && text.charAt(end) == '%' && text.startsWith(PREFIX, i + 1)) {
+                    Segment ref = parseReference(text.substring(i + 1, end));
+                    if (ref != null) {
+                        if (literal.length() > 0) {
+                            literalLength += literal.length();
+                            out.add(Segment.literal(literal.toString()));
+                            literal.setLength(0);
+                        }
+                        out.add(ref);
+                        i = end + 1;
+                        continue;
+                    }
+                }
+            }
+            literal.append(c);
+            i++;
+        }
+
+        if (literal.length() > 0) {
+            literalLength += literal.length();
+            out.add(Segment.literal(literal.toString()));
+        }
+        return new PlaceholderTemplate(text, out.toArray(new Segment[0]), literalLength);
+    }
+
+    /**
+     * Parses a bare placeholder name such as {@code nighteconomy_money_balance_raw}.
+     *
+     * @return placeholder segment, or null if the name is not a NightEconomy placeholder
+     */
+    static Segment parseReference(String name) {
+        if (!name.startsWith(PREFIX) || name.length() <= PREFIX.length()) return null;
+        String rest = name.substring(PREFIX.length());
+        for (int i = 0; i < rest.length(); i++) {
+            if (!isNameChar(rest.charAt(i))) return null;
+        }
+
+        PlaceholderType type = PlaceholderType.matchSuffix(rest);
+        if (type != null) {
+            String currencyId = rest.substring(0, rest.length() - type.getKey().length() - 1);
+            return Segment.placeholder(currencyId, type);
+        }
+
+        int split = rest.lastIndexOf('_');
+        if (split <= 0 || split == rest.length() - 1) return null;
+        return Segment.placeholder(rest.substring(0, split), null);
+    }
+
+    private static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    static final class Segment {
+        final String literal;
+        final String currencyId;
+        /** Null for literals and for references to an unknown placeholder type. */
+        final PlaceholderType type;
+
+        private Segment(String literal, String currencyId, PlaceholderType type) {
+            this.literal = literal;
+            this.currencyId = currencyId;
+            this.type = type;
+        }
+
+        static Segment literal(String text) {
+            return new Segment(text, null, null);
+        }
+
+        static Segment placeholder(String currencyId, PlaceholderType type) {
+            return new Segment(null, currencyId, type);
+        }
+
+        boolean isLiteral() {
+            return literal != null;
+        }
+    }
+}
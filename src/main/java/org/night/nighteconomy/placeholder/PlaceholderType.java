@@ -0,0 +1,58 @@
+package org.night.nighteconomy.placeholder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public enum PlaceholderType {
+    PREFIX("prefix"),
+    ID("id"),
+    BALANCE("balance"),
+    BALANCE_RAW("balance_raw"),
+    POSITION("position"),
+    MAGNATA("magnata"),
+    TOP1_NAME("top1_name"),
+    TOP1_BALANCE("top1_balance"),
+    RANKING_ENABLED("ranking_enabled"),
+    PAYMENT_ENABLED("payment_enabled");
+
+    private static final Map<String, PlaceholderType> BY_KEY = new HashMap<>();
+    private static final PlaceholderType[] BY_KEY_LENGTH_DESC;
+
+    static {
+        for (PlaceholderType type : values()) {
+            BY_KEY.put(type.key, type);
+        }
+        BY_KEY_LENGTH_DESC = values().clone();
+        java.util.Arrays.sort(BY_KEY_LENGTH_DESC, (a, b) -> Integer.compare(b.key.length(), a.key.length()));
+    }
+
+    private final String key;
+
+    PlaceholderType(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public static PlaceholderType fromKey(String key) {
+        return key != null ? BY_KEY.get(key.toLowerCase()) : null;
+    }
+
+    /**
+     * Finds the longest known type that {@code name} ends with ("_" + key), so that
+     * multi-word types such as {@code balance_raw} are not split at the last underscore.
+     */
+    static PlaceholderType matchSuffix(String name) {
+        for (PlaceholderType type : BY_KEY_LENGTH_DESC) {
+            int currencyEnd = name.length() - type.key.length() - 1;
+            if (currencyEnd > 0
+                    && name.charAt(currencyEnd) == '_'
+                    && name.regionMatches(true, currencyEnd + 1, type.key, 0, type.key.length())) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
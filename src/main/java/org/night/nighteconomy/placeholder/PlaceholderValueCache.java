@@ -0,0 +1,61 @@
+package org.night.nighteconomy.placeholder;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolved placeholder values per player and currency.
+ * Balance and payment values are dropped by the service mutation path; ranking values
+ * are tagged with the ranking snapshot version they were resolved against.
+ */
+public final class PlaceholderValueCache {
+    private final ConcurrentHashMap<UUID, ConcurrentHashMap<String, Entry>> values = new ConcurrentHashMap<>();
+
+    Entry get(UUID playerUuid, String currencyId) {
+        return values.computeIfAbsent(playerUuid, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(currencyId, k -> new Entry());
+    }
+
+    public void invalidate(UUID playerUuid, String currencyId) {
+        if (playerUuid == null) {
+            values.clear();
+            return;
+        }
+        if (currencyId == null) {
+            values.remove(playerUuid);
+            return;
+        }
+        var map = values.get(playerUuid);
+        if (map != null) map.remove(currencyId);
+    }
+
+    public void invalidatePlayer(UUID playerUuid) {
+        values.remove(playerUuid);
+    }
+
+    public void clear() {
+        values.clear();
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    static final class Entry {
+        volatile String formattedBalance;
+        volatile String rawBalance;
+        volatile Boolean paymentEnabled;
+        volatile Ranked position;
+        volatile Ranked tycoon;
+    }
+
+    static final class Ranked {
+        final long version;
+        final int value;
+
+        Ranked(long version, int value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+}
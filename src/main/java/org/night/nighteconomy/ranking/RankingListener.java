@@ -0,0 +1,6 @@
+package org.night.nighteconomy.ranking;
+
+@FunctionalInterface
+public interface RankingListener {
+    void onRankingPublished(RankingSnapshot snapshot);
+}
@@ -2,37 +2,45 @@ package org.night.nighteconomy.ranking;
 
 import org.night.nighteconomy.config.ConfigManager;
 import org.night.nighteconomy.currency.CurrencyConfig;
-import org.night.nighteconomy.database.MultiCurrencyDatabaseManager;
+import org.night.nighteconomy.currency.CurrencyFormatter;
+import org.night.nighteconomy.database.LedgerStore;
 import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.RankingEntry;
+import org.night.nighteconomy.jfr.RankingRebuildEvent;
+import org.night.nighteconomy.metrics.EconomyMetrics;
+import org.night.nighteconomy.stats.BalanceDistribution;
+import org.night.nighteconomy.stats.EconomyStatistics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class RankingManager {
     private static final Logger LOGGER = LogManager.getLogger();
+    public static final int LEADERBOARD_PAGE_SIZE = 10;
+    private static final int SNAPSHOT_SIZE = 100;
 
-    private final MultiCurrencyDatabaseManager databaseManager;
+    private final LedgerStore databaseManager;
     private final ConfigManager configManager;
-    private final Map<String, List<RankingEntry>> rankingCache = new ConcurrentHashMap<>();
+    private final Map<String, RankingSnapshot> rankingCache = new ConcurrentHashMap<>();
     private final Map<String, Long> lastUpdateTime = new ConcurrentHashMap<>();
+    private final Map<String, RankingSchedule> schedules = new ConcurrentHashMap<>();
+    private final AtomicLong snapshotVersion = new AtomicLong();
+    private final List<RankingListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, RenderedLeaderboard> leaderboards = new ConcurrentHashMap<>();
 
-    private final ConcurrentHashMap<String, ThreadLocal<DecimalFormat>> formatterCache = new ConcurrentHashMap<>();
-
-    public RankingManager(MultiCurrencyDatabaseManager databaseManager, ConfigManager configManager) {
+    public RankingManager(LedgerStore databaseManager, ConfigManager configManager) {
         this.databaseManager = databaseManager;
         this.configManager = configManager;
     }
 
-    private final java.util.concurrent.ExecutorService updateExecutor =
-            java.util.concurrent.Executors.newSingleThreadExecutor(r -> {
-                Thread t = new Thread(r, "RankingUpdate");
-                t.setDaemon(true);
-                return t;
-            });
+    private volatile Executor updateExecutor;
+    private volatile EconomyStatistics statistics;
 
     public List<RankingEntry> getTopPlayers(String currencyId, int limit) {
         CurrencyConfig config = configManager.getCurrency(currencyId);
@@ -44,13 +52,13 @@ public class RankingManager {
             triggerAsyncUpdate(currencyId);
         }
 
-        List<RankingEntry> cached = rankingCache.get(currencyId);
+        RankingSnapshot cached = rankingCache.get(currencyId);
         if (cached == null) {
             return new ArrayList<>();
         }
 
         int endIndex = Math.min(limit, cached.size());
-        return new ArrayList<>(cached.subList(0, endIndex));
+        return new ArrayList<>(cached.getEntries().subList(0, endIndex));
     }
 
     public int getPlayerPosition(UUID playerUuid, String currencyId) {
@@ -63,28 +71,54 @@ public class RankingManager {
             triggerAsyncUpdate(currencyId);
         }
 
-        List<RankingEntry> cached = rankingCache.get(currencyId);
+        RankingSnapshot cached = rankingCache.get(currencyId);
         if (cached == null) {
             return -1;
         }
 
-        String uuidString = playerUuid.toString();
-        for (RankingEntry entry : cached) {
-            if (uuidString.equals(entry.uuid)) {
-                return entry.position;
-            }
-        }
-        return -1;
+        return cached.getPosition(playerUuid);
+    }
+
+    public RankingSnapshot getSnapshot(String currencyId) {
+        return rankingCache.get(currencyId);
+    }
+
+    public void addListener(RankingListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(RankingListener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Binds the executor that owns the database connection; rebuilds are queued on it. */
+    public void setUpdateExecutor(Executor executor) {
+        this.updateExecutor = executor;
+    }
+
+    /** Source of the economy-wide totals in {@link #getRankingStats(String)}. */
+    public void setStatistics(EconomyStatistics statistics) {
+        this.statistics = statistics;
     }
 
     private void triggerAsyncUpdate(String currencyId) {
-        updateExecutor.submit(() -> {
-            try {
-                updateRankingCache(currencyId);
-            } catch (Exception e) {
-                LOGGER.error("Error updating ranking in background for " + currencyId, e);
-            }
-        });
+        Executor executor = updateExecutor;
+        if (executor == null) return;
+        RankingSchedule schedule = schedule(currencyId);
+        if (!schedule.tryQueue()) return;
+        try {
+            executor.execute(() -> {
+                try {
+                    updateRankingCache(currencyId);
+                } catch (Exception e) {
+                    LOGGER.error("Error updating ranking in background for " + currencyId, e);
+                } finally {
+                    schedule.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            schedule.release();
+        }
     }
 
     public RankingEntry getTopPlayer(String currencyId) {
@@ -113,218 +147,249 @@ public class RankingManager {
     }
 
     public List<String> formatRankingDisplay(String currencyId, int limit) {
-        List<RankingEntry> ranking = getTopPlayers(currencyId, limit);
-        List<String> display = new ArrayList<>();
-
         CurrencyConfig config = configManager.getCurrency(currencyId);
         if (config == null) {
-            return display;
+            return new ArrayList<>();
         }
 
-        String currencyName = config.getName();
-        display.add("&6=== Top " + currencyName + " ===");
-
-        if (ranking.isEmpty()) {
-            display.add("&cNo players found in the ranking!");
-            return display;
+        RankingSnapshot snapshot = currentSnapshot(currencyId, config);
+        RenderedLeaderboard rendered = rendered(currencyId, config, snapshot);
+        DisplayLines cached = rendered.display;
+        if (cached != null && cached.limit == limit) {
+            return new ArrayList<>(cached.lines);
         }
 
-        for (RankingEntry entry : ranking) {
-            String formattedAmount = formatAmount(currencyId, entry.balance);
-            String line = String.format("&e%d. &f%s &7- &a%s",
-                    entry.position,
-                    entry.username,
-                    formattedAmount);
-            display.add(line);
+        List<String> display = new ArrayList<>();
+        display.add("&6=== Top " + config.getName() + " ===");
+
+        List<RankingEntry> ranking = (snapshot != null && config.isRanking()) ? snapshot.getEntries() : List.of();
+        if (ranking.isEmpty() || limit <= 0) {
+            display.add("&cNo players found in the ranking!");
+        } else {
+            CurrencyFormatter formatter = config.getFormatter();
+            StringBuilder line = new StringBuilder(64);
+            for (int i = 0, n = Math.min(limit, ranking.size()); i < n; i++) {
+                RankingEntry entry = ranking.get(i);
+                line.setLength(0);
+                line.append("&e").append(entry.position).append(". &f").append(entry.username).append(" &7- &a");
+                formatter.formatTo(line, entry.balance);
+                display.add(line.toString());
+            }
         }
 
+        rendered.display = new DisplayLines(limit, List.copyOf(display));
         return display;
     }
 
-    private boolean shouldUpdateCache(String currencyId, CurrencyConfig config) {
-        long lastUpdate = lastUpdateTime.getOrDefault(currencyId, 0L);
-        long updateInterval = config.getUpdate() * 1000L;
-        long currentTime = System.currentTimeMillis();
-
-        return (currentTime - lastUpdate) >= updateInterval;
+    public int getLeaderboardPageCount(String currencyId) {
+        RankingSnapshot snapshot = rankingCache.get(currencyId);
+        if (snapshot == null || snapshot.size() == 0) return 0;
+        return (snapshot.size() + LEADERBOARD_PAGE_SIZE - 1) / LEADERBOARD_PAGE_SIZE;
     }
 
-    private void updateRankingCache(String currencyId) {
-        try {
-            databaseManager.updateRankingCache(currencyId);
-
-            List<RankingEntry> ranking = databaseManager.getTopPlayers(currencyId, 100);
-            rankingCache.put(currencyId, ranking);
-            lastUpdateTime.put(currencyId, System.currentTimeMillis());
-
-            LOGGER.debug("Ranking cache updated for currency: " + currencyId + " (" + ranking.size() + " entrysies)");
-
-        } catch (Exception e) {
-            LOGGER.error("Error updating ranking cache for currency " + currencyId + ": ", e);
-        }
+    /** The cached snapshot, queueing a rebuild when it is missing or due; null before the first rebuild. */
+    public RankingSnapshot getCurrentSnapshot(String currencyId) {
+        CurrencyConfig config = configManager.getCurrency(currencyId);
+        return config != null ? currentSnapshot(currencyId, config) : rankingCache.get(currencyId);
     }
 
-    public void forceUpdate(String currencyId) {
-        updateRankingCache(currencyId);
+    private RankingSnapshot currentSnapshot(String currencyId, CurrencyConfig config) {
+        if (config.isRanking() && shouldUpdateCache(currencyId, config)) {
+            triggerAsyncUpdate(currencyId);
+        }
+        return rankingCache.get(currencyId);
     }
 
-    public void forceUpdateAll() {
-        Map<String, CurrencyConfig> currencies = configManager.getCurrencies();
-        for (String currencyId : currencies.keySet()) {
-            CurrencyConfig config = currencies.get(currencyId);
-            if (config.isRanking()) {
-                updateRankingCache(currencyId);
-            }
+    private RenderedLeaderboard rendered(String currencyId, CurrencyConfig config, RankingSnapshot snapshot) {
+        long version = snapshot != null ? snapshot.getVersion() : -1L;
+        long generation = configManager.getMessageManager().getGeneration();
+        RenderedLeaderboard current = leaderboards.get(currencyId);
+        if (current != null && current.version == version && current.generation == generation && current.config == config) {
+            return current;
         }
+        RenderedLeaderboard fresh = new RenderedLeaderboard(version, generation, config);
+        leaderboards.put(currencyId, fresh);
+        return fresh;
     }
 
-    public void clearCache() {
-        rankingCache.clear();
-        lastUpdateTime.clear();
-        LOGGER.info("Clear ranking cache.");
+    private boolean shouldUpdateCache(String currencyId, CurrencyConfig config) {
+        if (!rankingCache.containsKey(currencyId)) return true;
+        return schedule(currencyId).isDue(System.currentTimeMillis(), config.getUpdate() * 1000L);
     }
 
-    public void clearCache(String currencyId) {
-        rankingCache.remove(currencyId);
-        lastUpdateTime.remove(currencyId);
-        LOGGER.debug("Cleared ranking cache for currency: " + currencyId);
+    private RankingSchedule schedule(String currencyId) {
+        return schedules.computeIfAbsent(currencyId, k -> new RankingSchedule());
     }
 
-    private static String formatterKey(String currencyId, boolean showCents, char decimalSep) {
-        return currencyId + "|" + (showCents ? "2" : "0") + "|" + decimalSep;
+    /** Called from the write path; a null currency marks every currency. */
+    public void markDirty(String currencyId) {
+        if (currencyId == null) {
+            for (RankingSchedule s : schedules.values()) s.markDirty();
+            return;
+        }
+        schedule(currencyId).markDirty();
     }
 
-    private DecimalFormat getOrCreateFormatter(String currencyId, boolean showCents, char decimalSep) {
-        String key = formatterKey(currencyId, showCents, decimalSep);
-        ThreadLocal<DecimalFormat> tl = formatterCache.computeIfAbsent(key, k ->
-                ThreadLocal.withInitial(() -> {
-                    DecimalFormatSymbols s = new DecimalFormatSymbols();
-                    s.setDecimalSeparator(decimalSep);
-                    DecimalFormat df = new DecimalFormat(showCents ? "0.00" : "0", s);
-                    df.setGroupingUsed(false);
-                    return df;
-                })
-        );
-        return tl.get();
+    public boolean isDirty(String currencyId) {
+        RankingSchedule s = schedules.get(currencyId);
+        return s == null || s.isDirty();
     }
 
-    public void invalidateFormatterCacheForCurrency(String currencyId) {
-        String prefix = currencyId + "|";
-        formatterCache.keySet().removeIf(k -> k.startsWith(prefix));
+    /**
+     * Claims a scheduled rebuild when the currency changed since the last one and its adaptive
+     * interval elapsed. The caller runs {@link #forceUpdate} and then gives the claim back with
+     * {@link #releaseRebuild}.
+     */
+    public boolean claimRebuild(String currencyId) {
+        CurrencyConfig config = configManager.getCurrency(currencyId);
+        if (config == null || !config.isRanking()) return false;
+        return shouldUpdateCache(currencyId, config) && schedule(currencyId).tryQueue();
     }
 
-    public void clearFormatterCache() {
-        formatterCache.clear();
+    /** Gives back a claim from {@link #claimRebuild}, once its rebuild ran or could not be queued. */
+    public void releaseRebuild(String currencyId) {
+        RankingSchedule s = schedules.get(currencyId);
+        if (s != null) s.release();
     }
 
-    private String formatAmount(String currencyId, double amount) {
-        CurrencyConfig cfg = configManager.getCurrency(currencyId);
-
-        boolean showCents = true;
-        char sepChar = ',';
-        CurrencyConfig.MultiplesConfig multiples = null;
-
-        if (cfg != null && cfg.getFormat() != null) {
-            var fmt = cfg.getFormat();
+    /** Current rebuild interval in milliseconds, after adaptation. */
+    public long getRebuildInterval(String currencyId) {
+        CurrencyConfig config = configManager.getCurrency(currencyId);
+        long base = config != null ? config.getUpdate() * 1000L : 0L;
+        RankingSchedule s = schedules.get(currencyId);
+        return s != null ? s.getIntervalMs(base) : base;
+    }
 
-            showCents = (fmt.getCentsEnabled() != null) ? fmt.getCentsEnabled() : true;
+    private void updateRankingCache(String currencyId) {
+        RankingSchedule schedule = schedule(currencyId);
+        long seen = schedule.getMutations();
+        long start = System.nanoTime();
+        RankingRebuildEvent event = new RankingRebuildEvent();
+        event.begin();
+        try {
+            databaseManager.updateRankingCache(currencyId);
 
-            String sep = fmt.getDecimalSeparator();
-            if (sep == null || sep.isEmpty()) {
-                if (fmt.getSeparator() != null
-                        && fmt.getSeparator().getDecimal() != null
-                        && !fmt.getSeparator().getDecimal().isEmpty()) {
-                    sep = fmt.getSeparator().getDecimal();
-                } else {
-                    sep = ",";
-                }
+            List<RankingEntry> ranking = databaseManager.getTopPlayers(currencyId, SNAPSHOT_SIZE);
+            publish(currencyId, ranking);
+            EconomyMetrics.RANKING_REBUILD.recordSince(start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.currency = currencyId;
+                event.rows = ranking.size();
+                event.commit();
             }
-            sepChar = sep.charAt(0);
 
-            multiples = fmt.getMultiples();
-        }
+            CurrencyConfig config = configManager.getCurrency(currencyId);
+            schedule.rebuilt(seen, System.currentTimeMillis(), config != null ? config.getUpdate() * 1000L : 0L);
 
-        DecimalFormat df = getOrCreateFormatter(currencyId, showCents, sepChar);
+            LOGGER.debug("Ranking cache updated for currency: " + currencyId + " (" + ranking.size() + " entrysies)");
 
-        if (multiples != null && multiples.isEnabled() && amount >= Math.pow(1000, multiples.getStart())) {
-            return formatWithMultiples(amount, multiples, df);
+        } catch (Exception e) {
+            LOGGER.error("Error updating ranking cache for currency " + currencyId + ": ", e);
         }
-
-        return df.format(amount);
     }
 
-    private String formatWithMultiples(double amount, CurrencyConfig.MultiplesConfig multiples, DecimalFormat df) {
-        List<String> multiplesList = multiples.getMultiples();
-        if (multiplesList == null || multiplesList.isEmpty()) {
-            return df.format(amount);
-        }
-
-        int index = 0;
-        double value = amount;
-
-        while (value >= 1000 && index < multiplesList.size()) {
-            value /= 1000;
-            index++;
-        }
+    private void publish(String currencyId, List<RankingEntry> ranking) {
+        long now = System.currentTimeMillis();
+        RankingSnapshot snapshot = new RankingSnapshot(currencyId, snapshotVersion.incrementAndGet(), now, ranking);
+        rankingCache.put(currencyId, snapshot);
+        lastUpdateTime.put(currencyId, now);
 
-        if (index > 0 && index <= multiplesList.size()) {
-            String suffix = multiplesList.get(index - 1);
-            return df.format(value) + suffix;
+        for (RankingListener listener : listeners) {
+            try {
+                listener.onRankingPublished(snapshot);
+            } catch (Exception e) {
+                LOGGER.error("Ranking listener failed for currency " + currencyId + ": ", e);
+            }
         }
-
-        return df.format(amount);
     }
 
-    private String formatAmountSimple(String currencyId, double amount) {
-        var cfg = configManager.getCurrency(currencyId);
-
-        boolean show = true;
-        char sepChar = ',';
-
-        if (cfg != null && cfg.getFormat() != null) {
-            var fmt = cfg.getFormat();
-
-            show = (fmt.getCentsEnabled() != null) ? fmt.getCentsEnabled() : true;
-
-            String sep = fmt.getDecimalSeparator();
+    /** Rebuilds now on the calling thread; it neither takes nor releases a rebuild claim. */
+    public void forceUpdate(String currencyId) {
+        updateRankingCache(currencyId);
+    }
 
-            if (sep == null || sep.isEmpty()) {
-                if (fmt.getSeparator() != null
-                        && fmt.getSeparator().getDecimal() != null
-                        && !fmt.getSeparator().getDecimal().isEmpty()) {
-                    sep = fmt.getSeparator().getDecimal();
-                } else {
-                    sep = ",";
+    /**
+     * Publishes the rankings persisted by the last rebuild (ranking_cache) without rebuilding them,
+     * so reads are served as soon as the server starts. The schedules stay dirty: the service's
+     * ranking tick rebuilds every currency in the background right after.
+     */
+    public CompletableFuture<Integer> warmUp() {
+        Executor executor = updateExecutor;
+        if (executor == null) return CompletableFuture.completedFuture(0);
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                int loaded = 0;
+                for (Map.Entry<String, CurrencyConfig> e : configManager.getCurrencies().entrySet()) {
+                    if (!e.getValue().isRanking() || rankingCache.containsKey(e.getKey())) continue;
+                    List<RankingEntry> ranking = databaseManager.getTopPlayers(e.getKey(), SNAPSHOT_SIZE);
+                    if (ranking.isEmpty()) continue;
+                    publish(e.getKey(), ranking);
+                    loaded++;
                 }
-            }
+                LOGGER.info("Rankings warmed up from the persisted cache: {} currencies in {} ms",
+                        loaded, (System.nanoTime() - start) / 1_000_000L);
+                return loaded;
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(0);
+        }
+    }
 
-            sepChar = sep.charAt(0);
+    /** Queues a rebuild of every ranking on the update executor; a currency already queued is not queued twice. */
+    public void forceUpdateAll() {
+        for (Map.Entry<String, CurrencyConfig> e : configManager.getCurrencies().entrySet()) {
+            if (e.getValue().isRanking()) {
+                triggerAsyncUpdate(e.getKey());
+            }
         }
+    }
+
+    public void clearCache() {
+        rankingCache.clear();
+        lastUpdateTime.clear();
+        schedules.clear();
+        leaderboards.clear();
+        LOGGER.info("Clear ranking cache.");
+    }
 
-        DecimalFormat df = getOrCreateFormatter(currencyId, show, sepChar);
-        return df.format(amount);
+    public void clearCache(String currencyId) {
+        rankingCache.remove(currencyId);
+        lastUpdateTime.remove(currencyId);
+        schedules.remove(currencyId);
+        leaderboards.remove(currencyId);
+        LOGGER.debug("Cleared ranking cache for currency: " + currencyId);
     }
 
+    /**
+     * Totals over every account of the currency when the economy statistics are available, plus the
+     * current top player. Before the first statistics scan the totals cover the cached top entries only.
+     */
     public Map<String, Object> getRankingStats(String currencyId) {
         Map<String, Object> stats = new HashMap<>();
 
-        List<RankingEntry> ranking = rankingCache.get(currencyId);
-        if (ranking == null || ranking.isEmpty()) {
-            stats.put("totalPlayers", 0);
-            stats.put("totalBalance", 0.0);
-            stats.put("averageBalance", 0.0);
-            return stats;
+        RankingSnapshot snapshot = rankingCache.get(currencyId);
+        List<RankingEntry> ranking = snapshot != null ? snapshot.getEntries() : List.of();
+        EconomyStatistics source = statistics;
+        BalanceDistribution.Snapshot totals = source != null ? source.get(currencyId) : null;
+
+        if (totals != null) {
+            stats.put("totalPlayers", (int) Math.min(Integer.MAX_VALUE, totals.getAccounts()));
+            stats.put("totalBalance", totals.getSupply());
+            stats.put("averageBalance", totals.getMean());
+            stats.put("medianBalance", totals.percentile(0.50));
+        } else {
+            double totalBalance = ranking.stream().mapToDouble(e -> e.balance).sum();
+            stats.put("totalPlayers", ranking.size());
+            stats.put("totalBalance", totalBalance);
+            stats.put("averageBalance", ranking.isEmpty() ? 0.0 : totalBalance / ranking.size());
         }
 
-        int totalPlayers = ranking.size();
-        double totalBalance = ranking.stream().mapToDouble(e -> e.balance).sum();
-        double averageBalance = totalBalance / totalPlayers;
-
-        stats.put("totalPlayers", totalPlayers);
-        stats.put("totalBalance", totalBalance);
-        stats.put("averageBalance", averageBalance);
-        stats.put("topPlayer", ranking.get(0).username);
-        stats.put("topBalance", ranking.get(0).balance);
+        if (!ranking.isEmpty()) {
+            stats.put("topPlayer", ranking.get(0).username);
+            stats.put("topBalance", ranking.get(0).balance);
+        }
 
         return stats;
     }
@@ -339,7 +404,22 @@ public class RankingManager {
     }
 
     public int getCacheSize(String currencyId) {
-        List<RankingEntry> cached = rankingCache.get(currencyId);
+        RankingSnapshot cached = rankingCache.get(currencyId);
         return cached != null ? cached.size() : 0;
     }
-}
\ No newline at end of file
+
+    private static final class RenderedLeaderboard {
+        final long version;
+        final long generation;
+        final CurrencyConfig config;
+        volatile DisplayLines display;
+
+        RenderedLeaderboard(long version, long generation, CurrencyConfig config) {
+            this.version = version;
+            this.generation = generation;
+            this.config = config;
+        }
+    }
+
+    private record DisplayLines(int limit, List<String> lines) {}
+}
@@ -0,0 +1,85 @@
+package org.night.nighteconomy.ranking;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rebuild bookkeeping for one currency. The write path bumps {@link #markDirty()}; a rebuild is due
+ * only when something changed and the current interval elapsed. The interval starts at the
+ * currency's configured {@code update} and adapts to the mutation rate seen between rebuilds.
+ */
+final class RankingSchedule {
+    /** Mutations per second above which the interval is halved. */
+    static final double BUSY_RATE = 1.0;
+    /** Mutations per second below which the interval is doubled. */
+    static final double QUIET_RATE = 1.0 / 60.0;
+    static final long MIN_INTERVAL_MS = 5_000L;
+
+    private final AtomicLong mutations = new AtomicLong(1);
+    private final AtomicBoolean queued = new AtomicBoolean();
+    private volatile long rebuiltMutations;
+    private volatile long lastRebuild;
+    private volatile long intervalMs = -1L;
+
+    void markDirty() {
+        mutations.incrementAndGet();
+    }
+
+    boolean isDirty() {
+        return mutations.get() != rebuiltMutations;
+    }
+
+    long getMutations() {
+        return mutations.get();
+    }
+
+    long getLastRebuild() {
+        return lastRebuild;
+    }
+
+    long getIntervalMs(long baseMs) {
+        long i = intervalMs;
+        return i > 0 ? i : baseMs;
+    }
+
+    boolean isDue(long now, long baseMs) {
+        return isDirty() && now - lastRebuild >= getIntervalMs(baseMs);
+    }
+
+    /** Claims the pending rebuild so only one caller queues it. */
+    boolean tryQueue() {
+        return queued.compareAndSet(false, true);
+    }
+
+    void release() {
+        queued.set(false);
+    }
+
+    /** Records a rebuild that covered every mutation up to {@code seenMutations}. */
+    void rebuilt(long seenMutations, long now, long baseMs) {
+        long previous = lastRebuild;
+        long delta = seenMutations - rebuiltMutations;
+        rebuiltMutations = seenMutations;
+        lastRebuild = now;
+
+        long base = Math.max(MIN_INTERVAL_MS, baseMs);
+        long min = Math.max(MIN_INTERVAL_MS, base / 4);
+        long max = base * 4;
+        long current = getIntervalMs(base);
+
+        if (previous == 0L) {
+            intervalMs = base;
+            return;
+        }
+
+        double elapsedSec = Math.max(1L, now - previous) / 1000.0;
+        double rate = delta / elapsedSec;
+        if (rate >= BUSY_RATE) {
+            intervalMs = Math.max(min, current / 2);
+        } else if (rate < QUIET_RATE) {
+            intervalMs = Math.min(max, current * 2);
+        } else {
+            intervalMs = base;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.night.nighteconomy.ranking;
+
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.RankingEntry;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Immutable view of a currency ranking as published by {@link RankingManager}.
+ * The version increases on every publish, across all currencies.
+ */
+public final class RankingSnapshot {
+    private final String currencyId;
+    private final long version;
+    private final long publishedAt;
+    private final List<RankingEntry> entries;
+    private final Map<String, Integer> positions;
+
+    public RankingSnapshot(String currencyId, long version, long publishedAt, List<RankingEntry> entries) {
+        this.currencyId = currencyId;
+        this.version = version;
+        this.publishedAt = publishedAt;
+        this.entries = Collections.unmodifiableList(entries);
+
+        Map<String, Integer> pos = new HashMap<>(Math.max(16, entries.size() * 2));
+        for (RankingEntry e : entries) {
+            if (e.uuid != null) pos.put(e.uuid, e.position);
+        }
+        this.positions = pos;
+    }
+
+    public String getCurrencyId() { return currencyId; }
+    public long getVersion() { return version; }
+    public long getPublishedAt() { return publishedAt; }
+    public List<RankingEntry> getEntries() { return entries; }
+    public int size() { return entries.size(); }
+
+    public RankingEntry getTop() {
+        return entries.isEmpty() ? null : entries.get(0);
+    }
+
+    /**
+     * @return position within this snapshot, or -1 if the player is not part of it
+     */
+    public int getPosition(UUID playerUuid) {
+        Integer p = positions.get(playerUuid.toString());
+        return p != null ? p : -1;
+    }
+
+    public boolean isTop(UUID playerUuid) {
+        RankingEntry top = getTop();
+        return top != null && playerUuid.toString().equals(top.uuid);
+    }
+}
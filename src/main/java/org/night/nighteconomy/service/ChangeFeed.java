@@ -0,0 +1,166 @@
+package org.night.nighteconomy.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.night.nighteconomy.config.SettingsManager;
+import org.night.nighteconomy.database.LedgerStore;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.AccountChange;
+import org.night.nighteconomy.metrics.EconomyMetrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Reads the account_changes log with a keyset on the sequence number. On a shared backend it
+ * polls every {@code changes.poll-ms} and hands the changes written by other nodes to the service,
+ * which patches its caches. It also trims the log to {@code changes.retention-hours}.
+ */
+class ChangeFeed {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final LongAdder APPLIED = EconomyMetrics.counter("changes.applied");
+
+    private final LedgerStore databaseManager;
+    private final SettingsManager settings;
+    private final Executor dbExecutor;
+    private final Executor maintenanceExecutor;
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<Collection<AccountChange>> sink;
+    private final AtomicBoolean polling = new AtomicBoolean();
+    /** Local time each missing sequence number was first seen; the row's changed_at comes from another clock. */
+    private final Map<Long, Long> gapSeenAt = new ConcurrentHashMap<>();
+
+    private volatile ScheduledFuture<?> task;
+    private volatile long lastSeq = -1L;
+
+    ChangeFeed(LedgerStore databaseManager, SettingsManager settings, Executor dbExecutor,
+               Executor maintenanceExecutor, ScheduledExecutorService scheduler,
+               Consumer<Collection<AccountChange>> sink) {
+        this.databaseManager = databaseManager;
+        this.settings = settings;
+        this.dbExecutor = dbExecutor;
+        this.maintenanceExecutor = maintenanceExecutor;
+        this.scheduler = scheduler;
+        this.sink = sink;
+    }
+
+    void start() {
+        long pollMs = settings.getLong("changes.poll-ms");
+        if (!databaseManager.isShared() || pollMs <= 0) return;
+        task = scheduler.scheduleWithFixedDelay(this::schedulePoll, pollMs, pollMs, TimeUnit.MILLISECONDS);
+        LOGGER.info("Change feed started: polling account_changes every {} ms", pollMs);
+    }
+
+    void stop() {
+        ScheduledFuture<?> t = task;
+        if (t != null) t.cancel(false);
+    }
+
+    long getLastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * Changes above {@code afterSeq}, cut before the first gap seen here less than
+     * {@code changes.gap-timeout-ms} ago. On a networked server a sequence can commit after a higher
+     * one; stopping at the gap keeps a keyset reader from skipping it, and a gap that outlives the
+     * timeout was a rollback. Runs on the database executor.
+     */
+    List<AccountChange> tail(long afterSeq, int limit) {
+        List<AccountChange> rows = databaseManager.tailChanges(afterSeq, limit);
+        if (!databaseManager.isShared()) return rows;
+        long now = System.currentTimeMillis();
+        long timeout = settings.getLong("changes.gap-timeout-ms");
+        long expected = afterSeq + 1;
+        try {
+            for (int i = 0; i < rows.size(); i++) {
+                AccountChange c = rows.get(i);
+                if (c.seq != expected && now - gapSeenAt.computeIfAbsent(expected, k -> now) < timeout) {
+                    return new ArrayList<>(rows.subList(0, i));
+                }
+                gapSeenAt.remove(c.seq);
+                expected = c.seq + 1;
+            }
+            return rows;
+        } finally {
+            gapSeenAt.values().removeIf(seen -> now - seen > 2 * timeout);
+        }
+    }
+
+    private void schedulePoll() {
+        if (!polling.compareAndSet(false, true)) return;
+        try {
+            dbExecutor.execute(this::poll);
+        } catch (RejectedExecutionException e) {
+            polling.set(false);
+        }
+    }
+
+    private void poll() {
+        try {
+            if (lastSeq < 0) {
+                lastSeq = databaseManager.latestChangeSeq();
+                return;
+            }
+            int batch = Math.max(1, settings.getInt("changes.batch-size"));
+            List<AccountChange> rows;
+            do {
+                rows = tail(lastSeq, batch);
+                if (rows.isEmpty()) break;
+                lastSeq = rows.get(rows.size() - 1).seq;
+                sink.accept(latestPerAccount(rows));
+                APPLIED.add(rows.size());
+            } while (rows.size() == batch);
+        } catch (Exception e) {
+            LOGGER.error("Erro ao ler account_changes: ", e);
+        } finally {
+            polling.set(false);
+        }
+    }
+
+    /** Only the last state of each account matters to a cache. */
+    private static Collection<AccountChange> latestPerAccount(List<AccountChange> rows) {
+        Map<String, AccountChange> out = new LinkedHashMap<>();
+        for (AccountChange c : rows) {
+            String key = c.uuid + '|' + c.currencyId;
+            out.remove(key);
+            out.put(key, c);
+        }
+        return out.values();
+    }
+
+    /** Deletes changes older than the retention, batch by batch on the maintenance lane. */
+    void prune() {
+        double hours = settings.getDouble("changes.retention-hours");
+        if (hours <= 0) return;
+        long cutoff = System.currentTimeMillis() - (long) (hours * TimeUnit.HOURS.toMillis(1));
+        submitPruneBatch(cutoff, 0);
+    }
+
+    private void submitPruneBatch(long cutoff, long total) {
+        try {
+            maintenanceExecutor.execute(() -> {
+                int size = Math.max(1, settings.getInt("pruning.batch-size"));
+                int rows = databaseManager.deleteChangesBefore(cutoff, size);
+                if (rows >= size) {
+                    submitPruneBatch(cutoff, total + rows);
+                } else if (total + Math.max(0, rows) > 0) {
+                    LOGGER.debug("Pruned {} account changes", total + Math.max(0, rows));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Account changes pruning postponed: maintenance lane full");
+        }
+    }
+}
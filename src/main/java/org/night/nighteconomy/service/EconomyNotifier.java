@@ -0,0 +1,13 @@
+package org.night.nighteconomy.service;
+
+/**
+ * What the economy core needs from the running server. Keeps {@link MultiCurrencyEconomyService}
+ * free of server classes so it can also run headless (see the {@code loadTest} Gradle task).
+ */
+public interface EconomyNotifier {
+    /** Sends an already color-translated message to every online player. */
+    void broadcast(String coloredMessage);
+
+    /** Smoothed server tick time in milliseconds, or 0 when there is no server. */
+    double tickTimeMs();
+}
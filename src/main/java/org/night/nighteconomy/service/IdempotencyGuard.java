@@ -0,0 +1,157 @@
+package org.night.nighteconomy.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.night.nighteconomy.api.data.OperationResult;
+import org.night.nighteconomy.config.SettingsManager;
+import org.night.nighteconomy.database.LedgerException;
+import org.night.nighteconomy.database.LedgerStore;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.IdempotencyRecord;
+import org.night.nighteconomy.metrics.EconomyMetrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs an operation at most once per idempotency key. Recent keys live in a bounded in-memory
+ * window, so a retry on this server joins the original call even while it is still running. The
+ * operation itself writes its key in the same transaction as the balances, so a key is stored if
+ * and only if the money moved, which covers crashes, restarts and the other servers of a shared
+ * backend. A declined operation changes nothing and records its key on its own.
+ */
+class IdempotencyGuard {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final LongAdder REPLAYS = EconomyMetrics.counter("idempotency.replays");
+    private static final LongAdder CONFLICTS = EconomyMetrics.counter("idempotency.conflicts");
+
+    static final int MAX_KEY_LENGTH = 128;
+
+    private record Entry(String fingerprint, CompletableFuture<OperationResult> result) {}
+
+    private final LedgerStore databaseManager;
+    private final SettingsManager settings;
+    private final Executor maintenanceExecutor;
+    private final Map<String, Entry> recent;
+
+    IdempotencyGuard(LedgerStore databaseManager, SettingsManager settings, Executor maintenanceExecutor) {
+        this.databaseManager = databaseManager;
+        this.settings = settings;
+        this.maintenanceExecutor = maintenanceExecutor;
+        this.recent = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > Math.max(1, settings.getInt("idempotency.cache-size"));
+            }
+        };
+    }
+
+    private static boolean isValidKey(String key) {
+        return key != null && !key.isEmpty() && key.length() <= MAX_KEY_LENGTH;
+    }
+
+    /**
+     * Runs {@code op} unless {@code key} is already in the window, in which case the first call's
+     * outcome is returned. A {@code BUSY} or {@code UNKNOWN} outcome is dropped from the window so a
+     * retry asks the database again. The same key with a different {@code fingerprint} is refused.
+     */
+    CompletableFuture<OperationResult> run(String key, String fingerprint,
+                                           Supplier<CompletableFuture<OperationResult>> op) {
+        if (!isValidKey(key)) return CompletableFuture.completedFuture(OperationResult.DECLINED);
+        CompletableFuture<OperationResult> result;
+        synchronized (recent) {
+            Entry e = recent.get(key);
+            if (e != null) {
+                REPLAYS.increment();
+                return e.fingerprint.equals(fingerprint) ? e.result : CompletableFuture.completedFuture(conflict(key));
+            }
+            result = new CompletableFuture<>();
+            recent.put(key, new Entry(fingerprint, result));
+        }
+        CompletableFuture<OperationResult> ran;
+        try {
+            ran = op.get();
+        } catch (RejectedExecutionException e) {
+            ran = CompletableFuture.completedFuture(OperationResult.BUSY);
+        } catch (RuntimeException e) {
+            ran = CompletableFuture.failedFuture(e);
+        }
+        ran.whenComplete((r, t) -> {
+            if (t != null) LOGGER.error("Erro na operação idempotente {}: ", key, t);
+            OperationResult outcome = t == null && r != null ? r : OperationResult.UNKNOWN;
+            if (outcome == OperationResult.BUSY || outcome == OperationResult.UNKNOWN) forget(key);
+            result.complete(outcome);
+        });
+        return result;
+    }
+
+    /**
+     * Records a declined operation under {@code key}, or returns the stored outcome if the key was
+     * used meanwhile. Runs on the database thread.
+     */
+    OperationResult decline(String key, String fingerprint) {
+        try {
+            if (databaseManager.recordIdempotencyKey(key, fingerprint, false)) return OperationResult.DECLINED;
+        } catch (LedgerException e) {
+            LOGGER.error("Erro ao gravar a chave idempotente {}: ", key, e);
+            return OperationResult.DECLINED;
+        }
+        return replay(key, fingerprint);
+    }
+
+    /** Outcome stored for {@code key} by the call that used it. Runs on the database thread. */
+    OperationResult replay(String key, String fingerprint) {
+        REPLAYS.increment();
+        IdempotencyRecord record;
+        try {
+            record = databaseManager.getIdempotencyKey(key);
+        } catch (LedgerException e) {
+            LOGGER.error("Erro ao ler a chave idempotente {}: ", key, e);
+            return OperationResult.UNKNOWN;
+        }
+        if (record == null || record.result == null) return OperationResult.UNKNOWN;
+        if (!record.fingerprint.equals(fingerprint)) return conflict(key);
+        return record.result ? OperationResult.SUCCESS : OperationResult.DECLINED;
+    }
+
+    private OperationResult conflict(String key) {
+        CONFLICTS.increment();
+        LOGGER.warn("Idempotency key {} reused for a different operation; refused", key);
+        return OperationResult.KEY_CONFLICT;
+    }
+
+    private void forget(String key) {
+        synchronized (recent) {
+            recent.remove(key);
+        }
+    }
+
+    /** Deletes keys older than {@code idempotency.retention-hours}, batch by batch on the maintenance lane. */
+    void prune() {
+        double hours = settings.getDouble("idempotency.retention-hours");
+        if (hours <= 0) return;
+        long cutoff = System.currentTimeMillis() - (long) (hours * TimeUnit.HOURS.toMillis(1));
+        submitPruneBatch(cutoff, 0);
+    }
+
+    private void submitPruneBatch(long cutoff, long total) {
+        try {
+            maintenanceExecutor.execute(() -> {
+                int size = Math.max(1, settings.getInt("pruning.batch-size"));
+                int rows = databaseManager.deleteIdempotencyKeysBefore(cutoff, size);
+                if (rows >= size) {
+                    submitPruneBatch(cutoff, total + rows);
+                } else if (total + Math.max(0, rows) > 0) {
+                    LOGGER.debug("Pruned {} idempotency keys", total + Math.max(0, rows));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Idempotency keys pruning postponed: maintenance lane full");
+        }
+    }
+}
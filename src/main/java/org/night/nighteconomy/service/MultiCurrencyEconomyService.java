@@ -1,55 +1,109 @@
 package org.night.nighteconomy.service;
 
-import net.minecraft.network.chat.Component;
-import net.neoforged.neoforge.server.ServerLifecycleHooks;
+import org.night.nighteconomy.api.data.OperationResult;
 import org.night.nighteconomy.config.ConfigManager;
+import org.night.nighteconomy.config.MessageTemplate;
 import org.night.nighteconomy.currency.CurrencyConfig;
+import org.night.nighteconomy.currency.CurrencyFormatter;
+import org.night.nighteconomy.currency.CurrencyRegistry;
+import org.night.nighteconomy.database.DatabaseExecutor;
+import org.night.nighteconomy.database.LedgerException;
+import org.night.nighteconomy.database.LedgerStore;
 import org.night.nighteconomy.database.MultiCurrencyDatabaseManager;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.AccountChange;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.AccountState;
 import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.RankingEntry;
 import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.Transaction;
-import org.night.nighteconomy.util.ChatUtil;
+import org.night.nighteconomy.jfr.CacheMissEvent;
+import org.night.nighteconomy.jfr.MutationEvent;
+import org.night.nighteconomy.jfr.PaymentEvent;
+import org.night.nighteconomy.maintenance.BackupManager;
+import org.night.nighteconomy.maintenance.MaintenanceScheduler;
+import org.night.nighteconomy.metrics.EconomyMetrics;
+import org.night.nighteconomy.metrics.LatencyHistogram;
+import org.night.nighteconomy.ranking.RankingManager;
+import org.night.nighteconomy.ranking.RankingSnapshot;
+import org.night.nighteconomy.stats.BalanceDistribution;
+import org.night.nighteconomy.stats.EconomyStatistics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
 
 public class MultiCurrencyEconomyService {
     private static final Logger LOGGER = LogManager.getLogger();
+    private static final MessageTemplate DEFAULT_TYCOON_BROADCAST =
+            MessageTemplate.compile("&aPlayer &e%player% &ais the new server tycoon!", '%', '%');
 
-    private final MultiCurrencyDatabaseManager databaseManager;
+    private final LedgerStore databaseManager;
     private final ConfigManager configManager;
+    private final RankingManager rankingManager;
     private final ScheduledExecutorService scheduler;
-    private final Map<String, Long> lastRankingUpdate = new ConcurrentHashMap<>();
-    private final ExecutorService dbExecutor;
-
-    private final ConcurrentHashMap<UUID, ConcurrentHashMap<String, Double>> balanceCache = new ConcurrentHashMap<>();
-
-    private final ConcurrentHashMap<String, ThreadLocal<DecimalFormat>> formatterCache = new ConcurrentHashMap<>();
+    private final DatabaseExecutor dbExecutor;
+    private final EconomyNotifier notifier;
+
+    private static final LongAdder CAS_CONFLICTS = EconomyMetrics.counter("cas.conflicts");
+    private static final LongAdder CAS_EXHAUSTED = EconomyMetrics.counter("cas.exhausted");
+    private static final LongAdder CAS_ERRORS = EconomyMetrics.counter("cas.errors");
+    private static final LongAdder DB_REJECTED = EconomyMetrics.counter("db.rejected");
+
+    private final ConcurrentHashMap<UUID, ConcurrentHashMap<String, CachedBalance>> balanceCache = new ConcurrentHashMap<>();
+    private final List<MutationListener> mutationListeners = new CopyOnWriteArrayList<>();
+    private final TycoonTracker tycoonTracker;
+    private final MaintenanceScheduler maintenance;
+    private final BackupManager backups;
+    private final ChangeFeed changeFeed;
+    private final IdempotencyGuard idempotency;
+    private final EconomyStatistics statistics;
+    private final RateLimiter rateLimiter;
 
     private volatile double txRetentionDays = 30.0;
     private static final long PRUNE_INITIAL_DELAY_MIN = 5;
     private static final long PRUNE_INTERVAL_MIN = 60;
-    private static final long CHECKPOINT_INTERVAL_MIN = 30;
-    private static final long MAINTENANCE_INTERVAL_HOURS = 24;
+    private static final long RANKING_TICK_SECONDS = 5;
 
-    public MultiCurrencyEconomyService(MultiCurrencyDatabaseManager databaseManager,
-                                       ConfigManager configManager) {
+    public MultiCurrencyEconomyService(LedgerStore databaseManager,
+                                       ConfigManager configManager,
+                                       RankingManager rankingManager,
+                                       EconomyNotifier notifier) {
         this.databaseManager = databaseManager;
         this.configManager = configManager;
-
-        this.dbExecutor = Executors.newSingleThreadExecutor(r -> {
-            Thread t = new Thread(r, "NE-DB");
-            t.setDaemon(true);
-            return t;
+        this.rankingManager = rankingManager;
+        this.notifier = notifier;
+        this.tycoonTracker = new TycoonTracker(databaseManager, (cid, name) -> {
+            broadcastNewTycoon(cid, name);
+            LOGGER.info("New tycoon for currency {} -> {}", cid, name);
         });
 
+        this.dbExecutor = new DatabaseExecutor("NE-DB", configManager.getSettings());
+        rankingManager.setUpdateExecutor(dbExecutor.lane(DatabaseExecutor.Lane.RANKING));
+
         this.scheduler = Executors.newScheduledThreadPool(2);
 
+        this.maintenance = new MaintenanceScheduler(databaseManager, configManager.getSettings(),
+                dbExecutor.lane(DatabaseExecutor.Lane.MAINTENANCE), scheduler, notifier::tickTimeMs);
+        this.backups = new BackupManager(databaseManager, configManager.getSettings(),
+                configManager.getConfigDir().resolve("backups"), scheduler, maintenance::isBusy);
+
+        this.changeFeed = new ChangeFeed(databaseManager, configManager.getSettings(), dbExecutor,
+                dbExecutor.lane(DatabaseExecutor.Lane.MAINTENANCE), scheduler, this::applyRemoteChanges);
+        this.idempotency = new IdempotencyGuard(databaseManager, configManager.getSettings(),
+                dbExecutor.lane(DatabaseExecutor.Lane.MAINTENANCE));
+        this.statistics = new EconomyStatistics(databaseManager, configManager.getSettings(),
+                () -> configManager.getCurrencies().keySet(), dbExecutor.lane(DatabaseExecutor.Lane.MAINTENANCE), scheduler);
+        rankingManager.setStatistics(statistics);
+        this.rateLimiter = new RateLimiter(configManager.getSettings().getInt("ratelimit.table-size"));
+
+        addMutationListener((playerUuid, currencyId) -> rankingManager.markDirty(currencyId));
+        addMutationListener((playerUuid, currencyId) -> maintenance.recordOperation());
+
         startRankingUpdateScheduler();
         startMaintenanceSchedulers();
+        EconomyMetrics.startExporters(configManager.getSettings());
 
         LOGGER.info("Economy service started. Transaction retention={} days. Schedulers initialized.", txRetentionDays);
     }
@@ -61,125 +115,83 @@ public class MultiCurrencyEconomyService {
             } catch (Exception e) {
                 LOGGER.error("Erro ao atualizar rankings: ", e);
             }
-        }, 30, 30, TimeUnit.SECONDS);
-        LOGGER.debug("Ranking update scheduler started with fixed rate 30s");
+        }, RANKING_TICK_SECONDS, RANKING_TICK_SECONDS, TimeUnit.SECONDS);
+        LOGGER.debug("Ranking update scheduler started with tick {}s", RANKING_TICK_SECONDS);
     }
 
     private void startMaintenanceSchedulers() {
         scheduler.scheduleAtFixedRate(() -> {
             try {
-                dbExecutor.submit(() -> {
-                    try {
-                        int removed = databaseManager.pruneOldTransactions(txRetentionDays);
-                        if (removed > 0) {
-                            LOGGER.info("Pruned {} transactions older than {} days", removed, txRetentionDays);
-                        } else {
-                            LOGGER.debug("Pruning executed. No old transactions to remove (retention={} days)", txRetentionDays);
-                        }
-                    } catch (Exception e) {
-                        LOGGER.error("Erro no pruning de transactions: ", e);
-                    }
-                });
+                maintenance.getPruner().prune(txRetentionDays);
+                changeFeed.prune();
+                idempotency.prune();
             } catch (Exception e) {
                 LOGGER.error("Erro ao agendar pruning de transactions: ", e);
             }
         }, PRUNE_INITIAL_DELAY_MIN, PRUNE_INTERVAL_MIN, TimeUnit.MINUTES);
         LOGGER.debug("Transaction pruning scheduler started: initialDelay={}min, period={}min", PRUNE_INITIAL_DELAY_MIN, PRUNE_INTERVAL_MIN);
 
-        scheduler.scheduleAtFixedRate(() -> {
-            try {
-                dbExecutor.submit(() -> {
-                    try {
-                        boolean ok = databaseManager.walCheckpointTruncate();
-                        LOGGER.debug("WAL checkpoint TRUNCATE executed, ok={}", ok);
-                    } catch (Exception e) {
-                        LOGGER.error("Erro no WAL checkpoint: ", e);
-                    }
-                });
-            } catch (Exception e) {
-                LOGGER.error("Erro ao agendar WAL checkpoint: ", e);
-            }
-        }, CHECKPOINT_INTERVAL_MIN, CHECKPOINT_INTERVAL_MIN, TimeUnit.MINUTES);
-        LOGGER.debug("WAL checkpoint scheduler started: period={}min", CHECKPOINT_INTERVAL_MIN);
+        maintenance.start();
+        backups.start();
+        changeFeed.start();
+        statistics.start();
+    }
 
-        scheduler.scheduleAtFixedRate(() -> {
-            try {
-                dbExecutor.submit(() -> {
-                    try {
-                        boolean a = databaseManager.analyze();
-                        boolean v = databaseManager.vacuum();
-                        LOGGER.info("Maintenance executed: ANALYZE={}, VACUUM={}", a, v);
-                    } catch (Exception e) {
-                        LOGGER.error("Erro na manutenção (VACUUM/ANALYZE): ", e);
-                    }
-                });
-            } catch (Exception e) {
-                LOGGER.error("Erro ao agendar manutenção (VACUUM/ANALYZE): ", e);
-            }
-        }, MAINTENANCE_INTERVAL_HOURS, MAINTENANCE_INTERVAL_HOURS, TimeUnit.HOURS);
-        LOGGER.debug("Maintenance scheduler started: period={}h", MAINTENANCE_INTERVAL_HOURS);
+    public MaintenanceScheduler getMaintenance() {
+        return maintenance;
     }
 
-    private void updateAllRankings() {
-        Map<String, CurrencyConfig> currencies = configManager.getCurrencies();
-        long currentTime = System.currentTimeMillis();
+    public BackupManager getBackups() {
+        return backups;
+    }
 
-        for (Map.Entry<String, CurrencyConfig> entry : currencies.entrySet()) {
-            String currencyId = entry.getKey();
-            CurrencyConfig config = entry.getValue();
+    /** Account count, supply and balance distribution of the currency; null until first computed. */
+    public BalanceDistribution.Snapshot getStatistics(String currencyId) {
+        return statistics.get(currencyId);
+    }
 
-            if (!config.isRanking()) continue;
+    private void updateAllRankings() {
+        CurrencyRegistry registry = configManager.getRegistry();
 
-            long lastUpdate = lastRankingUpdate.getOrDefault(currencyId, 0L);
-            long updateInterval = config.getUpdate() * 1000L;
+        for (int i = 0; i < registry.size(); i++) {
+            CurrencyRegistry.Currency currency = registry.get(i);
+            if (!currency.isRanking()) continue;
 
-            if (currentTime - lastUpdate >= updateInterval) {
+            String currencyId = currency.getId();
+            if (rankingManager.claimRebuild(currencyId)) {
                 final String cid = currencyId;
-                dbExecutor.submit(() -> {
-                    try {
-                        databaseManager.updateRankingCache(cid);
-
-                        RankingEntry top = databaseManager.getTopPlayerInfo(cid);
-                        if (top != null && top.uuid != null) {
-                            String prev = databaseManager.getLastTycoonUuid(cid);
-
-                            boolean changed = (prev == null) ? false : !prev.equals(top.uuid);
-                            databaseManager.upsertLastTycoon(cid, top.uuid, top.username != null ? top.username : "");
-
-                            if (changed) {
-                                broadcastNewTycoon(cid, top.username != null ? top.username : top.uuid);
-                                LOGGER.info("New tycoon for currency {} -> {} (uuid={})", cid, top.username, top.uuid);
-                            }
+                try {
+                    dbExecutor.lane(DatabaseExecutor.Lane.RANKING).execute(() -> {
+                        try {
+                            rankingManager.forceUpdate(cid);
+                            syncTycoonWithRanking(cid);
+
+                            LOGGER.debug("Ranking atualizado para moeda: {}", cid);
+                        } catch (Exception e) {
+                            LOGGER.error("Erro ao atualizar ranking para {}: ", cid, e);
+                        } finally {
+                            rankingManager.releaseRebuild(cid);
                         }
-
-                        lastRankingUpdate.put(cid, System.currentTimeMillis());
-                        LOGGER.debug("Ranking atualizado para moeda: {}", cid);
-                    } catch (Exception e) {
-                        LOGGER.error("Erro ao atualizar ranking para {}: ", cid, e);
-                    }
-                });
+                    });
+                } catch (RejectedExecutionException e) {
+                    rankingManager.releaseRebuild(cid);
+                }
             }
         }
     }
 
+    private void syncTycoonWithRanking(String currencyId) {
+        RankingSnapshot snapshot = rankingManager.getSnapshot(currencyId);
+        tycoonTracker.onRankingRebuilt(currencyId, snapshot != null ? snapshot.getTop() : null);
+    }
+
     private void broadcastNewTycoon(String currencyId, String playerName) {
         try {
             CurrencyConfig cfg = configManager.getCurrency(currencyId);
-            String template = (cfg != null && cfg.getTycoonBroadcast() != null && !cfg.getTycoonBroadcast().isEmpty())
-                    ? cfg.getTycoonBroadcast()
-                    : "&aPlayer &e%player% &ais the new server tycoon!";
-
-            String msg = template.replace("%player%", playerName);
-            String colored = ChatUtil.translateColors(msg);
-
-            var server = ServerLifecycleHooks.getCurrentServer();
-            if (server != null) {
-                server.execute(() -> {
-                    server.getPlayerList().broadcastSystemMessage(Component.literal(colored), false);
-                });
-            } else {
-                LOGGER.warn("Servidor indisponível para broadcast do Tycoon: {}", colored);
-            }
+            MessageTemplate template = cfg != null ? cfg.getTycoonBroadcastTemplate() : null;
+            if (template == null) template = DEFAULT_TYCOON_BROADCAST;
+
+            notifier.broadcast(template.renderColored("player", playerName));
         } catch (Exception e) {
             LOGGER.error("Erro ao enviar broadcast de Tycoon: ", e);
         }
@@ -201,7 +213,7 @@ public class MultiCurrencyEconomyService {
 
     public CompletableFuture<Integer> pruneOldTransactionsNowAsync() {
         double days = this.txRetentionDays;
-        return CompletableFuture.supplyAsync(() -> databaseManager.pruneOldTransactions(days), dbExecutor);
+        return maintenance.getPruner().prune(days);
     }
 
     public void runMaintenanceNow(boolean doVacuum, boolean doAnalyze, boolean doCheckpoint) {
@@ -209,73 +221,223 @@ public class MultiCurrencyEconomyService {
     }
 
     public CompletableFuture<Void> runMaintenanceNowAsync(boolean doVacuum, boolean doAnalyze, boolean doCheckpoint) {
-        return CompletableFuture.runAsync(() -> {
+        return submitInteractive(() -> {
+            if (!(databaseManager instanceof MultiCurrencyDatabaseManager sqlite)) {
+                LOGGER.info("Manual maintenance skipped: only the SQLite backend needs it");
+                return null;
+            }
             if (doAnalyze) {
-                boolean a = databaseManager.analyze();
+                boolean a = sqlite.analyze();
                 LOGGER.info("Manual ANALYZE executed: {}", a);
             }
             if (doVacuum) {
-                boolean v = databaseManager.vacuum();
+                boolean v = sqlite.vacuum();
                 LOGGER.info("Manual VACUUM executed: {}", v);
             }
             if (doCheckpoint) {
-                boolean c = databaseManager.walCheckpointTruncate();
+                boolean c = sqlite.walCheckpointTruncate();
                 LOGGER.info("Manual WAL checkpoint TRUNCATE executed: {}", c);
             }
-        }, dbExecutor);
+            return null;
+        });
     }
 
-    private ConcurrentHashMap<String, Double> userCache(UUID playerUuid) {
+    /** Cached balance with the account version it was read at; -1 when the version is unknown. */
+    private record CachedBalance(double balance, long version) {}
+
+    private ConcurrentHashMap<String, CachedBalance> userCache(UUID playerUuid) {
         return balanceCache.computeIfAbsent(playerUuid, k -> new ConcurrentHashMap<>());
     }
 
     private Double getCachedBalance(UUID playerUuid, String currencyId) {
         var map = balanceCache.get(playerUuid);
-        return map != null ? map.get(currencyId) : null;
+        CachedBalance cached = map != null ? map.get(currencyId) : null;
+        Double value = cached != null ? cached.balance() : null;
+        if (value != null) {
+            EconomyMetrics.BALANCE_CACHE.hit();
+        } else {
+            EconomyMetrics.BALANCE_CACHE.miss();
+            CacheMissEvent event = new CacheMissEvent();
+            if (event.shouldCommit()) {
+                event.currency = currencyId;
+                event.player = playerUuid.toString();
+                event.commit();
+            }
+        }
+        return value;
     }
 
+    /** Caches a value read without a version; never replaces a versioned entry. */
     private void putCachedBalance(UUID playerUuid, String currencyId, double value) {
-        userCache(playerUuid).put(currencyId, value);
+        userCache(playerUuid).putIfAbsent(currencyId, new CachedBalance(value, -1L));
+    }
+
+    /** Caches {@code state} unless the cache already holds a newer version of the account. */
+    private void putCachedBalance(UUID playerUuid, String currencyId, AccountState state) {
+        userCache(playerUuid).merge(currencyId, new CachedBalance(state.balance, state.version),
+                (old, next) -> next.version() > old.version() || old.version() < 0 ? next : old);
+    }
+
+    /**
+     * Read-modify-write of a balance with compare-and-set on the account version, retried up to
+     * {@code accounts.cas-retries} times when another writer got in between. Returns the state
+     * written, or null if the account does not exist, every attempt conflicted or the database
+     * failed; a failure is not retried.
+     */
+    private AccountState casUpdate(UUID playerUuid, String currencyId, DoubleUnaryOperator newBalance) {
+        return casUpdate(playerUuid, currencyId, newBalance, null, null).written();
+    }
+
+    /** Outcome of a compare-and-set update, and the state written when it is {@code SUCCESS}. */
+    private record CasResult(OperationResult outcome, AccountState written) {
+        static final CasResult MISSING = new CasResult(OperationResult.DECLINED, null);
+        static final CasResult EXHAUSTED = new CasResult(OperationResult.BUSY, null);
+        static final CasResult FAILED = new CasResult(OperationResult.UNKNOWN, null);
+        /** The idempotency key is already stored; nothing was written. */
+        static final CasResult KEY_USED = new CasResult(OperationResult.KEY_CONFLICT, null);
+    }
+
+    /** {@link #casUpdate(UUID, String, DoubleUnaryOperator)} that records {@code idempotencyKey} with the write. */
+    private CasResult casUpdate(UUID playerUuid, String currencyId, DoubleUnaryOperator newBalance,
+                                String idempotencyKey, String fingerprint) {
+        int attempts = Math.max(1, configManager.getSettings().getInt("accounts.cas-retries") + 1);
+        for (int i = 0; i < attempts; i++) {
+            AccountState current;
+            AccountState written;
+            try {
+                current = databaseManager.getAccountState(playerUuid, currencyId);
+                if (current == null) return CasResult.MISSING;
+                written = databaseManager.compareAndSetBalance(playerUuid, currencyId, current.version,
+                        newBalance.applyAsDouble(current.balance), idempotencyKey, fingerprint);
+                if (written == null && idempotencyKey != null
+                        && databaseManager.getIdempotencyKey(idempotencyKey) != null) {
+                    return CasResult.KEY_USED;
+                }
+            } catch (LedgerException e) {
+                CAS_ERRORS.increment();
+                LOGGER.error("Erro ao atualizar saldo de {} em {}: ", playerUuid, currencyId, e);
+                return CasResult.FAILED;
+            }
+            if (written != null) {
+                statistics.onBalanceChanged(currencyId, playerUuid, current.balance, written.balance);
+                return new CasResult(OperationResult.SUCCESS, written);
+            }
+            CAS_CONFLICTS.increment();
+        }
+        CAS_EXHAUSTED.increment();
+        LOGGER.warn("Balance update of {} in {} gave up after {} version conflicts", playerUuid, currencyId, attempts);
+        return CasResult.EXHAUSTED;
+    }
+
+    /**
+     * Spends one use of a player command from the player's bucket in this currency, as set in the
+     * currency's {@code rateLimits}. Checked before any work is queued; false means refuse the call.
+     */
+    public boolean tryAcquire(UUID playerUuid, String currencyId, String command) {
+        CurrencyConfig config = configManager.getCurrency(currencyId);
+        CurrencyConfig.RateLimitConfig limit = config != null ? config.getRateLimit(command) : null;
+        if (limit == null) return true;
+        return rateLimiter.tryAcquire(playerUuid, currencyId.hashCode() * 31 + command.hashCode(),
+                limit.getRate(), limit.getBurst());
     }
 
     public void invalidateCachedBalance(UUID playerUuid, String currencyId) {
         var map = balanceCache.get(playerUuid);
-        if (map != null) map.remove(currencyId);
+        if (map != null && map.remove(currencyId) != null) EconomyMetrics.BALANCE_CACHE.evicted(1);
+        tycoonTracker.invalidate(currencyId);
+        notifyMutation(playerUuid, currencyId);
     }
 
     public void clearPlayerCache(UUID playerUuid) {
-        balanceCache.remove(playerUuid);
+        var removed = balanceCache.remove(playerUuid);
+        if (removed != null) EconomyMetrics.BALANCE_CACHE.evicted(removed.size());
+        notifyMutation(playerUuid, null);
     }
 
     public void clearAllCache() {
+        long evicted = 0;
+        for (var map : balanceCache.values()) evicted += map.size();
         balanceCache.clear();
+        EconomyMetrics.BALANCE_CACHE.evicted(evicted);
+        tycoonTracker.invalidate(null);
+        notifyMutation(null, null);
+    }
+
+    /**
+     * Patches the caches with changes tailed from account_changes. A change whose version is not
+     * newer than the cached one was written by this node (or superseded) and is skipped; uncached
+     * accounts only mark the ranking and tycoon state as stale. Runs on the database executor.
+     */
+    private void applyRemoteChanges(Collection<AccountChange> changes) {
+        for (AccountChange change : changes) {
+            UUID playerUuid;
+            try {
+                playerUuid = UUID.fromString(change.uuid);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            var map = balanceCache.get(playerUuid);
+            CachedBalance cached = map != null ? map.get(change.currencyId) : null;
+            if (cached != null) {
+                if (cached.version() >= change.version) continue;
+                putCachedBalance(playerUuid, change.currencyId,
+                        new AccountState(change.balance, change.paymentEnabled, change.version));
+            }
+            tycoonTracker.onBalanceChanged(change.currencyId, playerUuid, change.balance);
+            notifyMutation(playerUuid, change.currencyId);
+        }
+    }
+
+    /** Highest sequence number written to the account_changes log. */
+    public CompletableFuture<Long> latestChangeSeqAsync() {
+        return submitInteractive(databaseManager::latestChangeSeq);
     }
 
-    private static String formatterKey(String currencyId, boolean showCents, char decimalSep) {
-        return currencyId + "|" + (showCents ? "2" : "0") + "|" + decimalSep;
+    /**
+     * Account changes with a sequence number above {@code afterSeq}, oldest first. On shared
+     * backends the result stops before a sequence that may still be committing.
+     */
+    public CompletableFuture<List<AccountChange>> tailChangesAsync(long afterSeq, int limit) {
+        int lim = Math.max(1, Math.min(limit, 1000));
+        return submitInteractive(() -> changeFeed.tail(afterSeq, lim));
     }
 
-    private DecimalFormat getOrCreateFormatter(String currencyId, boolean showCents, char decimalSep) {
-        String key = formatterKey(currencyId, showCents, decimalSep);
-        ThreadLocal<DecimalFormat> tl = formatterCache.computeIfAbsent(key, k ->
-                ThreadLocal.withInitial(() -> {
-                    DecimalFormatSymbols s = new DecimalFormatSymbols();
-                    s.setDecimalSeparator(decimalSep);
-                    DecimalFormat df = new DecimalFormat(showCents ? "0.00" : "0", s);
-                    df.setGroupingUsed(false);
-                    return df;
-                })
-        );
-        return tl.get();
+    public void addMutationListener(MutationListener listener) {
+        mutationListeners.add(listener);
     }
 
-    public void clearFormatterCache() {
-        formatterCache.clear();
+    public void removeMutationListener(MutationListener listener) {
+        mutationListeners.remove(listener);
     }
 
-    public void invalidateFormatterCacheForCurrency(String currencyId) {
-        String prefix = currencyId + "|";
-        formatterCache.keySet().removeIf(k -> k.startsWith(prefix));
+    private void notifyMutation(UUID playerUuid, String currencyId) {
+        for (MutationListener listener : mutationListeners) {
+            try {
+                listener.onAccountMutated(playerUuid, currencyId);
+            } catch (Exception e) {
+                LOGGER.error("Mutation listener failed: ", e);
+            }
+        }
+    }
+
+    /** Runs {@code task} on the interactive lane; a full or stopped lane fails the future instead of throwing. */
+    private <T> CompletableFuture<T> submitInteractive(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, dbExecutor);
+        } catch (RejectedExecutionException e) {
+            DB_REJECTED.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /** {@link #submitInteractive(Supplier)} that completes with {@code whenRejected} when the lane refuses the task. */
+    private <T> CompletableFuture<T> submitInteractive(Supplier<T> task, T whenRejected) {
+        try {
+            return CompletableFuture.supplyAsync(task, dbExecutor);
+        } catch (RejectedExecutionException e) {
+            DB_REJECTED.increment();
+            return CompletableFuture.completedFuture(whenRejected);
+        }
     }
 
     public boolean createAccount(UUID playerUuid, String currencyId, String username) {
@@ -283,15 +445,18 @@ public class MultiCurrencyEconomyService {
     }
 
     public CompletableFuture<Boolean> createAccountAsync(UUID playerUuid, String currencyId, String username) {
-        return CompletableFuture.supplyAsync(() -> {
-            CurrencyConfig cfg = configManager.getCurrency(currencyId);
-            if (cfg == null) return false;
-            boolean created = databaseManager.createAccount(playerUuid, currencyId, username, cfg.getDefaultValue());
+        return submitInteractive(() -> {
+            CurrencyRegistry.Currency currency = configManager.getRegistry().get(currencyId);
+            if (currency == null) return false;
+            boolean created = databaseManager.createAccount(playerUuid, currencyId, username, currency.getDefaultValue());
             if (created) {
-                putCachedBalance(playerUuid, currencyId, cfg.getDefaultValue());
+                statistics.onAccountCreated(currencyId, playerUuid, currency.getDefaultValue());
+                putCachedBalance(playerUuid, currencyId, new AccountState(currency.getDefaultValue(), true, 0L));
+                tycoonTracker.onBalanceChanged(currencyId, playerUuid, currency.getDefaultValue());
+                notifyMutation(playerUuid, currencyId);
             }
             return created;
-        }, dbExecutor);
+        }, false);
     }
 
     public void ensureAccountExists(UUID playerUuid, String currencyId, String username) {
@@ -299,30 +464,31 @@ public class MultiCurrencyEconomyService {
     }
 
     public CompletableFuture<Void> ensureAccountExistsAsync(UUID playerUuid, String currencyId, String username) {
-        return CompletableFuture.runAsync(() -> {
+        return submitInteractive(() -> {
             if (!databaseManager.hasAccount(playerUuid, currencyId)) {
-                CurrencyConfig cfg = configManager.getCurrency(currencyId);
-                double initial = (cfg != null) ? cfg.getDefaultValue() : 0.0;
+                CurrencyRegistry.Currency currency = configManager.getRegistry().get(currencyId);
+                double initial = (currency != null) ? currency.getDefaultValue() : 0.0;
                 boolean created = databaseManager.createAccount(playerUuid, currencyId, username, initial);
                 if (created) {
-                    putCachedBalance(playerUuid, currencyId, initial);
+                    statistics.onAccountCreated(currencyId, playerUuid, initial);
+                    putCachedBalance(playerUuid, currencyId, new AccountState(initial, true, 0L));
+                    tycoonTracker.onBalanceChanged(currencyId, playerUuid, initial);
+                    notifyMutation(playerUuid, currencyId);
                 }
             } else {
                 Double cached = getCachedBalance(playerUuid, currencyId);
                 if (cached == null) {
-                    double current = databaseManager.getBalance(playerUuid, currencyId);
-                    putCachedBalance(playerUuid, currencyId, current);
+                    AccountState current = databaseManager.getAccountState(playerUuid, currencyId);
+                    if (current != null) putCachedBalance(playerUuid, currencyId, current);
                 }
             }
-        }, dbExecutor);
+            return null;
+        }, null);
     }
 
     public CompletableFuture<List<Transaction>> getPlayerTransactionsAsync(UUID playerUuid, String currencyId, int limit) {
         int lim = Math.min(limit, 50);
-        return CompletableFuture.supplyAsync(
-                () -> databaseManager.getPlayerTransactions(playerUuid, currencyId, lim),
-                dbExecutor
-        );
+        return submitInteractive(() -> databaseManager.getPlayerTransactions(playerUuid, currencyId, lim));
     }
 
     public List<Transaction> getPlayerTransactions(UUID playerUuid, String currencyId, int limit) {
@@ -338,11 +504,30 @@ public class MultiCurrencyEconomyService {
         if (cached != null) {
             return CompletableFuture.completedFuture(cached);
         }
-        return CompletableFuture.supplyAsync(() -> {
-            double dbValue = databaseManager.getBalance(playerUuid, currencyId);
-            putCachedBalance(playerUuid, currencyId, dbValue);
-            return dbValue;
-        }, dbExecutor);
+        return submitInteractive(() -> {
+            long start = System.nanoTime();
+            AccountState state = databaseManager.getAccountState(playerUuid, currencyId);
+            EconomyMetrics.GET.recordSince(start);
+            if (state == null) {
+                putCachedBalance(playerUuid, currencyId, 0.0);
+                return 0.0;
+            }
+            putCachedBalance(playerUuid, currencyId, state);
+            return state.balance;
+        });
+    }
+
+    private static void commitMutation(MutationEvent event, String operation, UUID playerUuid,
+                                       String currencyId, double amount, boolean success) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.player = playerUuid.toString();
+            event.currency = currencyId;
+            event.amount = amount;
+            event.success = success;
+            event.commit();
+        }
     }
 
     public boolean setBalance(UUID playerUuid, String currencyId, double amount) {
@@ -350,12 +535,21 @@ public class MultiCurrencyEconomyService {
     }
 
     public CompletableFuture<Boolean> setBalanceAsync(UUID playerUuid, String currencyId, double amount) {
-        return CompletableFuture.supplyAsync(() -> {
-            boolean ok = databaseManager.setBalance(playerUuid, currencyId, amount);
-            if (ok) putCachedBalance(playerUuid, currencyId, amount);
-            else invalidateCachedBalance(playerUuid, currencyId);
+        return submitInteractive(() -> {
+            MutationEvent event = new MutationEvent();
+            event.begin();
+            AccountState written = casUpdate(playerUuid, currencyId, current -> amount);
+            boolean ok = written != null;
+            commitMutation(event, "set", playerUuid, currencyId, amount, ok);
+            if (ok) {
+                putCachedBalance(playerUuid, currencyId, written);
+                tycoonTracker.onBalanceChanged(currencyId, playerUuid, written.balance);
+                notifyMutation(playerUuid, currencyId);
+            } else {
+                invalidateCachedBalance(playerUuid, currencyId);
+            }
             return ok;
-        }, dbExecutor);
+        }, false);
     }
 
     public boolean addBalance(UUID playerUuid, String currencyId, double amount) {
@@ -363,16 +557,23 @@ public class MultiCurrencyEconomyService {
     }
 
     public CompletableFuture<Boolean> addBalanceAsync(UUID playerUuid, String currencyId, double amount) {
-        return CompletableFuture.supplyAsync(() -> {
-            boolean ok = databaseManager.addBalance(playerUuid, currencyId, amount);
+        return submitInteractive(() -> {
+            MutationEvent event = new MutationEvent();
+            event.begin();
+            long start = System.nanoTime();
+            AccountState written = casUpdate(playerUuid, currencyId, current -> current + amount);
+            boolean ok = written != null;
+            commitMutation(event, "add", playerUuid, currencyId, amount, ok);
             if (ok) {
-                double newVal = databaseManager.getBalance(playerUuid, currencyId);
-                putCachedBalance(playerUuid, currencyId, newVal);
+                EconomyMetrics.ADD.recordSince(start);
+                putCachedBalance(playerUuid, currencyId, written);
+                tycoonTracker.onBalanceChanged(currencyId, playerUuid, written.balance);
+                notifyMutation(playerUuid, currencyId);
             } else {
                 invalidateCachedBalance(playerUuid, currencyId);
             }
             return ok;
-        }, dbExecutor);
+        }, false);
     }
 
     public boolean subtractBalance(UUID playerUuid, String currencyId, double amount) {
@@ -380,16 +581,99 @@ public class MultiCurrencyEconomyService {
     }
 
     public CompletableFuture<Boolean> subtractBalanceAsync(UUID playerUuid, String currencyId, double amount) {
-        return CompletableFuture.supplyAsync(() -> {
-            boolean ok = databaseManager.subtractBalance(playerUuid, currencyId, amount);
+        return submitInteractive(() -> {
+            MutationEvent event = new MutationEvent();
+            event.begin();
+            long start = System.nanoTime();
+            AccountState written = casUpdate(playerUuid, currencyId, current -> current - amount);
+            boolean ok = written != null;
+            commitMutation(event, "sub", playerUuid, currencyId, amount, ok);
             if (ok) {
-                double newVal = databaseManager.getBalance(playerUuid, currencyId);
-                putCachedBalance(playerUuid, currencyId, newVal);
+                EconomyMetrics.SUB.recordSince(start);
+                putCachedBalance(playerUuid, currencyId, written);
+                tycoonTracker.onBalanceChanged(currencyId, playerUuid, written.balance);
+                notifyMutation(playerUuid, currencyId);
             } else {
                 invalidateCachedBalance(playerUuid, currencyId);
             }
             return ok;
-        }, dbExecutor);
+        }, false);
+    }
+
+    /**
+     * {@link #addBalanceAsync} at most once per {@code idempotencyKey}; a retry with the same key
+     * completes with the outcome of the first call instead of crediting again.
+     */
+    public CompletableFuture<OperationResult> addBalanceAsync(UUID playerUuid, String currencyId, double amount,
+                                                              String idempotencyKey) {
+        String fingerprint = fingerprint("add", playerUuid, null, currencyId, amount);
+        return idempotency.run(idempotencyKey, fingerprint, () -> updateOnceAsync("add", EconomyMetrics.ADD,
+                playerUuid, currencyId, amount, current -> current + amount, idempotencyKey, fingerprint));
+    }
+
+    /** {@link #subtractBalanceAsync} at most once per {@code idempotencyKey}. */
+    public CompletableFuture<OperationResult> subtractBalanceAsync(UUID playerUuid, String currencyId, double amount,
+                                                                   String idempotencyKey) {
+        String fingerprint = fingerprint("sub", playerUuid, null, currencyId, amount);
+        return idempotency.run(idempotencyKey, fingerprint, () -> updateOnceAsync("sub", EconomyMetrics.SUB,
+                playerUuid, currencyId, amount, current -> current - amount, idempotencyKey, fingerprint));
+    }
+
+    private CompletableFuture<OperationResult> updateOnceAsync(String operation, LatencyHistogram latency,
+                                                               UUID playerUuid, String currencyId, double amount,
+                                                               DoubleUnaryOperator newBalance,
+                                                               String idempotencyKey, String fingerprint) {
+        return submitInteractive(() -> {
+            MutationEvent event = new MutationEvent();
+            event.begin();
+            long start = System.nanoTime();
+            CasResult result = casUpdate(playerUuid, currencyId, newBalance, idempotencyKey, fingerprint);
+            commitMutation(event, operation, playerUuid, currencyId, amount, result.outcome() == OperationResult.SUCCESS);
+            switch (result.outcome()) {
+                case SUCCESS -> {
+                    latency.recordSince(start);
+                    putCachedBalance(playerUuid, currencyId, result.written());
+                    tycoonTracker.onBalanceChanged(currencyId, playerUuid, result.written().balance);
+                    notifyMutation(playerUuid, currencyId);
+                    return OperationResult.SUCCESS;
+                }
+                case DECLINED -> {
+                    return idempotency.decline(idempotencyKey, fingerprint);
+                }
+                case KEY_CONFLICT -> {
+                    return idempotency.replay(idempotencyKey, fingerprint);
+                }
+                default -> {
+                    invalidateCachedBalance(playerUuid, currencyId);
+                    return result.outcome();
+                }
+            }
+        }, OperationResult.BUSY);
+    }
+
+    /**
+     * Payment at most once per {@code idempotencyKey}. The key is stored in the payment's own
+     * transaction, so a retry after a crash or timeout never pays twice.
+     */
+    public CompletableFuture<OperationResult> payPlayerAsync(UUID senderUuid, UUID receiverUuid, String currencyId,
+                                                             double amount, String idempotencyKey) {
+        String fingerprint = fingerprint("pay", senderUuid, receiverUuid, currencyId, amount);
+        return idempotency.run(idempotencyKey, fingerprint, () -> {
+            if (dbExecutor.isSaturated()) {
+                return CompletableFuture.completedFuture(OperationResult.BUSY);
+            }
+            return submitInteractive(() -> {
+                PaymentResult r = pay(senderUuid, receiverUuid, currencyId, amount, idempotencyKey, fingerprint);
+                if (r.isSuccess()) return OperationResult.SUCCESS;
+                if (PaymentResult.DUPLICATE.equals(r.getMessage())) return idempotency.replay(idempotencyKey, fingerprint);
+                if (PaymentResult.ERROR.equals(r.getMessage())) return OperationResult.UNKNOWN;
+                return idempotency.decline(idempotencyKey, fingerprint);
+            }, OperationResult.BUSY);
+        });
+    }
+
+    private static String fingerprint(String op, UUID player, UUID other, String currencyId, double amount) {
+        return op + ':' + player + (other != null ? ":" + other : "") + ':' + currencyId + ':' + amount;
     }
 
     public boolean resetBalance(UUID playerUuid, String currencyId) {
@@ -397,18 +681,25 @@ public class MultiCurrencyEconomyService {
     }
 
     public CompletableFuture<Boolean> resetBalanceAsync(UUID playerUuid, String currencyId) {
-        return CompletableFuture.supplyAsync(() -> {
-            CurrencyConfig config = configManager.getCurrency(currencyId);
-            if (config == null) return false;
-            boolean success = databaseManager.resetPlayerBalance(playerUuid, currencyId, config.getDefaultValue());
+        return submitInteractive(() -> {
+            CurrencyRegistry.Currency currency = configManager.getRegistry().get(currencyId);
+            if (currency == null) return false;
+            double initial = currency.getDefaultValue();
+            MutationEvent event = new MutationEvent();
+            event.begin();
+            AccountState written = casUpdate(playerUuid, currencyId, current -> initial);
+            boolean success = written != null;
+            commitMutation(event, "reset", playerUuid, currencyId, initial, success);
             if (success) {
-                databaseManager.recordTransaction(currencyId, null, playerUuid, config.getDefaultValue(), 0.0, "RESET", "Saldo resetado por administrador");
-                putCachedBalance(playerUuid, currencyId, config.getDefaultValue());
+                databaseManager.recordTransaction(currencyId, null, playerUuid, initial, 0.0, "RESET", "Saldo resetado por administrador");
+                putCachedBalance(playerUuid, currencyId, written);
+                tycoonTracker.onBalanceChanged(currencyId, playerUuid, initial);
+                notifyMutation(playerUuid, currencyId);
             } else {
                 invalidateCachedBalance(playerUuid, currencyId);
             }
             return success;
-        }, dbExecutor);
+        }, false);
     }
 
     public boolean isPaymentEnabled(UUID playerUuid, String currencyId) {
@@ -416,10 +707,7 @@ public class MultiCurrencyEconomyService {
     }
 
     public CompletableFuture<Boolean> isPaymentEnabledAsync(UUID playerUuid, String currencyId) {
-        return CompletableFuture.supplyAsync(
-                () -> databaseManager.isPaymentEnabled(playerUuid, currencyId),
-                dbExecutor
-        );
+        return submitInteractive(() -> databaseManager.isPaymentEnabled(playerUuid, currencyId));
     }
 
     public boolean setPaymentEnabled(UUID playerUuid, String currencyId, boolean enabled) {
@@ -427,10 +715,11 @@ public class MultiCurrencyEconomyService {
     }
 
     public CompletableFuture<Boolean> setPaymentEnabledAsync(UUID playerUuid, String currencyId, boolean enabled) {
-        return CompletableFuture.supplyAsync(
-                () -> databaseManager.setPaymentEnabled(playerUuid, currencyId, enabled),
-                dbExecutor
-        );
+        return submitInteractive(() -> {
+            boolean ok = databaseManager.setPaymentEnabled(playerUuid, currencyId, enabled);
+            if (ok) notifyMutation(playerUuid, currencyId);
+            return ok;
+        }, false);
     }
 
     public List<RankingEntry> getTopPlayers(String currencyId, int limit) {
@@ -443,10 +732,7 @@ public class MultiCurrencyEconomyService {
 
     public CompletableFuture<List<RankingEntry>> getTopPlayersAsync(String currencyId, int limit) {
         int lim = Math.min(limit, 100);
-        return CompletableFuture.supplyAsync(
-                () -> databaseManager.getTopPlayers(currencyId, lim),
-                dbExecutor
-        );
+        return submitInteractive(() -> databaseManager.getTopPlayers(currencyId, lim));
     }
 
     public int getPlayerPosition(UUID playerUuid, String currencyId) {
@@ -454,11 +740,11 @@ public class MultiCurrencyEconomyService {
     }
 
     public CompletableFuture<Integer> getPlayerPositionAsync(UUID playerUuid, String currencyId) {
-        return CompletableFuture.supplyAsync(() -> {
+        return submitInteractive(() -> {
             CurrencyConfig config = configManager.getCurrency(currencyId);
             if (config == null || !config.isRanking()) return -1;
             return databaseManager.getPlayerPosition(playerUuid, currencyId);
-        }, dbExecutor);
+        });
     }
 
     public boolean isPlayerTycoon(UUID playerUuid, String currencyId) {
@@ -466,10 +752,10 @@ public class MultiCurrencyEconomyService {
     }
 
     public CompletableFuture<Boolean> isPlayerTycoonAsync(UUID playerUuid, String currencyId) {
-        return CompletableFuture.supplyAsync(() -> {
+        return submitInteractive(() -> {
             String topPlayerUuid = databaseManager.getTopPlayerUuid(currencyId);
             return topPlayerUuid != null && topPlayerUuid.equals(playerUuid.toString());
-        }, dbExecutor);
+        });
     }
 
     public boolean isPlayerMagnata(UUID playerUuid, String currencyId) {
@@ -481,21 +767,11 @@ public class MultiCurrencyEconomyService {
     }
 
     public CompletableFuture<Void> forceRankingUpdateAsync(String currencyId) {
-        return CompletableFuture.runAsync(() -> {
-            databaseManager.updateRankingCache(currencyId);
-
-            RankingEntry top = databaseManager.getTopPlayerInfo(currencyId);
-            if (top != null && top.uuid != null) {
-                String prev = databaseManager.getLastTycoonUuid(currencyId);
-                boolean changed = (prev == null) ? false : !prev.equals(top.uuid);
-                databaseManager.upsertLastTycoon(currencyId, top.uuid, top.username != null ? top.username : "");
-                if (changed) {
-                    broadcastNewTycoon(currencyId, top.username != null ? top.username : top.uuid);
-                }
-            }
-
-            lastRankingUpdate.put(currencyId, System.currentTimeMillis());
-        }, dbExecutor);
+        return submitInteractive(() -> {
+            rankingManager.forceUpdate(currencyId);
+            syncTycoonWithRanking(currencyId);
+            return null;
+        });
     }
 
     public String getTycoonTag(String currencyId) {
@@ -507,31 +783,13 @@ public class MultiCurrencyEconomyService {
         return getTycoonTag(currencyId);
     }
 
-    public String formatAmount(String currencyId, double amount) {
-        CurrencyConfig config = configManager.getCurrency(currencyId);
-
-        boolean showCents = true;
-        char sepChar = ',';
-
-        if (config != null && config.getFormat() != null) {
-            CurrencyConfig.FormatConfig fmt = config.getFormat();
-            showCents = (fmt.getCentsEnabled() != null) ? fmt.getCentsEnabled() : true;
-
-            String sep = fmt.getDecimalSeparator();
-            if (sep == null || sep.isEmpty()) {
-                if (fmt.getSeparator() != null
-                        && fmt.getSeparator().getDecimal() != null
-                        && !fmt.getSeparator().getDecimal().isEmpty()) {
-                    sep = fmt.getSeparator().getDecimal();
-                } else {
-                    sep = ",";
-                }
-            }
-            sepChar = sep.charAt(0);
-        }
+    public CurrencyFormatter getFormatter(String currencyId) {
+        CurrencyRegistry.Currency currency = configManager.getRegistry().get(currencyId);
+        return currency != null ? currency.getFormatter() : CurrencyFormatter.DEFAULT;
+    }
 
-        DecimalFormat df = getOrCreateFormatter(currencyId, showCents, sepChar);
-        return df.format(amount);
+    public String formatAmount(String currencyId, double amount) {
+        return getFormatter(currencyId).format(amount);
     }
 
     public Map<String, Double> getAllPlayerBalances(UUID playerUuid) {
@@ -539,7 +797,7 @@ public class MultiCurrencyEconomyService {
     }
 
     public CompletableFuture<Map<String, Double>> getAllPlayerBalancesAsync(UUID playerUuid) {
-        return CompletableFuture.supplyAsync(() -> {
+        return submitInteractive(() -> {
             Map<String, Double> balances = databaseManager.getAllPlayerBalances(playerUuid);
             if (balances != null) {
                 for (Map.Entry<String, Double> e : balances.entrySet()) {
@@ -547,7 +805,15 @@ public class MultiCurrencyEconomyService {
                 }
             }
             return balances;
-        }, dbExecutor);
+        });
+    }
+
+    public Map<String, Boolean> getAllPaymentEnabled(UUID playerUuid) {
+        return getAllPaymentEnabledAsync(playerUuid).join();
+    }
+
+    public CompletableFuture<Map<String, Boolean>> getAllPaymentEnabledAsync(UUID playerUuid) {
+        return submitInteractive(() -> databaseManager.getAllPaymentEnabled(playerUuid));
     }
 
     public Set<String> getAvailableCurrencies() {
@@ -559,6 +825,11 @@ public class MultiCurrencyEconomyService {
     }
 
     public void shutdown() {
+        changeFeed.stop();
+        statistics.stop();
+        maintenance.stop();
+        backups.stop();
+        EconomyMetrics.stopExporters();
         scheduler.shutdown();
         try {
             if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -593,44 +864,89 @@ public class MultiCurrencyEconomyService {
                                                            UUID receiverUuid,
                                                            String currencyId,
                                                            double amount) {
-        return CompletableFuture.supplyAsync(() -> {
-            if (amount <= 0) return new PaymentResult(false, "Invalid amount");
-
-            CurrencyConfig cfg = configManager.getCurrency(currencyId);
-            if (cfg == null) return new PaymentResult(false, "Non-existent currency");
+        if (dbExecutor.isSaturated()) {
+            return CompletableFuture.completedFuture(PaymentResult.busy());
+        }
+        try {
+            return submitPayment(senderUuid, receiverUuid, currencyId, amount);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(PaymentResult.busy());
+        }
+    }
 
-            double fee = 0.0;
-            if (cfg.getPayment() != null) {
-                fee = Math.max(0.0, cfg.getPayment().getFee());
-            }
+    private CompletableFuture<PaymentResult> submitPayment(UUID senderUuid,
+                                                          UUID receiverUuid,
+                                                          String currencyId,
+                                                          double amount) {
+        return CompletableFuture.supplyAsync(() -> pay(senderUuid, receiverUuid, currencyId, amount, null, null),
+                dbExecutor);
+    }
+
+    private PaymentResult pay(UUID senderUuid, UUID receiverUuid, String currencyId, double amount,
+                              String idempotencyKey, String fingerprint) {
+        if (amount <= 0) return new PaymentResult(false, "Invalid amount");
+
+        CurrencyRegistry.Currency currency = configManager.getRegistry().get(currencyId);
+        if (currency == null) return new PaymentResult(false, "Non-existent currency");
+
+        double fee = currency.getFee();
+
+        PaymentEvent event = new PaymentEvent();
+        event.begin();
+        long start = System.nanoTime();
+        MultiCurrencyDatabaseManager.PayTxResult res =
+                databaseManager.payAtomic(senderUuid, receiverUuid, currencyId, amount, fee,
+                        idempotencyKey, fingerprint);
+        EconomyMetrics.PAY.recordSince(start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.currency = currencyId;
+            event.sender = senderUuid.toString();
+            event.receiver = receiverUuid.toString();
+            event.amount = amount;
+            event.fee = fee;
+            event.status = res.status.name();
+            event.commit();
+        }
 
-            MultiCurrencyDatabaseManager.PayTxResult res =
-                    databaseManager.payAtomic(senderUuid, receiverUuid, currencyId, amount, fee);
-
-            switch (res.status) {
-                case RECEIVER_BLOCKED:
-                    return new PaymentResult(false, "Player does not accept payments");
-                case INSUFFICIENT_FUNDS:
-                    return new PaymentResult(false, "Insufficient balance");
-                case SENDER_NOT_FOUND:
-                case RECEIVER_NOT_FOUND:
-                    return new PaymentResult(false, "Non-existent account");
-                case ERROR:
-                    return new PaymentResult(false, "Error processing payment");
-                case OK:
-                default:
-                    double senderNew = databaseManager.getBalance(senderUuid, currencyId);
-                    putCachedBalance(senderUuid, currencyId, senderNew);
-
-                    double receiverNew = databaseManager.getBalance(receiverUuid, currencyId);
-                    putCachedBalance(receiverUuid, currencyId, receiverNew);
-
-                    return new PaymentResult(true, "OK", fee);
-            }
-        }, dbExecutor);
+        switch (res.status) {
+            case RECEIVER_BLOCKED:
+                return new PaymentResult(false, "Player does not accept payments");
+            case INSUFFICIENT_FUNDS:
+                return new PaymentResult(false, "Insufficient balance");
+            case SENDER_NOT_FOUND:
+            case RECEIVER_NOT_FOUND:
+                return new PaymentResult(false, "Non-existent account");
+            case DUPLICATE_KEY:
+                return new PaymentResult(false, PaymentResult.DUPLICATE);
+            case ERROR:
+                return new PaymentResult(false, PaymentResult.ERROR);
+            case OK:
+            default:
+                statistics.onBalanceChanged(currencyId, senderUuid, res.sender.balance + amount + Math.max(0.0, fee), res.sender.balance);
+                statistics.onBalanceChanged(currencyId, receiverUuid, res.receiver.balance - amount, res.receiver.balance);
+                putCachedBalance(senderUuid, currencyId, res.sender);
+                putCachedBalance(receiverUuid, currencyId, res.receiver);
+
+                tycoonTracker.onBalanceChanged(currencyId, senderUuid, res.sender.balance);
+                tycoonTracker.onBalanceChanged(currencyId, receiverUuid, res.receiver.balance);
+
+                notifyMutation(senderUuid, currencyId);
+                notifyMutation(receiverUuid, currencyId);
+
+                return new PaymentResult(true, "OK", fee);
+        }
     }
 
     public static class PaymentResult {
+        /** Message of a payment rejected because the database queue is saturated. */
+        public static final String BUSY = "Economy busy";
+        /** Message of a payment whose outcome is unknown because the database failed. */
+        public static final String ERROR = "Error processing payment";
+        /** Message of a payment whose idempotency key was already used. */
+        public static final String DUPLICATE = "Duplicate idempotency key";
+        private static final LongAdder BUSY_COUNT = EconomyMetrics.counter("pay.busy");
+
         private final boolean success;
         private final String message;
         private final double fee;
@@ -645,6 +961,11 @@ public class MultiCurrencyEconomyService {
             this.fee = fee;
         }
 
+        static PaymentResult busy() {
+            BUSY_COUNT.increment();
+            return new PaymentResult(false, BUSY);
+        }
+
         public boolean isSuccess() { return success; }
         public String getMessage() { return message; }
         public double getFee() { return fee; }
@@ -0,0 +1,12 @@
+package org.night.nighteconomy.service;
+
+import java.util.UUID;
+
+/**
+ * Notified by {@link MultiCurrencyEconomyService} after an account was changed.
+ * A null currency means every currency of the player; a null player means every account.
+ */
+@FunctionalInterface
+public interface MutationListener {
+    void onAccountMutated(UUID playerUuid, String currencyId);
+}
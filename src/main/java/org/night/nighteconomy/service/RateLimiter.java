@@ -0,0 +1,109 @@
+package org.night.nighteconomy.service;
+
+import org.night.nighteconomy.metrics.EconomyMetrics;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets per player and scope (a currency and command pair) in a fixed open-addressed table
+ * of longs. A bucket is one packed long, {@code lastRefillMillis << 24 | milliTokens}, refilled and
+ * spent with a single compare-and-set, so a check never locks or allocates. When the table gets
+ * three-quarters full it is wiped, which hands every player a full bucket once; a full probe run
+ * lets the call through rather than blocking players the table has no room for.
+ */
+final class RateLimiter {
+    private static final LongAdder REJECTED = EconomyMetrics.counter("ratelimit.rejected");
+    private static final LongAdder OVERFLOW = EconomyMetrics.counter("ratelimit.overflow");
+
+    private static final int MAX_PROBES = 16;
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long TOKEN = 1000L;
+    static final int MAX_BURST = (int) (TOKEN_MASK / TOKEN);
+
+    private final AtomicLongArray keys;
+    private final AtomicLongArray states;
+    private final int mask;
+    private final int wipeAt;
+    private final AtomicInteger used = new AtomicInteger();
+    private final AtomicBoolean wiping = new AtomicBoolean();
+    private final long origin = System.nanoTime();
+
+    RateLimiter(int capacity) {
+        int size = Integer.highestOneBit(Math.max(64, Math.min(capacity, 1 << 24)) - 1) << 1;
+        this.keys = new AtomicLongArray(size);
+        this.states = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.wipeAt = size / 4 * 3;
+    }
+
+    /**
+     * Takes one token from the bucket of {@code player} in {@code scope}, which refills at
+     * {@code ratePerSecond} up to {@code burst}. A rate or burst of 0 disables the limit.
+     */
+    boolean tryAcquire(UUID player, int scope, double ratePerSecond, int burst) {
+        if (ratePerSecond <= 0 || burst <= 0) return true;
+        int slot = slot(key(player, scope));
+        if (slot < 0) return true;
+
+        long capacity = Math.min(burst, MAX_BURST) * TOKEN;
+        long now = (System.nanoTime() - origin) / 1_000_000L + 1;
+        while (true) {
+            long s = states.get(slot);
+            long tokens = capacity;
+            if (s != 0) {
+                long elapsed = Math.max(0L, now - (s >>> TOKEN_BITS));
+                tokens = Math.min(capacity, (s & TOKEN_MASK) + (long) Math.min(capacity, elapsed * ratePerSecond));
+            }
+            if (tokens < TOKEN) {
+                REJECTED.increment();
+                return false;
+            }
+            if (states.compareAndSet(slot, s, now << TOKEN_BITS | (tokens - TOKEN))) return true;
+        }
+    }
+
+    private static long key(UUID player, int scope) {
+        long k = player.getMostSignificantBits() * 31 + player.getLeastSignificantBits();
+        k = (k ^ (k >>> 29)) * 0xBF58476D1CE4E5B9L + scope;
+        return k != 0 ? k : 1;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        int i = (int) (h ^ (h >>> 32)) & mask;
+        for (int p = 0; p < MAX_PROBES; p++, i = (i + 1) & mask) {
+            long k = keys.get(i);
+            if (k == key) return i;
+            if (k != 0) continue;
+            if (used.get() >= wipeAt) {
+                wipe();
+                return -1;
+            }
+            if (keys.compareAndSet(i, 0, key)) {
+                used.incrementAndGet();
+                return i;
+            }
+            if (keys.get(i) == key) return i;
+        }
+        OVERFLOW.increment();
+        return -1;
+    }
+
+    private void wipe() {
+        if (!wiping.compareAndSet(false, true)) return;
+        try {
+            for (int i = 0; i <= mask; i++) {
+                keys.set(i, 0);
+                states.set(i, 0);
+            }
+            used.set(0);
+        } finally {
+            wiping.set(false);
+        }
+    }
+}
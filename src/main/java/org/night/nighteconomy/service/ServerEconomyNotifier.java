@@ -0,0 +1,29 @@
+package org.night.nighteconomy.service;
+
+import net.minecraft.network.chat.Component;
+import net.neoforged.neoforge.server.ServerLifecycleHooks;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/** {@link EconomyNotifier} backed by the current NeoForge server. */
+public final class ServerEconomyNotifier implements EconomyNotifier {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    @Override
+    public void broadcast(String coloredMessage) {
+        var server = ServerLifecycleHooks.getCurrentServer();
+        if (server != null) {
+            server.execute(() -> {
+                server.getPlayerList().broadcastSystemMessage(Component.literal(coloredMessage), false);
+            });
+        } else {
+            LOGGER.warn("Servidor indisponível para broadcast: {}", coloredMessage);
+        }
+    }
+
+    @Override
+    public double tickTimeMs() {
+        var server = ServerLifecycleHooks.getCurrentServer();
+        return server != null ? server.getCurrentSmoothedTickTime() : 0.0;
+    }
+}
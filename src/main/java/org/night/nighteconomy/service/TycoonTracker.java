@@ -0,0 +1,146 @@
+package org.night.nighteconomy.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.night.nighteconomy.database.LedgerException;
+import org.night.nighteconomy.database.LedgerStore;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.RankingEntry;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.TycoonStateRecord;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Keeps the current tycoon (richest account) of each currency in memory and compares every
+ * balance change against it, so overtakes are announced immediately. Must be driven from the
+ * database executor; {@code currency_state} is only written when the tycoon actually changes.
+ * A database error drops the currency's state, which is reloaded on the next change.
+ */
+final class TycoonTracker {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final LedgerStore databaseManager;
+    private final BiConsumer<String, String> onChange;
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+
+    TycoonTracker(LedgerStore databaseManager, BiConsumer<String, String> onChange) {
+        this.databaseManager = databaseManager;
+        this.onChange = onChange;
+    }
+
+    void onBalanceChanged(String currencyId, UUID playerUuid, double newBalance) {
+        try {
+            track(currencyId, playerUuid, newBalance);
+        } catch (LedgerException e) {
+            LOGGER.error("Erro ao atualizar o tycoon de {}: ", currencyId, e);
+            states.remove(currencyId);
+        }
+    }
+
+    private void track(String currencyId, UUID playerUuid, double newBalance) {
+        State state = state(currencyId);
+        String uuid = playerUuid.toString();
+
+        if (state.uuid == null) {
+            refresh(currencyId, state);
+            return;
+        }
+
+        if (uuid.equals(state.uuid)) {
+            if (newBalance >= state.balance) {
+                state.balance = newBalance;
+            } else {
+                refresh(currencyId, state);
+            }
+            return;
+        }
+
+        if (newBalance > state.balance || (newBalance == state.balance && uuid.compareTo(state.uuid) < 0)) {
+            refresh(currencyId, state);
+        }
+    }
+
+    /** Cross-checks against a freshly rebuilt ranking without touching the database. */
+    void onRankingRebuilt(String currencyId, RankingEntry top) {
+        try {
+            State state = state(currencyId);
+            if (top == null) return;
+            if (top.uuid.equals(state.uuid) && top.balance == state.balance) return;
+            apply(currencyId, state, top);
+        } catch (LedgerException e) {
+            LOGGER.error("Erro ao atualizar o tycoon de {}: ", currencyId, e);
+            states.remove(currencyId);
+        }
+    }
+
+    void invalidate(String currencyId) {
+        if (currencyId == null) states.clear();
+        else states.remove(currencyId);
+    }
+
+    String getTycoonUuid(String currencyId) {
+        State state = states.get(currencyId);
+        return state != null ? state.uuid : null;
+    }
+
+    private State state(String currencyId) {
+        State state = states.get(currencyId);
+        if (state != null) return state;
+
+        state = load(currencyId);
+        State raced = states.putIfAbsent(currencyId, state);
+        if (raced != null) return raced;
+
+        if (state.uuid != null) persistIfChanged(currencyId, state);
+        return state;
+    }
+
+    private State load(String currencyId) {
+        State state = new State();
+        TycoonStateRecord persisted = databaseManager.getLastTycoonInfo(currencyId);
+        if (persisted != null) {
+            state.persistedUuid = persisted.uuid;
+        }
+        RankingEntry top = databaseManager.getTopAccount(currencyId);
+        if (top != null) {
+            state.uuid = top.uuid;
+            state.username = top.username;
+            state.balance = top.balance;
+        }
+        return state;
+    }
+
+    private void refresh(String currencyId, State state) {
+        RankingEntry top = databaseManager.getTopAccount(currencyId);
+        if (top != null) apply(currencyId, state, top);
+    }
+
+    private void apply(String currencyId, State state, RankingEntry top) {
+        state.uuid = top.uuid;
+        state.username = top.username;
+        state.balance = top.balance;
+        persistIfChanged(currencyId, state);
+    }
+
+    private void persistIfChanged(String currencyId, State state) {
+        if (state.uuid.equals(state.persistedUuid)) return;
+
+        String previous = state.persistedUuid;
+        String name = state.username != null ? state.username : "";
+        if (databaseManager.upsertLastTycoon(currencyId, state.uuid, name)) {
+            state.persistedUuid = state.uuid;
+        }
+        if (previous != null) {
+            onChange.accept(currencyId, !name.isEmpty() ? name : state.uuid);
+        }
+    }
+
+    private static final class State {
+        volatile String uuid;
+        volatile String username;
+        volatile double balance;
+        volatile String persistedUuid;
+    }
+}
@@ -0,0 +1,97 @@
+package org.night.nighteconomy.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Balances of one currency as a log-scale histogram plus the total supply. Each bucket spans a
+ * factor of {@link #GAMMA}, so a percentile is read within about 2% of the true balance, and a
+ * balance can be removed as cheaply as it is added: a write moves one count from the bucket of the
+ * old balance to the bucket of the new one. Negative balances get mirrored buckets, and balances
+ * closer to zero than {@link #MIN_MAGNITUDE} share a middle bucket read as 0.
+ */
+public final class BalanceDistribution {
+    static final double GAMMA = 1.04;
+    static final double MIN_MAGNITUDE = 0.01;
+    /** Buckets on each side of zero; the last one absorbs everything above ~1e18. */
+    static final int SIDE = 1200;
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    private final AtomicLongArray buckets = new AtomicLongArray(2 * SIDE + 1);
+    private final DoubleAdder supply = new DoubleAdder();
+
+    public void add(double balance) {
+        buckets.incrementAndGet(bucketOf(balance));
+        supply.add(balance);
+    }
+
+    public void remove(double balance) {
+        buckets.decrementAndGet(bucketOf(balance));
+        supply.add(-balance);
+    }
+
+    public void change(double oldBalance, double newBalance) {
+        int from = bucketOf(oldBalance), to = bucketOf(newBalance);
+        if (from != to) {
+            buckets.decrementAndGet(from);
+            buckets.incrementAndGet(to);
+        }
+        supply.add(newBalance - oldBalance);
+    }
+
+    static int bucketOf(double balance) {
+        double magnitude = Math.abs(balance);
+        if (!(magnitude >= MIN_MAGNITUDE)) return SIDE;
+        int k = (int) Math.min(SIDE - 1, Math.floor(Math.log(magnitude / MIN_MAGNITUDE) / LOG_GAMMA));
+        return balance > 0 ? SIDE + 1 + k : SIDE - 1 - k;
+    }
+
+    /** Geometric middle of bucket {@code i}. */
+    static double valueOf(int i) {
+        if (i == SIDE) return 0.0;
+        int k = Math.abs(i - SIDE) - 1;
+        double magnitude = MIN_MAGNITUDE * Math.pow(GAMMA, k + 0.5);
+        return i > SIDE ? magnitude : -magnitude;
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = Math.max(0L, buckets.get(i));
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, supply.sum());
+    }
+
+    public static final class Snapshot {
+        private final long[] buckets;
+        private final long accounts;
+        private final double supply;
+
+        Snapshot(long[] buckets, long accounts, double supply) {
+            this.buckets = buckets;
+            this.accounts = accounts;
+            this.supply = supply;
+        }
+
+        public long getAccounts() { return accounts; }
+        public double getSupply() { return supply; }
+
+        public double getMean() {
+            return accounts > 0 ? supply / accounts : 0.0;
+        }
+
+        /** Estimated balance at quantile {@code q} (0..1). */
+        public double percentile(double q) {
+            if (accounts == 0) return 0.0;
+            double rank = Math.max(1.0, Math.ceil(q * accounts));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) return valueOf(i);
+            }
+            return valueOf(buckets.length - 1);
+        }
+    }
+}
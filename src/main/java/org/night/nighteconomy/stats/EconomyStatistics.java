@@ -0,0 +1,171 @@
+package org.night.nighteconomy.stats;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.night.nighteconomy.config.SettingsManager;
+import org.night.nighteconomy.database.LedgerException;
+import org.night.nighteconomy.database.LedgerStore;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Per-currency account count, total supply and balance distribution, kept current by the write
+ * path instead of scanning the accounts on every read. Each currency is seeded by a scan in uuid
+ * order when it first shows up in the registry, at startup or after a reload, with
+ * {@code stats.scan-batch-size} accounts per maintenance task so it never holds the database thread
+ * for long; a chunk refused by a full lane is retried a few seconds later. On a shared backend the
+ * scan is repeated every {@code stats.resync-minutes} to pick up writes made by other servers.
+ * Mutations are reported from the database thread, between the chunks of a running scan: one for an
+ * account the scan already passed is applied to the new distribution too, a later one is read by the
+ * scan itself.
+ */
+public class EconomyStatistics {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final long INITIAL_DELAY_SECONDS = 10;
+    private static final long WATCH_SECONDS = 30;
+    private static final long RETRY_DELAY_SECONDS = 5;
+
+    private final LedgerStore databaseManager;
+    private final SettingsManager settings;
+    private final Supplier<Collection<String>> currencies;
+    private final Executor maintenanceExecutor;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, BalanceDistribution> distributions = new ConcurrentHashMap<>();
+    private final Map<String, Scan> scans = new ConcurrentHashMap<>();
+
+    private volatile ScheduledFuture<?> task;
+    private volatile ScheduledFuture<?> watch;
+
+    public EconomyStatistics(LedgerStore databaseManager, SettingsManager settings,
+                             Supplier<Collection<String>> currencies, Executor maintenanceExecutor,
+                             ScheduledExecutorService scheduler) {
+        this.databaseManager = databaseManager;
+        this.settings = settings;
+        this.currencies = currencies;
+        this.maintenanceExecutor = maintenanceExecutor;
+        this.scheduler = scheduler;
+    }
+
+    /** A rescan in progress: the distribution being rebuilt and the last uuid read into it. */
+    private static final class Scan {
+        final BalanceDistribution fresh = new BalanceDistribution();
+        final long start = System.nanoTime();
+        String cursor;
+
+        boolean passed(UUID playerUuid) {
+            return cursor != null && playerUuid.toString().compareTo(cursor) <= 0;
+        }
+    }
+
+    public void start() {
+        long minutes = settings.getLong("stats.resync-minutes");
+        if (minutes > 0 && databaseManager.isShared()) {
+            task = scheduler.scheduleWithFixedDelay(this::resync, INITIAL_DELAY_SECONDS,
+                    TimeUnit.MINUTES.toSeconds(minutes), TimeUnit.SECONDS);
+        }
+        watch = scheduler.scheduleWithFixedDelay(this::scanMissing, INITIAL_DELAY_SECONDS, WATCH_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        ScheduledFuture<?> t = task;
+        if (t != null) t.cancel(false);
+        ScheduledFuture<?> w = watch;
+        if (w != null) w.cancel(false);
+    }
+
+    /** Rebuilds every currency from a full scan, each in chunks on the maintenance lane. */
+    public void resync() {
+        Collection<String> ids = currencies.get();
+        distributions.keySet().retainAll(ids);
+        for (String currencyId : ids) {
+            submitChunk(currencyId, null);
+        }
+    }
+
+    /** Starts the first scan of each currency that has no statistics yet, such as one added by a reload. */
+    private void scanMissing() {
+        try {
+            Collection<String> ids = currencies.get();
+            distributions.keySet().retainAll(ids);
+            for (String currencyId : ids) {
+                if (!distributions.containsKey(currencyId) && !scans.containsKey(currencyId)) {
+                    submitChunk(currencyId, null);
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.error("Erro ao agendar as estatísticas: ", e);
+        }
+    }
+
+    private void submitChunk(String currencyId, Scan scan) {
+        try {
+            maintenanceExecutor.execute(() -> scanChunk(currencyId, scan));
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Statistics scan of {} postponed: maintenance lane full", currencyId);
+            try {
+                scheduler.schedule(() -> submitChunk(currencyId, scan), RETRY_DELAY_SECONDS, TimeUnit.SECONDS);
+            } catch (RejectedExecutionException stopped) {
+                if (scan != null) scans.remove(currencyId, scan);
+            }
+        }
+    }
+
+    private void scanChunk(String currencyId, Scan scan) {
+        if (scan == null) {
+            if (scans.containsKey(currencyId)) return;
+            scan = new Scan();
+            scans.put(currencyId, scan);
+        }
+        Scan s = scan;
+        String more;
+        try {
+            more = databaseManager.scanBalances(currencyId, s.cursor,
+                    Math.max(1, settings.getInt("stats.scan-batch-size")), (uuid, balance) -> {
+                        s.fresh.add(balance);
+                        s.cursor = uuid;
+                    });
+        } catch (LedgerException e) {
+            scans.remove(currencyId, s);
+            LOGGER.error("Erro ao recalcular as estatísticas de {}: ", currencyId, e);
+            return;
+        }
+        if (more != null) {
+            submitChunk(currencyId, s);
+            return;
+        }
+        scans.remove(currencyId, s);
+        distributions.put(currencyId, s.fresh);
+        LOGGER.debug("Statistics of {} rebuilt: {} accounts in {} ms", currencyId,
+                s.fresh.snapshot().getAccounts(), (System.nanoTime() - s.start) / 1_000_000L);
+    }
+
+    public void onAccountCreated(String currencyId, UUID playerUuid, double balance) {
+        BalanceDistribution d = distributions.get(currencyId);
+        if (d != null) d.add(balance);
+        Scan scan = scans.get(currencyId);
+        if (scan != null && scan.passed(playerUuid)) scan.fresh.add(balance);
+    }
+
+    public void onBalanceChanged(String currencyId, UUID playerUuid, double oldBalance, double newBalance) {
+        BalanceDistribution d = distributions.get(currencyId);
+        if (d != null) d.change(oldBalance, newBalance);
+        Scan scan = scans.get(currencyId);
+        if (scan != null && scan.passed(playerUuid)) scan.fresh.change(oldBalance, newBalance);
+    }
+
+    /** Current statistics of the currency, or null until its first scan finished. */
+    public BalanceDistribution.Snapshot get(String currencyId) {
+        BalanceDistribution d = distributions.get(currencyId);
+        return d != null ? d.snapshot() : null;
+    }
+}
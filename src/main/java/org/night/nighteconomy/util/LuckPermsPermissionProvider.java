@@ -0,0 +1,48 @@
+package org.night.nighteconomy.util;
+
+import net.luckperms.api.LuckPerms;
+import net.luckperms.api.LuckPermsProvider;
+import net.luckperms.api.event.EventSubscription;
+import net.luckperms.api.event.user.UserDataRecalculateEvent;
+import net.luckperms.api.model.user.User;
+import net.minecraft.server.level.ServerPlayer;
+
+/**
+ * Direct LuckPerms binding. Only loaded after the LuckPerms API class was found on the classpath.
+ */
+final class LuckPermsPermissionProvider implements PermissionUtil.Provider {
+    private final LuckPerms api;
+    private final EventSubscription<UserDataRecalculateEvent> subscription;
+
+    private LuckPermsPermissionProvider(LuckPerms api) {
+        this.api = api;
+        this.subscription = api.getEventBus().subscribe(UserDataRecalculateEvent.class,
+                e -> PermissionUtil.invalidate(e.getUser().getUniqueId()));
+    }
+
+    /** Returns null while LuckPerms has not finished enabling yet. */
+    static LuckPermsPermissionProvider tryCreate() {
+        try {
+            return new LuckPermsPermissionProvider(LuckPermsProvider.get());
+        } catch (IllegalStateException notLoaded) {
+            return null;
+        }
+    }
+
+    @Override
+    public Boolean check(ServerPlayer player, String node) {
+        User user = api.getUserManager().getUser(player.getUUID());
+        if (user == null) return false;
+        return user.getCachedData().getPermissionData().checkPermission(node).asBoolean();
+    }
+
+    @Override
+    public String name() {
+        return "LuckPerms";
+    }
+
+    @Override
+    public void close() {
+        subscription.close();
+    }
+}
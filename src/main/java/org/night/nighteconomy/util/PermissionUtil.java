@@ -5,21 +5,41 @@ import net.minecraft.server.level.ServerPlayer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class PermissionUtil {
     private static final Logger LOGGER = LogManager.getLogger();
 
     private static final String ADMIN_NODE = "nighteconomy.admin";
     private static final int ADMIN_OP_LEVEL = 4;
+    private static final long DECISION_TTL_MS = 30_000L;
+
+    private static final byte UNDEFINED = 0;
+    private static final byte ALLOW = 1;
+    private static final byte DENY = 2;
+
+    private static final ConcurrentHashMap<UUID, ConcurrentHashMap<String, Decision>> DECISIONS = new ConcurrentHashMap<>();
+    private static volatile Provider[] providers;
 
     private static volatile boolean warnedNoProvider = false;
 
     private PermissionUtil() {}
 
+    /** A permission backend; {@code check} returns null when the backend has no opinion. */
+    interface Provider {
+        Boolean check(ServerPlayer player, String node) throws Throwable;
+        String name();
+        default void close() {}
+    }
+
     public static boolean has(CommandSourceStack source, String node) {
         if (node == null || node.isEmpty()) return true;
 
@@ -31,20 +51,8 @@ public final class PermissionUtil {
             return true;
         }
 
-        try {
-            Boolean lp = checkLuckPerms(player, node);
-            if (lp != null) return lp;
-        } catch (Throwable ignored) {}
-
-        try {
-            Boolean nf = checkNeoForgePermissionAPI(player, node);
-            if (nf != null) return nf;
-        } catch (Throwable ignored) {}
-
-        try {
-            Boolean fg = checkForgePermissionAPI(player, node);
-            if (fg != null) return fg;
-        } catch (Throwable ignored) {}
+        byte decision = decide(player, node);
+        if (decision != UNDEFINED) return decision == ALLOW;
 
         logNoProviderOnce(node);
         return source.hasPermission(2);
@@ -63,94 +71,128 @@ public final class PermissionUtil {
             return true;
         }
         if (source.getEntity() instanceof ServerPlayer player) {
-            Boolean admin = directCheckProviders(player, ADMIN_NODE);
-            return Boolean.TRUE.equals(admin);
+            return decide(player, ADMIN_NODE) == ALLOW;
         }
         return false;
     }
 
-    private static Boolean directCheckProviders(ServerPlayer player, String node) {
-        try {
-            Boolean lp = checkLuckPerms(player, node);
-            if (lp != null) return lp;
-        } catch (Throwable ignored) {}
-
-        try {
-            Boolean nf = checkNeoForgePermissionAPI(player, node);
-            if (nf != null) return nf;
-        } catch (Throwable ignored) {}
+    /** Drops the cached decisions of a player (logout, LuckPerms recalculation). */
+    public static void invalidate(UUID playerUuid) {
+        if (playerUuid != null) DECISIONS.remove(playerUuid);
+    }
 
-        try {
-            Boolean fg = checkForgePermissionAPI(player, node);
-            if (fg != null) return fg;
-        } catch (Throwable ignored) {}
+    public static void invalidateAll() {
+        DECISIONS.clear();
+    }
 
-        return null;
+    /** Unbinds the detected providers; they are detected again on the next check. */
+    public static synchronized void reset() {
+        Provider[] current = providers;
+        providers = null;
+        if (current != null) {
+            for (Provider p : current) {
+                try {
+                    p.close();
+                } catch (Throwable ignored) {}
+            }
+        }
+        DECISIONS.clear();
     }
 
-    private static Boolean checkLuckPerms(ServerPlayer player, String node) {
-        try {
-            Class<?> providerCls = Class.forName("net.luckperms.api.LuckPermsProvider");
-            Method getMethod = providerCls.getMethod("get");
-            Object api = getMethod.invoke(null);
-            if (api == null) return false;
+    private static byte decide(ServerPlayer player, String node) {
+        UUID uuid = player.getUUID();
+        long now = System.currentTimeMillis();
 
+        ConcurrentHashMap<String, Decision> perPlayer = DECISIONS.get(uuid);
+        if (perPlayer != null) {
+            Decision d = perPlayer.get(node);
+            if (d != null && d.expiresAt > now) return d.value;
+        }
+
+        Provider[] bound = providers;
+        boolean cacheable = true;
+        if (bound == null) {
+            bound = detectProviders();
+            cacheable = providers != null;
+        }
+
+        byte value = UNDEFINED;
+        for (Provider p : bound) {
             try {
-                Method getAdapter = api.getClass().getMethod("getPlayerAdapter", Class.class);
-                Object adapter = getAdapter.invoke(api, ServerPlayer.class);
-                Method hasPerm = adapter.getClass().getMethod("hasPermission", Object.class, String.class);
-                Object res = hasPerm.invoke(adapter, player, node);
-                if (res instanceof Boolean b) return b;
-            } catch (NoSuchMethodException ignore) {
-            }
+                Boolean b = p.check(player, node);
+                if (b != null) {
+                    value = b ? ALLOW : DENY;
+                    break;
+                }
+            } catch (Throwable ignored) {}
+        }
 
-            UUID uuid = player.getUUID();
-            Method getUserManager = api.getClass().getMethod("getUserManager");
-            Object userManager = getUserManager.invoke(api);
-            Method getUser = userManager.getClass().getMethod("getUser", UUID.class);
-            Object user = getUser.invoke(userManager, uuid);
-            if (user == null) {
-                return false;
-            }
-            Method getCachedData = user.getClass().getMethod("getCachedData");
-            Object cachedData = getCachedData.invoke(user);
-            Method getPermissionData = cachedData.getClass().getMethod("getPermissionData");
-            Object permissionData = getPermissionData.invoke(cachedData);
-            Method checkPermission = permissionData.getClass().getMethod("checkPermission", String.class);
-            Object result = checkPermission.invoke(permissionData, node);
-            Method asBoolean = result.getClass().getMethod("asBoolean");
-            Object bool = asBoolean.invoke(result);
-            if (bool instanceof Boolean b) return b;
+        if (cacheable) {
+            DECISIONS.computeIfAbsent(uuid, k -> new ConcurrentHashMap<>())
+                    .put(node, new Decision(value, now + DECISION_TTL_MS));
+        }
+        return value;
+    }
 
-            return false;
-        } catch (ClassNotFoundException e) {
-            return null;
-        } catch (Throwable t) {
-            return null;
+    /**
+     * Binds the available backends once. While LuckPerms is installed but not enabled yet the
+     * result is returned without being kept, so detection is retried on the next check.
+     */
+    private static synchronized Provider[] detectProviders() {
+        if (providers != null) return providers;
+
+        List<Provider> found = new ArrayList<>();
+        boolean pending = false;
+
+        if (classPresent("net.luckperms.api.LuckPermsProvider")) {
+            Provider lp = LuckPermsPermissionProvider.tryCreate();
+            if (lp != null) found.add(lp);
+            else pending = true;
         }
+
+        Provider nf = staticHasPermission("NeoForge PermissionAPI", "net.neoforged.neoforge.server.permission.PermissionAPI");
+        if (nf != null) found.add(nf);
+
+        Provider fg = staticHasPermission("Forge PermissionAPI", "net.minecraftforge.server.permission.PermissionAPI");
+        if (fg != null) found.add(fg);
+
+        Provider[] result = found.toArray(new Provider[0]);
+        if (!pending) {
+            providers = result;
+            List<String> names = new ArrayList<>();
+            for (Provider p : result) names.add(p.name());
+            LOGGER.info("Provedores de permissão detectados: {}", names.isEmpty() ? "nenhum" : names);
+        }
+        return result;
     }
 
-    private static Boolean checkNeoForgePermissionAPI(ServerPlayer player, String node) {
+    private static boolean classPresent(String name) {
         try {
-            Class<?> apiCls = Class.forName("net.neoforged.neoforge.server.permission.PermissionAPI");
-            Method hasPerm = apiCls.getMethod("hasPermission", ServerPlayer.class, String.class);
-            Object res = hasPerm.invoke(null, player, node);
-            return (res instanceof Boolean) ? (Boolean) res : null;
-        } catch (ClassNotFoundException e) {
-            return null;
+            Class.forName(name);
+            return true;
         } catch (Throwable t) {
-            return null;
+            return false;
         }
     }
 
-    private static Boolean checkForgePermissionAPI(ServerPlayer player, String node) {
+    private static Provider staticHasPermission(String name, String className) {
         try {
-            Class<?> apiCls = Class.forName("net.minecraftforge.server.permission.PermissionAPI");
+            Class<?> apiCls = Class.forName(className);
             Method hasPerm = apiCls.getMethod("hasPermission", ServerPlayer.class, String.class);
-            Object res = hasPerm.invoke(null, player, node);
-            return (res instanceof Boolean) ? (Boolean) res : null;
-        } catch (ClassNotFoundException e) {
-            return null;
+            MethodHandle handle = MethodHandles.publicLookup().unreflect(hasPerm)
+                    .asType(MethodType.methodType(Object.class, ServerPlayer.class, String.class));
+            return new Provider() {
+                @Override
+                public Boolean check(ServerPlayer player, String node) throws Throwable {
+                    Object res = handle.invokeExact(player, node);
+                    return (res instanceof Boolean b) ? b : null;
+                }
+
+                @Override
+                public String name() {
+                    return name;
+                }
+            };
         } catch (Throwable t) {
             return null;
         }
@@ -163,4 +205,14 @@ public final class PermissionUtil {
                     "Usando fallback de OP para nós configurados. Ex.: '{}'", Objects.toString(node, ""));
         }
     }
-}
\ No newline at end of file
+
+    private static final class Decision {
+        final byte value;
+        final long expiresAt;
+
+        Decision(byte value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
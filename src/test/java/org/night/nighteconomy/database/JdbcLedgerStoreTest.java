@@ -0,0 +1,258 @@
+package org.night.nighteconomy.database;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.AccountChange;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.AccountState;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.PayTxResult;
+import org.night.nighteconomy.database.MultiCurrencyDatabaseManager.RankingEntry;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link JdbcLedgerStore} on in-memory H2 databases running in the compatibility mode of each
+ * {@link SqlDialect}, so the dialect-specific SQL is executed rather than only assembled.
+ */
+class JdbcLedgerStoreTest {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    private static final String CURRENCY = "money";
+
+    private final UUID alice = UUID.fromString("00000000-0000-0000-0000-00000000000a");
+    private final UUID bob = UUID.fromString("00000000-0000-0000-0000-00000000000b");
+
+    private static JdbcDataSource dataSource(SqlDialect dialect) {
+        String mode = switch (dialect) {
+            case MYSQL -> "MySQL";
+            case MARIADB -> "MariaDB";
+            case POSTGRESQL -> "PostgreSQL";
+        };
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:ledger" + DATABASES.incrementAndGet() + ";MODE=" + mode
+                + ";DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        return ds;
+    }
+
+    private static JdbcLedgerStore open(SqlDialect dialect) throws SQLException {
+        return new JdbcLedgerStore(dialect, dataSource(dialect));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SqlDialect.class)
+    void createAccountIsIdempotent(SqlDialect dialect) throws SQLException {
+        JdbcLedgerStore store = open(dialect);
+
+        assertTrue(store.createAccount(alice, CURRENCY, "alice", 100.0));
+        assertFalse(store.createAccount(alice, CURRENCY, "alice", 500.0));
+        assertEquals(100.0, store.getBalance(alice, CURRENCY));
+        assertTrue(store.hasAccount(alice, CURRENCY));
+        assertEquals(1, store.tailChanges(0L, 10).size());
+    }
+
+    @ParameterizedTest
+    @EnumSource(SqlDialect.class)
+    void schemaCanBeOpenedTwice(SqlDialect dialect) throws SQLException {
+        JdbcDataSource ds = dataSource(dialect);
+        new JdbcLedgerStore(dialect, ds).createAccount(alice, CURRENCY, "alice", 10.0);
+
+        JdbcLedgerStore reopened = new JdbcLedgerStore(dialect, ds);
+        assertEquals(10.0, reopened.getBalance(alice, CURRENCY));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SqlDialect.class)
+    void addsVersionColumnToOldTables(SqlDialect dialect) throws SQLException {
+        JdbcDataSource ds = dataSource(dialect);
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE accounts (uuid VARCHAR(36) NOT NULL, currency_id VARCHAR(64) NOT NULL, "
+                    + "username VARCHAR(64) NOT NULL, balance DOUBLE PRECISION NOT NULL DEFAULT 0, "
+                    + "payment_enabled INT NOT NULL DEFAULT 1, PRIMARY KEY (uuid, currency_id))");
+            st.execute("INSERT INTO accounts (uuid, currency_id, username, balance) VALUES ('" + alice + "', 'money', 'alice', 7)");
+        }
+
+        JdbcLedgerStore store = new JdbcLedgerStore(dialect, ds);
+        AccountState state = store.getAccountState(alice, CURRENCY);
+        assertEquals(7.0, state.balance);
+        assertEquals(0L, state.version);
+        assertNotNull(store.compareAndSetBalance(alice, CURRENCY, 0L, 8.0));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SqlDialect.class)
+    void compareAndSetRejectsStaleVersion(SqlDialect dialect) throws SQLException {
+        JdbcLedgerStore store = open(dialect);
+        store.createAccount(alice, CURRENCY, "alice", 100.0);
+
+        AccountState written = store.compareAndSetBalance(alice, CURRENCY, 0L, 150.0);
+        assertNotNull(written);
+        assertEquals(1L, written.version);
+        assertNull(store.compareAndSetBalance(alice, CURRENCY, 0L, 999.0));
+        assertEquals(150.0, store.getBalance(alice, CURRENCY));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SqlDialect.class)
+    void payAtomicMovesFundsAndLogsBothAccounts(SqlDialect dialect) throws SQLException {
+        JdbcLedgerStore store = open(dialect);
+        store.createAccount(alice, CURRENCY, "alice", 100.0);
+        store.createAccount(bob, CURRENCY, "bob", 0.0);
+
+        PayTxResult result = store.payAtomic(alice, bob, CURRENCY, 40.0, 2.0);
+        assertEquals(PayTxResult.Status.OK, result.status);
+        assertEquals(58.0, result.sender.balance);
+        assertEquals(40.0, result.receiver.balance);
+        assertEquals(58.0, store.getBalance(alice, CURRENCY));
+        assertEquals(40.0, store.getBalance(bob, CURRENCY));
+        assertEquals(1, store.getPlayerTransactions(bob, CURRENCY, 10).size());
+
+        List<AccountChange> changes = store.tailChanges(2L, 10);
+        assertEquals(2, changes.size());
+        assertEquals(1L, changes.get(0).version);
+
+        assertEquals(PayTxResult.Status.INSUFFICIENT_FUNDS, store.payAtomic(bob, alice, CURRENCY, 41.0, 0.0).status);
+        assertEquals(PayTxResult.Status.RECEIVER_NOT_FOUND,
+                store.payAtomic(alice, UUID.randomUUID(), CURRENCY, 1.0, 0.0).status);
+        store.setPaymentEnabled(bob, CURRENCY, false);
+        assertEquals(PayTxResult.Status.RECEIVER_BLOCKED, store.payAtomic(alice, bob, CURRENCY, 1.0, 0.0).status);
+        assertEquals(58.0, store.getBalance(alice, CURRENCY));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SqlDialect.class)
+    void rankingFollowsBalanceThenUuid(SqlDialect dialect) throws SQLException {
+        JdbcLedgerStore store = open(dialect);
+        store.createAccount(bob, CURRENCY, "bob", 50.0);
+        store.createAccount(alice, CURRENCY, "alice", 50.0);
+
+        List<RankingEntry> top = store.getTopPlayers(CURRENCY, 10);
+        assertEquals(alice.toString(), top.get(0).uuid);
+        assertEquals(2, store.getPlayerPosition(bob, CURRENCY));
+        // H2 has no ON CONFLICT ... DO UPDATE, so the PostgreSQL upsert cannot run here.
+        if (dialect == SqlDialect.POSTGRESQL) return;
+        assertTrue(store.upsertLastTycoon(CURRENCY, alice.toString(), "alice"));
+        assertTrue(store.upsertLastTycoon(CURRENCY, bob.toString(), "bob"));
+        assertEquals(bob.toString(), store.getLastTycoonUuid(CURRENCY));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SqlDialect.class)
+    void pruneDeletesInBatches(SqlDialect dialect) throws Exception {
+        JdbcLedgerStore store = open(dialect);
+        for (int i = 0; i < 7; i++) {
+            store.recordTransaction(CURRENCY, alice, bob, 1.0, 0.0, "PAY", "test");
+        }
+        Thread.sleep(5);
+
+        long cutoff = store.findPruneCutoff(0.0);
+        assertEquals(3, store.deleteTransactionsBefore(cutoff, 3));
+        assertEquals(3, store.deleteTransactionsBefore(cutoff, 3));
+        assertEquals(1, store.deleteTransactionsBefore(cutoff, 3));
+        assertEquals(0, store.deleteTransactionsBefore(cutoff, 3));
+
+        store.createAccount(alice, CURRENCY, "alice", 0.0);
+        for (int i = 0; i < 4; i++) store.setBalance(alice, CURRENCY, i);
+        long later = System.currentTimeMillis() + 1;
+        assertEquals(2, store.deleteChangesBefore(later, 2));
+        assertEquals(2, store.deleteChangesBefore(later, 2));
+        assertEquals(1, store.deleteChangesBefore(later, 2));
+
+        assertTrue(store.recordIdempotencyKey("a", "f", false));
+        assertTrue(store.recordIdempotencyKey("b", "f", false));
+        long afterClaims = System.currentTimeMillis() + 1;
+        assertEquals(1, store.deleteIdempotencyKeysBefore(afterClaims, 1));
+        assertEquals(1, store.deleteIdempotencyKeysBefore(afterClaims, 1));
+        assertEquals(0, store.deleteIdempotencyKeysBefore(afterClaims, 1));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SqlDialect.class)
+    void tailChangesPagesInSequenceOrder(SqlDialect dialect) throws SQLException {
+        JdbcLedgerStore store = open(dialect);
+        store.createAccount(alice, CURRENCY, "alice", 0.0);
+        store.createAccount(bob, CURRENCY, "bob", 0.0);
+        for (int i = 1; i <= 3; i++) store.addBalance(alice, CURRENCY, i);
+
+        assertEquals(5L, store.latestChangeSeq());
+        List<AccountChange> first = store.tailChanges(0L, 2);
+        assertEquals(2, first.size());
+        assertEquals(1L, first.get(0).seq);
+        assertEquals(bob.toString(), first.get(1).uuid);
+
+        List<AccountChange> rest = store.tailChanges(first.get(1).seq, 10);
+        assertEquals(3, rest.size());
+        AccountChange last = rest.get(2);
+        assertEquals(5L, last.seq);
+        assertEquals(6.0, last.balance);
+        assertEquals(3L, last.version);
+        assertTrue(store.tailChanges(5L, 10).isEmpty());
+    }
+
+    @ParameterizedTest
+    @EnumSource(SqlDialect.class)
+    void scanBalancesPagesInUuidOrder(SqlDialect dialect) throws SQLException {
+        JdbcLedgerStore store = open(dialect);
+        store.createAccount(bob, CURRENCY, "bob", 2.0);
+        store.createAccount(alice, CURRENCY, "alice", 1.0);
+        store.createAccount(alice, "gems", "alice", 50.0);
+
+        List<String> seen = new ArrayList<>();
+        String cursor = store.scanBalances(CURRENCY, null, 1, (uuid, balance) -> seen.add(uuid));
+        assertEquals(alice.toString(), cursor);
+        cursor = store.scanBalances(CURRENCY, cursor, 1, (uuid, balance) -> seen.add(uuid));
+        assertEquals(bob.toString(), cursor);
+        assertNull(store.scanBalances(CURRENCY, cursor, 1, (uuid, balance) -> seen.add(uuid)));
+        assertEquals(List.of(alice.toString(), bob.toString()), seen);
+        assertNull(store.scanBalances(CURRENCY, null, 5, (uuid, balance) -> {}));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SqlDialect.class)
+    void idempotencyKeyIsWrittenWithTheMutation(SqlDialect dialect) throws SQLException {
+        JdbcLedgerStore store = open(dialect);
+        store.createAccount(alice, CURRENCY, "alice", 100.0);
+        store.createAccount(bob, CURRENCY, "bob", 0.0);
+
+        assertNotNull(store.compareAndSetBalance(alice, CURRENCY, 0L, 90.0, "debit-1", "sub:a"));
+        assertEquals(Boolean.TRUE, store.getIdempotencyKey("debit-1").result);
+        assertNull(store.compareAndSetBalance(alice, CURRENCY, 1L, 80.0, "debit-1", "sub:a"));
+        assertEquals(90.0, store.getBalance(alice, CURRENCY));
+
+        assertNull(store.compareAndSetBalance(alice, CURRENCY, 0L, 1.0, "stale", "sub:a"));
+        assertNull(store.getIdempotencyKey("stale"));
+
+        assertEquals(PayTxResult.Status.OK, store.payAtomic(alice, bob, CURRENCY, 10.0, 0.0, "order-1", "pay:a:b").status);
+        assertEquals(PayTxResult.Status.DUPLICATE_KEY,
+                store.payAtomic(alice, bob, CURRENCY, 10.0, 0.0, "order-1", "pay:a:b").status);
+        assertEquals(10.0, store.getBalance(bob, CURRENCY));
+
+        assertEquals(PayTxResult.Status.INSUFFICIENT_FUNDS,
+                store.payAtomic(bob, alice, CURRENCY, 50.0, 0.0, "order-2", "pay:b:a").status);
+        assertNull(store.getIdempotencyKey("order-2"));
+        assertTrue(store.recordIdempotencyKey("order-2", "pay:b:a", false));
+        assertFalse(store.recordIdempotencyKey("order-2", "pay:b:a", false));
+        assertEquals(Boolean.FALSE, store.getIdempotencyKey("order-2").result);
+    }
+
+    @ParameterizedTest
+    @EnumSource(SqlDialect.class)
+    void databaseErrorsAreNotReadAsMissingAccounts(SqlDialect dialect) throws SQLException {
+        JdbcDataSource ds = dataSource(dialect);
+        JdbcLedgerStore store = new JdbcLedgerStore(dialect, ds);
+        store.createAccount(alice, CURRENCY, "alice", 10.0);
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            st.execute("DROP TABLE accounts");
+        }
+
+        assertThrows(LedgerException.class, () -> store.getAccountState(alice, CURRENCY));
+        assertThrows(LedgerException.class, () -> store.compareAndSetBalance(alice, CURRENCY, 0L, 1.0));
+        assertEquals(PayTxResult.Status.ERROR, store.payAtomic(alice, bob, CURRENCY, 1.0, 0.0).status);
+    }
+}